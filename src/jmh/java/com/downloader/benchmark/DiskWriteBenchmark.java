@@ -0,0 +1,102 @@
+package com.downloader.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 写入临时文件的吞吐量 比较缓冲区大小以及RandomAccessFile、FileChannel、内存映射三种写法，
+ * 每次调用写入 {@link #FILE_SIZE} 字节，吞吐量 = FILE_SIZE / 单次耗时
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DiskWriteBenchmark {
+
+    static final int FILE_SIZE = 32 * 1024 * 1024;
+
+    @Param({ "8192", "65536", "1048576" })
+    int bufferSize;
+
+    private File file;
+    private byte[] buffer;
+    private ByteBuffer direct;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("jmh-disk", ".tmp");
+        buffer = new byte[bufferSize];
+        ThreadLocalRandom.current().nextBytes(buffer);
+        direct = ByteBuffer.allocateDirect(bufferSize);
+        direct.put(buffer).flip();
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(FILE_SIZE);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        channel.close();
+        randomAccessFile.close();
+        mapped = null;
+        file.delete();
+    }
+
+    /**
+     * 当前下载线程的写法：seek后用byte[]写入
+     */
+    @Benchmark
+    public long randomAccessFile() throws IOException {
+        randomAccessFile.seek(0);
+        long written = 0;
+        while (written < FILE_SIZE) {
+            randomAccessFile.write(buffer, 0, bufferSize);
+            written += bufferSize;
+        }
+        return written;
+    }
+
+    /**
+     * 按位置写入的FileChannel，多个分段可共用一个通道而不必各自seek
+     */
+    @Benchmark
+    public long fileChannel() throws IOException {
+        long written = 0;
+        while (written < FILE_SIZE) {
+            direct.rewind();
+            while (direct.hasRemaining()) {
+                written += channel.write(direct, written);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * 写入内存映射区域，由操作系统回写
+     */
+    @Benchmark
+    public long mappedBuffer() {
+        mapped.clear();
+        long written = 0;
+        while (written < FILE_SIZE) {
+            mapped.put(buffer, 0, bufferSize);
+            written += bufferSize;
+        }
+        return written;
+    }
+}
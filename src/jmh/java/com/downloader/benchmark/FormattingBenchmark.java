@@ -0,0 +1,77 @@
+package com.downloader.benchmark;
+
+import com.downloader.model.DownloadTask;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务格式化辅助方法的开销 比较每次生成新字符串和追加到复用的StringBuilder两种写法
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FormattingBenchmark {
+
+    private final StringBuilder sb = new StringBuilder(64);
+    private DownloadTask task;
+    private long value;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        task = new DownloadTask("https://example.com/files/a.bin", "a.bin", "/downloads");
+        task.setTotalSize(3L * 1024 * 1024 * 1024);
+        task.setDownloadedSize(1234L * 1024 * 1024);
+        task.setSpeed(5L * 1024 * 1024);
+        task.setStatus(DownloadTask.Status.DOWNLOADING);
+    }
+
+    private long nextValue() {
+        value = value * 6364136223846793005L + 1442695040888963407L;
+        return (value >>> 1) % (8L * 1024 * 1024 * 1024);
+    }
+
+    @Benchmark
+    public String formatFileSize() {
+        return DownloadTask.formatFileSize(nextValue());
+    }
+
+    @Benchmark
+    public int appendFileSize() {
+        sb.setLength(0);
+        DownloadTask.appendFileSize(sb, nextValue());
+        return sb.length();
+    }
+
+    @Benchmark
+    public String formatSpeed() {
+        return DownloadTask.formatSpeed(nextValue() >>> 10);
+    }
+
+    @Benchmark
+    public int appendSpeed() {
+        sb.setLength(0);
+        DownloadTask.appendSpeed(sb, nextValue() >>> 10);
+        return sb.length();
+    }
+
+    @Benchmark
+    public int appendDuration() {
+        sb.setLength(0);
+        DownloadTask.appendDuration(sb, nextValue() % 360_000);
+        return sb.length();
+    }
+
+    @Benchmark
+    public long etaSeconds() {
+        return task.getEtaSeconds();
+    }
+
+    @Benchmark
+    public double progress() {
+        return task.getProgress();
+    }
+}
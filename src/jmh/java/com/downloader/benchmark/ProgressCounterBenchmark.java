@@ -0,0 +1,104 @@
+package com.downloader.benchmark;
+
+import com.downloader.model.DownloadSegment;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进度计数器的争用 四个下载线程每读到8KB累加一次，另有一个进度监控线程读取总数；
+ * 比较共享AtomicLong、LongAdder和当前的按分段单写者计数（每64KB发布一次）
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgressCounterBenchmark {
+
+    private static final int CHUNK = 8192;
+    private static final long PUBLISH_INTERVAL = 64 * 1024;
+
+    @State(Scope.Group)
+    public static class Shared {
+        final AtomicLong atomic = new AtomicLong();
+        final LongAdder adder = new LongAdder();
+        final DownloadSegment[] segments = new DownloadSegment[4];
+        final AtomicLong nextSegment = new AtomicLong();
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = new DownloadSegment(0, Long.MAX_VALUE - 1, 0);
+            }
+            nextSegment.set(0);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        DownloadSegment segment;
+        long downloaded;
+        long published;
+
+        @Setup(Level.Iteration)
+        public void setUp(Shared shared) {
+            segment = shared.segments[(int) (shared.nextSegment.getAndIncrement() % shared.segments.length)];
+            downloaded = 0;
+            published = 0;
+        }
+    }
+
+    @Benchmark
+    @Group("atomicLong")
+    @GroupThreads(4)
+    public long atomicWrite(Shared shared) {
+        return shared.atomic.addAndGet(CHUNK);
+    }
+
+    @Benchmark
+    @Group("atomicLong")
+    @GroupThreads(1)
+    public long atomicRead(Shared shared) {
+        return shared.atomic.get();
+    }
+
+    @Benchmark
+    @Group("longAdder")
+    @GroupThreads(4)
+    public void adderWrite(Shared shared) {
+        shared.adder.add(CHUNK);
+    }
+
+    @Benchmark
+    @Group("longAdder")
+    @GroupThreads(1)
+    public long adderRead(Shared shared) {
+        return shared.adder.sum();
+    }
+
+    @Benchmark
+    @Group("segment")
+    @GroupThreads(4)
+    public long segmentWrite(Writer writer) {
+        writer.downloaded += CHUNK;
+        if (writer.downloaded - writer.published >= PUBLISH_INTERVAL) {
+            writer.segment.setDownloaded(writer.downloaded);
+            writer.published = writer.downloaded;
+        }
+        return writer.downloaded;
+    }
+
+    @Benchmark
+    @Group("segment")
+    @GroupThreads(1)
+    public long segmentRead(Shared shared) {
+        long sum = 0;
+        for (DownloadSegment segment : shared.segments) {
+            sum += segment.getDownloaded();
+        }
+        return sum;
+    }
+}
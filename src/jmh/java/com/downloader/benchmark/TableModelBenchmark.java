@@ -0,0 +1,94 @@
+package com.downloader.benchmark;
+
+import com.downloader.model.DownloadTask;
+import com.downloader.ui.DownloadTableModel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务表格模型在大量行时的更新和查找开销 可见范围固定为40行，模拟一屏表格
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class TableModelBenchmark {
+
+    private static final int VISIBLE_ROWS = 40;
+    private static final int BATCH = 256;
+
+    @Param({ "10000", "100000", "1000000" })
+    int rows;
+
+    private DownloadTableModel model;
+    private List<DownloadTask> tasks;
+    private List<DownloadTask> batch;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tasks = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            DownloadTask task = new DownloadTask("https://host" + (i % 50) + ".example.com/files/" + i + ".bin",
+                    "file-" + i + ".bin", "/downloads");
+            task.setTotalSize(100L * 1024 * 1024);
+            task.setDownloadedSize(i);
+            task.setStatus(i % 10 == 0 ? DownloadTask.Status.DOWNLOADING : DownloadTask.Status.WAITING);
+            tasks.add(task);
+        }
+        model = new DownloadTableModel();
+        model.setTasks(tasks);
+        model.setVisibleRowRange(0, VISIBLE_ROWS - 1);
+        batch = new ArrayList<>(BATCH);
+    }
+
+    private DownloadTask next() {
+        cursor = cursor + 7919 < rows ? cursor + 7919 : (cursor + 7919) % rows;
+        return tasks.get(cursor);
+    }
+
+    @Benchmark
+    public void updateTask() {
+        DownloadTask task = next();
+        task.setDownloadedSize(task.getDownloadedSize() + 8192);
+        model.updateTask(task);
+    }
+
+    /**
+     * 一次合并事件中的批量进度更新，多数行不在可见范围内
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void updateTasksBatch() {
+        batch.clear();
+        for (int i = 0; i < BATCH; i++) {
+            DownloadTask task = next();
+            task.setDownloadedSize(task.getDownloadedSize() + 8192);
+            batch.add(task);
+        }
+        model.updateTasks(batch);
+    }
+
+    @Benchmark
+    public int findRowByTaskId() {
+        return model.findRowByTaskId(next().getId());
+    }
+
+    /**
+     * 重绘一屏表格时读取的全部单元格
+     */
+    @Benchmark
+    public void paintVisibleRows(Blackhole blackhole) {
+        for (int row = 0; row < VISIBLE_ROWS; row++) {
+            for (int column = 0; column < model.getColumnCount(); column++) {
+                blackhole.consume(model.getValueAt(row, column));
+            }
+        }
+    }
+}
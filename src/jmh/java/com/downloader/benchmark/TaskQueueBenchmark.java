@@ -0,0 +1,73 @@
+package com.downloader.benchmark;
+
+import com.downloader.core.CompactTaskQueue;
+import com.downloader.model.DownloadRequest;
+import com.downloader.model.DownloadTask;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 选取下一个等待任务的开销 等待队列按创建顺序排序（与下载管理器相同），
+ * 每次取出最前面的任务后再放回一个，保持队列长度不变；另测紧凑队列的入队和出队
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TaskQueueBenchmark {
+
+    @Param({ "1000", "100000" })
+    int queued;
+
+    private ConcurrentSkipListSet<DownloadTask> waitingQueue;
+    private CompactTaskQueue compactQueue;
+    private DownloadRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        waitingQueue = new ConcurrentSkipListSet<>(Comparator.comparingLong(DownloadTask::getSequence));
+        List<DownloadRequest> requests = new ArrayList<>(queued);
+        for (int i = 0; i < queued; i++) {
+            waitingQueue.add(new DownloadTask("https://example.com/files/" + i + ".bin", i + ".bin", "/downloads"));
+            requests.add(new DownloadRequest("https://example.com/files/" + i + ".bin", i + ".bin", "/downloads"));
+        }
+        compactQueue = new CompactTaskQueue();
+        compactQueue.addAll(requests);
+        request = new DownloadRequest("https://example.com/files/next.bin", "next.bin", "/downloads");
+    }
+
+    /**
+     * 取出最早的等待任务并放回队尾（重新排队的任务保留原顺序号，这里直接放回）
+     */
+    @Benchmark
+    public DownloadTask selectNextWaiting() {
+        DownloadTask task = waitingQueue.pollFirst();
+        waitingQueue.add(task);
+        return task;
+    }
+
+    /**
+     * 按任务ID找到并移出等待队列，暂停或删除等待任务时发生
+     */
+    @Benchmark
+    public boolean removeWaiting() {
+        DownloadTask task = waitingQueue.first();
+        boolean removed = waitingQueue.remove(task);
+        waitingQueue.add(task);
+        return removed;
+    }
+
+    @Benchmark
+    public List<DownloadRequest> compactPollAndRefill() {
+        List<DownloadRequest> polled = compactQueue.poll(1);
+        compactQueue.add(request);
+        return polled;
+    }
+}
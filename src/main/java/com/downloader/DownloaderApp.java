@@ -2,6 +2,7 @@ package com.downloader;
 
 import com.downloader.ui.MainWindow;
 import com.downloader.core.DownloadManager;
+import com.downloader.rpc.JsonRpcServer;
 import javax.swing.*;
 
 /**
@@ -12,6 +13,16 @@ public class DownloaderApp
 
     public static void main(String[] args)
     {
+        // 无界面模式不加载任何AWT/Swing类
+        for (String arg : args)
+        {
+            if ("--headless".equals(arg))
+            {
+                HeadlessApp.main(args);
+                return;
+            }
+        }
+
         // 设置系统外观
         try
         {
@@ -28,6 +39,21 @@ public class DownloaderApp
                 // 初始化下载管理器
                 DownloadManager downloadManager = new DownloadManager();
 
+                // 指定了 -Ddownloader.metrics.port 时启动Prometheus指标端点
+                String metricsPort = System.getProperty("downloader.metrics.port");
+                if (metricsPort != null)
+                {
+                    downloadManager.startMetricsEndpoint(Integer.parseInt(metricsPort.trim()));
+                }
+
+                // 指定了 -Ddownloader.rpc.port 时启动aria2兼容的JSON-RPC端点，随进程退出
+                String rpcPort = System.getProperty("downloader.rpc.port");
+                if (rpcPort != null)
+                {
+                    new JsonRpcServer(downloadManager, System.getProperty("user.home") + "/Downloads",
+                            System.getProperty("downloader.rpc.secret")).start(Integer.parseInt(rpcPort.trim()));
+                }
+
                 // 创建并显示主窗口
                 MainWindow mainWindow = new MainWindow(downloadManager);
                 mainWindow.setVisible(true);
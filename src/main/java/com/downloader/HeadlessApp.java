@@ -0,0 +1,544 @@
+package com.downloader;
+
+import com.downloader.core.DownloadManager;
+import com.downloader.model.DownloadRequest;
+import com.downloader.model.DownloadTask;
+import com.downloader.rpc.JsonRpcServer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 无界面批量下载 不加载任何AWT/Swing类，直接驱动下载管理器，适合在服务器和容器中运行。
+ * 从清单文件读取下载条目，定期输出吞吐量汇总，全部结束后校验文件并以退出码报告结果。
+ * <pre>
+ * java -jar downloader.jar --headless [选项] 清单文件
+ * </pre>
+ * 清单每行一个条目，字段以空白分隔：URL 目标 [校验值] [优先级]。目标以“/”结尾或为已有目录时，
+ * 文件名取自URL；校验值格式为“算法:十六进制值”（md5、sha1、sha256、sha512），“-”表示不校验；
+ * 优先级为整数，越大越先开始。空行和以“#”开头的行被忽略，清单文件为“-”时从标准输入读取。
+ * 选项：--output 相对目标的基准目录（默认当前目录），--concurrency 并发下载数（默认4），
+ * --retries 每个文件失败后重新开始的次数（默认2），--interval 汇总输出间隔秒数（默认5），
+ * --metrics-port Prometheus指标端口，--rpc-port 启动aria2兼容的JSON-RPC端点，--rpc-secret RPC密钥，
+ * --verbose 输出下载器日志。指定了 --rpc-port 而没有清单文件时，持续运行并通过RPC接受下载
+ */
+public class HeadlessApp
+{
+
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_DOWNLOAD_FAILED = 1; // 有文件重试后仍下载失败
+    public static final int EXIT_CHECKSUM_MISMATCH = 2; // 全部下载完成，但有文件校验不一致
+    public static final int EXIT_USAGE = 64; // 参数或清单格式错误
+    public static final int EXIT_INTERRUPTED = 130;
+
+    private static final long POLL_INTERVAL = 200; // 检查任务状态的间隔（毫秒）
+
+    private File outputDir = new File(".");
+    private int concurrency = 4;
+    private int retries = 2;
+    private long intervalMillis = 5000;
+    private int metricsPort = -1;
+    private int rpcPort = -1;
+    private String rpcSecret;
+    private String manifest;
+
+    public static void main(String[] args)
+    {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * 执行一次批量下载并返回退出码
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err)
+    {
+        HeadlessApp app = new HeadlessApp();
+        List<Entry> entries = Collections.emptyList();
+        try
+        {
+            boolean verbose = app.parseArguments(args);
+            // 必须在首次使用日志之前设置，logback.xml 据此决定下载器日志级别
+            if (!verbose && System.getProperty("downloader.log.level") == null)
+            {
+                System.setProperty("downloader.log.level", "WARN");
+            }
+            if (app.manifest != null)
+            {
+                try (InputStream in = "-".equals(app.manifest) ? System.in : new FileInputStream(app.manifest))
+                {
+                    entries = parseManifest(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)),
+                            app.outputDir);
+                }
+            }
+        } catch (IllegalArgumentException e)
+        {
+            err.println("错误: " + e.getMessage());
+            err.println("用法: --headless [--output 目录] [--concurrency N] [--retries N] [--interval 秒] "
+                    + "[--metrics-port 端口] [--rpc-port 端口] [--rpc-secret 密钥] [--verbose] 清单文件");
+            return EXIT_USAGE;
+        } catch (IOException e)
+        {
+            err.println("无法读取清单: " + e.getMessage());
+            return EXIT_USAGE;
+        }
+        if (entries.isEmpty() && app.rpcPort < 0)
+        {
+            out.println("清单中没有下载条目");
+            return EXIT_OK;
+        }
+
+        DownloadManager manager = new DownloadManager(null);
+        JsonRpcServer rpc = null;
+        try
+        {
+            manager.setMaxConcurrentDownloads(app.concurrency);
+            if (app.metricsPort >= 0)
+            {
+                out.println("指标端点: http://localhost:" + manager.startMetricsEndpoint(app.metricsPort) + "/metrics");
+            }
+            if (app.rpcPort >= 0)
+            {
+                rpc = new JsonRpcServer(manager, app.outputDir.getPath(), app.rpcSecret);
+                out.println("RPC端点: http://localhost:" + rpc.start(app.rpcPort) + "/jsonrpc");
+            }
+            if (entries.isEmpty())
+            {
+                // 没有清单时作为常驻服务运行，直到进程被终止
+                out.println("等待RPC请求");
+                while (true)
+                {
+                    Thread.sleep(Long.MAX_VALUE);
+                }
+            }
+            return app.download(manager, entries, out);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            err.println("下载被中断");
+            return EXIT_INTERRUPTED;
+        } catch (IOException e)
+        {
+            err.println("启动失败: " + e.getMessage());
+            return EXIT_USAGE;
+        } finally
+        {
+            if (rpc != null)
+            {
+                rpc.stop();
+            }
+            manager.shutdown();
+        }
+    }
+
+    /**
+     * @return 是否指定了 --verbose
+     */
+    private boolean parseArguments(String[] args)
+    {
+        boolean verbose = false;
+        for (int i = 0; i < args.length; i++)
+        {
+            String arg = args[i];
+            switch (arg)
+            {
+            case "--headless":
+                break;
+            case "--verbose":
+                verbose = true;
+                break;
+            case "--output":
+                outputDir = new File(value(args, ++i, arg));
+                break;
+            case "--concurrency":
+                concurrency = positive(value(args, ++i, arg), arg);
+                break;
+            case "--retries":
+                retries = Math.max(0, integer(value(args, ++i, arg), arg));
+                break;
+            case "--interval":
+                intervalMillis = positive(value(args, ++i, arg), arg) * 1000L;
+                break;
+            case "--metrics-port":
+                metricsPort = integer(value(args, ++i, arg), arg);
+                break;
+            case "--rpc-port":
+                rpcPort = integer(value(args, ++i, arg), arg);
+                break;
+            case "--rpc-secret":
+                rpcSecret = value(args, ++i, arg);
+                break;
+            default:
+                if (arg.startsWith("--") || manifest != null)
+                {
+                    throw new IllegalArgumentException("无法识别的参数 " + arg);
+                }
+                manifest = arg;
+            }
+        }
+        if (manifest == null && rpcPort < 0)
+        {
+            throw new IllegalArgumentException("未指定清单文件");
+        }
+        return verbose;
+    }
+
+    private static String value(String[] args, int index, String option)
+    {
+        if (index >= args.length)
+        {
+            throw new IllegalArgumentException(option + " 缺少参数值");
+        }
+        return args[index];
+    }
+
+    private static int integer(String value, String option)
+    {
+        try
+        {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException(option + " 的值不是整数: " + value);
+        }
+    }
+
+    private static int positive(String value, String option)
+    {
+        int result = integer(value, option);
+        if (result <= 0)
+        {
+            throw new IllegalArgumentException(option + " 必须大于0");
+        }
+        return result;
+    }
+
+    // ---- 下载 ----
+
+    private int download(DownloadManager manager, List<Entry> entries, PrintStream out)
+            throws IOException, InterruptedException
+    {
+        manager.setArchiveDelayMillis(-1); // 结束的任务留在任务表中，直到全部完成
+
+        List<DownloadRequest> requests = new ArrayList<>(entries.size());
+        for (Entry entry : entries)
+        {
+            requests.add(new DownloadRequest(entry.url, entry.fileName, entry.directory, entry.priority));
+        }
+        long start = System.currentTimeMillis();
+        List<String> ids = manager.addDownloads(requests);
+        Map<String, Entry> pending = new LinkedHashMap<>();
+        for (int i = 0; i < ids.size(); i++)
+        {
+            pending.put(ids.get(i), entries.get(i));
+        }
+
+        int completed = 0;
+        List<String> failures = new ArrayList<>();
+        List<String> mismatches = new ArrayList<>();
+        long nextSummary = start + intervalMillis;
+        while (!pending.isEmpty())
+        {
+            Thread.sleep(POLL_INTERVAL);
+            for (Iterator<Map.Entry<String, Entry>> it = pending.entrySet().iterator(); it.hasNext();)
+            {
+                Map.Entry<String, Entry> item = it.next();
+                DownloadTask task = manager.getTask(item.getKey());
+                Entry entry = item.getValue();
+                if (task == null)
+                {
+                    // 通过RPC删除的任务不再等待，也不计为失败
+                    it.remove();
+                    out.println("已删除: " + entry.url);
+                } else if (task.getStatus() == DownloadTask.Status.COMPLETED)
+                {
+                    it.remove();
+                    completed++;
+                    String mismatch = verify(task, entry);
+                    if (mismatch != null)
+                    {
+                        mismatches.add(mismatch);
+                        out.println("校验失败: " + mismatch);
+                    }
+                } else if (task.getStatus() == DownloadTask.Status.ERROR)
+                {
+                    if (entry.attempts++ < retries)
+                    {
+                        out.println("重新开始(" + entry.attempts + "/" + retries + "): " + entry.url + " - "
+                                + task.getErrorMessage());
+                        manager.startDownload(task.getId());
+                    } else
+                    {
+                        it.remove();
+                        failures.add(entry.url + " - " + task.getErrorMessage());
+                        out.println("下载失败: " + entry.url + " - " + task.getErrorMessage());
+                    }
+                }
+            }
+            long now = System.currentTimeMillis();
+            if (now >= nextSummary)
+            {
+                out.println(summary(manager, now - start, completed, failures.size(), pending.size(),
+                        entries.size()));
+                nextSummary = now + intervalMillis;
+            }
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        long bytes = manager.getMetrics().getBytesDownloaded();
+        StringBuilder sb = new StringBuilder("结束: ");
+        sb.append(completed).append('/').append(entries.size()).append("个文件完成，下载");
+        DownloadTask.appendFileSize(sb, bytes);
+        sb.append("，用时");
+        DownloadTask.appendDuration(sb, elapsed / 1000);
+        sb.append("，平均");
+        DownloadTask.appendSpeed(sb, elapsed > 0 ? bytes * 1000 / elapsed : 0);
+        if (!failures.isEmpty())
+        {
+            sb.append("，失败").append(failures.size());
+        }
+        if (!mismatches.isEmpty())
+        {
+            sb.append("，校验不一致").append(mismatches.size());
+        }
+        out.println(sb);
+
+        if (!failures.isEmpty())
+        {
+            return EXIT_DOWNLOAD_FAILED;
+        }
+        return mismatches.isEmpty() ? EXIT_OK : EXIT_CHECKSUM_MISMATCH;
+    }
+
+    private static String summary(DownloadManager manager, long elapsedMillis, int completed, int failed,
+            int remaining, int total)
+    {
+        StringBuilder sb = new StringBuilder(96);
+        sb.append('[');
+        DownloadTask.appendDuration(sb, elapsedMillis / 1000);
+        sb.append("] 完成 ").append(completed).append('/').append(total);
+        sb.append("，失败 ").append(failed);
+        sb.append("，下载中 ").append(manager.getActiveDownloadCount());
+        sb.append("，等待 ").append(Math.max(0, remaining - manager.getActiveDownloadCount()));
+        sb.append("，速度 ");
+        DownloadTask.appendSpeed(sb, manager.getMetrics().getBytesPerSecond());
+        sb.append("，已下载 ");
+        DownloadTask.appendFileSize(sb, manager.getMetrics().getBytesDownloaded());
+        return sb.toString();
+    }
+
+    /**
+     * 校验已完成的文件
+     * @return 不一致时返回说明，一致或未指定校验值时返回null
+     */
+    private static String verify(DownloadTask task, Entry entry) throws IOException
+    {
+        if (entry.algorithm == null)
+        {
+            return null;
+        }
+        String actual = digest(new File(task.getFullPath()), entry.algorithm);
+        if (actual.equalsIgnoreCase(entry.checksum))
+        {
+            return null;
+        }
+        return task.getFullPath() + " 期望" + entry.algorithm + ":" + entry.checksum + "，实际" + actual;
+    }
+
+    static String digest(File file, String algorithm) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file))
+        {
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest())
+        {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    // ---- 清单 ----
+
+    /**
+     * 清单中的一个下载条目
+     */
+    static class Entry
+    {
+        final String url;
+        final String directory;
+        final String fileName;
+        final String algorithm; // MessageDigest算法名，null表示不校验
+        final String checksum;
+        final int priority;
+        int attempts; // 已重新开始的次数
+
+        Entry(String url, String directory, String fileName, String algorithm, String checksum, int priority)
+        {
+            this.url = url;
+            this.directory = directory;
+            this.fileName = fileName;
+            this.algorithm = algorithm;
+            this.checksum = checksum;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * 解析清单，格式错误时抛出带行号的IllegalArgumentException
+     * @param baseDir 相对目标路径的基准目录
+     */
+    static List<Entry> parseManifest(BufferedReader reader, File baseDir) throws IOException
+    {
+        List<Entry> entries = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null)
+        {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#"))
+            {
+                continue;
+            }
+            try
+            {
+                entries.add(parseLine(trimmed.split("\\s+"), baseDir));
+            } catch (IllegalArgumentException e)
+            {
+                throw new IllegalArgumentException("清单第" + lineNumber + "行: " + e.getMessage());
+            }
+        }
+        return entries;
+    }
+
+    private static Entry parseLine(String[] fields, File baseDir)
+    {
+        if (fields.length < 2 || fields.length > 4)
+        {
+            throw new IllegalArgumentException("应为“URL 目标 [校验值] [优先级]”");
+        }
+        String url = fields[0];
+        URI uri;
+        try
+        {
+            uri = new URI(url);
+        } catch (Exception e)
+        {
+            throw new IllegalArgumentException("URL格式错误: " + url);
+        }
+        String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase(Locale.ROOT);
+        if (!scheme.equals("http") && !scheme.equals("https"))
+        {
+            throw new IllegalArgumentException("只支持http和https: " + url);
+        }
+
+        String algorithm = null;
+        String checksum = null;
+        int priority = 0;
+        for (int i = 2; i < fields.length; i++)
+        {
+            String field = fields[i];
+            if (field.matches("[+-]?\\d+") && i == fields.length - 1)
+            {
+                priority = Integer.parseInt(field);
+            } else if (i == 2 && !field.equals("-"))
+            {
+                int colon = field.indexOf(':');
+                if (colon <= 0)
+                {
+                    throw new IllegalArgumentException("校验值应为“算法:十六进制值”: " + field);
+                }
+                algorithm = algorithmName(field.substring(0, colon));
+                checksum = field.substring(colon + 1);
+                if (!checksum.matches("[0-9a-fA-F]+"))
+                {
+                    throw new IllegalArgumentException("校验值不是十六进制: " + field);
+                }
+            } else if (i != 2)
+            {
+                throw new IllegalArgumentException("优先级不是整数: " + field);
+            }
+        }
+
+        File target = new File(fields[1]);
+        if (!target.isAbsolute())
+        {
+            target = new File(baseDir, fields[1]);
+        }
+        String directory;
+        String fileName;
+        if (fields[1].endsWith("/") || fields[1].endsWith(File.separator) || target.isDirectory())
+        {
+            directory = target.getPath();
+            fileName = fileNameOf(uri);
+        } else
+        {
+            directory = target.getParent() == null ? "." : target.getParent();
+            fileName = target.getName();
+        }
+        return new Entry(url, directory, fileName, algorithm, checksum, priority);
+    }
+
+    private static String algorithmName(String name)
+    {
+        switch (name.toLowerCase(Locale.ROOT))
+        {
+        case "md5":
+            return "MD5";
+        case "sha1":
+        case "sha-1":
+            return "SHA-1";
+        case "sha256":
+        case "sha-256":
+            return "SHA-256";
+        case "sha512":
+        case "sha-512":
+            return "SHA-512";
+        default:
+            throw new IllegalArgumentException("不支持的校验算法: " + name);
+        }
+    }
+
+    private static String fileNameOf(URI uri)
+    {
+        String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        name = URLDecoder.decode(name, StandardCharsets.UTF_8);
+        if (name.isEmpty())
+        {
+            throw new IllegalArgumentException("无法从URL确定文件名，请在目标中指定: " + uri);
+        }
+        return name;
+    }
+}
@@ -0,0 +1,165 @@
+package com.downloader.core;
+
+import com.downloader.model.DownloadTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 合并事件分发器 位于下载管理器和监听器之间：同一任务在一个周期内的多次更新只保留最新状态，
+ * 按固定频率把新增、更新、删除分别作为一批交付给监听器
+ */
+public class CoalescingEventDispatcher
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(CoalescingEventDispatcher.class);
+    public static final long DEFAULT_FLUSH_INTERVAL = 250; // 默认分发间隔（毫秒）
+
+    private final List<DownloadListener> listeners;
+    private final Object lock = new Object();
+    private final ScheduledExecutorService flushExecutor;
+    private Map<String, DownloadTask> added;
+    private Map<String, DownloadTask> updated;
+    private Map<String, DownloadTask> removed;
+
+    /**
+     * @param listeners 监听器列表（需支持并发读取）
+     * @param flushIntervalMillis 分发间隔
+     */
+    public CoalescingEventDispatcher(List<DownloadListener> listeners, long flushIntervalMillis)
+    {
+        this.listeners = listeners;
+        this.added = new LinkedHashMap<>();
+        this.updated = new LinkedHashMap<>();
+        this.removed = new LinkedHashMap<>();
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "DownloadEvent-dispatcher");
+            t.setDaemon(true);
+            return t;
+        });
+        this.flushExecutor.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public void taskAdded(DownloadTask task)
+    {
+        synchronized (lock)
+        {
+            added.put(task.getId(), task);
+        }
+    }
+
+    public void tasksAdded(List<DownloadTask> tasks)
+    {
+        synchronized (lock)
+        {
+            for (DownloadTask task : tasks)
+            {
+                added.put(task.getId(), task);
+            }
+        }
+    }
+
+    public void taskUpdated(DownloadTask task)
+    {
+        synchronized (lock)
+        {
+            updated.put(task.getId(), task);
+        }
+    }
+
+    public void taskRemoved(DownloadTask task)
+    {
+        synchronized (lock)
+        {
+            removed.put(task.getId(), task);
+        }
+    }
+
+    /**
+     * 交付当前积累的事件 顺序为新增、更新、删除；同一批中新增或已删除的任务不再单独发送更新
+     */
+    public void flush()
+    {
+        Map<String, DownloadTask> addedBatch;
+        Map<String, DownloadTask> updatedBatch;
+        Map<String, DownloadTask> removedBatch;
+        synchronized (lock)
+        {
+            if (added.isEmpty() && updated.isEmpty() && removed.isEmpty())
+            {
+                return;
+            }
+            addedBatch = added;
+            updatedBatch = updated;
+            removedBatch = removed;
+            added = new LinkedHashMap<>();
+            updated = new LinkedHashMap<>();
+            removed = new LinkedHashMap<>();
+        }
+
+        if (!addedBatch.isEmpty())
+        {
+            List<DownloadTask> batch = new ArrayList<>(addedBatch.values());
+            deliver(listener -> listener.onTasksAdded(batch));
+        }
+
+        List<DownloadTask> updates = new ArrayList<>(updatedBatch.size());
+        for (DownloadTask task : updatedBatch.values())
+        {
+            if (!addedBatch.containsKey(task.getId()) && !removedBatch.containsKey(task.getId()))
+            {
+                updates.add(task);
+            }
+        }
+        if (!updates.isEmpty())
+        {
+            deliver(listener -> listener.onTasksUpdated(updates));
+        }
+
+        if (!removedBatch.isEmpty())
+        {
+            List<DownloadTask> batch = new ArrayList<>(removedBatch.values());
+            deliver(listener -> listener.onTasksRemoved(batch));
+        }
+    }
+
+    private void deliver(Consumer<DownloadListener> event)
+    {
+        for (DownloadListener listener : listeners)
+        {
+            try
+            {
+                event.accept(listener);
+            } catch (Exception e)
+            {
+                // 单个监听器出错不能影响后续分发
+                logger.error("监听器处理事件失败: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 停止定时分发并交付剩余事件
+     */
+    public void close()
+    {
+        flushExecutor.shutdown();
+        try
+        {
+            flushExecutor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
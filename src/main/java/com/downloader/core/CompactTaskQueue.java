@@ -0,0 +1,190 @@
+package com.downloader.core;
+
+import com.downloader.model.DownloadRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 紧凑的待下载队列 尚未开始的请求按先进先出顺序编码进固定大小的字节页：保存目录只记录在字典中的编号，
+ * 优先级以zigzag变长整数保存，URL和文件名以UTF-8保存，不为每个请求创建对象；
+ * 出队时才还原为请求，整页读完后即可被回收
+ */
+public class CompactTaskQueue
+{
+
+    private static final int PAGE_SIZE = 1 << 20; // 每页1MB
+
+    private final ArrayDeque<Page> pages;
+    private final List<String> directories; // 目录字典
+    private final Map<String, Integer> directoryIndex;
+    private Page writePage; // 队尾页
+    private int readPos; // 队首页的读取位置
+    private long size;
+
+    public CompactTaskQueue()
+    {
+        this.pages = new ArrayDeque<>();
+        this.directories = new ArrayList<>();
+        this.directoryIndex = new HashMap<>();
+    }
+
+    public synchronized void add(DownloadRequest request)
+    {
+        byte[] url = request.getUrl().getBytes(StandardCharsets.UTF_8);
+        byte[] fileName = request.getFileName().getBytes(StandardCharsets.UTF_8);
+        int directory = directoryIndex.computeIfAbsent(request.getSavePath(), path -> {
+            directories.add(path);
+            return directories.size() - 1;
+        });
+
+        int length = 5 * 4 + url.length + fileName.length; // 四个变长整数最多各5字节
+        if (writePage == null || writePage.limit + length > writePage.data.length)
+        {
+            writePage = new Page(Math.max(PAGE_SIZE, length));
+            pages.addLast(writePage);
+        }
+        writePage.writeVarInt(directory);
+        // zigzag编码，负优先级也只占很少的字节
+        int priority = request.getPriority();
+        writePage.writeVarInt((priority << 1) ^ (priority >> 31));
+        writePage.writeBytes(url);
+        writePage.writeBytes(fileName);
+        size++;
+    }
+
+    public synchronized void addAll(Collection<DownloadRequest> requests)
+    {
+        for (DownloadRequest request : requests)
+        {
+            add(request);
+        }
+    }
+
+    /**
+     * 按入队顺序取出最多max个请求
+     */
+    public synchronized List<DownloadRequest> poll(int max)
+    {
+        List<DownloadRequest> result = new ArrayList<>(Math.min(max, (int) Math.min(size, 1024)));
+        while (result.size() < max && size > 0)
+        {
+            Page page = pages.peekFirst();
+            if (readPos >= page.limit)
+            {
+                // 当前页已读完，丢弃后转到下一页
+                pages.pollFirst();
+                readPos = 0;
+                continue;
+            }
+            int[] pos = { readPos };
+            int directory = readVarInt(page.data, pos);
+            int zigzag = readVarInt(page.data, pos);
+            int priority = (zigzag >>> 1) ^ -(zigzag & 1);
+            String url = readString(page.data, pos);
+            String fileName = readString(page.data, pos);
+            readPos = pos[0];
+            size--;
+            result.add(new DownloadRequest(url, fileName, directories.get(directory), priority));
+        }
+        if (size == 0)
+        {
+            // 队列清空后释放全部页面，下次写入重新分配
+            pages.clear();
+            writePage = null;
+            readPos = 0;
+        }
+        return result;
+    }
+
+    public synchronized long size()
+    {
+        return size;
+    }
+
+    public synchronized boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * 当前占用的页面字节数
+     */
+    public synchronized long getMemoryBytes()
+    {
+        long bytes = 0;
+        for (Page page : pages)
+        {
+            bytes += page.data.length;
+        }
+        return bytes;
+    }
+
+    public synchronized void clear()
+    {
+        pages.clear();
+        directories.clear();
+        directoryIndex.clear();
+        writePage = null;
+        readPos = 0;
+        size = 0;
+    }
+
+    private static int readVarInt(byte[] page, int[] pos)
+    {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do
+        {
+            b = page[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static String readString(byte[] page, int[] pos)
+    {
+        int length = readVarInt(page, pos);
+        String value = new String(page, pos[0], length, StandardCharsets.UTF_8);
+        pos[0] += length;
+        return value;
+    }
+
+    /**
+     * 字节页 limit为已写入的长度
+     */
+    private static class Page
+    {
+        final byte[] data;
+        int limit;
+
+        Page(int capacity)
+        {
+            this.data = new byte[capacity];
+        }
+
+        void writeBytes(byte[] bytes)
+        {
+            writeVarInt(bytes.length);
+            System.arraycopy(bytes, 0, data, limit, bytes.length);
+            limit += bytes.length;
+        }
+
+        void writeVarInt(int value)
+        {
+            while ((value & ~0x7F) != 0)
+            {
+                data[limit++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[limit++] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.downloader.core;
+
+import com.downloader.model.DownloadSegment;
+import com.downloader.model.DownloadTask;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 默认调度策略 大于1MB且支持Range的文件均分为多个分段；连接数按加性增长、乘性减少（AIMD）学习：
+ * 每次最多比上次健康值多试探一个连接，限流后减半；已知单连接实测速度时，连接数不超过让每个连接至少传输数秒的数量；
+ * 限流退避优先采用Retry-After，否则指数增长；等待任务按优先级从高到低、同优先级按添加顺序开始
+ */
+public class DefaultSchedulingPolicy implements SchedulingPolicy
+{
+
+    static final long MIN_SEGMENTED_SIZE = 1024 * 1024; // 大于1MB才分段下载
+    static final long DEFAULT_BACKOFF_MILLIS = 2000; // 无Retry-After时的初始退避
+    static final long MAX_BACKOFF_MILLIS = 5 * 60 * 1000; // 最长退避5分钟
+    static final int MAX_THROTTLE_RETRIES = 5;
+    static final long MIN_CONNECTION_SECONDS = 2; // 每个连接至少传输的秒数，更短时建立连接的开销超过并行的收益
+
+    @Override
+    public boolean useSegments(long size, boolean supportsRanges)
+    {
+        return supportsRanges && size > MIN_SEGMENTED_SIZE;
+    }
+
+    @Override
+    public int initialConnections(int requested, int healthyConnections, long size, long connectionBytesPerSecond)
+    {
+        int connections = healthyConnections <= 0 ? requested
+                : Math.max(1, Math.min(requested, healthyConnections + 1));
+        if (size > 0 && connectionBytesPerSecond > 0)
+        {
+            long useful = size / (connectionBytesPerSecond * MIN_CONNECTION_SECONDS);
+            connections = (int) Math.max(1, Math.min(connections, useful));
+        }
+        return connections;
+    }
+
+    /**
+     * 已按文件长度续传的部分作为一个已完成的分段，其余部分均分给各连接
+     */
+    @Override
+    public DownloadSegment[] planSegments(long size, long startPosition, int connections)
+    {
+        List<DownloadSegment> plan = new ArrayList<>(connections + 1);
+        if (startPosition > 0)
+        {
+            plan.add(new DownloadSegment(0, startPosition - 1, startPosition));
+        }
+        long remainingSize = size - startPosition;
+        long chunkSize = remainingSize / connections;
+        for (int i = 0; i < connections; i++)
+        {
+            long start = startPosition + i * chunkSize;
+            long end = (i == connections - 1) ? size - 1 : start + chunkSize - 1;
+            plan.add(new DownloadSegment(start, end, 0));
+        }
+        return plan.toArray(new DownloadSegment[0]);
+    }
+
+    @Override
+    public long throttleBackoff(int consecutiveThrottles, long retryAfterMillis)
+    {
+        long backoff = retryAfterMillis >= 0 ? retryAfterMillis
+                : DEFAULT_BACKOFF_MILLIS << Math.min(consecutiveThrottles - 1, 10);
+        return Math.min(backoff, MAX_BACKOFF_MILLIS);
+    }
+
+    @Override
+    public int connectionsAfterThrottle(int healthyConnections, int connectionsInUse)
+    {
+        int current = healthyConnections > 0 ? healthyConnections : connectionsInUse;
+        return Math.max(1, Math.min(current, connectionsInUse) / 2);
+    }
+
+    @Override
+    public int maxThrottleRetries()
+    {
+        return MAX_THROTTLE_RETRIES;
+    }
+
+    @Override
+    public Comparator<DownloadTask> waitingOrder()
+    {
+        return Comparator.comparingInt(DownloadTask::getPriority).reversed()
+                .thenComparingLong(DownloadTask::getSequence);
+    }
+}
@@ -27,4 +27,14 @@ public interface DownloadCallback {
      * @param error 错误信息
      */
     void onError(DownloadTask task, String error);
+
+    /**
+     * 源站不可用导致的下载失败（连接失败、超时、5xx等），默认按普通错误处理
+     * @param task 下载任务
+     * @param error 错误信息
+     */
+    default void onOriginFailure(DownloadTask task, String error)
+    {
+        onError(task, error);
+    }
 }
\ No newline at end of file
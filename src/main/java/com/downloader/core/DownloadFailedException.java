@@ -0,0 +1,23 @@
+package com.downloader.core;
+
+import com.downloader.model.DownloadTask;
+
+/**
+ * 下载失败 任务进入错误状态时，用于以异常方式完成该任务的 {@link java.util.concurrent.CompletableFuture}
+ */
+public class DownloadFailedException extends RuntimeException
+{
+
+    private final transient DownloadTask task;
+
+    public DownloadFailedException(DownloadTask task)
+    {
+        super("下载失败: " + task.getFileName() + " - " + task.getErrorMessage());
+        this.task = task;
+    }
+
+    public DownloadTask getTask()
+    {
+        return task;
+    }
+}
@@ -2,6 +2,8 @@ package com.downloader.core;
 
 import com.downloader.model.DownloadTask;
 
+import java.util.List;
+
 /**
  * 下载事件监听器接口
  */
@@ -11,14 +13,38 @@ public interface DownloadListener {
      * 任务添加时触发
      */
     void onTaskAdded(DownloadTask task);
+
+    /**
+     * 批量添加任务时触发，默认逐个转发给 {@link #onTaskAdded}
+     */
+    default void onTasksAdded(List<DownloadTask> tasks)
+    {
+        tasks.forEach(this::onTaskAdded);
+    }
     
     /**
      * 任务更新时触发（进度、状态等）
      */
     void onTaskUpdated(DownloadTask task);
+
+    /**
+     * 批量更新时触发 同一任务在一个分发周期内只出现一次，携带最新状态；默认逐个转发给 {@link #onTaskUpdated}
+     */
+    default void onTasksUpdated(List<DownloadTask> tasks)
+    {
+        tasks.forEach(this::onTaskUpdated);
+    }
     
     /**
      * 任务删除时触发
      */
     void onTaskRemoved(DownloadTask task);
+
+    /**
+     * 批量删除时触发，默认逐个转发给 {@link #onTaskRemoved}
+     */
+    default void onTasksRemoved(List<DownloadTask> tasks)
+    {
+        tasks.forEach(this::onTaskRemoved);
+    }
 }
\ No newline at end of file
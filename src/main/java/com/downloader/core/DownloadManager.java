@@ -1,9 +1,20 @@
 package com.downloader.core;
 
+import com.downloader.metrics.DownloadMetrics;
+import com.downloader.metrics.PrometheusEndpoint;
+import com.downloader.metrics.ResourceMonitor;
+import com.downloader.model.DownloadProgress;
+import com.downloader.model.DownloadRequest;
 import com.downloader.model.DownloadTask;
+import com.downloader.sink.DownloadSink;
+import com.downloader.store.JournalTaskStore;
+import com.downloader.store.TaskArchive;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -15,30 +26,146 @@ public class DownloadManager
 {
 
     private static final Logger logger = LoggerFactory.getLogger(DownloadManager.class);
+    private static final long DEFAULT_ARCHIVE_DELAY = 10 * 60 * 1000; // 默认结束10分钟后归档
+    private static final long ARCHIVE_SWEEP_INTERVAL = 30 * 1000; // 归档检查间隔
+    private static final int DEFAULT_PREFETCH_DEPTH = 4; // 默认预取的等待任务数
 
     private final Map<String, DownloadTask> tasks;
     private final Map<String, MultiThreadDownloader> downloaders;
+    private final NavigableSet<DownloadTask> waitingQueue; // 按调度策略排列的等待任务
     private final ExecutorService executorService;
     private final List<DownloadListener> listeners;
+    private final CoalescingEventDispatcher eventDispatcher;
+    private final TaskIndex taskIndex;
     private final AtomicInteger maxConcurrentDownloads;
-    private final AtomicInteger activeDownloads;
+    private final TaskStateMachine stateMachine; // 负责状态转换和下载名额计数
+    private volatile boolean shuttingDown;
+    private final File dataDir;
+    private final HostProfileRegistry hostProfiles;
+    private final CloseableHttpClient httpClient; // 所有下载共享的连接池
+    private final DownloadMetrics metrics;
+    private final PrometheusEndpoint metricsEndpoint;
+    private final TaskPrefetcher prefetcher;
+    private final ScheduledExecutorService maintenanceExecutor;
+    private final OriginCircuitBreaker circuitBreaker;
+    private final Set<String> probeTaskIds;
+    private final Set<String> pendingWakeups;
+    private volatile boolean failFastWhenCircuitOpen;
+    private final JournalTaskStore taskStore;
+    private final CompactTaskQueue deferredQueue; // 尚未创建为任务的大批量请求
+    private final FileNameReservations deferredNames; // 紧凑队列逐批创建任务时复用的已占用文件名
+    private final TaskArchive taskArchive;
+    private final Queue<TerminalEntry> terminalQueue; // 按结束时间排列，等待归档
+    private volatile long archiveDelayMillis;
+    private final RateLimiter speedLimiter; // 所有下载共用的总限速
+    private final TaskObservers taskObservers; // 等待单个任务结束的Future和进度订阅者
 
     public DownloadManager()
     {
+        this(defaultDataDir());
+    }
+
+    /**
+     * @param dataDir 数据目录，用于保存主机档案和任务队列，为null时不做持久化
+     */
+    public DownloadManager(File dataDir)
+    {
+        this(dataDir, new DefaultSchedulingPolicy());
+    }
+
+    /**
+     * @param policy 分段、连接数、限流退避和等待队列顺序的调度策略
+     */
+    public DownloadManager(File dataDir, SchedulingPolicy policy)
+    {
+        this.dataDir = dataDir;
         this.tasks = new ConcurrentHashMap<>();
         this.downloaders = new ConcurrentHashMap<>();
+        this.waitingQueue = new ConcurrentSkipListSet<>(policy.waitingOrder());
         this.executorService = Executors.newCachedThreadPool(r -> {
             Thread t = new Thread(r, "DownloadManager-" + System.currentTimeMillis());
             t.setDaemon(true);
             return t;
         });
-        this.listeners = new ArrayList<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+        // 索引最先收到事件，界面在同一批事件中查询时已是最新状态
+        this.taskIndex = new TaskIndex();
+        this.listeners.add(taskIndex);
+        this.taskObservers = new TaskObservers(executorService);
+        this.listeners.add(taskObservers);
+        this.eventDispatcher = new CoalescingEventDispatcher(listeners,
+                CoalescingEventDispatcher.DEFAULT_FLUSH_INTERVAL);
         this.maxConcurrentDownloads = new AtomicInteger(4); // 默认最多4个并发下载
-        this.activeDownloads = new AtomicInteger(0);
+        this.stateMachine = new TaskStateMachine(this.maxConcurrentDownloads::get);
+        this.hostProfiles = new HostProfileRegistry(dataDir == null ? null : new File(dataDir, "host-profiles.json"),
+                policy, System::currentTimeMillis);
+        this.circuitBreaker = new OriginCircuitBreaker();
+        this.probeTaskIds = ConcurrentHashMap.newKeySet();
+        this.pendingWakeups = ConcurrentHashMap.newKeySet();
+        this.maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "DownloadManager-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        // 定期保存主机档案
+        this.maintenanceExecutor.scheduleWithFixedDelay(hostProfiles::save, 60, 60, TimeUnit.SECONDS);
+
+        this.deferredQueue = new CompactTaskQueue();
+        this.deferredNames = new FileNameReservations();
+        this.speedLimiter = new RateLimiter();
+        this.metrics = new DownloadMetrics();
+        PoolingHttpClientConnectionManager connectionManager = MultiThreadDownloader.createConnectionManager(metrics);
+        this.httpClient = MultiThreadDownloader.createHttpClient(connectionManager);
+        // 速度只需遍历正在下载的任务，下载中的任务数直接取自状态机的名额计数
+        this.metrics.bind(() -> downloaders.values().stream().map(MultiThreadDownloader::getTask).iterator(),
+                stateMachine::getActiveCount, () -> waitingQueue.size() + deferredQueue.size(), connectionManager);
+        this.metrics.registerMBean();
+        this.metricsEndpoint = new PrometheusEndpoint(metrics);
+        this.prefetcher = new TaskPrefetcher(hostProfiles, circuitBreaker, httpClient, metrics,
+                DEFAULT_PREFETCH_DEPTH, this::notifyTaskUpdated);
+
+        // 已结束的任务延迟后移入归档
+        this.taskArchive = new TaskArchive(dataDir);
+        this.terminalQueue = new ConcurrentLinkedQueue<>();
+        this.archiveDelayMillis = DEFAULT_ARCHIVE_DELAY;
+        this.maintenanceExecutor.scheduleWithFixedDelay(this::archiveFinishedTasks, ARCHIVE_SWEEP_INTERVAL,
+                ARCHIVE_SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+
+        registerResourceSizes(metrics.getResources());
+
+        // 在后台恢复上次的任务队列
+        this.taskStore = new JournalTaskStore(dataDir);
+        this.taskStore.start(tasks::values, this::onTasksRestored, this::startNextWaitingTask);
 
         logger.info("下载管理器已初始化");
     }
 
+    /**
+     * 登记需要监控大小的内部集合，任务结束后仍持续增长说明有泄漏
+     */
+    private void registerResourceSizes(ResourceMonitor resources)
+    {
+        resources.registerSize("tasks", tasks::size);
+        resources.registerSize("downloaders", downloaders::size);
+        resources.registerSize("waitingQueue", waitingQueue::size);
+        resources.registerSize("deferredQueue", () -> (int) Math.min(Integer.MAX_VALUE, deferredQueue.size()));
+        resources.registerSize("deferredNames", deferredNames::size);
+        resources.registerSize("terminalQueue", terminalQueue::size);
+        resources.registerSize("listeners", listeners::size);
+        resources.registerSize("taskIndex", taskIndex::size);
+        resources.registerSize("probeTasks", probeTaskIds::size);
+        resources.registerSize("pendingWakeups", pendingWakeups::size);
+        resources.registerSize("hostProfiles", hostProfiles::size);
+        resources.registerSize("circuitBreakers", circuitBreaker::size);
+        resources.registerSize("prefetching", prefetcher::getInFlightCount);
+        resources.registerSize("taskObservers", taskObservers::size);
+    }
+
+    private static File defaultDataDir()
+    {
+        return new File(System.getProperty("user.home"), ".motrix-downloader");
+    }
+
     /**
      * 添加下载任务
      */
@@ -77,6 +204,7 @@ public class DownloadManager
             // 创建下载任务
             DownloadTask task = new DownloadTask(url, fileName, savePath);
             tasks.put(task.getId(), task);
+            deferredNames.add(task);
 
             logger.info("添加下载任务: {} -> {}", url, task.getFullPath());
 
@@ -95,11 +223,194 @@ public class DownloadManager
         }
     }
 
+    /**
+     * 添加写入指定去向的下载任务，数据不经过保存目录 文件名只用于显示；这类任务只保存在内存中，重启后不会恢复
+     */
+    public String addDownload(String url, String fileName, DownloadSink sink)
+    {
+        if (url == null || url.trim().isEmpty())
+        {
+            throw new IllegalArgumentException("URL不能为空");
+        }
+        if (fileName == null || fileName.trim().isEmpty())
+        {
+            throw new IllegalArgumentException("文件名不能为空");
+        }
+        if (sink == null)
+        {
+            throw new IllegalArgumentException("数据去向不能为空");
+        }
+        DownloadTask task = new DownloadTask(url, fileName, "");
+        task.setSink(sink);
+        tasks.put(task.getId(), task);
+        logger.info("添加下载任务: {} -> {}", url, sink);
+        notifyTaskAdded(task);
+        startDownload(task.getId());
+        return task.getId();
+    }
+
+    /**
+     * 批量添加下载任务 先整体校验，再按保存目录分组：每个目录只创建一次、只列举一次目录内容来解决文件名冲突，
+     * 最后一次性通知监听器并按并发上限启动
+     * @return 与请求顺序一致的任务ID列表
+     */
+    public List<String> addDownloads(Collection<DownloadRequest> requests)
+    {
+        validateRequests(requests);
+        List<DownloadTask> created = createTasks(requests, new FileNameReservations());
+        List<String> ids = new ArrayList<>(created.size());
+        for (DownloadTask task : created)
+        {
+            deferredNames.add(task);
+            ids.add(task.getId());
+        }
+        startNextWaitingTask();
+        return ids;
+    }
+
+    /**
+     * 添加下载任务并返回在任务结束时完成的Future，完成规则见 {@link #getCompletion}
+     */
+    public CompletableFuture<DownloadTask> addDownloadAsync(String url, String fileName, String savePath)
+    {
+        return getCompletion(addDownload(url, fileName, savePath));
+    }
+
+    /**
+     * 添加写入指定去向的下载任务并返回在任务结束时完成的Future
+     */
+    public CompletableFuture<DownloadTask> addDownloadAsync(String url, String fileName, DownloadSink sink)
+    {
+        return getCompletion(addDownload(url, fileName, sink));
+    }
+
+    /**
+     * 批量添加下载任务并返回与请求顺序一致的Future列表，可用 {@link CompletableFuture#allOf} 等组合
+     */
+    public List<CompletableFuture<DownloadTask>> addDownloadsAsync(Collection<DownloadRequest> requests)
+    {
+        List<String> ids = addDownloads(requests);
+        List<CompletableFuture<DownloadTask>> futures = new ArrayList<>(ids.size());
+        for (String id : ids)
+        {
+            futures.add(getCompletion(id));
+        }
+        return futures;
+    }
+
+    /**
+     * 返回任务结束时完成的Future 下载完成时得到任务；进入错误状态时以 {@link DownloadFailedException} 异常完成
+     * （重新开始后需要重新获取）；任务被取消或删除时Future被取消；任务不存在时以 IllegalArgumentException 异常完成。
+     * 回调在下载管理器的线程池中执行，取消返回的Future不影响下载
+     */
+    public CompletableFuture<DownloadTask> getCompletion(String taskId)
+    {
+        DownloadTask task = findTask(taskId);
+        if (task == null)
+        {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("任务不存在: " + taskId));
+        }
+        return taskObservers.completion(task);
+    }
+
+    /**
+     * 返回任务的进度发布者 每个订阅者只保留最新的一个快照：按request的数量接收，处理慢时中间进度被合并，
+     * 不会积压；订阅后先收到当前状态，任务结束时收到最终状态和onComplete，任务被删除时收到onComplete
+     */
+    public Flow.Publisher<DownloadProgress> getProgressPublisher(String taskId)
+    {
+        return subscriber -> taskObservers.subscribe(taskId, findTask(taskId), subscriber);
+    }
+
+    /**
+     * 在活动任务和归档中查找任务
+     */
+    private DownloadTask findTask(String taskId)
+    {
+        DownloadTask task = tasks.get(taskId);
+        return task != null ? task : taskArchive.find(taskId);
+    }
+
+    /**
+     * 将大批量下载请求放入紧凑队列 请求在有空闲名额时才逐批创建为任务（此前不出现在任务列表中），
+     * 适合一次排入数百万个URL；紧凑队列只保存在内存中
+     * @return 当前紧凑队列中的请求数
+     */
+    public long queueDownloads(Collection<DownloadRequest> requests)
+    {
+        validateRequests(requests);
+        deferredQueue.addAll(requests);
+        logger.info("排入紧凑队列: {}个下载请求，队列共{}个", requests.size(), deferredQueue.size());
+        startNextWaitingTask();
+        return deferredQueue.size();
+    }
+
+    /**
+     * 整体校验批量请求，有无效项时抛出异常且不添加任何任务
+     */
+    private static void validateRequests(Collection<DownloadRequest> requests)
+    {
+        List<String> errors = new ArrayList<>();
+        int index = 0;
+        for (DownloadRequest request : requests)
+        {
+            if (request.getUrl() == null || request.getUrl().trim().isEmpty())
+            {
+                errors.add("第" + (index + 1) + "项: URL不能为空");
+            } else if (request.getFileName() == null || request.getFileName().trim().isEmpty())
+            {
+                errors.add("第" + (index + 1) + "项: 文件名不能为空");
+            } else if (request.getSavePath() == null || request.getSavePath().trim().isEmpty())
+            {
+                errors.add("第" + (index + 1) + "项: 保存路径不能为空");
+            }
+            index++;
+        }
+        if (!errors.isEmpty())
+        {
+            String summary = String.join("; ", errors.subList(0, Math.min(errors.size(), 5)));
+            throw new IllegalArgumentException("批量添加失败，共" + errors.size() + "项无效: " + summary);
+        }
+    }
+
+    /**
+     * 创建任务并放入等待队列
+     * @param reservations 各保存目录已占用的文件名，尚未列举的目录在这里列举
+     */
+    private List<DownloadTask> createTasks(Collection<DownloadRequest> requests, FileNameReservations reservations)
+    {
+        reservations.prepare(requests, tasks.values());
+
+        List<DownloadTask> created = new ArrayList<>(requests.size());
+        for (DownloadRequest request : requests)
+        {
+            String fileName = reservations.reserve(request.getSavePath(), request.getFileName());
+
+            DownloadTask task = new DownloadTask(request.getUrl(), fileName, request.getSavePath());
+            task.setPriority(request.getPriority());
+            tasks.put(task.getId(), task);
+            waitingQueue.add(task);
+            taskStore.markDirty(task);
+            created.add(task);
+        }
+
+        logger.info("批量添加下载任务: {}个，涉及{}个目录", created.size(), reservations.directoryCount());
+        if (!created.isEmpty())
+        {
+            eventDispatcher.tasksAdded(created);
+        }
+        return created;
+    }
+
     /**
      * 开始下载
      */
     public void startDownload(String taskId)
     {
+        if (shuttingDown)
+        {
+            return;
+        }
         DownloadTask task = tasks.get(taskId);
         if (task == null)
         {
@@ -107,70 +418,131 @@ public class DownloadManager
             return;
         }
 
-        if (task.getStatus() == DownloadTask.Status.DOWNLOADING)
+        // 占用名额并转为下载中，名额已满时进入等待
+        if (!stateMachine.tryStart(task))
         {
-            logger.warn("任务已在下载中: {}", taskId);
+            if (task.getStatus() == DownloadTask.Status.DOWNLOADING)
+            {
+                logger.warn("任务已在下载中: {}", taskId);
+            } else if (enqueueWaiting(task))
+            {
+                notifyTaskUpdated(task);
+                prefetcher.prefetch(waitingQueue);
+                logger.info("任务等待中，当前并发下载数已达上限: {}", taskId);
+            }
             return;
         }
 
-        // 检查并发下载限制
-        if (activeDownloads.get() >= maxConcurrentDownloads.get())
+        // 检查源站熔断，熔断中的任务退回等待并归还名额
+        OriginCircuitBreaker.Permit permit = circuitBreaker.tryAcquire(task.getUrl());
+        if (permit == OriginCircuitBreaker.Permit.REJECTED)
         {
-            task.setStatus(DownloadTask.Status.WAITING);
-            notifyTaskUpdated(task);
-            logger.info("任务等待中，当前并发下载数已达上限: {}", taskId);
+            stateMachine.finish(task, DownloadTask.Status.WAITING);
+            rejectByCircuitBreaker(task);
             return;
         }
+        if (permit == OriginCircuitBreaker.Permit.PROBE)
+        {
+            probeTaskIds.add(taskId);
+        }
 
-        task.setStatus(DownloadTask.Status.DOWNLOADING);
-        task.setStartTime(java.time.LocalDateTime.now());
-        activeDownloads.incrementAndGet();
+        waitingQueue.remove(task);
+        long now = System.currentTimeMillis();
+        metrics.recordQueueWait(now - task.getWaitingSinceMillis());
+        task.setStartTimeMillis(now);
 
         // 创建多线程下载器
-        MultiThreadDownloader downloader = new MultiThreadDownloader(task, new DownloadCallback() {
-            @Override
-            public void onProgress(DownloadTask task, long downloadedBytes, long totalBytes, long speed)
+        TaskCallback callback = new TaskCallback();
+        MultiThreadDownloader downloader = new MultiThreadDownloader(task, callback, hostProfiles, httpClient,
+                metrics);
+        callback.downloader = downloader;
+        downloader.setSharedLimiter(speedLimiter);
+        downloaders.put(taskId, downloader);
+        executorService.submit(downloader);
+
+        notifyTaskUpdated(task);
+        logger.info("开始下载: {}", task.getFileName());
+    }
+
+    /**
+     * 单次下载的回调 只有仍登记在下载器表中的下载器才能结束任务，暂停或重新开始后旧下载器迟到的回调会被忽略
+     */
+    private class TaskCallback implements DownloadCallback
+    {
+        volatile MultiThreadDownloader downloader;
+
+        @Override
+        public void onProgress(DownloadTask task, long downloadedBytes, long totalBytes, long speed)
+        {
+            task.setTotalSize(totalBytes);
+            task.setDownloadedSize(downloadedBytes);
+            task.setSpeed(speed);
+            notifyTaskUpdated(task);
+        }
+
+        @Override
+        public void onCompleted(DownloadTask task)
+        {
+            if (!release(task, DownloadTask.Status.COMPLETED))
             {
-                task.setTotalSize(totalBytes);
-                task.setDownloadedSize(downloadedBytes);
-                task.setSpeed(speed);
-                notifyTaskUpdated(task);
+                return;
             }
+            circuitBreaker.recordSuccess(task.getUrl());
+            task.setCompleteTimeMillis(System.currentTimeMillis());
+            markTerminal(task);
+            notifyTaskUpdated(task);
+            logger.info("下载完成: {}", task.getFileName());
 
-            @Override
-            public void onCompleted(DownloadTask task)
-            {
-                task.setStatus(DownloadTask.Status.COMPLETED);
-                task.setCompleteTime(java.time.LocalDateTime.now());
-                activeDownloads.decrementAndGet();
-                downloaders.remove(task.getId());
-                notifyTaskUpdated(task);
-                logger.info("下载完成: {}", task.getFileName());
+            // 启动等待中的任务
+            startNextWaitingTask();
+        }
 
-                // 启动等待中的任务
-                startNextWaitingTask();
+        @Override
+        public void onError(DownloadTask task, String error)
+        {
+            if (!release(task, DownloadTask.Status.ERROR))
+            {
+                return;
             }
+            // 非源站故障的错误说明源站有响应
+            circuitBreaker.recordSuccess(task.getUrl());
+            failTask(task, error);
+        }
 
-            @Override
-            public void onError(DownloadTask task, String error)
+        @Override
+        public void onOriginFailure(DownloadTask task, String error)
+        {
+            if (!release(task, DownloadTask.Status.ERROR))
             {
-                task.setStatus(DownloadTask.Status.ERROR);
-                task.setErrorMessage(error);
-                activeDownloads.decrementAndGet();
-                downloaders.remove(task.getId());
-                notifyTaskUpdated(task);
-                logger.error("下载失败: {} - {}", task.getFileName(), error);
+                return;
+            }
+            circuitBreaker.recordFailure(task.getUrl());
+            failTask(task, error);
+        }
 
-                // 启动等待中的任务
-                startNextWaitingTask();
+        /**
+         * 注销下载器并让状态机离开下载中，两步都成功才说明本次回调负责结束任务
+         */
+        private boolean release(DownloadTask task, DownloadTask.Status next)
+        {
+            if (!downloaders.remove(task.getId(), downloader))
+            {
+                return false;
             }
-        });
+            probeTaskIds.remove(task.getId());
+            return stateMachine.finish(task, next);
+        }
 
-        downloaders.put(taskId, downloader);
-        executorService.submit(downloader);
+        private void failTask(DownloadTask task, String error)
+        {
+            task.setErrorMessage(error);
+            markTerminal(task);
+            notifyTaskUpdated(task);
+            logger.error("下载失败: {} - {}", task.getFileName(), error);
 
-        notifyTaskUpdated(task);
-        logger.info("开始下载: {}", task.getFileName());
+            // 启动等待中的任务
+            startNextWaitingTask();
+        }
     }
 
     /**
@@ -183,16 +555,28 @@ public class DownloadManager
             return;
 
         MultiThreadDownloader downloader = downloaders.get(taskId);
-        if (downloader != null)
+        if (downloader != null && downloaders.remove(taskId, downloader))
         {
             downloader.pause();
-            task.setStatus(DownloadTask.Status.PAUSED);
-            activeDownloads.decrementAndGet();
-            downloaders.remove(taskId);
+            if (probeTaskIds.remove(taskId))
+            {
+                circuitBreaker.releaseProbe(task.getUrl());
+            }
+            if (!stateMachine.finish(task, DownloadTask.Status.PAUSED))
+            {
+                return;
+            }
             notifyTaskUpdated(task);
             logger.info("暂停下载: {}", task.getFileName());
             // 启动等待中的任务
             startNextWaitingTask();
+        } else if (task.getStatus() == DownloadTask.Status.WAITING
+                && stateMachine.moveTo(task, DownloadTask.Status.PAUSED))
+        {
+            // 等待中的任务直接暂停，不再自动开始
+            waitingQueue.remove(task);
+            notifyTaskUpdated(task);
+            logger.info("暂停等待中的任务: {}", task.getFileName());
         }
     }
 
@@ -210,22 +594,208 @@ public class DownloadManager
 
         // 删除任务
         tasks.remove(taskId);
+        waitingQueue.remove(task);
+        deferredNames.release(task);
         notifyTaskRemoved(task);
         logger.info("删除任务: {}", task.getFileName());
     }
 
     /**
-     * 启动下一个等待中的任务
+     * 接收从任务存储中恢复的一批任务
+     */
+    private void onTasksRestored(List<DownloadTask> restored)
+    {
+        List<DownloadTask> added = new ArrayList<>(restored.size());
+        for (DownloadTask task : restored)
+        {
+            if (tasks.putIfAbsent(task.getId(), task) == null)
+            {
+                deferredNames.add(task);
+                if (task.getStatus() == DownloadTask.Status.WAITING)
+                {
+                    task.setWaitingSinceMillis(System.currentTimeMillis());
+                    waitingQueue.add(task);
+                } else if (task.getStatus().isTerminal())
+                {
+                    markTerminal(task);
+                }
+                added.add(task);
+            }
+        }
+        if (!added.isEmpty())
+        {
+            eventDispatcher.tasksAdded(added);
+        }
+    }
+
+    private void markTerminal(DownloadTask task)
+    {
+        terminalQueue.add(new TerminalEntry(task.getId(), System.currentTimeMillis()));
+    }
+
+    /**
+     * 将结束超过归档延迟的任务移出活动任务表，写入归档并从任务日志中删除
+     */
+    private void archiveFinishedTasks()
+    {
+        long delay = archiveDelayMillis;
+        if (delay < 0)
+        {
+            return;
+        }
+        long deadline = System.currentTimeMillis() - delay;
+        Set<DownloadTask> expired = new LinkedHashSet<>();
+        TerminalEntry entry;
+        while ((entry = terminalQueue.peek()) != null && entry.finishedAt <= deadline)
+        {
+            terminalQueue.poll();
+            DownloadTask task = tasks.get(entry.taskId);
+            // 期间被重新开始的任务不归档，再次结束时会重新登记
+            if (task != null && task.getStatus().isTerminal())
+            {
+                expired.add(task);
+            }
+        }
+        if (expired.isEmpty())
+        {
+            return;
+        }
+
+        try
+        {
+            taskArchive.append(expired);
+        } catch (IOException e)
+        {
+            logger.error("归档任务失败: {}", e.getMessage(), e);
+            return;
+        }
+        int archived = 0;
+        for (DownloadTask task : expired)
+        {
+            // 写入归档期间被重新开始的任务保留在任务表中
+            if (!task.getStatus().isTerminal() || !tasks.remove(task.getId(), task))
+            {
+                continue;
+            }
+            if (!task.getStatus().isTerminal())
+            {
+                // 移除的同时被重新开始，放回任务表
+                tasks.putIfAbsent(task.getId(), task);
+                continue;
+            }
+            taskStore.markRemoved(task.getId());
+            deferredNames.release(task);
+            eventDispatcher.taskRemoved(task);
+            archived++;
+        }
+        logger.info("已归档{}个已结束的任务", archived);
+    }
+
+    /**
+     * 熔断中的任务：快速失败，或保持等待并在冷却结束后唤醒
+     */
+    private void rejectByCircuitBreaker(DownloadTask task)
+    {
+        if (failFastWhenCircuitOpen)
+        {
+            if (!stateMachine.moveTo(task, DownloadTask.Status.ERROR))
+            {
+                return;
+            }
+            task.setErrorMessage("源站暂时不可用（熔断中）");
+            markTerminal(task);
+            notifyTaskUpdated(task);
+            logger.warn("源站熔断中，任务快速失败: {}", task.getFileName());
+            return;
+        }
+
+        if (enqueueWaiting(task))
+        {
+            notifyTaskUpdated(task);
+        }
+
+        String origin = Origins.of(task.getUrl());
+        if (pendingWakeups.add(origin))
+        {
+            long delay = Math.max(100, circuitBreaker.getRemainingOpenMillis(task.getUrl()));
+            maintenanceExecutor.schedule(() -> {
+                pendingWakeups.remove(origin);
+                startNextWaitingTask();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        logger.info("源站熔断中，任务等待恢复: {}", task.getFileName());
+    }
+
+    /**
+     * 启动等待中的任务直到名额用完 熔断中的源站的任务会被跳过，不阻塞其他源站；
+     * 名额用完后为排在最前面的等待任务预取文件信息
      */
     private void startNextWaitingTask()
     {
-        if (activeDownloads.get() >= maxConcurrentDownloads.get())
+        if (shuttingDown)
         {
             return;
         }
 
-        tasks.values().stream().filter(task -> task.getStatus() == DownloadTask.Status.WAITING)
-                .min(Comparator.comparing(DownloadTask::getCreateTime)).ifPresent(task -> startDownload(task.getId()));
+        promoteDeferredTasks();
+
+        for (DownloadTask task : waitingQueue)
+        {
+            if (!stateMachine.hasFreeSlot())
+            {
+                break;
+            }
+            if (task.getStatus() != DownloadTask.Status.WAITING || !tasks.containsKey(task.getId()))
+            {
+                waitingQueue.remove(task);
+                continue;
+            }
+            if (circuitBreaker.isAttemptPermitted(task.getUrl()))
+            {
+                startDownload(task.getId());
+            }
+        }
+
+        // 为接下来要开始的任务预取文件信息
+        prefetcher.prefetch(waitingQueue);
+    }
+
+    /**
+     * 从紧凑队列中取出请求创建为任务，使等待队列保持在并发上限两倍左右
+     */
+    private void promoteDeferredTasks()
+    {
+        if (deferredQueue.isEmpty())
+        {
+            // 队列排空后丢弃缓存的文件名，下一批请求重新列举目录
+            deferredNames.clear();
+            return;
+        }
+        int missing = maxConcurrentDownloads.get() * 2 - waitingQueue.size();
+        if (missing <= 0)
+        {
+            return;
+        }
+        List<DownloadRequest> batch = deferredQueue.poll(missing);
+        if (!batch.isEmpty())
+        {
+            createTasks(batch, deferredNames);
+        }
+    }
+
+    /**
+     * 将任务转为等待并放入等待队列
+     * @return 任务在下载中或无法转为等待时返回false
+     */
+    private boolean enqueueWaiting(DownloadTask task)
+    {
+        if (!stateMachine.moveTo(task, DownloadTask.Status.WAITING))
+        {
+            return false;
+        }
+        task.setWaitingSinceMillis(System.currentTimeMillis());
+        waitingQueue.add(task);
+        return true;
     }
 
     /**
@@ -267,17 +837,23 @@ public class DownloadManager
 
     private void notifyTaskAdded(DownloadTask task)
     {
-        listeners.forEach(listener -> listener.onTaskAdded(task));
+        taskStore.markDirty(task);
+        eventDispatcher.taskAdded(task);
     }
 
     private void notifyTaskUpdated(DownloadTask task)
     {
-        listeners.forEach(listener -> listener.onTaskUpdated(task));
+        if (tasks.containsKey(task.getId()))
+        {
+            taskStore.markDirty(task);
+        }
+        eventDispatcher.taskUpdated(task);
     }
 
     private void notifyTaskRemoved(DownloadTask task)
     {
-        listeners.forEach(listener -> listener.onTaskRemoved(task));
+        taskStore.markRemoved(task.getId());
+        eventDispatcher.taskRemoved(task);
     }
 
     // Getters
@@ -291,14 +867,204 @@ public class DownloadManager
         return tasks.get(taskId);
     }
 
+    /**
+     * 按条件过滤和排序任务，基于事件维护的索引，结果反映最近一次事件分发后的状态
+     */
+    public List<DownloadTask> queryTasks(TaskQuery query)
+    {
+        return taskIndex.query(query);
+    }
+
+    /**
+     * 读取全部归档的历史任务（从磁盘加载）
+     */
+    public List<DownloadTask> getArchivedTasks()
+    {
+        return taskArchive.loadAll();
+    }
+
+    public long getArchivedTaskCount()
+    {
+        return taskArchive.getCount();
+    }
+
+    /**
+     * 按ID查找归档的历史任务
+     */
+    public DownloadTask findArchivedTask(String taskId)
+    {
+        return taskArchive.find(taskId);
+    }
+
+    public long getArchiveDelayMillis()
+    {
+        return archiveDelayMillis;
+    }
+
+    /**
+     * 设置任务结束后移入归档的延迟，小于0表示不归档
+     */
+    public void setArchiveDelayMillis(long archiveDelayMillis)
+    {
+        this.archiveDelayMillis = archiveDelayMillis;
+    }
+
+    /**
+     * 立即执行一次归档检查
+     */
+    public void archiveNow()
+    {
+        archiveFinishedTasks();
+    }
+
+    /**
+     * 紧凑队列中尚未创建为任务的请求数
+     */
+    public long getDeferredCount()
+    {
+        return deferredQueue.size();
+    }
+
+    public TaskIndex getTaskIndex()
+    {
+        return taskIndex;
+    }
+
+    /**
+     * 当前占用下载名额的任务数
+     */
+    public int getActiveDownloadCount()
+    {
+        return stateMachine.getActiveCount();
+    }
+
+    public DownloadMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * 在本机回环地址上启动Prometheus抓取端点
+     * @param port 监听端口，0表示由系统分配
+     * @return 实际监听的端口
+     */
+    public int startMetricsEndpoint(int port) throws IOException
+    {
+        return metricsEndpoint.start(port);
+    }
+
+    public int getPrefetchDepth()
+    {
+        return prefetcher.getDepth();
+    }
+
+    /**
+     * 设置预取的等待任务数，0表示不预取
+     */
+    public void setPrefetchDepth(int depth)
+    {
+        prefetcher.setDepth(depth);
+    }
+
     public int getMaxConcurrentDownloads()
     {
         return maxConcurrentDownloads.get();
     }
 
+    /**
+     * 修改并发下载上限 上限提高时立即开始等待中的任务
+     */
     public void setMaxConcurrentDownloads(int max)
     {
-        maxConcurrentDownloads.set(Math.max(1, max));
+        int previous = maxConcurrentDownloads.getAndSet(Math.max(1, max));
+        if (max > previous)
+        {
+            startNextWaitingTask();
+        }
+    }
+
+    public long getMaxDownloadSpeed()
+    {
+        return speedLimiter.getBytesPerSecond();
+    }
+
+    /**
+     * 设置所有下载的总限速，下载中的任务立即生效
+     * @param bytesPerSecond 每秒字节数，0表示不限速
+     */
+    public void setMaxDownloadSpeed(long bytesPerSecond)
+    {
+        speedLimiter.setBytesPerSecond(bytesPerSecond);
+    }
+
+    /**
+     * 设置单个任务的限速，下载中的任务立即生效
+     * @param bytesPerSecond 每秒字节数，0表示不限速
+     */
+    public void setTaskMaxSpeed(String taskId, long bytesPerSecond)
+    {
+        DownloadTask task = tasks.get(taskId);
+        if (task == null)
+        {
+            return;
+        }
+        task.setMaxSpeed(bytesPerSecond);
+        MultiThreadDownloader downloader = downloaders.get(taskId);
+        if (downloader != null)
+        {
+            downloader.setMaxSpeed(bytesPerSecond);
+        }
+        notifyTaskUpdated(task);
+    }
+
+    /**
+     * 修改任务优先级 等待中的任务按新优先级重新排队
+     */
+    public void setTaskPriority(String taskId, int priority)
+    {
+        DownloadTask task = tasks.get(taskId);
+        if (task == null)
+        {
+            return;
+        }
+        // 先按旧优先级移出等待队列，再修改排序字段
+        if (waitingQueue.remove(task))
+        {
+            task.setPriority(priority);
+            waitingQueue.add(task);
+        } else
+        {
+            task.setPriority(priority);
+        }
+        notifyTaskUpdated(task);
+    }
+
+    public OriginCircuitBreaker getCircuitBreaker()
+    {
+        return circuitBreaker;
+    }
+
+    public boolean isFailFastWhenCircuitOpen()
+    {
+        return failFastWhenCircuitOpen;
+    }
+
+    /**
+     * 设置源站熔断时的行为：true 立即失败，false 保持等待直到源站恢复（默认）
+     */
+    public void setFailFastWhenCircuitOpen(boolean failFast)
+    {
+        this.failFastWhenCircuitOpen = failFast;
+    }
+
+    public HostProfileRegistry getHostProfiles()
+    {
+        return hostProfiles;
+    }
+
+    public File getDataDir()
+    {
+        return dataDir;
     }
 
     /**
@@ -307,10 +1073,21 @@ public class DownloadManager
     public void shutdown()
     {
         logger.info("正在关闭下载管理器...");
+        shuttingDown = true;
 
         // 停止所有下载
         downloaders.values().forEach(MultiThreadDownloader::pause);
 
+        prefetcher.shutdown();
+        metricsEndpoint.stop();
+        metrics.unregisterMBean();
+
+        // 交付剩余事件，保存主机档案和任务队列
+        eventDispatcher.close();
+        maintenanceExecutor.shutdownNow();
+        hostProfiles.save();
+        taskStore.close();
+
         // 关闭线程池
         executorService.shutdown();
         try
@@ -324,7 +1101,29 @@ public class DownloadManager
             executorService.shutdownNow();
             Thread.currentThread().interrupt();
         }
+        try
+        {
+            httpClient.close();
+        } catch (IOException e)
+        {
+            logger.warn("关闭HTTP连接池失败: {}", e.getMessage());
+        }
 
         logger.info("下载管理器已关闭");
     }
-}
\ No newline at end of file
+
+    /**
+     * 等待归档的已结束任务
+     */
+    private static class TerminalEntry
+    {
+        final String taskId;
+        final long finishedAt;
+
+        TerminalEntry(String taskId, long finishedAt)
+        {
+            this.taskId = taskId;
+            this.finishedAt = finishedAt;
+        }
+    }
+}
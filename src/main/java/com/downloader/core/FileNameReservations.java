@@ -0,0 +1,157 @@
+package com.downloader.core;
+
+import com.downloader.model.DownloadRequest;
+import com.downloader.model.DownloadTask;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按保存目录记录已占用的文件名（目录内容加上任务表中的任务）和同名文件下一个可用的编号 每个目录只在第一次用到时
+ * 列举一次；之后任务的添加和删除通过 {@link #add}、{@link #release} 同步，紧凑队列逐批创建任务时不必重新列目录、遍历任务表
+ */
+class FileNameReservations
+{
+
+    private final Map<String, Set<String>> takenNames = new HashMap<>();
+    private final Map<String, Map<String, Integer>> nextSuffix = new HashMap<>();
+
+    /**
+     * 列举请求涉及的尚未记录的目录（需要时创建），并用一次遍历把任务表中这些目录下的任务加入已占用集合
+     */
+    synchronized void prepare(Collection<DownloadRequest> requests, Collection<DownloadTask> tasks)
+    {
+        Map<String, Set<String>> listed = new HashMap<>();
+        for (DownloadRequest request : requests)
+        {
+            if (!takenNames.containsKey(request.getSavePath()))
+            {
+                listed.computeIfAbsent(request.getSavePath(), FileNameReservations::listDirectoryNames);
+            }
+        }
+        if (listed.isEmpty())
+        {
+            return;
+        }
+        for (DownloadTask task : tasks)
+        {
+            Set<String> names = listed.get(task.getSavePath());
+            if (names != null)
+            {
+                names.add(task.getFileName());
+            }
+        }
+        takenNames.putAll(listed);
+    }
+
+    /**
+     * 创建目录（如需要）并读取其中已有的文件名
+     */
+    private static Set<String> listDirectoryNames(String savePath)
+    {
+        File saveDir = new File(savePath);
+        if (!saveDir.exists())
+        {
+            saveDir.mkdirs();
+        }
+        Set<String> names = new HashSet<>();
+        String[] entries = saveDir.list();
+        if (entries != null)
+        {
+            Collections.addAll(names, entries);
+        }
+        return names;
+    }
+
+    /**
+     * 为文件名找到不冲突的名字并占用，目录须已由 {@link #prepare} 列举 同名文件的编号从上次分配处继续，避免重复探测
+     */
+    synchronized String reserve(String savePath, String fileName)
+    {
+        Set<String> names = takenNames.get(savePath);
+        if (!names.contains(fileName) && !names.contains(fileName + ".tmp"))
+        {
+            names.add(fileName);
+            return fileName;
+        }
+
+        String baseName = fileName;
+        String extension = "";
+        int dotIndex = fileName.lastIndexOf('.');
+        if (dotIndex > 0)
+        {
+            baseName = fileName.substring(0, dotIndex);
+            extension = fileName.substring(dotIndex);
+        }
+
+        Map<String, Integer> suffixes = nextSuffix.computeIfAbsent(savePath, k -> new HashMap<>());
+        int counter = suffixes.getOrDefault(fileName, 1);
+        String newFileName;
+        do
+        {
+            newFileName = baseName + "(" + counter + ")" + extension;
+            counter++;
+        } while (names.contains(newFileName) || names.contains(newFileName + ".tmp"));
+        suffixes.put(fileName, counter);
+        names.add(newFileName);
+        return newFileName;
+    }
+
+    /**
+     * 记录在其他途径添加的任务，所在目录尚未列举时忽略
+     */
+    synchronized void add(DownloadTask task)
+    {
+        Set<String> names = takenNames.get(task.getSavePath());
+        if (names != null)
+        {
+            names.add(task.getFileName());
+        }
+    }
+
+    /**
+     * 任务移出任务表后，文件和临时文件都不在磁盘上时释放其文件名
+     */
+    synchronized void release(DownloadTask task)
+    {
+        Set<String> names = takenNames.get(task.getSavePath());
+        if (names == null)
+        {
+            return;
+        }
+        File file = new File(task.getSavePath(), task.getFileName());
+        if (!file.exists() && !new File(task.getSavePath(), task.getFileName() + ".tmp").exists())
+        {
+            names.remove(task.getFileName());
+        }
+    }
+
+    /**
+     * 丢弃全部记录，下次使用时重新列举目录以反映外部的文件变化
+     */
+    synchronized void clear()
+    {
+        takenNames.clear();
+        nextSuffix.clear();
+    }
+
+    synchronized int size()
+    {
+        int size = 0;
+        for (Set<String> names : takenNames.values())
+        {
+            size += names.size();
+        }
+        return size;
+    }
+
+    synchronized int directoryCount()
+    {
+        return takenNames.size();
+    }
+}
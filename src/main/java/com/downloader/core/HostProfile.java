@@ -0,0 +1,133 @@
+package com.downloader.core;
+
+/**
+ * 主机能力档案 记录某个源站是否支持Range/HEAD、可稳定使用的最大连接数以及限流退避时间；
+ * 注册表中的档案只在对象自身的锁内读写
+ */
+public class HostProfile
+{
+
+    private String origin;
+    private Boolean supportsRanges; // null 表示未知
+    private Boolean supportsHead; // null 表示未知
+    private int maxHealthyConnections; // 0 表示未知
+    private long connectionBytesPerSecond; // 实测的单连接速度，0 表示未知
+    private long backoffUntil; // 限流退避截止时间（epoch毫秒）
+    private int consecutiveThrottles;
+    private long lastUpdated;
+
+    public HostProfile()
+    {
+    }
+
+    public HostProfile(String origin)
+    {
+        this.origin = origin;
+        this.lastUpdated = System.currentTimeMillis();
+    }
+
+    /**
+     * 复制档案 调用方需持有本档案的锁
+     */
+    HostProfile copy()
+    {
+        HostProfile copy = new HostProfile();
+        copy.origin = origin;
+        copy.supportsRanges = supportsRanges;
+        copy.supportsHead = supportsHead;
+        copy.maxHealthyConnections = maxHealthyConnections;
+        copy.connectionBytesPerSecond = connectionBytesPerSecond;
+        copy.backoffUntil = backoffUntil;
+        copy.consecutiveThrottles = consecutiveThrottles;
+        copy.lastUpdated = lastUpdated;
+        return copy;
+    }
+
+    // Getters and Setters（供Jackson序列化使用）
+    public String getOrigin()
+    {
+        return origin;
+    }
+
+    public void setOrigin(String origin)
+    {
+        this.origin = origin;
+    }
+
+    public Boolean getSupportsRanges()
+    {
+        return supportsRanges;
+    }
+
+    public void setSupportsRanges(Boolean supportsRanges)
+    {
+        this.supportsRanges = supportsRanges;
+    }
+
+    public Boolean getSupportsHead()
+    {
+        return supportsHead;
+    }
+
+    public void setSupportsHead(Boolean supportsHead)
+    {
+        this.supportsHead = supportsHead;
+    }
+
+    public int getMaxHealthyConnections()
+    {
+        return maxHealthyConnections;
+    }
+
+    public void setMaxHealthyConnections(int maxHealthyConnections)
+    {
+        this.maxHealthyConnections = maxHealthyConnections;
+    }
+
+    public long getConnectionBytesPerSecond()
+    {
+        return connectionBytesPerSecond;
+    }
+
+    public void setConnectionBytesPerSecond(long connectionBytesPerSecond)
+    {
+        this.connectionBytesPerSecond = connectionBytesPerSecond;
+    }
+
+    public long getBackoffUntil()
+    {
+        return backoffUntil;
+    }
+
+    public void setBackoffUntil(long backoffUntil)
+    {
+        this.backoffUntil = backoffUntil;
+    }
+
+    public int getConsecutiveThrottles()
+    {
+        return consecutiveThrottles;
+    }
+
+    public void setConsecutiveThrottles(int consecutiveThrottles)
+    {
+        this.consecutiveThrottles = consecutiveThrottles;
+    }
+
+    public long getLastUpdated()
+    {
+        return lastUpdated;
+    }
+
+    public void setLastUpdated(long lastUpdated)
+    {
+        this.lastUpdated = lastUpdated;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("HostProfile{origin='%s', ranges=%s, head=%s, maxConnections=%d, backoffUntil=%d}", origin,
+                supportsRanges, supportsHead, maxHealthyConnections, backoffUntil);
+    }
+}
@@ -0,0 +1,318 @@
+package com.downloader.core;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.client.utils.DateUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * 主机能力档案注册表 按源站学习Range/HEAD支持情况与健康连接数，并在429/503后执行退避，档案可跨进程持久化
+ */
+public class HostProfileRegistry
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(HostProfileRegistry.class);
+
+    private final File storeFile;
+    private final SchedulingPolicy policy;
+    private final LongSupplier clock; // 毫秒时钟，模拟时可替换
+    private final ObjectMapper objectMapper;
+    private final Map<String, HostProfile> profiles;
+    private final AtomicBoolean dirty;
+
+    /**
+     * @param storeFile 档案持久化文件，为null时仅保存在内存中
+     */
+    public HostProfileRegistry(File storeFile)
+    {
+        this(storeFile, new DefaultSchedulingPolicy(), System::currentTimeMillis);
+    }
+
+    /**
+     * @param policy 连接数学习和限流退避的策略
+     * @param clock 计算退避截止时间使用的毫秒时钟
+     */
+    public HostProfileRegistry(File storeFile, SchedulingPolicy policy, LongSupplier clock)
+    {
+        this.storeFile = storeFile;
+        this.policy = policy;
+        this.clock = clock;
+        this.objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.profiles = new ConcurrentHashMap<>();
+        this.dirty = new AtomicBoolean(false);
+        load();
+    }
+
+    /**
+     * 获取URL所属源站的档案，不存在时返回null
+     */
+    public HostProfile get(String url)
+    {
+        return profiles.get(Origins.of(url));
+    }
+
+    private HostProfile getOrCreate(String url)
+    {
+        return profiles.computeIfAbsent(Origins.of(url), HostProfile::new);
+    }
+
+    public SchedulingPolicy getPolicy()
+    {
+        return policy;
+    }
+
+    /**
+     * 根据已学习的健康连接数和实测的单连接速度给出本次下载的起始连接数，由策略决定试探方式
+     * @param size 文件大小，未知时小于0
+     */
+    public int suggestConnections(String url, int requested, long size)
+    {
+        HostProfile profile = get(url);
+        if (profile == null)
+        {
+            return policy.initialConnections(requested, 0, size, 0);
+        }
+        synchronized (profile)
+        {
+            return policy.initialConnections(requested, profile.getMaxHealthyConnections(), size,
+                    profile.getConnectionBytesPerSecond());
+        }
+    }
+
+    /**
+     * 记录探测结果
+     */
+    public void recordProbe(String url, Boolean headSupported, Boolean rangesSupported)
+    {
+        HostProfile profile = getOrCreate(url);
+        synchronized (profile)
+        {
+            boolean changed = false;
+            if (headSupported != null && !headSupported.equals(profile.getSupportsHead()))
+            {
+                profile.setSupportsHead(headSupported);
+                changed = true;
+            }
+            if (rangesSupported != null && !rangesSupported.equals(profile.getSupportsRanges()))
+            {
+                profile.setSupportsRanges(rangesSupported);
+                changed = true;
+            }
+            if (changed)
+            {
+                touch(profile);
+            }
+        }
+    }
+
+    /**
+     * 记录一次限流响应（429/503） 按策略调整健康连接数，并设置退避截止时间；
+     * 同一次限流会被各分段线程分别报告，退避期内的报告不再重复调整连接数和计数
+     * @param retryAfterMillis 服务端Retry-After给出的等待时间，小于0表示未提供
+     * @param connectionsInUse 发生限流时正在使用的连接数
+     * @return 本次退避时长（毫秒）
+     */
+    public long recordThrottled(String url, long retryAfterMillis, int connectionsInUse)
+    {
+        HostProfile profile = getOrCreate(url);
+        synchronized (profile)
+        {
+            long now = clock.getAsLong();
+            if (now < profile.getBackoffUntil())
+            {
+                if (retryAfterMillis > 0 && now + retryAfterMillis > profile.getBackoffUntil())
+                {
+                    profile.setBackoffUntil(now + retryAfterMillis);
+                    touch(profile);
+                }
+                return profile.getBackoffUntil() - now;
+            }
+
+            int throttles = profile.getConsecutiveThrottles() + 1;
+            profile.setConsecutiveThrottles(throttles);
+
+            long backoff = policy.throttleBackoff(throttles, retryAfterMillis);
+            profile.setBackoffUntil(now + backoff);
+
+            profile.setMaxHealthyConnections(
+                    policy.connectionsAfterThrottle(profile.getMaxHealthyConnections(), connectionsInUse));
+            touch(profile);
+
+            logger.warn("源站限流: {}，退避{}毫秒，健康连接数调整为{}", profile.getOrigin(), backoff,
+                    profile.getMaxHealthyConnections());
+            return backoff;
+        }
+    }
+
+    /**
+     * 记录一次下载的实测速度 按连接数折算为单连接速度，与之前的测量值各占一半
+     * @param bytesPerSecond 速度估计器给出的下载速度
+     */
+    public void recordThroughput(String url, long bytesPerSecond, int connections)
+    {
+        if (bytesPerSecond <= 0 || connections <= 0)
+        {
+            return;
+        }
+        HostProfile profile = getOrCreate(url);
+        synchronized (profile)
+        {
+            long perConnection = bytesPerSecond / connections;
+            long previous = profile.getConnectionBytesPerSecond();
+            profile.setConnectionBytesPerSecond(previous > 0 ? (previous + perConnection) / 2 : perConnection);
+            touch(profile);
+        }
+    }
+
+    /**
+     * 记录一次在指定连接数下顺利完成的下载
+     */
+    public void recordHealthy(String url, int connections)
+    {
+        HostProfile profile = getOrCreate(url);
+        synchronized (profile)
+        {
+            profile.setConsecutiveThrottles(0);
+            if (connections > profile.getMaxHealthyConnections())
+            {
+                profile.setMaxHealthyConnections(connections);
+            }
+            touch(profile);
+        }
+    }
+
+    /**
+     * 获取源站剩余退避时间（毫秒），无需退避时返回0
+     */
+    public long getBackoffRemaining(String url)
+    {
+        HostProfile profile = get(url);
+        if (profile == null)
+        {
+            return 0;
+        }
+        long backoffUntil;
+        synchronized (profile)
+        {
+            backoffUntil = profile.getBackoffUntil();
+        }
+        return Math.max(0, backoffUntil - clock.getAsLong());
+    }
+
+    /**
+     * 全部档案的副本 每个副本在对应档案的锁内复制，不会读到更新到一半的档案
+     */
+    public List<HostProfile> getAllProfiles()
+    {
+        List<HostProfile> result = new ArrayList<>(profiles.size());
+        for (HostProfile profile : profiles.values())
+        {
+            synchronized (profile)
+            {
+                result.add(profile.copy());
+            }
+        }
+        return result;
+    }
+
+    public int size()
+    {
+        return profiles.size();
+    }
+
+    private void touch(HostProfile profile)
+    {
+        profile.setLastUpdated(System.currentTimeMillis());
+        dirty.set(true);
+    }
+
+    /**
+     * 解析Retry-After头，支持秒数和HTTP日期两种格式
+     * @return 等待毫秒数，无法解析时返回-1
+     */
+    public static long parseRetryAfter(String value)
+    {
+        if (value == null || value.trim().isEmpty())
+        {
+            return -1;
+        }
+        String trimmed = value.trim();
+        try
+        {
+            return Math.max(0, Long.parseLong(trimmed) * 1000);
+        } catch (NumberFormatException e)
+        {
+            Date date = DateUtils.parseDate(trimmed);
+            if (date == null)
+            {
+                return -1;
+            }
+            return Math.max(0, date.getTime() - System.currentTimeMillis());
+        }
+    }
+
+    private void load()
+    {
+        if (storeFile == null || !storeFile.isFile())
+        {
+            return;
+        }
+        try
+        {
+            List<HostProfile> loaded = objectMapper.readValue(storeFile, new TypeReference<List<HostProfile>>() {
+            });
+            for (HostProfile profile : loaded)
+            {
+                if (profile.getOrigin() != null)
+                {
+                    profiles.put(profile.getOrigin(), profile);
+                }
+            }
+            logger.info("已加载{}个主机档案", profiles.size());
+        } catch (IOException e)
+        {
+            logger.warn("加载主机档案失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 将档案写入磁盘 仅在有变更时写入，先写临时文件再原子替换
+     */
+    public synchronized void save()
+    {
+        if (storeFile == null || !dirty.getAndSet(false))
+        {
+            return;
+        }
+        try
+        {
+            File parent = storeFile.getParentFile();
+            if (parent != null && !parent.exists())
+            {
+                parent.mkdirs();
+            }
+            File tmp = new File(storeFile.getPath() + ".tmp");
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(tmp, getAllProfiles());
+            Files.move(tmp.toPath(), storeFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e)
+        {
+            dirty.set(true);
+            logger.warn("保存主机档案失败: {}", e.getMessage());
+        }
+    }
+}
@@ -1,24 +1,51 @@
 package com.downloader.core;
 
+import com.downloader.metrics.DownloadMetrics;
+import com.downloader.metrics.TimedConnectionSocketFactory;
+import com.downloader.model.DownloadSegment;
 import com.downloader.model.DownloadTask;
+import com.downloader.model.RemoteFileInfo;
+import com.downloader.sink.DownloadSink;
+import com.downloader.sink.FileSink;
+import com.downloader.sink.SinkWriter;
+import com.downloader.model.SpeedEstimator;
+import org.apache.http.Header;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 /**
  * 多线程下载器 支持断点续传和多线程下载
+ * 暂停时直接中止进行中的请求，分段进度保留在任务中；继续下载时使用上次的探测结果和分段位置，不再重新探测
  */
 public class MultiThreadDownloader implements Runnable
 {
@@ -26,24 +53,144 @@ public class MultiThreadDownloader implements Runnable
     private static final Logger logger = LoggerFactory.getLogger(MultiThreadDownloader.class);
     private static final int BUFFER_SIZE = 8192; // 8KB缓冲区
     private static final int PROGRESS_UPDATE_INTERVAL = 1000; // 进度更新间隔（毫秒）
+    private static final long BACKOFF_POLL_INTERVAL = 200; // 退避等待时检查暂停的间隔（毫秒）
+    private static final long PUBLISH_INTERVAL = 64 * 1024; // 下载线程每写入这么多字节才更新一次分段计数
+    private static final int POOL_MAX_TOTAL = 256; // 共享连接池的最大连接数
+    private static final int POOL_MAX_PER_ROUTE = 32; // 共享连接池每个主机的最大连接数
+    static final long PREFETCH_MAX_AGE = 60 * 1000; // 预取的文件信息在此时间内可免于重新探测
+    private static final AtomicInteger SEGMENT_THREAD_IDS = new AtomicInteger(0);
+    private static final ScheduledThreadPoolExecutor PROGRESS_SCHEDULER = createProgressScheduler();
+    private static final RateLimiter UNLIMITED = new RateLimiter();
 
     private final DownloadTask task;
     private final DownloadCallback callback;
+    private final HostProfileRegistry hostProfiles;
+    private final CloseableHttpClient httpClient;
+    private final boolean ownsHttpClient;
+    private final DownloadMetrics metrics;
+    private final Set<HttpRequestBase> activeRequests; // 本次下载发出的请求，暂停时全部中止
     private final AtomicBoolean paused;
     private final AtomicBoolean cancelled;
-    private final AtomicLong totalDownloaded;
+    private volatile DownloadSegment[] segments;
     private final ExecutorService threadPool;
     private final List<Future<?>> downloadThreads;
+    private volatile int connections;
+    private volatile Exception probeFailure;
+    private volatile String validator; // 续传请求使用的If-Range值
+    private volatile boolean remoteChanged;
+    private final RateLimiter taskLimiter; // 本任务的限速
+    private volatile RateLimiter sharedLimiter = UNLIMITED; // 所有下载共用的总限速
+    private final DownloadSink sink; // 分段线程写入的目标
 
     public MultiThreadDownloader(DownloadTask task, DownloadCallback callback)
+    {
+        this(task, callback, new HostProfileRegistry(null));
+    }
+
+    public MultiThreadDownloader(DownloadTask task, DownloadCallback callback, HostProfileRegistry hostProfiles)
+    {
+        this(task, callback, hostProfiles, null);
+    }
+
+    /**
+     * @param httpClient 共享的HTTP客户端，为null时自行创建并在下载结束后关闭
+     */
+    public MultiThreadDownloader(DownloadTask task, DownloadCallback callback, HostProfileRegistry hostProfiles,
+            CloseableHttpClient httpClient)
+    {
+        this(task, callback, hostProfiles, httpClient, null);
+    }
+
+    /**
+     * @param metrics 下载指标，为null时不汇总到任何指标
+     */
+    public MultiThreadDownloader(DownloadTask task, DownloadCallback callback, HostProfileRegistry hostProfiles,
+            CloseableHttpClient httpClient, DownloadMetrics metrics)
     {
         this.task = task;
+        this.metrics = metrics != null ? metrics : new DownloadMetrics();
         this.callback = callback;
+        this.hostProfiles = hostProfiles;
+        this.ownsHttpClient = httpClient == null;
+        this.httpClient = httpClient != null ? httpClient : createHttpClient();
+        this.activeRequests = ConcurrentHashMap.newKeySet();
         this.paused = new AtomicBoolean(false);
         this.cancelled = new AtomicBoolean(false);
-        this.totalDownloaded = new AtomicLong(0);
-        this.threadPool = Executors.newFixedThreadPool(task.getThreadCount());
+        this.segments = new DownloadSegment[0];
+        this.threadPool = Executors.newFixedThreadPool(task.getThreadCount(),
+                r -> new Thread(r, "DownloadSegment-" + SEGMENT_THREAD_IDS.incrementAndGet()));
         this.downloadThreads = new ArrayList<>();
+        this.connections = 1;
+        this.taskLimiter = new RateLimiter(task.getMaxSpeed());
+        this.sink = task.getSink() != null ? task.getSink() : new FileSink(new File(task.getFullPath()));
+    }
+
+    /**
+     * 设置所有下载共用的总限速器，须在开始下载前调用
+     */
+    public void setSharedLimiter(RateLimiter sharedLimiter)
+    {
+        this.sharedLimiter = sharedLimiter != null ? sharedLimiter : UNLIMITED;
+    }
+
+    /**
+     * 修改本任务的限速，下载中立即生效
+     * @param bytesPerSecond 每秒字节数，0表示不限速
+     */
+    public void setMaxSpeed(long bytesPerSecond)
+    {
+        taskLimiter.setBytesPerSecond(bytesPerSecond);
+    }
+
+    /**
+     * 所有下载共用一个进度线程，不再每次下载创建一个
+     */
+    private static ScheduledThreadPoolExecutor createProgressScheduler()
+    {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "DownloadProgress");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * 创建使用连接池的HTTP客户端，连接在各分段和多次下载之间复用
+     */
+    public static CloseableHttpClient createHttpClient()
+    {
+        return createHttpClient(createConnectionManager(null));
+    }
+
+    public static CloseableHttpClient createHttpClient(PoolingHttpClientConnectionManager connectionManager)
+    {
+        return HttpClients.custom().setConnectionManager(connectionManager).build();
+    }
+
+    /**
+     * 创建共享连接池
+     * @param metrics 不为null时记录新建连接的耗时（含TLS握手）
+     */
+    public static PoolingHttpClientConnectionManager createConnectionManager(DownloadMetrics metrics)
+    {
+        PoolingHttpClientConnectionManager connectionManager;
+        if (metrics != null)
+        {
+            connectionManager = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory> create()
+                    .register("http", new TimedConnectionSocketFactory(PlainConnectionSocketFactory.getSocketFactory(),
+                            metrics))
+                    .register("https", new TimedConnectionSocketFactory(SSLConnectionSocketFactory.getSocketFactory(),
+                            metrics))
+                    .build());
+        } else
+        {
+            connectionManager = new PoolingHttpClientConnectionManager();
+        }
+        connectionManager.setMaxTotal(POOL_MAX_TOTAL);
+        connectionManager.setDefaultMaxPerRoute(POOL_MAX_PER_ROUTE);
+        return connectionManager;
     }
 
     @Override
@@ -53,156 +200,514 @@ public class MultiThreadDownloader implements Runnable
         {
             logger.info("开始下载: {}", task.getUrl());
 
-            // 获取文件信息
-            FileInfo fileInfo = getFileInfo(task.getUrl());
+            // 获取文件信息，暂停后继续时沿用上次的探测结果
+            FileInfo cached = cachedFileInfo();
+            if (cached != null)
+            {
+                logger.info("使用上次探测的文件信息继续下载: 大小={}", cached.size);
+            }
+            FileInfo fileInfo = cached != null ? cached : getFileInfo(task.getUrl());
             if (fileInfo == null)
             {
-                callback.onError(task, "无法获取文件信息");
+                if (isOriginFailure(probeFailure))
+                {
+                    callback.onOriginFailure(task, "无法获取文件信息: " + probeFailure.getMessage());
+                } else
+                {
+                    callback.onError(task, "无法获取文件信息");
+                }
                 return;
             }
 
             task.setTotalSize(fileInfo.size);
+            if (cached == null)
+            {
+                task.setRemoteFileInfo(new RemoteFileInfo(fileInfo.size, fileInfo.supportResume, fileInfo.validator,
+                        System.currentTimeMillis()));
+            }
+            validator = fileInfo.validator;
 
             // 检查是否支持断点续传
             boolean supportResume = fileInfo.supportResume;
 
-            // 创建目标文件
-            File targetFile = new File(task.getFullPath());
-            File tempFile = new File(task.getFullPath() + ".tmp");
-
-            // 检查已下载的部分
+            // 检查已下载的部分：优先按保存的分段进度续传，没有分段记录时按已保存的数据长度续传
+            DownloadSegment[] plan = null;
             long startPosition = 0;
-            if (tempFile.exists() && supportResume)
-            {
-                startPosition = tempFile.length();
-                totalDownloaded.set(startPosition);
-                logger.info("检测到临时文件，从位置 {} 继续下载", startPosition);
-            }
-
-            if (startPosition >= fileInfo.size)
+            long resumable = sink.getResumableLength();
+            if (resumable >= 0 && supportResume)
             {
-                // 文件已完整下载
-                if (tempFile.renameTo(targetFile))
+                plan = sink.isRandomAccess() ? restoreSegments(fileInfo.size) : null;
+                if (plan != null)
                 {
-                    callback.onCompleted(task);
+                    logger.info("检测到已下载的数据，按{}个分段的进度继续下载", plan.length);
                 } else
                 {
-                    callback.onError(task, "无法重命名临时文件");
+                    startPosition = Math.min(resumable, Math.max(fileInfo.size, 0));
+                    logger.info("检测到已下载的数据，从位置 {} 继续下载", startPosition);
                 }
+            }
+
+            boolean multiThread;
+            if (plan != null)
+            {
+                multiThread = plan.length > 1;
+                connections = plan.length;
+            } else
+            {
+                SchedulingPolicy policy = hostProfiles.getPolicy();
+                // 只接受顺序写入的去向只能单连接下载
+                multiThread = sink.isRandomAccess() && policy.useSegments(fileInfo.size, supportResume);
+                // 多线程下载，起始连接数参考该主机已学习的健康连接数和实测速度
+                connections = multiThread
+                        ? hostProfiles.suggestConnections(task.getUrl(), task.getThreadCount(), fileInfo.size) : 1;
+                plan = multiThread ? policy.planSegments(fileInfo.size, startPosition, connections)
+                        : new DownloadSegment[] { new DownloadSegment(0, fileInfo.size - 1, startPosition) };
+            }
+            segments = plan;
+            task.setSegments(plan);
+            sink.open(fileInfo.size);
+
+            if (fileInfo.size >= 0 && currentDownloaded() >= fileInfo.size)
+            {
+                // 文件已完整下载
+                task.setSegments(null);
+                completeSink();
                 return;
             }
 
-            // 启动进度监控
-            ScheduledExecutorService progressMonitor = Executors.newSingleThreadScheduledExecutor();
-            AtomicLong lastDownloaded = new AtomicLong(startPosition);
-            AtomicLong lastTime = new AtomicLong(System.currentTimeMillis());
+            // 启动进度监控，速度由估计器平滑；暂停后继续时沿用原来的估计器，保留速度历史
+            SpeedEstimator previous = task.getSpeedEstimator();
+            SpeedEstimator estimator = previous != null ? previous : new SpeedEstimator();
+            if (previous != null)
+            {
+                estimator.resume();
+            }
+            task.setSpeedEstimator(estimator);
 
-            progressMonitor.scheduleAtFixedRate(() -> {
+            ScheduledFuture<?> progressMonitor = PROGRESS_SCHEDULER.scheduleAtFixedRate(() -> {
                 if (!paused.get() && !cancelled.get())
                 {
-                    long currentDownloaded = totalDownloaded.get();
-                    long currentTime = System.currentTimeMillis();
-                    long timeDiff = currentTime - lastTime.get();
-                    long sizeDiff = currentDownloaded - lastDownloaded.get();
-
-                    long speed = timeDiff > 0 ? (sizeDiff * 1000 / timeDiff) : 0;
-
-                    callback.onProgress(task, currentDownloaded, fileInfo.size, speed);
-
-                    lastDownloaded.set(currentDownloaded);
-                    lastTime.set(currentTime);
+                    long currentDownloaded = currentDownloaded();
+                    estimator.record(currentDownloaded, System.currentTimeMillis());
+                    callback.onProgress(task, currentDownloaded, fileInfo.size, estimator.getSpeed());
                 }
             }, 0, PROGRESS_UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
 
             try
             {
-                if (supportResume && fileInfo.size > 1024 * 1024)
-                { // 大于1MB才使用多线程
-                  // 多线程下载
-                    downloadMultiThread(fileInfo, tempFile, startPosition);
+                if (multiThread)
+                {
+                    downloadMultiThread();
                 } else
                 {
                     // 单线程下载
-                    downloadSingleThread(task.getUrl(), tempFile, startPosition);
+                    downloadSingleThread(task.getUrl(), plan[0]);
                 }
 
                 // 检查下载是否完成
-                if (!paused.get() && !cancelled.get() && totalDownloaded.get() >= fileInfo.size)
+                if (!paused.get() && !cancelled.get())
                 {
-                    if (tempFile.renameTo(targetFile))
+                    long downloaded = currentDownloaded();
+                    if (downloaded < fileInfo.size)
                     {
-                        callback.onCompleted(task);
-                    } else
+                        // 响应体提前结束，保留已下载的数据以便续传
+                        task.setDownloadedSize(downloaded);
+                        throw new IOException("连接提前关闭，已下载" + downloaded + "/" + fileInfo.size + "字节");
+                    }
+                    if (multiThread)
                     {
-                        callback.onError(task, "无法重命名临时文件");
+                        hostProfiles.recordHealthy(task.getUrl(), connections);
                     }
+                    // 最后一个不满周期的采样也计入，下次向该主机下载时据此决定连接数
+                    estimator.record(downloaded, System.currentTimeMillis());
+                    hostProfiles.recordThroughput(task.getUrl(), estimator.getWindowAverage(), connections);
+                    task.setDownloadedSize(downloaded);
+                    task.setSegments(null);
+                    completeSink();
                 }
 
             } finally
             {
-                progressMonitor.shutdown();
-                threadPool.shutdown();
+                progressMonitor.cancel(false);
             }
 
         } catch (Exception e)
         {
+            if (paused.get() || cancelled.get())
+            {
+                logger.debug("下载已中止: {}", task.getFileName());
+                return;
+            }
+            if (remoteChanged)
+            {
+                // 已下载的数据与新文件不一致，丢弃后需重新下载
+                sink.discard();
+                task.setSegments(null);
+                task.setRemoteFileInfo(null);
+                callback.onError(task, "远程文件已变化，请重新开始下载");
+                return;
+            }
             logger.error("下载失败: {}", e.getMessage(), e);
+            if (isOriginFailure(e))
+            {
+                callback.onOriginFailure(task, e.getMessage());
+            } else
+            {
+                callback.onError(task, e.getMessage());
+            }
+        } finally
+        {
+            threadPool.shutdown();
+            activeRequests.clear();
+            if (ownsHttpClient)
+            {
+                try
+                {
+                    httpClient.close();
+                } catch (IOException e)
+                {
+                    logger.debug("关闭HTTP客户端失败: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 通知数据去向全部写入完成，文件去向在此时把临时文件重命名为目标文件
+     */
+    private void completeSink()
+    {
+        try
+        {
+            sink.complete();
+        } catch (IOException e)
+        {
             callback.onError(task, e.getMessage());
+            return;
+        }
+        callback.onCompleted(task);
+    }
+
+    /**
+     * 任务保留了上次探测的信息、分段进度和已下载的数据，或者刚被预取过文件信息时，直接使用而不再探测
+     */
+    private FileInfo cachedFileInfo()
+    {
+        RemoteFileInfo info = task.getRemoteFileInfo();
+        if (info == null)
+        {
+            return null;
+        }
+        boolean resumable = info.isSupportsRanges() && info.getSize() > 0 && task.getSegments() != null
+                && sink.getResumableLength() >= 0;
+        if (!resumable && !info.isFresh(PREFETCH_MAX_AGE))
+        {
+            return null;
         }
+        return new FileInfo(info.getSize(), info.isSupportsRanges(), info.getValidator());
     }
 
     /**
-     * 获取文件信息
+     * 只探测文件信息并保存到任务中，不下载数据 供等待中的任务预取使用，探测请求同时预热连接池中的连接；
+     * 任务已有下载数据而远程文件的大小或校验值变化时，丢弃已下载的数据
+     * @return 探测是否成功
+     */
+    boolean prefetchFileInfo()
+    {
+        FileInfo fileInfo = getFileInfo(task.getUrl());
+        if (fileInfo == null)
+        {
+            return false;
+        }
+        RemoteFileInfo saved = task.getRemoteFileInfo();
+        if (saved != null && (task.getSegments() != null || sink.getResumableLength() >= 0)
+                && (saved.getSize() != fileInfo.size || !Objects.equals(saved.getValidator(), fileInfo.validator)))
+        {
+            // 已下载的数据属于旧版本的文件，不能用新的校验值续传，否则新旧数据会混在一起
+            logger.info("远程文件已变化，丢弃已下载的数据: {}", task.getFileName());
+            sink.discard();
+            task.setSegments(null);
+            task.setDownloadedSize(0);
+        }
+        if (fileInfo.size > 0)
+        {
+            task.setTotalSize(fileInfo.size);
+        }
+        task.setRemoteFileInfo(new RemoteFileInfo(fileInfo.size, fileInfo.supportResume, fileInfo.validator,
+                System.currentTimeMillis()));
+        return true;
+    }
+
+    /**
+     * 获取文件信息 已知该主机不支持HEAD时直接使用Range GET探测
      */
     private FileInfo getFileInfo(String url)
     {
-        try (CloseableHttpClient httpClient = HttpClients.createDefault())
+        HostProfile profile = hostProfiles.get(url);
+        boolean tryHead = profile == null || !Boolean.FALSE.equals(profile.getSupportsHead());
+
+        try
         {
-            HttpHead headRequest = new HttpHead(url);
-            HttpResponse response = httpClient.execute(headRequest);
+            FileInfo fileInfo = null;
+            if (tryHead)
+            {
+                fileInfo = probeWithHead(url, profile);
+            }
+            if (fileInfo == null)
+            {
+                fileInfo = probeWithRangeGet(url);
+            }
 
-            long size = -1;
-            boolean supportResume = false;
+            logger.info("文件信息: 大小={}, 支持断点续传={}", fileInfo.size, fileInfo.supportResume);
+            return fileInfo;
+
+        } catch (Exception e)
+        {
+            if (!paused.get() && !cancelled.get())
+            {
+                logger.error("获取文件信息失败: {}", e.getMessage(), e);
+            }
+            probeFailure = e;
+            return null;
+        }
+    }
+
+    /**
+     * 使用HEAD请求探测，服务器不支持HEAD或未返回大小时返回null
+     */
+    private FileInfo probeWithHead(String url, HostProfile profile) throws IOException
+    {
+        try (CloseableHttpResponse response = executeWithBackoff(() -> new HttpHead(url)))
+        {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode == HttpStatus.SC_METHOD_NOT_ALLOWED || statusCode == HttpStatus.SC_NOT_IMPLEMENTED)
+            {
+                hostProfiles.recordProbe(url, false, null);
+                return null;
+            }
+            checkStatus(response);
 
             // 获取文件大小
-            if (response.getFirstHeader("Content-Length") != null)
+            Header lengthHeader = response.getFirstHeader("Content-Length");
+            if (lengthHeader == null)
+            {
+                hostProfiles.recordProbe(url, false, null);
+                return null;
+            }
+            long size = Long.parseLong(lengthHeader.getValue());
+
+            // 检查是否支持断点续传，未声明Accept-Ranges时参考已学习的档案
+            Boolean rangesDeclared = null;
+            Header acceptRanges = response.getFirstHeader("Accept-Ranges");
+            if (acceptRanges != null)
+            {
+                rangesDeclared = "bytes".equalsIgnoreCase(acceptRanges.getValue());
+            }
+            hostProfiles.recordProbe(url, true, rangesDeclared);
+
+            boolean supportResume = rangesDeclared != null ? rangesDeclared
+                    : profile != null && Boolean.TRUE.equals(profile.getSupportsRanges());
+            return new FileInfo(size, supportResume, validatorOf(response));
+        }
+    }
+
+    /**
+     * 使用 Range: bytes=0-0 的GET请求探测大小和Range支持
+     */
+    private FileInfo probeWithRangeGet(String url) throws IOException
+    {
+        HttpGet[] holder = new HttpGet[1];
+        try (CloseableHttpResponse response = executeWithBackoff(() -> {
+            holder[0] = new HttpGet(url);
+            holder[0].setHeader("Range", "bytes=0-0");
+            return holder[0];
+        }))
+        {
+            checkStatus(response);
+            int statusCode = response.getStatusLine().getStatusCode();
+
+            long size = -1;
+            boolean supportResume = false;
+            if (statusCode == HttpStatus.SC_PARTIAL_CONTENT)
+            {
+                Header contentRange = response.getFirstHeader("Content-Range");
+                if (contentRange != null)
+                {
+                    String value = contentRange.getValue();
+                    int slash = value.lastIndexOf('/');
+                    if (slash >= 0 && !"*".equals(value.substring(slash + 1).trim()))
+                    {
+                        size = Long.parseLong(value.substring(slash + 1).trim());
+                        supportResume = true;
+                    }
+                }
+            } else if (response.getFirstHeader("Content-Length") != null)
             {
                 size = Long.parseLong(response.getFirstHeader("Content-Length").getValue());
             }
 
-            // 检查是否支持断点续传
-            if (response.getFirstHeader("Accept-Ranges") != null)
+            // 不读取响应体，直接中止请求
+            holder[0].abort();
+            hostProfiles.recordProbe(url, null, supportResume);
+            return new FileInfo(size, supportResume, validatorOf(response));
+        }
+    }
+
+    /**
+     * 取响应的强ETag，没有时取Last-Modified，用作续传请求的If-Range
+     */
+    private static String validatorOf(HttpResponse response)
+    {
+        Header etag = response.getFirstHeader("ETag");
+        if (etag != null && !etag.getValue().startsWith("W/"))
+        {
+            return etag.getValue();
+        }
+        Header lastModified = response.getFirstHeader("Last-Modified");
+        return lastModified == null ? null : lastModified.getValue();
+    }
+
+    /**
+     * 执行请求，遇到429/503时按Retry-After或指数退避等待后重试，请求开始前也会等待该主机的退避时间结束
+     */
+    private CloseableHttpResponse executeWithBackoff(Supplier<? extends HttpRequestBase> requestFactory)
+            throws IOException
+    {
+        for (int attempt = 0;; attempt++)
+        {
+            awaitHostBackoff();
+
+            HttpRequestBase request = requestFactory.get();
+            activeRequests.add(request);
+            if (paused.get() || cancelled.get())
             {
-                String acceptRanges = response.getFirstHeader("Accept-Ranges").getValue();
-                supportResume = "bytes".equalsIgnoreCase(acceptRanges);
+                // 登记前已暂停，pause()可能没看到这个请求
+                request.abort();
             }
+            long sentAt = System.nanoTime();
+            CloseableHttpResponse response = httpClient.execute(request);
+            metrics.recordRequest(System.nanoTime() - sentAt);
+            int statusCode = response.getStatusLine().getStatusCode();
+            if ((statusCode == 429 || statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE)
+                    && attempt < hostProfiles.getPolicy().maxThrottleRetries() && !paused.get() && !cancelled.get())
+            {
+                metrics.recordRetry();
+                Header retryAfter = response.getFirstHeader("Retry-After");
+                hostProfiles.recordThrottled(task.getUrl(),
+                        HostProfileRegistry.parseRetryAfter(retryAfter == null ? null : retryAfter.getValue()),
+                        connections);
+                response.close();
+                continue;
+            }
+            return response;
+        }
+    }
 
-            logger.info("文件信息: 大小={}, 支持断点续传={}", size, supportResume);
-            return new FileInfo(size, supportResume);
+    /**
+     * 等待主机退避时间结束，期间响应暂停和取消
+     */
+    private void awaitHostBackoff() throws IOException
+    {
+        long remaining;
+        while ((remaining = hostProfiles.getBackoffRemaining(task.getUrl())) > 0 && !paused.get() && !cancelled.get())
+        {
+            try
+            {
+                Thread.sleep(Math.min(remaining, BACKOFF_POLL_INTERVAL));
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待主机退避时被中断");
+            }
+        }
+    }
 
-        } catch (Exception e)
+    private static void checkStatus(HttpResponse response) throws IOException
+    {
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode >= 400)
         {
-            logger.error("获取文件信息失败: {}", e.getMessage(), e);
-            return null;
+            throw new HttpStatusException(statusCode, response.getStatusLine().getReasonPhrase());
         }
     }
 
     /**
-     * 多线程下载
+     * 判断异常是否表示源站不可用（连接失败、超时、无响应或5xx），用于源站熔断
      */
-    private void downloadMultiThread(FileInfo fileInfo, File tempFile, long startPosition)
+    static boolean isOriginFailure(Throwable error)
     {
-        long remainingSize = fileInfo.size - startPosition;
-        long chunkSize = remainingSize / task.getThreadCount();
+        for (Throwable t = error; t != null; t = t.getCause())
+        {
+            if (t instanceof ConnectException || t instanceof SocketTimeoutException
+                    || t instanceof UnknownHostException || t instanceof NoRouteToHostException
+                    || t instanceof NoHttpResponseException
+                    || t instanceof org.apache.http.conn.ConnectTimeoutException)
+            {
+                return true;
+            }
+            if (t instanceof HttpStatusException)
+            {
+                return ((HttpStatusException) t).statusCode >= 500;
+            }
+        }
+        return false;
+    }
 
-        logger.info("使用{}个线程下载，每个线程下载{}字节", task.getThreadCount(), chunkSize);
+    /**
+     * 各分段已下载字节数之和 由进度监控定期调用，下载线程之间不共享计数器
+     */
+    private long currentDownloaded()
+    {
+        long sum = 0;
+        for (DownloadSegment segment : segments)
+        {
+            sum += segment.getDownloaded();
+        }
+        return sum;
+    }
 
-        for (int i = 0; i < task.getThreadCount(); i++)
+    /**
+     * 校验任务中保存的分段进度：必须连续覆盖整个文件，且已下载字节数不超过分段长度
+     * @return 分段副本，无法使用时返回null
+     */
+    private DownloadSegment[] restoreSegments(long size)
+    {
+        DownloadSegment[] saved = task.getSegments();
+        if (saved == null || saved.length == 0 || size <= 0)
         {
-            long start = startPosition + i * chunkSize;
-            long end = (i == task.getThreadCount() - 1) ? fileInfo.size - 1 : start + chunkSize - 1;
+            return null;
+        }
+        DownloadSegment[] copy = new DownloadSegment[saved.length];
+        long expectedStart = 0;
+        for (int i = 0; i < saved.length; i++)
+        {
+            DownloadSegment segment = saved[i];
+            if (segment.getStart() != expectedStart || segment.getEnd() < segment.getStart()
+                    || segment.getDownloaded() < 0 || segment.getDownloaded() > segment.getLength())
+            {
+                return null;
+            }
+            copy[i] = new DownloadSegment(segment.getStart(), segment.getEnd(), segment.getDownloaded());
+            expectedStart = segment.getEnd() + 1;
+        }
+        return expectedStart == size ? copy : null;
+    }
+
+    /**
+     * 多线程下载 每个未完成的分段由一个线程从其当前位置继续
+     */
+    private void downloadMultiThread()
+    {
+        DownloadSegment[] plan = segments;
+        logger.info("使用{}个分段下载，已完成{}字节", plan.length, currentDownloaded());
 
-            Future<?> future = threadPool.submit(new DownloadThread(task.getUrl(), tempFile, start, end, i));
+        for (int i = 0; i < plan.length; i++)
+        {
+            if (plan[i].isComplete())
+            {
+                continue;
+            }
+            Future<?> future = threadPool.submit(new DownloadThread(task.getUrl(), plan[i], i));
             downloadThreads.add(future);
         }
 
@@ -214,7 +719,15 @@ public class MultiThreadDownloader implements Runnable
                 future.get();
             } catch (Exception e)
             {
-                logger.error("下载线程异常: {}", e.getMessage(), e);
+                if (remoteChanged)
+                {
+                    // 其他分段的数据也已无效，立即中止
+                    abortRequests();
+                    threadPool.shutdownNow();
+                } else if (!paused.get() && !cancelled.get())
+                {
+                    logger.error("下载线程异常: {}", e.getMessage(), e);
+                }
                 throw new RuntimeException(e);
             }
         }
@@ -223,53 +736,114 @@ public class MultiThreadDownloader implements Runnable
     /**
      * 单线程下载
      */
-    private void downloadSingleThread(String url, File tempFile, long startPosition)
+    private void downloadSingleThread(String url, DownloadSegment segment)
     {
-        try (CloseableHttpClient httpClient = HttpClients.createDefault())
+        long startPosition = segment.getPosition();
+        try
         {
-            HttpGet request = new HttpGet(url);
-
-            if (startPosition > 0)
-            {
-                request.setHeader("Range", "bytes=" + startPosition + "-");
-            }
-
-            HttpResponse response = httpClient.execute(request);
-
-            try (InputStream inputStream = response.getEntity().getContent();
-                    RandomAccessFile outputFile = new RandomAccessFile(tempFile, "rw"))
+            try (CloseableHttpResponse response = executeWithBackoff(() -> {
+                HttpGet request = new HttpGet(url);
+                if (startPosition > 0)
+                {
+                    request.setHeader("Range", "bytes=" + startPosition + "-");
+                    if (validator != null)
+                    {
+                        request.setHeader("If-Range", validator);
+                    }
+                }
+                return request;
+            });
+                    InputStream inputStream = response.getEntity().getContent())
             {
+                checkStatus(response);
 
-                outputFile.seek(startPosition);
-
-                byte[] buffer = new byte[BUFFER_SIZE];
-                int bytesRead;
-
-                while ((bytesRead = inputStream.read(buffer)) != -1 && !paused.get() && !cancelled.get())
+                long writePosition = startPosition;
+                if (startPosition > 0 && response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT)
                 {
-                    outputFile.write(buffer, 0, bytesRead);
-                    totalDownloaded.addAndGet(bytesRead);
+                    if (validator != null)
+                    {
+                        // If-Range校验未通过，服务器返回的是新文件，与已下载的数据不能拼接
+                        remoteChanged = true;
+                        throw new IOException("远程文件已变化");
+                    }
+                    // 服务器忽略了Range，只能从头开始
+                    hostProfiles.recordProbe(url, null, false);
+                    logger.warn("服务器未按Range返回数据，从头重新下载: {}", url);
+                    writePosition = 0;
+                    sink.reset();
+                }
+                try (SinkWriter writer = sink.openWriter(writePosition))
+                {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int bytesRead;
+                    long downloaded = writePosition;
+                    long published = downloaded;
+                    segment.setDownloaded(downloaded);
+                    LongAdder originBytes = metrics.originCounter(Origins.of(url));
+                    metrics.segmentStarted();
+
+                    try
+                    {
+                        while ((bytesRead = inputStream.read(buffer)) != -1 && !paused.get() && !cancelled.get())
+                        {
+                            long writeStart = System.nanoTime();
+                            writer.write(buffer, 0, bytesRead);
+                            metrics.recordDiskWrite(System.nanoTime() - writeStart);
+                            downloaded += bytesRead;
+                            taskLimiter.acquire(bytesRead);
+                            sharedLimiter.acquire(bytesRead);
+                            if (downloaded - published >= PUBLISH_INTERVAL)
+                            {
+                                segment.setDownloaded(downloaded);
+                                metrics.recordBytes(originBytes, downloaded - published);
+                                published = downloaded;
+                            }
+                        }
+                    } finally
+                    {
+                        segment.setDownloaded(downloaded);
+                        metrics.recordBytes(originBytes, downloaded - published);
+                        metrics.segmentFinished();
+                    }
                 }
             }
 
         } catch (Exception e)
         {
-            logger.error("单线程下载失败: {}", e.getMessage(), e);
+            if (!paused.get() && !cancelled.get())
+            {
+                logger.error("单线程下载失败: {}", e.getMessage(), e);
+            }
             throw new RuntimeException(e);
         }
     }
 
+    public DownloadTask getTask()
+    {
+        return task;
+    }
+
     /**
      * 暂停下载
      */
     public void pause()
     {
         paused.set(true);
+        // 直接中止请求，阻塞中的读取立即返回，不必等到套接字超时
+        abortRequests();
         downloadThreads.forEach(future -> future.cancel(true));
         threadPool.shutdownNow();
         logger.info("下载已暂停: {}", task.getFileName());
     }
 
+    private void abortRequests()
+    {
+        for (HttpRequestBase request : activeRequests)
+        {
+            request.abort();
+        }
+    }
+
     /**
      * 取消下载
      */
@@ -278,12 +852,8 @@ public class MultiThreadDownloader implements Runnable
         cancelled.set(true);
         pause();
 
-        // 删除临时文件
-        File tempFile = new File(task.getFullPath() + ".tmp");
-        if (tempFile.exists())
-        {
-            tempFile.delete();
-        }
+        // 删除临时文件等已写入的数据
+        sink.discard();
 
         logger.info("下载已取消: {}", task.getFileName());
     }
@@ -294,49 +864,81 @@ public class MultiThreadDownloader implements Runnable
     private class DownloadThread implements Runnable
     {
         private final String url;
-        private final File file;
-        private final long start;
-        private final long end;
+        private final DownloadSegment segment;
         private final int threadId;
 
-        public DownloadThread(String url, File file, long start, long end, int threadId)
+        public DownloadThread(String url, DownloadSegment segment, int threadId)
         {
             this.url = url;
-            this.file = file;
-            this.start = start;
-            this.end = end;
+            this.segment = segment;
             this.threadId = threadId;
         }
 
         @Override
         public void run()
         {
-            try (CloseableHttpClient httpClient = HttpClients.createDefault())
+            long start = segment.getPosition();
+            long end = segment.getEnd();
+            try
             {
-                HttpGet request = new HttpGet(url);
-                request.setHeader("Range", "bytes=" + start + "-" + end);
-
-                HttpResponse response = httpClient.execute(request);
-
-                try (InputStream inputStream = response.getEntity().getContent();
-                        RandomAccessFile outputFile = new RandomAccessFile(file, "rw"))
+                try (CloseableHttpResponse response = executeWithBackoff(() -> {
+                    HttpGet request = new HttpGet(url);
+                    request.setHeader("Range", "bytes=" + start + "-" + end);
+                    if (start > 0 && validator != null)
+                    {
+                        request.setHeader("If-Range", validator);
+                    }
+                    return request;
+                });
+                        InputStream inputStream = response.getEntity().getContent();
+                        SinkWriter writer = sink.openWriter(start))
                 {
+                    checkStatus(response);
+                    if (response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT)
+                    {
+                        // 服务器忽略了Range或If-Range校验未通过，继续写入会破坏文件
+                        if (start > 0 && validator != null)
+                        {
+                            remoteChanged = true;
+                            throw new IOException("远程文件已变化");
+                        }
+                        hostProfiles.recordProbe(url, null, false);
+                        throw new IOException("服务器不支持Range请求");
+                    }
 
-                    outputFile.seek(start);
-
+                    // 计数只在本线程内累加，按间隔发布到分段，避免多线程争用同一个计数器
                     byte[] buffer = new byte[BUFFER_SIZE];
                     int bytesRead;
-                    long downloaded = 0;
-                    long maxDownload = end - start + 1;
+                    long downloaded = segment.getDownloaded();
+                    long published = downloaded;
+                    long maxDownload = segment.getLength();
+                    LongAdder originBytes = metrics.originCounter(Origins.of(url));
+                    metrics.segmentStarted();
 
-                    while ((bytesRead = inputStream.read(buffer)) != -1 && downloaded < maxDownload && !paused.get()
-                            && !cancelled.get())
+                    try
                     {
-
-                        int writeSize = (int) Math.min(bytesRead, maxDownload - downloaded);
-                        outputFile.write(buffer, 0, writeSize);
-                        downloaded += writeSize;
-                        totalDownloaded.addAndGet(writeSize);
+                        while (downloaded < maxDownload && (bytesRead = inputStream.read(buffer)) != -1
+                                && !paused.get() && !cancelled.get())
+                        {
+                            int writeSize = (int) Math.min(bytesRead, maxDownload - downloaded);
+                            long writeStart = System.nanoTime();
+                            writer.write(buffer, 0, writeSize);
+                            metrics.recordDiskWrite(System.nanoTime() - writeStart);
+                            downloaded += writeSize;
+                            taskLimiter.acquire(writeSize);
+                            sharedLimiter.acquire(writeSize);
+                            if (downloaded - published >= PUBLISH_INTERVAL)
+                            {
+                                segment.setDownloaded(downloaded);
+                                metrics.recordBytes(originBytes, downloaded - published);
+                                published = downloaded;
+                            }
+                        }
+                    } finally
+                    {
+                        segment.setDownloaded(downloaded);
+                        metrics.recordBytes(originBytes, downloaded - published);
+                        metrics.segmentFinished();
                     }
 
                     logger.debug("线程{}下载完成: {}-{}", threadId, start, end);
@@ -353,6 +955,20 @@ public class MultiThreadDownloader implements Runnable
         }
     }
 
+    /**
+     * HTTP错误状态
+     */
+    private static class HttpStatusException extends IOException
+    {
+        final int statusCode;
+
+        HttpStatusException(int statusCode, String reason)
+        {
+            super("HTTP " + statusCode + " " + reason);
+            this.statusCode = statusCode;
+        }
+    }
+
     /**
      * 文件信息
      */
@@ -360,11 +976,13 @@ public class MultiThreadDownloader implements Runnable
     {
         final long size;
         final boolean supportResume;
+        final String validator;
 
-        FileInfo(long size, boolean supportResume)
+        FileInfo(long size, boolean supportResume, String validator)
         {
             this.size = size;
             this.supportResume = supportResume;
+            this.validator = validator;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,239 @@
+package com.downloader.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按源站的熔断器 连续出现源站故障后进入打开状态，冷却结束后进入半开状态并只放行一个探测任务，探测成功后恢复关闭状态
+ */
+public class OriginCircuitBreaker
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(OriginCircuitBreaker.class);
+
+    public enum State {
+        CLOSED("正常"), OPEN("熔断"), HALF_OPEN("探测中");
+
+        private final String displayName;
+
+        State(String displayName)
+        {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName()
+        {
+            return displayName;
+        }
+    }
+
+    /**
+     * 申请结果
+     */
+    public enum Permit {
+        ALLOWED, // 正常放行
+        PROBE, // 作为半开状态下的唯一探测任务放行
+        REJECTED // 熔断中，拒绝
+    }
+
+    private final int failureThreshold;
+    private final long baseOpenMillis;
+    private final long maxOpenMillis;
+    private final Map<String, Breaker> breakers;
+
+    public OriginCircuitBreaker()
+    {
+        this(3, 15_000, 5 * 60_000);
+    }
+
+    /**
+     * @param failureThreshold 触发熔断的连续失败次数
+     * @param baseOpenMillis 首次熔断的冷却时间，之后每次探测失败翻倍
+     * @param maxOpenMillis 冷却时间上限
+     */
+    public OriginCircuitBreaker(int failureThreshold, long baseOpenMillis, long maxOpenMillis)
+    {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.baseOpenMillis = baseOpenMillis;
+        this.maxOpenMillis = maxOpenMillis;
+        this.breakers = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 申请一次下载尝试
+     */
+    public Permit tryAcquire(String url)
+    {
+        Breaker breaker = breakers.get(Origins.of(url));
+        if (breaker == null)
+        {
+            return Permit.ALLOWED;
+        }
+        synchronized (breaker)
+        {
+            switch (breaker.state)
+            {
+            case CLOSED:
+                return Permit.ALLOWED;
+            case OPEN:
+                if (System.currentTimeMillis() < breaker.openUntil)
+                {
+                    return Permit.REJECTED;
+                }
+                breaker.state = State.HALF_OPEN;
+                breaker.probeInFlight = true;
+                logger.info("源站熔断冷却结束，开始探测: {}", breaker.origin);
+                return Permit.PROBE;
+            case HALF_OPEN:
+            default:
+                if (breaker.probeInFlight)
+                {
+                    return Permit.REJECTED;
+                }
+                breaker.probeInFlight = true;
+                return Permit.PROBE;
+            }
+        }
+    }
+
+    /**
+     * 判断当前是否可能放行，不改变状态，用于挑选等待任务
+     */
+    public boolean isAttemptPermitted(String url)
+    {
+        Breaker breaker = breakers.get(Origins.of(url));
+        if (breaker == null)
+        {
+            return true;
+        }
+        synchronized (breaker)
+        {
+            switch (breaker.state)
+            {
+            case CLOSED:
+                return true;
+            case OPEN:
+                return System.currentTimeMillis() >= breaker.openUntil;
+            case HALF_OPEN:
+            default:
+                return !breaker.probeInFlight;
+            }
+        }
+    }
+
+    /**
+     * 源站有响应（包括下载完成和非源站故障的错误） 恢复正常的源站与从未失败过的源站相同，移除其记录以免长期运行后不断累积
+     */
+    public void recordSuccess(String url)
+    {
+        breakers.computeIfPresent(Origins.of(url), (origin, breaker) -> {
+            synchronized (breaker)
+            {
+                if (breaker.state != State.CLOSED)
+                {
+                    logger.info("源站已恢复: {}", breaker.origin);
+                }
+                breaker.state = State.CLOSED;
+                breaker.consecutiveFailures = 0;
+                breaker.openCount = 0;
+                breaker.probeInFlight = false;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 源站故障（连接失败、超时、5xx等）
+     */
+    public void recordFailure(String url)
+    {
+        Breaker breaker = breakers.computeIfAbsent(Origins.of(url), Breaker::new);
+        synchronized (breaker)
+        {
+            breaker.consecutiveFailures++;
+            if (breaker.state == State.HALF_OPEN || breaker.consecutiveFailures >= failureThreshold)
+            {
+                long openMillis = Math.min(maxOpenMillis, baseOpenMillis << Math.min(breaker.openCount, 16));
+                breaker.openCount++;
+                breaker.state = State.OPEN;
+                breaker.openUntil = System.currentTimeMillis() + openMillis;
+                breaker.probeInFlight = false;
+                logger.warn("源站熔断: {}，连续失败{}次，{}毫秒后探测", breaker.origin, breaker.consecutiveFailures, openMillis);
+            }
+        }
+    }
+
+    /**
+     * 探测任务在得出结论前结束（例如被暂停），让出探测名额
+     */
+    public void releaseProbe(String url)
+    {
+        Breaker breaker = breakers.get(Origins.of(url));
+        if (breaker == null)
+        {
+            return;
+        }
+        synchronized (breaker)
+        {
+            breaker.probeInFlight = false;
+        }
+    }
+
+    /**
+     * 有故障记录的源站数
+     */
+    public int size()
+    {
+        return breakers.size();
+    }
+
+    public State getState(String url)
+    {
+        Breaker breaker = breakers.get(Origins.of(url));
+        if (breaker == null)
+        {
+            return State.CLOSED;
+        }
+        synchronized (breaker)
+        {
+            return breaker.state;
+        }
+    }
+
+    /**
+     * 距离进入半开状态的剩余毫秒数，未熔断时返回0
+     */
+    public long getRemainingOpenMillis(String url)
+    {
+        Breaker breaker = breakers.get(Origins.of(url));
+        if (breaker == null)
+        {
+            return 0;
+        }
+        synchronized (breaker)
+        {
+            return breaker.state == State.OPEN ? Math.max(0, breaker.openUntil - System.currentTimeMillis()) : 0;
+        }
+    }
+
+    /**
+     * 单个源站的熔断状态
+     */
+    private static class Breaker
+    {
+        final String origin;
+        State state = State.CLOSED;
+        int consecutiveFailures;
+        int openCount;
+        long openUntil;
+        boolean probeInFlight;
+
+        Breaker(String origin)
+        {
+            this.origin = origin;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.downloader.core;
+
+import java.net.URI;
+import java.util.Locale;
+
+/**
+ * 源站标识工具 将URL归一化为 scheme://host:port 形式，作为按主机统计的键
+ */
+public final class Origins
+{
+
+    private Origins()
+    {
+    }
+
+    /**
+     * 获取URL对应的源站标识，无法解析时返回原始URL
+     */
+    public static String of(String url)
+    {
+        if (url == null)
+        {
+            return "";
+        }
+        try
+        {
+            URI uri = URI.create(url.trim());
+            String scheme = uri.getScheme() == null ? "http" : uri.getScheme().toLowerCase(Locale.ROOT);
+            String host = uri.getHost();
+            if (host == null)
+            {
+                return url;
+            }
+            int port = uri.getPort();
+            if (port < 0)
+            {
+                port = "https".equals(scheme) ? 443 : 80;
+            }
+            return scheme + "://" + host.toLowerCase(Locale.ROOT) + ":" + port;
+        } catch (IllegalArgumentException e)
+        {
+            return url;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.downloader.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 下载限速器 按字节数计费的令牌桶：每次读取后登记字节数，超出速率时由读取线程自己休眠补齐，不需要后台线程；
+ * 未限速时只读一次volatile字段。允许积累最多 {@link #BURST_NANOS} 的额度，避免短暂停顿后速度低于限制
+ */
+public class RateLimiter
+{
+
+    static final long BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private volatile long bytesPerSecond; // 0表示不限速
+    private long nextFreeNanos; // 已登记的字节按限速全部发送完的时刻
+
+    public RateLimiter()
+    {
+        this(0);
+    }
+
+    public RateLimiter(long bytesPerSecond)
+    {
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        this.nextFreeNanos = System.nanoTime();
+    }
+
+    /**
+     * 登记已读取的字节数，超出速率时阻塞
+     */
+    public void acquire(long bytes) throws InterruptedException
+    {
+        long rate = bytesPerSecond;
+        if (rate <= 0)
+        {
+            return;
+        }
+        long waitNanos;
+        synchronized (this)
+        {
+            long now = System.nanoTime();
+            if (nextFreeNanos < now - BURST_NANOS)
+            {
+                nextFreeNanos = now - BURST_NANOS;
+            }
+            nextFreeNanos += bytes * 1_000_000_000L / rate;
+            waitNanos = nextFreeNanos - now;
+        }
+        if (waitNanos > 0)
+        {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    public long getBytesPerSecond()
+    {
+        return bytesPerSecond;
+    }
+
+    /**
+     * 修改限速，立即对所有使用该限速器的下载生效
+     * @param bytesPerSecond 每秒字节数，0或负数表示不限速
+     */
+    public void setBytesPerSecond(long bytesPerSecond)
+    {
+        synchronized (this)
+        {
+            this.nextFreeNanos = System.nanoTime();
+            this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        }
+    }
+}
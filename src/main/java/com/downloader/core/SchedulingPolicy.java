@@ -0,0 +1,60 @@
+package com.downloader.core;
+
+import com.downloader.model.DownloadSegment;
+import com.downloader.model.DownloadTask;
+
+import java.util.Comparator;
+
+/**
+ * 调度策略 分段划分、连接数、限流退避和等待队列顺序等决策集中在这里，下载器和主机档案只负责执行；
+ * 策略本身不读取时钟、不访问网络，因此同一个策略既能用于真实下载，也能在模拟时钟和模拟链路上离线评估
+ */
+public interface SchedulingPolicy
+{
+
+    /**
+     * 是否分段下载
+     * @param size 文件大小，未知时小于0
+     * @param supportsRanges 服务器是否支持Range
+     */
+    boolean useSegments(long size, boolean supportsRanges);
+
+    /**
+     * 新一次下载的起始连接数
+     * @param requested 任务允许的最大连接数
+     * @param healthyConnections 该主机已学习的健康连接数，0表示未知
+     * @param size 文件大小，未知时小于0
+     * @param connectionBytesPerSecond 该主机实测的单连接速度（字节/秒），0表示未知
+     */
+    int initialConnections(int requested, int healthyConnections, long size, long connectionBytesPerSecond);
+
+    /**
+     * 将文件划分为分段
+     * @param startPosition 已按文件长度续传的字节数
+     */
+    DownloadSegment[] planSegments(long size, long startPosition, int connections);
+
+    /**
+     * 收到429/503后的退避时长（毫秒）
+     * @param consecutiveThrottles 连续限流次数，从1开始
+     * @param retryAfterMillis 服务端Retry-After给出的等待时间，小于0表示未提供
+     */
+    long throttleBackoff(int consecutiveThrottles, long retryAfterMillis);
+
+    /**
+     * 限流后该主机的健康连接数
+     * @param healthyConnections 限流前已学习的健康连接数，0表示未知
+     * @param connectionsInUse 发生限流时正在使用的连接数
+     */
+    int connectionsAfterThrottle(int healthyConnections, int connectionsInUse);
+
+    /**
+     * 单个请求遇到429/503时最多重试的次数
+     */
+    int maxThrottleRetries();
+
+    /**
+     * 等待队列的开始顺序 必须是全序：比较结果为0的两个任务会被当作同一个
+     */
+    Comparator<DownloadTask> waitingOrder();
+}
@@ -0,0 +1,383 @@
+package com.downloader.core;
+
+import com.downloader.model.DownloadTask;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 任务索引 作为监听器接收下载管理器的批量事件，维护状态分桶、主机映射和各排序字段的有序集合，
+ * 查询时从最小的候选集合出发，避免每次过滤都扫描和排序全部任务
+ */
+public class TaskIndex implements DownloadListener
+{
+
+    private static final Comparator<Entry> BY_SEQUENCE = Comparator.comparingLong(e -> e.sequence);
+
+    private final Map<String, Entry> entries;
+    private final Map<DownloadTask.Status, Set<Entry>> statusBuckets;
+    private final Map<String, Set<Entry>> hostBuckets;
+    private final Map<TaskQuery.SortKey, NavigableSet<Entry>> sortedSets;
+    private final ReadWriteLock lock;
+    private final AtomicLong structureVersion;
+
+    public TaskIndex()
+    {
+        this.entries = new HashMap<>();
+        this.statusBuckets = new EnumMap<>(DownloadTask.Status.class);
+        for (DownloadTask.Status status : DownloadTask.Status.values())
+        {
+            statusBuckets.put(status, new HashSet<>());
+        }
+        this.hostBuckets = new HashMap<>();
+        this.sortedSets = new EnumMap<>(TaskQuery.SortKey.class);
+        sortedSets.put(TaskQuery.SortKey.CREATE_TIME, new TreeSet<>(BY_SEQUENCE));
+        sortedSets.put(TaskQuery.SortKey.NAME,
+                new TreeSet<>(Comparator.comparing((Entry e) -> e.name).thenComparing(BY_SEQUENCE)));
+        sortedSets.put(TaskQuery.SortKey.SIZE,
+                new TreeSet<>(Comparator.comparingLong((Entry e) -> e.size).thenComparing(BY_SEQUENCE)));
+        sortedSets.put(TaskQuery.SortKey.STATUS,
+                new TreeSet<>(Comparator.comparingInt((Entry e) -> e.status.ordinal()).thenComparing(BY_SEQUENCE)));
+        this.lock = new ReentrantReadWriteLock();
+        this.structureVersion = new AtomicLong(0);
+    }
+
+    @Override
+    public void onTaskAdded(DownloadTask task)
+    {
+        onTasksAdded(Collections.singletonList(task));
+    }
+
+    @Override
+    public void onTasksAdded(List<DownloadTask> tasks)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            for (DownloadTask task : tasks)
+            {
+                if (!entries.containsKey(task.getId()))
+                {
+                    Entry entry = new Entry(task);
+                    entries.put(task.getId(), entry);
+                    insert(entry);
+                }
+            }
+            structureVersion.incrementAndGet();
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onTaskUpdated(DownloadTask task)
+    {
+        onTasksUpdated(Collections.singletonList(task));
+    }
+
+    /**
+     * 仅当状态、文件名或大小变化时才重新索引，纯进度更新不改动任何集合
+     */
+    @Override
+    public void onTasksUpdated(List<DownloadTask> tasks)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            boolean changed = false;
+            for (DownloadTask task : tasks)
+            {
+                Entry entry = entries.get(task.getId());
+                if (entry == null || !entry.isStale(task))
+                {
+                    continue;
+                }
+                remove(entry);
+                entry.capture(task);
+                insert(entry);
+                changed = true;
+            }
+            if (changed)
+            {
+                structureVersion.incrementAndGet();
+            }
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onTaskRemoved(DownloadTask task)
+    {
+        onTasksRemoved(Collections.singletonList(task));
+    }
+
+    @Override
+    public void onTasksRemoved(List<DownloadTask> tasks)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            for (DownloadTask task : tasks)
+            {
+                Entry entry = entries.remove(task.getId());
+                if (entry != null)
+                {
+                    remove(entry);
+                }
+            }
+            structureVersion.incrementAndGet();
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insert(Entry entry)
+    {
+        statusBuckets.get(entry.status).add(entry);
+        hostBuckets.computeIfAbsent(entry.host, k -> new HashSet<>()).add(entry);
+        for (NavigableSet<Entry> set : sortedSets.values())
+        {
+            set.add(entry);
+        }
+    }
+
+    private void remove(Entry entry)
+    {
+        for (NavigableSet<Entry> set : sortedSets.values())
+        {
+            set.remove(entry);
+        }
+        statusBuckets.get(entry.status).remove(entry);
+        Set<Entry> hostSet = hostBuckets.get(entry.host);
+        if (hostSet != null)
+        {
+            hostSet.remove(entry);
+            if (hostSet.isEmpty())
+            {
+                hostBuckets.remove(entry.host);
+            }
+        }
+    }
+
+    /**
+     * 执行查询 有选择性较强的状态或主机条件时只对候选集合过滤并排序，否则按有序集合顺序遍历并过滤
+     */
+    public List<DownloadTask> query(TaskQuery query)
+    {
+        lock.readLock().lock();
+        try
+        {
+            Collection<Entry> candidates = null;
+            if (query.getStatuses() != null)
+            {
+                List<Entry> byStatus = new ArrayList<>();
+                for (DownloadTask.Status status : query.getStatuses())
+                {
+                    byStatus.addAll(statusBuckets.get(status));
+                }
+                candidates = byStatus;
+            }
+            if (query.getHost() != null)
+            {
+                Set<Entry> byHost = hostBuckets.getOrDefault(query.getHost(), Collections.emptySet());
+                if (candidates == null || byHost.size() < candidates.size())
+                {
+                    candidates = byHost;
+                }
+            }
+
+            NavigableSet<Entry> ordered = sortedSets.get(query.getSortKey());
+            if (query.getSortKey() == TaskQuery.SortKey.SIZE && (query.getMinSize() >= 0 || query.getMaxSize() >= 0))
+            {
+                long min = Math.max(0, query.getMinSize());
+                long max = query.getMaxSize() >= 0 ? query.getMaxSize() : Long.MAX_VALUE;
+                if (min > max)
+                {
+                    return new ArrayList<>();
+                }
+                ordered = ordered.subSet(Entry.sizeBound(min, Long.MIN_VALUE), true,
+                        Entry.sizeBound(max, Long.MAX_VALUE), true);
+            }
+            if (query.isDescending())
+            {
+                ordered = ordered.descendingSet();
+            }
+
+            List<DownloadTask> result = new ArrayList<>();
+            if (candidates != null && candidates.size() * 4L < entries.size())
+            {
+                List<Entry> matched = new ArrayList<>();
+                for (Entry entry : candidates)
+                {
+                    if (matches(entry, query))
+                    {
+                        matched.add(entry);
+                    }
+                }
+                matched.sort(ordered.comparator());
+                for (Entry entry : matched)
+                {
+                    result.add(entry.task);
+                }
+            } else
+            {
+                for (Entry entry : ordered)
+                {
+                    if (matches(entry, query))
+                    {
+                        result.add(entry.task);
+                    }
+                }
+            }
+            return result;
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static boolean matches(Entry entry, TaskQuery query)
+    {
+        if (query.getStatuses() != null && !query.getStatuses().contains(entry.status))
+        {
+            return false;
+        }
+        if (query.getHost() != null && !query.getHost().equals(entry.host))
+        {
+            return false;
+        }
+        if (query.getMinSize() >= 0 && entry.size < query.getMinSize())
+        {
+            return false;
+        }
+        if (query.getMaxSize() >= 0 && entry.size > query.getMaxSize())
+        {
+            return false;
+        }
+        return query.getNameContains() == null || entry.name.contains(query.getNameContains());
+    }
+
+    /**
+     * 按状态统计任务数
+     */
+    public int countByStatus(DownloadTask.Status status)
+    {
+        lock.readLock().lock();
+        try
+        {
+            return statusBuckets.get(status).size();
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 当前出现过的全部主机
+     */
+    public List<String> getHosts()
+    {
+        lock.readLock().lock();
+        try
+        {
+            List<String> hosts = new ArrayList<>(hostBuckets.keySet());
+            Collections.sort(hosts);
+            return hosts;
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return entries.size();
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 结构版本号 任务增删或状态、文件名、大小变化时递增，过滤结果可能因此改变
+     */
+    public long getStructureVersion()
+    {
+        return structureVersion.get();
+    }
+
+    /**
+     * 从URL中提取小写主机名
+     */
+    static String hostOf(String url)
+    {
+        try
+        {
+            String host = URI.create(url.trim()).getHost();
+            return host == null ? "" : host.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e)
+        {
+            return "";
+        }
+    }
+
+    /**
+     * 索引条目 保存建立索引时的键值，任务变化后先按旧键移除再按新键插入
+     */
+    private static class Entry
+    {
+        final DownloadTask task;
+        final long sequence;
+        final String host;
+        DownloadTask.Status status;
+        String fileName;
+        String name; // 小写文件名
+        long size;
+
+        Entry(DownloadTask task)
+        {
+            this.task = task;
+            this.sequence = task.getSequence();
+            this.host = hostOf(task.getUrl());
+            capture(task);
+        }
+
+        private Entry(long size, long sequence)
+        {
+            this.task = null;
+            this.sequence = sequence;
+            this.host = "";
+            this.status = DownloadTask.Status.WAITING;
+            this.name = "";
+            this.size = size;
+        }
+
+        static Entry sizeBound(long size, long sequence)
+        {
+            return new Entry(size, sequence);
+        }
+
+        boolean isStale(DownloadTask task)
+        {
+            return status != task.getStatus() || size != task.getTotalSize() || !fileName.equals(task.getFileName());
+        }
+
+        void capture(DownloadTask task)
+        {
+            this.status = task.getStatus();
+            this.fileName = task.getFileName();
+            this.name = fileName.toLowerCase(Locale.ROOT);
+            this.size = task.getTotalSize();
+        }
+    }
+}
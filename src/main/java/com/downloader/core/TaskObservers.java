@@ -0,0 +1,294 @@
+package com.downloader.core;
+
+import com.downloader.model.DownloadProgress;
+import com.downloader.model.DownloadTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 单个任务的观察者 作为监听器接收合并后的事件，转发给等待该任务结束的Future和进度订阅者。
+ * 只为有人观察的任务保存状态，任务结束或删除后立即清理；回调都在执行器中运行，不占用事件分发线程
+ */
+class TaskObservers implements DownloadListener
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskObservers.class);
+
+    private final Executor executor;
+    private final Map<String, Observers> observers = new ConcurrentHashMap<>();
+
+    TaskObservers(Executor executor)
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * 返回任务结束时完成的Future 完成时得到任务本身；下载失败时以 {@link DownloadFailedException} 异常完成，
+     * 任务被取消或删除时Future被取消。取消返回的Future只是不再等待，不影响下载
+     */
+    CompletableFuture<DownloadTask> completion(DownloadTask task)
+    {
+        CompletableFuture<DownloadTask> future = new CompletableFuture<>();
+        observers.computeIfAbsent(task.getId(), id -> new Observers()).futures.add(future);
+        future.whenComplete((result, error) -> unregister(task.getId(), future));
+        // 登记之后再检查当前状态，不会漏掉登记之前已经结束的任务
+        complete(future, task, task.getStatus());
+        return future;
+    }
+
+    /**
+     * 为任务添加进度订阅者 订阅后立即收到当前状态；任务结束后在发送最终状态之后收到onComplete，
+     * 任务被删除时直接收到onComplete；任务不存在时收到onError
+     */
+    void subscribe(String taskId, DownloadTask task, Flow.Subscriber<? super DownloadProgress> subscriber)
+    {
+        if (task == null)
+        {
+            subscriber.onSubscribe(new Flow.Subscription()
+            {
+                @Override
+                public void request(long n)
+                {
+                }
+
+                @Override
+                public void cancel()
+                {
+                }
+            });
+            subscriber.onError(new IllegalArgumentException("任务不存在: " + taskId));
+            return;
+        }
+        ProgressSubscription subscription = new ProgressSubscription(task.getId(), subscriber);
+        subscriber.onSubscribe(subscription);
+        observers.computeIfAbsent(task.getId(), id -> new Observers()).subscriptions.add(subscription);
+        subscription.offer(DownloadProgress.of(task));
+    }
+
+    /**
+     * 当前有观察者的任务数
+     */
+    int size()
+    {
+        return observers.size();
+    }
+
+    @Override
+    public void onTaskAdded(DownloadTask task)
+    {
+        onTaskUpdated(task);
+    }
+
+    @Override
+    public void onTaskUpdated(DownloadTask task)
+    {
+        Observers entry = observers.get(task.getId());
+        if (entry == null)
+        {
+            return;
+        }
+        DownloadTask.Status status = task.getStatus();
+        for (CompletableFuture<DownloadTask> future : entry.futures)
+        {
+            complete(future, task, status);
+        }
+        if (!entry.subscriptions.isEmpty())
+        {
+            DownloadProgress progress = DownloadProgress.of(task);
+            for (ProgressSubscription subscription : entry.subscriptions)
+            {
+                subscription.offer(progress);
+            }
+        }
+    }
+
+    @Override
+    public void onTaskRemoved(DownloadTask task)
+    {
+        Observers entry = observers.remove(task.getId());
+        if (entry == null)
+        {
+            return;
+        }
+        for (CompletableFuture<DownloadTask> future : entry.futures)
+        {
+            // 归档的任务已经结束，Future通常已完成，此时cancel不起作用
+            execute(() -> future.cancel(false));
+        }
+        for (ProgressSubscription subscription : entry.subscriptions)
+        {
+            subscription.complete();
+        }
+    }
+
+    private void complete(CompletableFuture<DownloadTask> future, DownloadTask task, DownloadTask.Status status)
+    {
+        // 依赖Future的回调在完成它的线程上执行，放到执行器中避免占用事件分发线程
+        switch (status)
+        {
+        case COMPLETED:
+            execute(() -> future.complete(task));
+            break;
+        case ERROR:
+            execute(() -> future.completeExceptionally(new DownloadFailedException(task)));
+            break;
+        case CANCELLED:
+            execute(() -> future.cancel(false));
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void unregister(String taskId, Object observer)
+    {
+        observers.computeIfPresent(taskId, (id, entry) -> {
+            entry.futures.remove(observer);
+            entry.subscriptions.remove(observer);
+            return entry.futures.isEmpty() && entry.subscriptions.isEmpty() ? null : entry;
+        });
+    }
+
+    private void execute(Runnable action)
+    {
+        try
+        {
+            executor.execute(action);
+        } catch (RejectedExecutionException e)
+        {
+            // 下载管理器已关闭，直接在当前线程执行
+            action.run();
+        }
+    }
+
+    private static class Observers
+    {
+        final List<CompletableFuture<DownloadTask>> futures = new CopyOnWriteArrayList<>();
+        final List<ProgressSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * 合并式订阅 只保留最新的一个快照，订阅者处理慢时中间状态被覆盖而不是排队，内存占用与事件数量无关。
+     * 投递由工作计数串行化，同一时刻只有一个线程调用订阅者
+     */
+    private class ProgressSubscription implements Flow.Subscription
+    {
+
+        private final String taskId;
+        private final Flow.Subscriber<? super DownloadProgress> subscriber;
+        private final AtomicReference<DownloadProgress> latest = new AtomicReference<>();
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+        private volatile boolean completing; // 送出最后一个快照后结束
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+
+        ProgressSubscription(String taskId, Flow.Subscriber<? super DownloadProgress> subscriber)
+        {
+            this.taskId = taskId;
+            this.subscriber = subscriber;
+        }
+
+        void offer(DownloadProgress progress)
+        {
+            if (completing)
+            {
+                return;
+            }
+            latest.set(progress);
+            if (progress.getStatus().isTerminal())
+            {
+                completing = true;
+            }
+            schedule();
+        }
+
+        void complete()
+        {
+            completing = true;
+            schedule();
+        }
+
+        @Override
+        public void request(long n)
+        {
+            if (n <= 0)
+            {
+                invalidRequest = new IllegalArgumentException("请求数量必须大于0: " + n);
+            } else
+            {
+                demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+            unregister(taskId, this);
+        }
+
+        private void schedule()
+        {
+            if (work.getAndIncrement() == 0)
+            {
+                execute(this::drain);
+            }
+        }
+
+        private void drain()
+        {
+            int missed = 1;
+            do
+            {
+                if (cancelled)
+                {
+                    return;
+                }
+                if (invalidRequest != null)
+                {
+                    cancel();
+                    subscriber.onError(invalidRequest);
+                    return;
+                }
+                if (demand.get() > 0)
+                {
+                    DownloadProgress progress = latest.getAndSet(null);
+                    if (progress != null)
+                    {
+                        demand.decrementAndGet();
+                        try
+                        {
+                            subscriber.onNext(progress);
+                        } catch (RuntimeException e)
+                        {
+                            logger.warn("进度订阅者处理失败，已取消订阅: {}", e.getMessage(), e);
+                            cancel();
+                            return;
+                        }
+                    }
+                }
+                if (completing && latest.get() == null)
+                {
+                    cancel();
+                    subscriber.onComplete();
+                    return;
+                }
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.downloader.core;
+
+import com.downloader.metrics.DownloadMetrics;
+import com.downloader.model.DownloadTask;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 等待任务预取 对即将开始的若干个等待任务提前解析域名、探测文件信息，探测请求同时在共享连接池中留下可复用的连接，
+ * 任务获得名额后可直接开始传输；预取使用独立的少量线程，不占用下载名额
+ */
+public class TaskPrefetcher
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskPrefetcher.class);
+    private static final int PREFETCH_THREADS = 2;
+
+    private final HostProfileRegistry hostProfiles;
+    private final OriginCircuitBreaker circuitBreaker;
+    private final CloseableHttpClient httpClient;
+    private final DownloadMetrics metrics;
+    private final Consumer<DownloadTask> onPrefetched;
+    private final Set<String> inFlight;
+    private final ExecutorService executor;
+    private volatile int depth;
+
+    /**
+     * @param depth 预取的等待任务数，0表示不预取
+     * @param onPrefetched 预取成功后回调（例如通知界面显示文件大小）
+     */
+    public TaskPrefetcher(HostProfileRegistry hostProfiles, OriginCircuitBreaker circuitBreaker,
+            CloseableHttpClient httpClient, DownloadMetrics metrics, int depth, Consumer<DownloadTask> onPrefetched)
+    {
+        this.hostProfiles = hostProfiles;
+        this.circuitBreaker = circuitBreaker;
+        this.httpClient = httpClient;
+        this.metrics = metrics;
+        this.depth = depth;
+        this.onPrefetched = onPrefetched;
+        this.inFlight = ConcurrentHashMap.newKeySet();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(PREFETCH_THREADS, PREFETCH_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "DownloadManager-prefetch");
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+    }
+
+    /**
+     * 预取等待队列最前面的若干个任务 已有新鲜文件信息、正在预取或源站不可用的任务跳过
+     * @param waiting 按开始顺序排列的等待任务
+     */
+    public void prefetch(Iterable<DownloadTask> waiting)
+    {
+        int remaining = depth;
+        for (DownloadTask task : waiting)
+        {
+            if (remaining-- <= 0)
+            {
+                break;
+            }
+            if (task.getStatus() != DownloadTask.Status.WAITING)
+            {
+                continue;
+            }
+            if (task.getRemoteFileInfo() != null
+                    && task.getRemoteFileInfo().isFresh(MultiThreadDownloader.PREFETCH_MAX_AGE / 2))
+            {
+                continue;
+            }
+            if (task.getSegments() != null)
+            {
+                // 有分段进度的任务续传时使用保存的校验值，由续传请求的If-Range检测远程变化
+                continue;
+            }
+            if (!circuitBreaker.isAttemptPermitted(task.getUrl())
+                    || hostProfiles.getBackoffRemaining(task.getUrl()) > 0)
+            {
+                continue;
+            }
+            if (!inFlight.add(task.getId()))
+            {
+                continue;
+            }
+            try
+            {
+                executor.execute(() -> run(task));
+            } catch (RejectedExecutionException e)
+            {
+                inFlight.remove(task.getId());
+                return;
+            }
+        }
+    }
+
+    private void run(DownloadTask task)
+    {
+        try
+        {
+            if (task.getStatus() != DownloadTask.Status.WAITING)
+            {
+                return;
+            }
+            MultiThreadDownloader probe = new MultiThreadDownloader(task, new DownloadCallback() {
+                @Override
+                public void onProgress(DownloadTask task, long downloadedBytes, long totalBytes, long speed)
+                {
+                }
+
+                @Override
+                public void onCompleted(DownloadTask task)
+                {
+                }
+
+                @Override
+                public void onError(DownloadTask task, String error)
+                {
+                }
+            }, hostProfiles, httpClient, metrics);
+            if (probe.prefetchFileInfo())
+            {
+                logger.debug("已预取文件信息: {}", task.getFileName());
+                onPrefetched.accept(task);
+            }
+        } catch (Exception e)
+        {
+            logger.debug("预取文件信息失败: {} - {}", task.getFileName(), e.getMessage());
+        } finally
+        {
+            inFlight.remove(task.getId());
+        }
+    }
+
+    /**
+     * 正在预取的任务数
+     */
+    public int getInFlightCount()
+    {
+        return inFlight.size();
+    }
+
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    public void setDepth(int depth)
+    {
+        this.depth = Math.max(0, depth);
+    }
+
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+}
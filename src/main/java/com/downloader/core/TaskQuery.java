@@ -0,0 +1,124 @@
+package com.downloader.core;
+
+import com.downloader.model.DownloadTask;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 任务查询条件 按状态、主机、文件名子串和大小范围过滤，并按指定字段排序
+ */
+public class TaskQuery
+{
+
+    public enum SortKey {
+        CREATE_TIME("创建时间"), NAME("文件名"), SIZE("大小"), STATUS("状态");
+
+        private final String displayName;
+
+        SortKey(String displayName)
+        {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName()
+        {
+            return displayName;
+        }
+
+        @Override
+        public String toString()
+        {
+            return displayName;
+        }
+    }
+
+    private Set<DownloadTask.Status> statuses; // null 表示不限
+    private String host; // null 表示不限
+    private String nameContains; // null 表示不限
+    private long minSize = -1; // 小于0表示不限
+    private long maxSize = -1; // 小于0表示不限
+    private SortKey sortKey = SortKey.CREATE_TIME;
+    private boolean descending;
+
+    /**
+     * 是否为默认查询（不过滤，按创建时间升序）
+     */
+    public boolean isDefault()
+    {
+        return statuses == null && host == null && nameContains == null && minSize < 0 && maxSize < 0
+                && sortKey == SortKey.CREATE_TIME && !descending;
+    }
+
+    public Set<DownloadTask.Status> getStatuses()
+    {
+        return statuses;
+    }
+
+    public void setStatuses(Set<DownloadTask.Status> statuses)
+    {
+        this.statuses = statuses == null || statuses.isEmpty() ? null : EnumSet.copyOf(statuses);
+    }
+
+    public String getHost()
+    {
+        return host;
+    }
+
+    public void setHost(String host)
+    {
+        this.host = host == null || host.trim().isEmpty() ? null : host.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public String getNameContains()
+    {
+        return nameContains;
+    }
+
+    public void setNameContains(String nameContains)
+    {
+        this.nameContains = nameContains == null || nameContains.isEmpty() ? null
+                : nameContains.toLowerCase(Locale.ROOT);
+    }
+
+    public long getMinSize()
+    {
+        return minSize;
+    }
+
+    public void setMinSize(long minSize)
+    {
+        this.minSize = minSize;
+    }
+
+    public long getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public void setMaxSize(long maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    public SortKey getSortKey()
+    {
+        return sortKey;
+    }
+
+    public void setSortKey(SortKey sortKey)
+    {
+        this.sortKey = sortKey == null ? SortKey.CREATE_TIME : sortKey;
+    }
+
+    public boolean isDescending()
+    {
+        return descending;
+    }
+
+    public void setDescending(boolean descending)
+    {
+        this.descending = descending;
+    }
+}
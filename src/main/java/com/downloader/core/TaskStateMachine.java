@@ -0,0 +1,120 @@
+package com.downloader.core;
+
+import com.downloader.model.DownloadTask;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * 任务状态机 所有状态变化都通过CAS完成，并负责下载名额的计数：
+ * 只有成功进入下载中的任务才占用名额，只有成功离开下载中的那一次转换才释放名额，
+ * 暂停与完成等回调并发到达时名额也只会释放一次
+ */
+public class TaskStateMachine
+{
+
+    private final AtomicInteger activeCount;
+    private final IntSupplier limit;
+
+    /**
+     * @param limit 并发下载上限，每次占用名额时读取
+     */
+    public TaskStateMachine(IntSupplier limit)
+    {
+        this.activeCount = new AtomicInteger(0);
+        this.limit = limit;
+    }
+
+    /**
+     * 占用一个名额并将任务转为下载中
+     * @return 名额已满、任务已在下载或当前状态不能开始下载时返回false
+     */
+    public boolean tryStart(DownloadTask task)
+    {
+        while (true)
+        {
+            DownloadTask.Status current = task.getStatus();
+            if (!current.canTransitionTo(DownloadTask.Status.DOWNLOADING))
+            {
+                return false;
+            }
+            if (!tryReserveSlot())
+            {
+                return false;
+            }
+            if (task.compareAndSetStatus(current, DownloadTask.Status.DOWNLOADING))
+            {
+                return true;
+            }
+            // 状态被并发修改，归还名额后重试
+            activeCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * 将下载中的任务转为结束、暂停等状态并释放名额
+     * @return 任务已不在下载中（例如已被暂停或已完成）时返回false，此时不释放名额
+     */
+    public boolean finish(DownloadTask task, DownloadTask.Status next)
+    {
+        if (task.compareAndSetStatus(DownloadTask.Status.DOWNLOADING, next))
+        {
+            activeCount.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 转换不在下载中的任务的状态，不涉及名额
+     * @return 任务已处于目标状态时返回true；任务在下载中或转换不合法时返回false
+     */
+    public boolean moveTo(DownloadTask task, DownloadTask.Status next)
+    {
+        while (true)
+        {
+            DownloadTask.Status current = task.getStatus();
+            if (current == next)
+            {
+                return true;
+            }
+            if (current == DownloadTask.Status.DOWNLOADING || !current.canTransitionTo(next))
+            {
+                return false;
+            }
+            if (task.compareAndSetStatus(current, next))
+            {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 是否还有空闲名额
+     */
+    public boolean hasFreeSlot()
+    {
+        return activeCount.get() < limit.getAsInt();
+    }
+
+    public int getActiveCount()
+    {
+        return activeCount.get();
+    }
+
+    private boolean tryReserveSlot()
+    {
+        while (true)
+        {
+            int active = activeCount.get();
+            if (active >= limit.getAsInt())
+            {
+                return false;
+            }
+            if (activeCount.compareAndSet(active, active + 1))
+            {
+                return true;
+            }
+        }
+    }
+}
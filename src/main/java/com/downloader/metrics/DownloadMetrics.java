@@ -0,0 +1,480 @@
+package com.downloader.metrics;
+
+import com.downloader.core.Origins;
+import com.downloader.model.DownloadTask;
+import com.downloader.model.SpeedEstimator;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * 下载指标 计数器使用LongAdder、直方图按桶计数，下载线程上的记录操作无锁；
+ * 速度、连接数、队列长度等瞬时值在读取时才从任务、连接池和队列计算
+ */
+public class DownloadMetrics implements DownloadMetricsMXBean
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(DownloadMetrics.class);
+    private static final AtomicInteger INSTANCES = new AtomicInteger(0);
+
+    private final LongAdder bytesDownloaded = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final AtomicInteger activeSegments = new AtomicInteger(0);
+    private final Map<String, LongAdder> originBytes = new ConcurrentHashMap<>();
+    private final Histogram timeToFirstByte = Histogram.forRequests();
+    private final Histogram connect = Histogram.forRequests();
+    private final Histogram queueWait = Histogram.forQueueWait();
+    private final Histogram diskWrite = Histogram.forDiskWrites();
+    private final ResourceMonitor resources = new ResourceMonitor();
+
+    private volatile Iterable<DownloadTask> activeTasks = Collections.emptyList();
+    private volatile IntSupplier activeCount = () -> 0;
+    private volatile LongSupplier queueDepth = () -> 0;
+    private volatile PoolingHttpClientConnectionManager connectionPool;
+    private ObjectName objectName;
+
+    /**
+     * 绑定瞬时值的数据来源
+     * @param activeTasks 正在下载的任务，用于计算速度，每次读取时重新遍历
+     * @param activeCount 下载中的任务数
+     * @param queueDepth 等待中的任务数
+     * @param connectionPool 共享连接池，可为null
+     */
+    public void bind(Iterable<DownloadTask> activeTasks, IntSupplier activeCount, LongSupplier queueDepth,
+            PoolingHttpClientConnectionManager connectionPool)
+    {
+        this.activeTasks = activeTasks;
+        this.activeCount = activeCount;
+        this.queueDepth = queueDepth;
+        this.connectionPool = connectionPool;
+    }
+
+    // ---- 记录（下载线程调用） ----
+
+    /**
+     * 获取某个源站的字节计数器 下载线程应在开始时取得一次并持有，之后直接累加
+     */
+    public LongAdder originCounter(String origin)
+    {
+        return originBytes.computeIfAbsent(origin, k -> new LongAdder());
+    }
+
+    public void recordBytes(LongAdder originCounter, long bytes)
+    {
+        bytesDownloaded.add(bytes);
+        originCounter.add(bytes);
+    }
+
+    public void recordRequest(long timeToFirstByteNanos)
+    {
+        requests.increment();
+        timeToFirstByte.record(timeToFirstByteNanos);
+    }
+
+    public void recordRetry()
+    {
+        retries.increment();
+    }
+
+    public void recordConnect(long nanos)
+    {
+        connect.record(nanos);
+    }
+
+    public void recordQueueWait(long millis)
+    {
+        queueWait.record(Math.max(0, millis) * 1_000_000L);
+    }
+
+    public void recordDiskWrite(long nanos)
+    {
+        diskWrite.record(nanos);
+    }
+
+    public void segmentStarted()
+    {
+        activeSegments.incrementAndGet();
+    }
+
+    public void segmentFinished()
+    {
+        activeSegments.decrementAndGet();
+    }
+
+    // ---- 读取 ----
+
+    @Override
+    public long getBytesDownloaded()
+    {
+        return bytesDownloaded.sum();
+    }
+
+    @Override
+    public long getBytesPerSecond()
+    {
+        long total = 0;
+        for (DownloadTask task : activeTasks)
+        {
+            if (task.getStatus() == DownloadTask.Status.DOWNLOADING)
+            {
+                total += speedOf(task);
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public Map<String, Long> getOriginBytesPerSecond()
+    {
+        return speeds().byOrigin;
+    }
+
+    @Override
+    public Map<String, Long> getTaskBytesPerSecond()
+    {
+        return speeds().byTask;
+    }
+
+    /**
+     * 遍历一次正在下载的任务，同时得到总速度、各源站速度和各任务速度
+     */
+    private Speeds speeds()
+    {
+        Speeds speeds = new Speeds();
+        for (DownloadTask task : activeTasks)
+        {
+            if (task.getStatus() != DownloadTask.Status.DOWNLOADING)
+            {
+                continue;
+            }
+            long speed = speedOf(task);
+            speeds.total += speed;
+            speeds.byOrigin.merge(Origins.of(task.getUrl()), speed, Long::sum);
+            speeds.byTask.put(task.getId(), speed);
+        }
+        return speeds;
+    }
+
+    /**
+     * 各源站累计下载字节数
+     */
+    public Map<String, Long> getOriginBytes()
+    {
+        Map<String, Long> result = new TreeMap<>();
+        originBytes.forEach((origin, adder) -> result.put(origin, adder.sum()));
+        return result;
+    }
+
+    @Override
+    public int getActiveDownloads()
+    {
+        return activeCount.getAsInt();
+    }
+
+    @Override
+    public int getActiveSegments()
+    {
+        return activeSegments.get();
+    }
+
+    @Override
+    public int getLeasedConnections()
+    {
+        PoolStats stats = poolStats();
+        return stats == null ? 0 : stats.getLeased();
+    }
+
+    @Override
+    public int getAvailableConnections()
+    {
+        PoolStats stats = poolStats();
+        return stats == null ? 0 : stats.getAvailable();
+    }
+
+    @Override
+    public long getQueueDepth()
+    {
+        return queueDepth.getAsLong();
+    }
+
+    @Override
+    public long getRequests()
+    {
+        return requests.sum();
+    }
+
+    @Override
+    public long getRetries()
+    {
+        return retries.sum();
+    }
+
+    @Override
+    public double getTimeToFirstByteMeanMillis()
+    {
+        return timeToFirstByte.getMeanMillis();
+    }
+
+    @Override
+    public double getTimeToFirstByteP95Millis()
+    {
+        return timeToFirstByte.getPercentileMillis(0.95);
+    }
+
+    @Override
+    public double getConnectMeanMillis()
+    {
+        return connect.getMeanMillis();
+    }
+
+    @Override
+    public double getConnectP95Millis()
+    {
+        return connect.getPercentileMillis(0.95);
+    }
+
+    @Override
+    public double getQueueWaitMeanMillis()
+    {
+        return queueWait.getMeanMillis();
+    }
+
+    @Override
+    public double getDiskWriteMeanMillis()
+    {
+        return diskWrite.getMeanMillis();
+    }
+
+    @Override
+    public double getDiskWriteP99Millis()
+    {
+        return diskWrite.getPercentileMillis(0.99);
+    }
+
+    @Override
+    public int getLiveThreads()
+    {
+        return resources.getLiveThreads();
+    }
+
+    @Override
+    public Map<String, Integer> getThreadsByPool()
+    {
+        return resources.getThreadsByPool();
+    }
+
+    @Override
+    public long getOpenFileDescriptors()
+    {
+        return resources.getOpenFileDescriptors();
+    }
+
+    @Override
+    public long getOpenSockets()
+    {
+        return resources.getOpenSockets();
+    }
+
+    @Override
+    public long getDirectBufferBytes()
+    {
+        return resources.getDirectBufferBytes();
+    }
+
+    @Override
+    public Map<String, Integer> getCollectionSizes()
+    {
+        return resources.getCollectionSizes();
+    }
+
+    /**
+     * 资源监控，用于登记需要监控大小的任务表
+     */
+    public ResourceMonitor getResources()
+    {
+        return resources;
+    }
+
+    private PoolStats poolStats()
+    {
+        PoolingHttpClientConnectionManager pool = connectionPool;
+        return pool == null ? null : pool.getTotalStats();
+    }
+
+    private static long speedOf(DownloadTask task)
+    {
+        SpeedEstimator estimator = task.getSpeedEstimator();
+        return estimator != null ? estimator.getSpeed() : task.getSpeed();
+    }
+
+    // ---- 导出 ----
+
+    /**
+     * 以Prometheus文本格式输出全部指标
+     */
+    public String toPrometheus()
+    {
+        StringBuilder sb = new StringBuilder(4096);
+        counter(sb, "downloader_bytes_total", "累计下载字节数", getBytesDownloaded());
+        sb.append("# HELP downloader_origin_bytes_total 各源站累计下载字节数\n");
+        sb.append("# TYPE downloader_origin_bytes_total counter\n");
+        getOriginBytes().forEach((origin, bytes) -> sample(sb, "downloader_origin_bytes_total", "origin", origin, bytes));
+        Speeds speeds = speeds();
+        gauge(sb, "downloader_bytes_per_second", "当前总下载速度", speeds.total);
+        sb.append("# HELP downloader_origin_bytes_per_second 各源站当前下载速度\n");
+        sb.append("# TYPE downloader_origin_bytes_per_second gauge\n");
+        speeds.byOrigin.forEach(
+                (origin, speed) -> sample(sb, "downloader_origin_bytes_per_second", "origin", origin, speed));
+        sb.append("# HELP downloader_task_bytes_per_second 各下载中任务的当前速度\n");
+        sb.append("# TYPE downloader_task_bytes_per_second gauge\n");
+        speeds.byTask.forEach((id, speed) -> sample(sb, "downloader_task_bytes_per_second", "task", id, speed));
+        gauge(sb, "downloader_active_downloads", "下载中的任务数", getActiveDownloads());
+        gauge(sb, "downloader_active_segments", "正在传输的分段数", getActiveSegments());
+        gauge(sb, "downloader_connections_leased", "连接池中使用中的连接数", getLeasedConnections());
+        gauge(sb, "downloader_connections_available", "连接池中空闲的连接数", getAvailableConnections());
+        gauge(sb, "downloader_queue_depth", "等待中的任务数", getQueueDepth());
+        counter(sb, "downloader_requests_total", "发出的HTTP请求数", getRequests());
+        counter(sb, "downloader_retries_total", "因限流（429/503）重试的次数", getRetries());
+        histogram(sb, "downloader_time_to_first_byte_seconds", "请求发出到收到响应头的耗时", timeToFirstByte);
+        histogram(sb, "downloader_connect_seconds", "建立连接的耗时（含TLS握手）", connect);
+        histogram(sb, "downloader_queue_wait_seconds", "任务从进入等待到开始下载的时间", queueWait);
+        histogram(sb, "downloader_disk_write_seconds", "单次写入临时文件的耗时", diskWrite);
+        ResourceMonitor.Snapshot snapshot = resources.snapshot();
+        sb.append("# HELP downloader_threads 各线程池的存活线程数\n");
+        sb.append("# TYPE downloader_threads gauge\n");
+        snapshot.getThreadsByPool().forEach((pool, count) -> sample(sb, "downloader_threads", "pool", pool, count));
+        gauge(sb, "downloader_open_file_descriptors", "打开的文件描述符数", snapshot.getOpenFileDescriptors());
+        gauge(sb, "downloader_open_sockets", "打开的套接字数", snapshot.getOpenSockets());
+        gauge(sb, "downloader_direct_buffer_bytes", "直接内存缓冲区占用的字节数", snapshot.getDirectBufferBytes());
+        sb.append("# HELP downloader_collection_size 任务表等内部集合的大小\n");
+        sb.append("# TYPE downloader_collection_size gauge\n");
+        snapshot.getCollectionSizes().forEach(
+                (name, size) -> sample(sb, "downloader_collection_size", "name", name, size));
+        return sb.toString();
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, long value)
+    {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" counter\n");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help, long value)
+    {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" gauge\n");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, String label, String labelValue, long value)
+    {
+        sb.append(name).append('{').append(label).append("=\"");
+        escapeLabel(sb, labelValue);
+        sb.append("\"} ").append(value).append('\n');
+    }
+
+    private static void histogram(StringBuilder sb, String name, String help, Histogram histogram)
+    {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" histogram\n");
+        long[] bounds = histogram.getBounds();
+        long[] counts = histogram.snapshot();
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++)
+        {
+            cumulative += counts[i];
+            sb.append(name).append("_bucket{le=\"").append(bounds[i] / 1e9).append("\"} ").append(cumulative)
+                    .append('\n');
+        }
+        cumulative += counts[bounds.length];
+        sb.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        sb.append(name).append("_sum ").append(histogram.getSum() / 1e9).append('\n');
+        sb.append(name).append("_count ").append(cumulative).append('\n');
+    }
+
+    private static void escapeLabel(StringBuilder sb, String value)
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"')
+            {
+                sb.append('\\').append(c);
+            } else if (c == '\n')
+            {
+                sb.append("\\n");
+            } else
+            {
+                sb.append(c);
+            }
+        }
+    }
+
+    // ---- JMX ----
+
+    /**
+     * 注册到平台MBeanServer，同一进程中有多个下载管理器时按序号区分
+     */
+    public synchronized void registerMBean()
+    {
+        if (objectName != null)
+        {
+            return;
+        }
+        try
+        {
+            ObjectName name = new ObjectName(
+                    "com.downloader:type=DownloadMetrics,name=manager-" + INSTANCES.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        } catch (Exception e)
+        {
+            logger.warn("注册下载指标MBean失败: {}", e.getMessage());
+        }
+    }
+
+    public synchronized void unregisterMBean()
+    {
+        if (objectName == null)
+        {
+            return;
+        }
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e)
+        {
+            logger.debug("注销下载指标MBean失败: {}", e.getMessage());
+        }
+        objectName = null;
+    }
+
+    public synchronized ObjectName getObjectName()
+    {
+        return objectName;
+    }
+
+    /**
+     * 一次遍历得到的速度
+     */
+    private static class Speeds
+    {
+        long total;
+        final Map<String, Long> byOrigin = new TreeMap<>();
+        final Map<String, Long> byTask = new TreeMap<>();
+    }
+}
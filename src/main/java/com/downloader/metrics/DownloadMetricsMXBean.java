@@ -0,0 +1,58 @@
+package com.downloader.metrics;
+
+import java.util.Map;
+
+/**
+ * 下载指标的JMX接口
+ */
+public interface DownloadMetricsMXBean
+{
+
+    long getBytesDownloaded();
+
+    long getBytesPerSecond();
+
+    Map<String, Long> getOriginBytesPerSecond();
+
+    Map<String, Long> getTaskBytesPerSecond();
+
+    int getActiveDownloads();
+
+    int getActiveSegments();
+
+    int getLeasedConnections();
+
+    int getAvailableConnections();
+
+    long getQueueDepth();
+
+    long getRequests();
+
+    long getRetries();
+
+    double getTimeToFirstByteMeanMillis();
+
+    double getTimeToFirstByteP95Millis();
+
+    double getConnectMeanMillis();
+
+    double getConnectP95Millis();
+
+    double getQueueWaitMeanMillis();
+
+    double getDiskWriteMeanMillis();
+
+    double getDiskWriteP99Millis();
+
+    int getLiveThreads();
+
+    Map<String, Integer> getThreadsByPool();
+
+    long getOpenFileDescriptors();
+
+    long getOpenSockets();
+
+    long getDirectBufferBytes();
+
+    Map<String, Integer> getCollectionSizes();
+}
@@ -0,0 +1,147 @@
+package com.downloader.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 直方图 固定的桶边界（纳秒），每个桶使用LongAdder计数，记录时无锁、不分配对象
+ */
+public class Histogram
+{
+
+    private final long[] bounds; // 各桶上界（包含），升序
+    private final LongAdder[] buckets; // 比bounds多一个，最后一个桶对应+Inf
+    private final LongAdder sum;
+    private final LongAdder count;
+
+    /**
+     * @param boundsNanos 各桶上界（纳秒），升序
+     */
+    public Histogram(long... boundsNanos)
+    {
+        this.bounds = boundsNanos.clone();
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++)
+        {
+            buckets[i] = new LongAdder();
+        }
+        this.sum = new LongAdder();
+        this.count = new LongAdder();
+    }
+
+    /**
+     * 网络请求耗时的默认分桶：1毫秒到10秒
+     */
+    public static Histogram forRequests()
+    {
+        return new Histogram(millis(1), millis(5), millis(10), millis(25), millis(50), millis(100), millis(250),
+                millis(500), millis(1000), millis(2500), millis(5000), millis(10000));
+    }
+
+    /**
+     * 排队等待时间的分桶：100毫秒到1小时
+     */
+    public static Histogram forQueueWait()
+    {
+        return new Histogram(millis(100), millis(1000), millis(5000), millis(15000), millis(60000),
+                millis(300000), millis(900000), millis(3600000));
+    }
+
+    /**
+     * 磁盘写入耗时的分桶：1微秒到100毫秒
+     */
+    public static Histogram forDiskWrites()
+    {
+        return new Histogram(micros(1), micros(5), micros(10), micros(50), micros(100), micros(500), millis(1),
+                millis(5), millis(20), millis(100));
+    }
+
+    private static long millis(long value)
+    {
+        return value * 1_000_000L;
+    }
+
+    private static long micros(long value)
+    {
+        return value * 1_000L;
+    }
+
+    public void record(long nanos)
+    {
+        int i = 0;
+        while (i < bounds.length && nanos > bounds[i])
+        {
+            i++;
+        }
+        buckets[i].increment();
+        sum.add(nanos);
+        count.increment();
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    /**
+     * 全部记录值之和（纳秒）
+     */
+    public long getSum()
+    {
+        return sum.sum();
+    }
+
+    /**
+     * 平均值（毫秒）
+     */
+    public double getMeanMillis()
+    {
+        long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / (double) n / 1_000_000.0;
+    }
+
+    /**
+     * 按桶上界估算分位数（毫秒），落在+Inf桶时返回最大的有限上界
+     */
+    public double getPercentileMillis(double quantile)
+    {
+        long[] counts = snapshot();
+        long total = 0;
+        for (long c : counts)
+        {
+            total += c;
+        }
+        if (total == 0)
+        {
+            return 0;
+        }
+        long target = (long) Math.ceil(quantile * total);
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++)
+        {
+            cumulative += counts[i];
+            if (cumulative >= target)
+            {
+                return bounds[i] / 1_000_000.0;
+            }
+        }
+        return bounds[bounds.length - 1] / 1_000_000.0;
+    }
+
+    long[] getBounds()
+    {
+        return bounds;
+    }
+
+    /**
+     * 各桶当前计数（非累计）
+     */
+    long[] snapshot()
+    {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++)
+        {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,80 @@
+package com.downloader.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Prometheus抓取端点 在本机回环地址上提供 /metrics，只在抓取时生成文本
+ */
+public class PrometheusEndpoint
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(PrometheusEndpoint.class);
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final DownloadMetrics metrics;
+    private HttpServer server;
+
+    public PrometheusEndpoint(DownloadMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 启动端点
+     * @param port 监听端口，0表示由系统分配
+     * @return 实际监听的端口
+     */
+    public synchronized int start(int port) throws IOException
+    {
+        if (server != null)
+        {
+            return server.getAddress().getPort();
+        }
+        HttpServer created = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        created.createContext("/metrics", this::handle);
+        created.start();
+        server = created;
+        logger.info("指标端点已启动: http://127.0.0.1:{}/metrics", created.getAddress().getPort());
+        return created.getAddress().getPort();
+    }
+
+    public synchronized void stop()
+    {
+        if (server != null)
+        {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        try
+        {
+            if (!"GET".equals(exchange.getRequestMethod()))
+            {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        } finally
+        {
+            exchange.close();
+        }
+    }
+}
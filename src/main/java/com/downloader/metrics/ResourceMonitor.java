@@ -0,0 +1,222 @@
+package com.downloader.metrics;
+
+import com.sun.management.UnixOperatingSystemMXBean;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntSupplier;
+
+/**
+ * 资源监控 统计各线程池的存活线程数、打开的文件描述符和套接字、直接内存以及登记的任务表大小，
+ * 用于发现长时间运行后逐渐累积的泄漏；所有值都在读取时计算，不占用后台线程
+ */
+public class ResourceMonitor
+{
+
+    private static final File PROC_FDS = new File("/proc/self/fd");
+
+    private final Map<String, IntSupplier> sizes = new ConcurrentHashMap<>();
+
+    /**
+     * 登记一个需要监控大小的集合，同名登记会覆盖之前的
+     */
+    public void registerSize(String name, IntSupplier size)
+    {
+        sizes.put(name, size);
+    }
+
+    /**
+     * 按线程池统计存活线程数 线程名去掉编号后作为线程池名，例如 DownloadSegment-3 归入 DownloadSegment
+     */
+    public Map<String, Integer> getThreadsByPool()
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Map<String, Integer> result = new TreeMap<>();
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds(), 0))
+        {
+            if (info != null)
+            {
+                result.merge(poolName(info.getThreadName()), 1, Integer::sum);
+            }
+        }
+        return result;
+    }
+
+    static String poolName(String threadName)
+    {
+        String pool = threadName.replaceAll("-\\d+", "");
+        return pool.isEmpty() ? threadName : pool;
+    }
+
+    public int getLiveThreads()
+    {
+        return ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    /**
+     * 打开的文件描述符数（含套接字），平台不支持时返回-1
+     */
+    public long getOpenFileDescriptors()
+    {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof UnixOperatingSystemMXBean)
+        {
+            return ((UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount();
+        }
+        return -1;
+    }
+
+    /**
+     * 打开的套接字数 只在提供 /proc/self/fd 的系统上可用，否则返回-1
+     */
+    public long getOpenSockets()
+    {
+        File[] fds = PROC_FDS.listFiles();
+        if (fds == null)
+        {
+            return -1;
+        }
+        long sockets = 0;
+        for (File fd : fds)
+        {
+            try
+            {
+                if (Files.readSymbolicLink(fd.toPath()).toString().startsWith("socket:"))
+                {
+                    sockets++;
+                }
+            } catch (IOException | UnsupportedOperationException e)
+            {
+                // 描述符在列出后已关闭
+            }
+        }
+        return sockets;
+    }
+
+    /**
+     * 直接内存缓冲区占用的字节数
+     */
+    public long getDirectBufferBytes()
+    {
+        return bufferPool("direct", true);
+    }
+
+    public long getDirectBufferCount()
+    {
+        return bufferPool("direct", false);
+    }
+
+    /**
+     * 内存映射文件占用的字节数
+     */
+    public long getMappedBufferBytes()
+    {
+        return bufferPool("mapped", true);
+    }
+
+    private static long bufferPool(String name, boolean bytes)
+    {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+        {
+            if (pool.getName().equals(name))
+            {
+                return bytes ? pool.getMemoryUsed() : pool.getCount();
+            }
+        }
+        return -1;
+    }
+
+    public Map<String, Integer> getCollectionSizes()
+    {
+        Map<String, Integer> result = new TreeMap<>();
+        sizes.forEach((name, size) -> result.put(name, size.getAsInt()));
+        return result;
+    }
+
+    /**
+     * 获取当前全部资源的快照
+     */
+    public Snapshot snapshot()
+    {
+        return new Snapshot(getThreadsByPool(), getLiveThreads(), getOpenFileDescriptors(), getOpenSockets(),
+                getDirectBufferBytes(), getDirectBufferCount(), getCollectionSizes());
+    }
+
+    /**
+     * 资源快照
+     */
+    public static class Snapshot
+    {
+        private final Map<String, Integer> threadsByPool;
+        private final int liveThreads;
+        private final long openFileDescriptors;
+        private final long openSockets;
+        private final long directBufferBytes;
+        private final long directBufferCount;
+        private final Map<String, Integer> collectionSizes;
+
+        Snapshot(Map<String, Integer> threadsByPool, int liveThreads, long openFileDescriptors, long openSockets,
+                long directBufferBytes, long directBufferCount, Map<String, Integer> collectionSizes)
+        {
+            this.threadsByPool = threadsByPool;
+            this.liveThreads = liveThreads;
+            this.openFileDescriptors = openFileDescriptors;
+            this.openSockets = openSockets;
+            this.directBufferBytes = directBufferBytes;
+            this.directBufferCount = directBufferCount;
+            this.collectionSizes = collectionSizes;
+        }
+
+        public Map<String, Integer> getThreadsByPool()
+        {
+            return threadsByPool;
+        }
+
+        public int getLiveThreads()
+        {
+            return liveThreads;
+        }
+
+        public long getOpenFileDescriptors()
+        {
+            return openFileDescriptors;
+        }
+
+        public long getOpenSockets()
+        {
+            return openSockets;
+        }
+
+        public long getDirectBufferBytes()
+        {
+            return directBufferBytes;
+        }
+
+        public long getDirectBufferCount()
+        {
+            return directBufferCount;
+        }
+
+        public Map<String, Integer> getCollectionSizes()
+        {
+            return collectionSizes;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "线程" + liveThreads + " " + threadsByPool + "，文件描述符" + openFileDescriptors + "，套接字"
+                    + openSockets + "，直接内存" + directBufferBytes + "字节/" + directBufferCount + "个，集合"
+                    + collectionSizes;
+        }
+    }
+}
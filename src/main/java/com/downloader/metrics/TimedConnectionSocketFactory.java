@@ -0,0 +1,55 @@
+package com.downloader.metrics;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * 记录建立连接耗时的套接字工厂 HTTPS连接的耗时包含TLS握手；只在连接池新建连接时调用，复用的连接不计入
+ */
+public class TimedConnectionSocketFactory implements LayeredConnectionSocketFactory
+{
+
+    private final ConnectionSocketFactory delegate;
+    private final DownloadMetrics metrics;
+
+    public TimedConnectionSocketFactory(ConnectionSocketFactory delegate, DownloadMetrics metrics)
+    {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Socket createSocket(HttpContext context) throws IOException
+    {
+        return delegate.createSocket(context);
+    }
+
+    @Override
+    public Socket connectSocket(int connectTimeout, Socket sock, HttpHost host, InetSocketAddress remoteAddress,
+            InetSocketAddress localAddress, HttpContext context) throws IOException
+    {
+        long start = System.nanoTime();
+        Socket socket = delegate.connectSocket(connectTimeout, sock, host, remoteAddress, localAddress, context);
+        metrics.recordConnect(System.nanoTime() - start);
+        return socket;
+    }
+
+    @Override
+    public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException
+    {
+        if (!(delegate instanceof LayeredConnectionSocketFactory))
+        {
+            throw new IOException("不支持在已有连接上建立TLS: " + target);
+        }
+        long start = System.nanoTime();
+        Socket layered = ((LayeredConnectionSocketFactory) delegate).createLayeredSocket(socket, target, port, context);
+        metrics.recordConnect(System.nanoTime() - start);
+        return layered;
+    }
+}
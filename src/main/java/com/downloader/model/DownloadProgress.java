@@ -0,0 +1,97 @@
+package com.downloader.model;
+
+/**
+ * 下载进度快照 发布给进度订阅者的不可变对象，任务本身在下载线程中持续变化，不能直接交给其他线程
+ */
+public class DownloadProgress
+{
+
+    private final String taskId;
+    private final DownloadTask.Status status;
+    private final long downloadedSize;
+    private final long totalSize;
+    private final long speed;
+    private final String errorMessage;
+    private final long[] speedHistory;
+
+    /**
+     * @param speedHistory 按时间顺序排列的最近速度采样（字节/秒），可为null
+     */
+    public DownloadProgress(String taskId, DownloadTask.Status status, long downloadedSize, long totalSize,
+            long speed, String errorMessage, long[] speedHistory)
+    {
+        this.taskId = taskId;
+        this.status = status;
+        this.downloadedSize = downloadedSize;
+        this.totalSize = totalSize;
+        this.speed = speed;
+        this.errorMessage = errorMessage;
+        this.speedHistory = speedHistory == null ? new long[0] : speedHistory.clone();
+    }
+
+    /**
+     * 读取任务当前状态生成快照
+     */
+    public static DownloadProgress of(DownloadTask task)
+    {
+        SpeedEstimator estimator = task.getSpeedEstimator();
+        return new DownloadProgress(task.getId(), task.getStatus(), task.getDownloadedSize(), task.getTotalSize(),
+                task.getStatus() == DownloadTask.Status.DOWNLOADING ? task.getSpeed() : 0, task.getErrorMessage(),
+                estimator == null ? null : estimator.getHistory());
+    }
+
+    public String getTaskId()
+    {
+        return taskId;
+    }
+
+    public DownloadTask.Status getStatus()
+    {
+        return status;
+    }
+
+    public long getDownloadedSize()
+    {
+        return downloadedSize;
+    }
+
+    /**
+     * @return 文件总大小，未知时小于等于0
+     */
+    public long getTotalSize()
+    {
+        return totalSize;
+    }
+
+    public long getSpeed()
+    {
+        return speed;
+    }
+
+    public String getErrorMessage()
+    {
+        return errorMessage;
+    }
+
+    /**
+     * 最近的速度采样（字节/秒），按时间顺序排列，每个进度更新周期一个；尚未开始下载时为空
+     */
+    public long[] getSpeedHistory()
+    {
+        return speedHistory.clone();
+    }
+
+    /**
+     * 获取下载进度百分比，总大小未知时为0
+     */
+    public double getProgress()
+    {
+        return totalSize > 0 ? (double) downloadedSize / totalSize * 100 : 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DownloadProgress{" + taskId + ", " + status + ", " + downloadedSize + "/" + totalSize + "}";
+    }
+}
@@ -0,0 +1,56 @@
+package com.downloader.model;
+
+/**
+ * 下载请求 批量添加下载时的单个条目
+ */
+public class DownloadRequest
+{
+
+    private final String url;
+    private final String fileName;
+    private final String savePath;
+    private final int priority;
+
+    public DownloadRequest(String url, String fileName, String savePath)
+    {
+        this(url, fileName, savePath, 0);
+    }
+
+    /**
+     * @param priority 优先级，数值越大越先开始
+     */
+    public DownloadRequest(String url, String fileName, String savePath, int priority)
+    {
+        this.url = url;
+        this.fileName = fileName;
+        this.savePath = savePath;
+        this.priority = priority;
+    }
+
+    public String getUrl()
+    {
+        return url;
+    }
+
+    public String getFileName()
+    {
+        return fileName;
+    }
+
+    public String getSavePath()
+    {
+        return savePath;
+    }
+
+    public int getPriority()
+    {
+        return priority;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DownloadRequest{url='" + url + "', fileName='" + fileName + "', savePath='" + savePath
+                + "', priority=" + priority + "}";
+    }
+}
@@ -0,0 +1,70 @@
+package com.downloader.model;
+
+/**
+ * 下载分段 文件中的一段字节区间及其已下载字节数
+ * 每个分段只由一个下载线程写入，进度监控和持久化只读取，因此不需要原子操作
+ */
+public class DownloadSegment
+{
+
+    private final long start;
+    private final long end; // 包含，小于0表示长度未知
+    private volatile long downloaded;
+
+    public DownloadSegment(long start, long end, long downloaded)
+    {
+        this.start = start;
+        this.end = end;
+        this.downloaded = downloaded;
+    }
+
+    public long getStart()
+    {
+        return start;
+    }
+
+    public long getEnd()
+    {
+        return end;
+    }
+
+    public long getDownloaded()
+    {
+        return downloaded;
+    }
+
+    /**
+     * 由负责该分段的下载线程调用
+     */
+    public void setDownloaded(long downloaded)
+    {
+        this.downloaded = downloaded;
+    }
+
+    /**
+     * 分段长度，长度未知时返回-1
+     */
+    public long getLength()
+    {
+        return end < 0 ? -1 : end - start + 1;
+    }
+
+    /**
+     * 下一个要写入的文件位置
+     */
+    public long getPosition()
+    {
+        return start + downloaded;
+    }
+
+    public boolean isComplete()
+    {
+        return end >= 0 && downloaded >= getLength();
+    }
+
+    @Override
+    public String toString()
+    {
+        return start + "-" + end + ":" + downloaded;
+    }
+}
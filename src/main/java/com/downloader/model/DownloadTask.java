@@ -1,10 +1,16 @@
 package com.downloader.model;
 
+import com.downloader.sink.DownloadSink;
+
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
- * 下载任务模型
+ * 下载任务模型 时间以毫秒时间戳保存，保存目录字符串在任务间共享，队列中有大量任务时尽量减少每个对象的内存占用
  */
 public class DownloadTask
 {
@@ -23,37 +29,120 @@ public class DownloadTask
         {
             return displayName;
         }
+
+        /**
+         * 是否为终止状态（已完成、错误、已取消）
+         */
+        public boolean isTerminal()
+        {
+            return this == COMPLETED || this == ERROR || this == CANCELLED;
+        }
+
+        /**
+         * 是否允许从当前状态转换到目标状态 下载中只能结束、暂停、取消或退回等待；已取消的任务不能再恢复
+         */
+        public boolean canTransitionTo(Status next)
+        {
+            switch (this)
+            {
+            case DOWNLOADING:
+                return next == COMPLETED || next == ERROR || next == PAUSED || next == CANCELLED || next == WAITING;
+            case CANCELLED:
+                return false;
+            default:
+                return next != this && next != COMPLETED;
+            }
+        }
     }
 
+    private static final AtomicLong SEQUENCE = new AtomicLong(0);
+    private static final AtomicLongFieldUpdater<DownloadTask> DOWNLOADED_UPDATER = AtomicLongFieldUpdater
+            .newUpdater(DownloadTask.class, "downloadedSize");
+    private static final AtomicReferenceFieldUpdater<DownloadTask, Status> STATUS_UPDATER = AtomicReferenceFieldUpdater
+            .newUpdater(DownloadTask.class, Status.class, "status");
+
     private String id;
+    private final long sequence; // 创建顺序，决定等待队列中的先后
     private String url;
     private String fileName;
     private String savePath;
     private long totalSize;
-    private AtomicLong downloadedSize;
-    private Status status;
-    private LocalDateTime createTime;
-    private LocalDateTime startTime;
-    private LocalDateTime completeTime;
+    private volatile long downloadedSize;
+    private volatile Status status;
+    private long createTime; // 毫秒时间戳
+    private long startTime; // 毫秒时间戳，0表示未开始
+    private long completeTime; // 毫秒时间戳，0表示未完成
+    private volatile long waitingSince; // 进入等待的毫秒时间戳，不持久化，用于统计排队时间
     private String errorMessage;
     private int threadCount;
+    private int priority; // 数值越大越先开始，只影响等待队列中的先后
+    private long maxSpeed; // 限速（字节/秒），0表示不限速
+    private DownloadSink sink; // 数据去向，为null时写入保存路径下的文件；不持久化
     private long speed; // 字节/秒
+    private volatile DownloadSegment[] segments; // 分段下载进度，断点续传时使用
+    private volatile SpeedEstimator speedEstimator; // 开始下载后才创建
+    private volatile RemoteFileInfo remoteFileInfo; // 上次探测的结果，继续下载时免于重新探测
 
     public DownloadTask(String url, String fileName, String savePath)
     {
+        this.sequence = SEQUENCE.incrementAndGet();
         this.id = generateId();
         this.url = url;
         this.fileName = fileName;
-        this.savePath = savePath;
-        this.downloadedSize = new AtomicLong(0);
+        this.savePath = shareDirectory(savePath);
         this.status = Status.WAITING;
-        this.createTime = LocalDateTime.now();
+        this.createTime = System.currentTimeMillis();
         this.threadCount = 8; // 默认8个线程
     }
 
+    /**
+     * 恢复已持久化的任务
+     */
+    public DownloadTask(String id, String url, String fileName, String savePath, LocalDateTime createTime)
+    {
+        this(id, url, fileName, savePath, toMillis(createTime));
+    }
+
+    /**
+     * 恢复已持久化的任务
+     * @param createTimeMillis 创建时间戳，小于等于0时取当前时间
+     */
+    public DownloadTask(String id, String url, String fileName, String savePath, long createTimeMillis)
+    {
+        this.sequence = SEQUENCE.incrementAndGet();
+        this.id = id;
+        this.url = url;
+        this.fileName = fileName;
+        this.savePath = shareDirectory(savePath);
+        this.status = Status.WAITING;
+        this.createTime = createTimeMillis > 0 ? createTimeMillis : System.currentTimeMillis();
+        this.threadCount = 8;
+    }
+
+    /**
+     * 同一目录下的任务共用一个字符串实例
+     */
+    private static String shareDirectory(String savePath)
+    {
+        return savePath == null ? null : savePath.intern();
+    }
+
+    private static long toMillis(LocalDateTime time)
+    {
+        return time == null ? 0 : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime toDateTime(long millis)
+    {
+        return millis <= 0 ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    /**
+     * 生成任务ID 使用进程内递增序号，批量添加时不会重复
+     */
     private String generateId()
     {
-        return "task_" + System.currentTimeMillis() + "_" + (int) (Math.random() * 1000);
+        return "task_" + System.currentTimeMillis() + "_" + sequence;
     }
 
     // Getters and Setters
@@ -62,6 +151,11 @@ public class DownloadTask
         return id;
     }
 
+    public long getSequence()
+    {
+        return sequence;
+    }
+
     public String getUrl()
     {
         return url;
@@ -89,7 +183,7 @@ public class DownloadTask
 
     public void setSavePath(String savePath)
     {
-        this.savePath = savePath;
+        this.savePath = shareDirectory(savePath);
     }
 
     public long getTotalSize()
@@ -104,17 +198,17 @@ public class DownloadTask
 
     public long getDownloadedSize()
     {
-        return downloadedSize.get();
+        return downloadedSize;
     }
 
     public void setDownloadedSize(long size)
     {
-        this.downloadedSize.set(size);
+        this.downloadedSize = size;
     }
 
     public void addDownloadedSize(long size)
     {
-        this.downloadedSize.addAndGet(size);
+        DOWNLOADED_UPDATER.addAndGet(this, size);
     }
 
     public Status getStatus()
@@ -122,32 +216,81 @@ public class DownloadTask
         return status;
     }
 
+    /**
+     * 直接设置状态，不检查转换规则 仅用于创建和恢复任务，运行中的状态变化应使用compareAndSetStatus
+     */
     public void setStatus(Status status)
     {
         this.status = status;
     }
 
+    /**
+     * 原子地从预期状态转换到目标状态 当前状态不是预期状态或转换不合法时返回false
+     */
+    public boolean compareAndSetStatus(Status expected, Status next)
+    {
+        return expected.canTransitionTo(next) && STATUS_UPDATER.compareAndSet(this, expected, next);
+    }
+
     public LocalDateTime getCreateTime()
+    {
+        return toDateTime(createTime);
+    }
+
+    public long getCreateTimeMillis()
     {
         return createTime;
     }
 
     public LocalDateTime getStartTime()
+    {
+        return toDateTime(startTime);
+    }
+
+    public long getStartTimeMillis()
     {
         return startTime;
     }
 
     public void setStartTime(LocalDateTime startTime)
+    {
+        this.startTime = toMillis(startTime);
+    }
+
+    public void setStartTimeMillis(long startTime)
     {
         this.startTime = startTime;
     }
 
+    /**
+     * 进入等待的时间戳，0表示未记录（此时以创建时间计）
+     */
+    public long getWaitingSinceMillis()
+    {
+        return waitingSince > 0 ? waitingSince : createTime;
+    }
+
+    public void setWaitingSinceMillis(long waitingSince)
+    {
+        this.waitingSince = waitingSince;
+    }
+
     public LocalDateTime getCompleteTime()
+    {
+        return toDateTime(completeTime);
+    }
+
+    public long getCompleteTimeMillis()
     {
         return completeTime;
     }
 
     public void setCompleteTime(LocalDateTime completeTime)
+    {
+        this.completeTime = toMillis(completeTime);
+    }
+
+    public void setCompleteTimeMillis(long completeTime)
     {
         this.completeTime = completeTime;
     }
@@ -172,6 +315,42 @@ public class DownloadTask
         this.threadCount = threadCount;
     }
 
+    public int getPriority()
+    {
+        return priority;
+    }
+
+    /**
+     * 设置优先级 任务在等待队列中时须通过下载管理器修改，以便重新排队
+     */
+    public void setPriority(int priority)
+    {
+        this.priority = priority;
+    }
+
+    public long getMaxSpeed()
+    {
+        return maxSpeed;
+    }
+
+    public void setMaxSpeed(long maxSpeed)
+    {
+        this.maxSpeed = Math.max(0, maxSpeed);
+    }
+
+    public DownloadSink getSink()
+    {
+        return sink;
+    }
+
+    /**
+     * 设置数据去向 须在开始下载前设置；设置了去向的任务只保存在内存中，重启后不会恢复
+     */
+    public void setSink(DownloadSink sink)
+    {
+        this.sink = sink;
+    }
+
     public long getSpeed()
     {
         return speed;
@@ -182,6 +361,55 @@ public class DownloadTask
         this.speed = speed;
     }
 
+    /**
+     * 分段下载进度 未分段或已完成时为null
+     */
+    public DownloadSegment[] getSegments()
+    {
+        return segments;
+    }
+
+    public void setSegments(DownloadSegment[] segments)
+    {
+        this.segments = segments;
+    }
+
+    public RemoteFileInfo getRemoteFileInfo()
+    {
+        return remoteFileInfo;
+    }
+
+    public void setRemoteFileInfo(RemoteFileInfo remoteFileInfo)
+    {
+        this.remoteFileInfo = remoteFileInfo;
+    }
+
+    /**
+     * 速度估计器 从未开始下载的任务为null
+     */
+    public SpeedEstimator getSpeedEstimator()
+    {
+        return speedEstimator;
+    }
+
+    public void setSpeedEstimator(SpeedEstimator speedEstimator)
+    {
+        this.speedEstimator = speedEstimator;
+    }
+
+    /**
+     * 预计剩余时间（秒） 不在下载中或无法估算时返回-1
+     */
+    public long getEtaSeconds()
+    {
+        SpeedEstimator estimator = speedEstimator;
+        if (estimator == null || status != Status.DOWNLOADING || totalSize <= 0)
+        {
+            return -1;
+        }
+        return estimator.estimateSeconds(Math.max(0, totalSize - downloadedSize));
+    }
+
     /**
      * 获取下载进度百分比
      */
@@ -189,7 +417,7 @@ public class DownloadTask
     {
         if (totalSize <= 0)
             return 0.0;
-        return (double) downloadedSize.get() / totalSize * 100.0;
+        return (double) downloadedSize / totalSize * 100.0;
     }
 
     /**
@@ -204,14 +432,42 @@ public class DownloadTask
      * 格式化文件大小
      */
     public static String formatFileSize(long size)
+    {
+        StringBuilder sb = new StringBuilder(12);
+        appendFileSize(sb, size);
+        return sb.toString();
+    }
+
+    /**
+     * 将格式化后的文件大小追加到缓冲区 使用整数运算保留一位小数（四舍五入），不经过String.format
+     */
+    public static void appendFileSize(StringBuilder sb, long size)
     {
         if (size < 1024)
-            return size + " B";
+        {
+            sb.append(size).append(" B");
+            return;
+        }
+
+        long unit;
+        String suffix;
         if (size < 1024 * 1024)
-            return String.format("%.1f KB", size / 1024.0);
-        if (size < 1024 * 1024 * 1024)
-            return String.format("%.1f MB", size / (1024.0 * 1024));
-        return String.format("%.1f GB", size / (1024.0 * 1024 * 1024));
+        {
+            unit = 1024;
+            suffix = " KB";
+        } else if (size < 1024 * 1024 * 1024)
+        {
+            unit = 1024 * 1024;
+            suffix = " MB";
+        } else
+        {
+            unit = 1024L * 1024 * 1024;
+            suffix = " GB";
+        }
+
+        long tenths = size <= Long.MAX_VALUE / 10 ? (size * 10 + unit / 2) / unit
+                : Math.round(size / (double) unit * 10);
+        sb.append(tenths / 10).append('.').append(tenths % 10).append(suffix);
     }
 
     /**
@@ -219,7 +475,42 @@ public class DownloadTask
      */
     public static String formatSpeed(long bytesPerSecond)
     {
-        return formatFileSize(bytesPerSecond) + "/s";
+        StringBuilder sb = new StringBuilder(14);
+        appendSpeed(sb, bytesPerSecond);
+        return sb.toString();
+    }
+
+    /**
+     * 将格式化后的下载速度追加到缓冲区
+     */
+    public static void appendSpeed(StringBuilder sb, long bytesPerSecond)
+    {
+        appendFileSize(sb, bytesPerSecond);
+        sb.append("/s");
+    }
+
+    /**
+     * 将时长格式化为 分:秒 或 时:分:秒 追加到缓冲区
+     */
+    public static void appendDuration(StringBuilder sb, long seconds)
+    {
+        long hours = seconds / 3600;
+        long minutes = seconds / 60 % 60;
+        long secs = seconds % 60;
+        if (hours > 0)
+        {
+            sb.append(hours).append(':');
+            if (minutes < 10)
+            {
+                sb.append('0');
+            }
+        }
+        sb.append(minutes).append(':');
+        if (secs < 10)
+        {
+            sb.append('0');
+        }
+        sb.append(secs);
     }
 
     @Override
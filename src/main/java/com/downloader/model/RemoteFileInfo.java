@@ -0,0 +1,58 @@
+package com.downloader.model;
+
+/**
+ * 远程文件信息 探测得到的大小、Range支持和校验值（ETag或Last-Modified），
+ * 暂停后继续下载时直接使用，不再重新探测；校验值通过If-Range确认远程文件没有变化
+ */
+public class RemoteFileInfo
+{
+
+    private final long size;
+    private final boolean supportsRanges;
+    private final String validator;
+    private final long probeTime; // 探测时间戳，0表示未知（例如从磁盘恢复）
+
+    public RemoteFileInfo(long size, boolean supportsRanges, String validator)
+    {
+        this(size, supportsRanges, validator, 0);
+    }
+
+    public RemoteFileInfo(long size, boolean supportsRanges, String validator, long probeTime)
+    {
+        this.size = size;
+        this.supportsRanges = supportsRanges;
+        this.validator = validator;
+        this.probeTime = probeTime;
+    }
+
+    public long getSize()
+    {
+        return size;
+    }
+
+    public boolean isSupportsRanges()
+    {
+        return supportsRanges;
+    }
+
+    /**
+     * 强ETag或Last-Modified，没有时为null
+     */
+    public String getValidator()
+    {
+        return validator;
+    }
+
+    public long getProbeTime()
+    {
+        return probeTime;
+    }
+
+    /**
+     * 探测结果是否仍然新鲜，可以直接用于开始下载
+     */
+    public boolean isFresh(long maxAgeMillis)
+    {
+        return probeTime > 0 && System.currentTimeMillis() - probeTime <= maxAgeMillis;
+    }
+}
@@ -0,0 +1,129 @@
+package com.downloader.model;
+
+/**
+ * 速度估计器 根据累计下载量的采样计算指数加权移动平均速度，并在固定大小的环形缓冲区中保留最近每秒的速度，
+ * 剩余时间按滑动窗口内的平均速度估算；采样和查询都不分配对象
+ */
+public class SpeedEstimator
+{
+
+    public static final int HISTORY_SIZE = 120; // 保留最近120个采样
+    private static final int ETA_WINDOW = 10; // 估算剩余时间使用的采样数
+    private static final double TIME_CONSTANT = 5000.0; // 移动平均的时间常数（毫秒）
+
+    private final long[] history; // 环形缓冲区，每个采样的速度（字节/秒）
+    private int head; // 下一个写入位置
+    private int count;
+    private long windowSum; // 最近ETA_WINDOW个采样之和
+    private long lastBytes = -1;
+    private long lastTime;
+    private volatile double smoothed;
+    private volatile long windowAverage;
+
+    public SpeedEstimator()
+    {
+        this.history = new long[HISTORY_SIZE];
+    }
+
+    /**
+     * 记录一次采样
+     * @param totalBytes 当前累计下载字节数
+     * @param nowMillis 采样时间
+     */
+    public synchronized void record(long totalBytes, long nowMillis)
+    {
+        if (lastBytes < 0)
+        {
+            lastBytes = totalBytes;
+            lastTime = nowMillis;
+            return;
+        }
+        long elapsed = nowMillis - lastTime;
+        if (elapsed <= 0)
+        {
+            return;
+        }
+        long rate = Math.max(0, (totalBytes - lastBytes) * 1000 / elapsed);
+        lastBytes = totalBytes;
+        lastTime = nowMillis;
+
+        // 采样间隔不固定，按间隔换算平滑系数
+        double alpha = 1.0 - Math.exp(-elapsed / TIME_CONSTANT);
+        smoothed = count == 0 ? rate : smoothed + alpha * (rate - smoothed);
+
+        if (count >= ETA_WINDOW)
+        {
+            windowSum -= history[(head - ETA_WINDOW + HISTORY_SIZE) % HISTORY_SIZE];
+        }
+        windowSum += rate;
+        history[head] = rate;
+        head = (head + 1) % HISTORY_SIZE;
+        if (count < HISTORY_SIZE)
+        {
+            count++;
+        }
+        windowAverage = windowSum / Math.min(count, ETA_WINDOW);
+    }
+
+    /**
+     * 平滑后的速度（字节/秒）
+     */
+    public long getSpeed()
+    {
+        return Math.round(smoothed);
+    }
+
+    /**
+     * 最近若干采样的平均速度（字节/秒）
+     */
+    public long getWindowAverage()
+    {
+        return windowAverage;
+    }
+
+    /**
+     * 估算剩余时间（秒） 速度未知或剩余量未知时返回-1
+     */
+    public long estimateSeconds(long remainingBytes)
+    {
+        long rate = windowAverage;
+        if (remainingBytes < 0 || rate <= 0)
+        {
+            return -1;
+        }
+        return (remainingBytes + rate - 1) / rate;
+    }
+
+    /**
+     * 按时间顺序把最近的采样复制到dest，返回复制的个数
+     */
+    public synchronized int copyHistory(long[] dest)
+    {
+        int n = Math.min(count, dest.length);
+        int start = (head - n + HISTORY_SIZE) % HISTORY_SIZE;
+        for (int i = 0; i < n; i++)
+        {
+            dest[i] = history[(start + i) % HISTORY_SIZE];
+        }
+        return n;
+    }
+
+    /**
+     * 按时间顺序返回最近的采样
+     */
+    public synchronized long[] getHistory()
+    {
+        long[] result = new long[count];
+        copyHistory(result);
+        return result;
+    }
+
+    /**
+     * 暂停后继续下载时调用 只重新建立采样基准，暂停期间不计入速度，已有的历史和平滑速度保留
+     */
+    public synchronized void resume()
+    {
+        lastBytes = -1;
+        lastTime = 0;
+    }
+}
@@ -0,0 +1,564 @@
+package com.downloader.rpc;
+
+import com.downloader.core.DownloadManager;
+import com.downloader.model.DownloadTask;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * aria2兼容的RPC方法 方法名、参数顺序和返回结构与aria2相同（数值以字符串返回），任务ID即gid，
+ * 现有的aria2客户端和脚本可以直接使用。只支持HTTP/HTTPS单一来源下载，每个任务只有一个文件
+ */
+public class Aria2Methods
+{
+
+    static final List<String> METHODS = Arrays.asList("aria2.addUri", "aria2.remove", "aria2.forceRemove",
+            "aria2.pause", "aria2.forcePause", "aria2.pauseAll", "aria2.forcePauseAll", "aria2.unpause",
+            "aria2.unpauseAll", "aria2.tellStatus", "aria2.tellActive", "aria2.tellWaiting", "aria2.tellStopped",
+            "aria2.getGlobalStat", "aria2.changeOption", "aria2.getOption", "aria2.changeGlobalOption",
+            "aria2.getGlobalOption", "aria2.removeDownloadResult", "aria2.purgeDownloadResult", "aria2.getVersion",
+            "system.multicall", "system.listMethods");
+
+    private final DownloadManager manager;
+    private final ObjectMapper mapper;
+    private final String defaultDir;
+    private final String secret;
+
+    /**
+     * @param defaultDir 未指定dir选项时的保存目录
+     * @param secret RPC密钥，aria2.*方法的第一个参数必须是"token:密钥"；为null时不校验
+     */
+    public Aria2Methods(DownloadManager manager, ObjectMapper mapper, String defaultDir, String secret)
+    {
+        this.manager = manager;
+        this.mapper = mapper;
+        this.defaultDir = defaultDir;
+        this.secret = secret;
+    }
+
+    /**
+     * 执行一个方法 aria2.*方法先校验并去掉token参数，system.*方法与aria2一样不需要token
+     */
+    public JsonNode call(String method, ArrayNode params) throws RpcException
+    {
+        if (method.startsWith("aria2."))
+        {
+            params = authorize(params);
+        }
+        return dispatch(method, params);
+    }
+
+    private ArrayNode authorize(ArrayNode params) throws RpcException
+    {
+        JsonNode first = params.get(0);
+        boolean hasToken = first != null && first.isTextual() && first.asText().startsWith("token:");
+        if (secret != null && !(hasToken && secret.equals(first.asText().substring("token:".length()))))
+        {
+            throw new RpcException(RpcException.FAILED, "Unauthorized");
+        }
+        if (!hasToken)
+        {
+            return params;
+        }
+        ArrayNode rest = params.deepCopy();
+        rest.remove(0);
+        return rest;
+    }
+
+    private JsonNode dispatch(String method, ArrayNode params) throws RpcException
+    {
+        switch (method)
+        {
+        case "aria2.addUri":
+            return text(addUri(params));
+        case "aria2.remove":
+        case "aria2.forceRemove":
+            return text(remove(params));
+        case "aria2.pause":
+        case "aria2.forcePause":
+            return text(pause(params));
+        case "aria2.pauseAll":
+        case "aria2.forcePauseAll":
+            forEachTask(t -> t.getStatus() == DownloadTask.Status.DOWNLOADING
+                    || t.getStatus() == DownloadTask.Status.WAITING, t -> manager.pauseDownload(t.getId()));
+            return text("OK");
+        case "aria2.unpause":
+            return text(unpause(params));
+        case "aria2.unpauseAll":
+            forEachTask(t -> t.getStatus() == DownloadTask.Status.PAUSED, t -> manager.startDownload(t.getId()));
+            return text("OK");
+        case "aria2.tellStatus":
+            return status(task(params, 0), keys(params, 1));
+        case "aria2.tellActive":
+            return statuses(select(t -> t.getStatus() == DownloadTask.Status.DOWNLOADING, 0, Integer.MAX_VALUE),
+                    keys(params, 0));
+        case "aria2.tellWaiting":
+            return statuses(select(t -> t.getStatus() == DownloadTask.Status.WAITING
+                    || t.getStatus() == DownloadTask.Status.PAUSED, integer(params, 0), integer(params, 1)),
+                    keys(params, 2));
+        case "aria2.tellStopped":
+            return statuses(select(t -> t.getStatus().isTerminal(), integer(params, 0), integer(params, 1)),
+                    keys(params, 2));
+        case "aria2.getGlobalStat":
+            return globalStat();
+        case "aria2.changeOption":
+            changeOption(task(params, 0), object(params, 1));
+            return text("OK");
+        case "aria2.getOption":
+            return option(task(params, 0));
+        case "aria2.changeGlobalOption":
+            changeGlobalOption(object(params, 0));
+            return text("OK");
+        case "aria2.getGlobalOption":
+            return globalOption();
+        case "aria2.removeDownloadResult":
+            return text(removeDownloadResult(params));
+        case "aria2.purgeDownloadResult":
+            forEachTask(t -> t.getStatus().isTerminal(), t -> manager.removeTask(t.getId()));
+            return text("OK");
+        case "aria2.getVersion":
+            ObjectNode version = mapper.createObjectNode();
+            version.put("version", "1.0.0");
+            version.putArray("enabledFeatures");
+            return version;
+        case "system.listMethods":
+            ArrayNode methods = mapper.createArrayNode();
+            METHODS.forEach(methods::add);
+            return methods;
+        case "system.multicall":
+            return multicall(params);
+        default:
+            throw new RpcException(RpcException.METHOD_NOT_FOUND, "Method not found: " + method);
+        }
+    }
+
+    // ---- 添加、暂停、删除 ----
+
+    private String addUri(ArrayNode params) throws RpcException
+    {
+        JsonNode uris = params.get(0);
+        if (uris == null || !uris.isArray() || uris.size() == 0 || !uris.get(0).isTextual())
+        {
+            throw new RpcException(RpcException.INVALID_PARAMS, "addUri需要URI数组");
+        }
+        String url = uris.get(0).asText();
+        JsonNode options = params.size() > 1 ? params.get(1) : null;
+        if (options != null && !options.isObject())
+        {
+            throw new RpcException(RpcException.INVALID_PARAMS, "options必须是对象");
+        }
+        String dir = optionText(options, "dir", defaultDir);
+        String out = optionText(options, "out", null);
+        if (out == null)
+        {
+            out = fileNameOf(url);
+        }
+        String id;
+        try
+        {
+            id = manager.addDownload(url, out, dir);
+        } catch (RuntimeException e)
+        {
+            throw new RpcException(RpcException.FAILED, e.getMessage());
+        }
+        if (options != null)
+        {
+            changeOption(manager.getTask(id), options);
+        }
+        return id;
+    }
+
+    private String remove(ArrayNode params) throws RpcException
+    {
+        DownloadTask task = task(params, 0);
+        manager.removeTask(task.getId());
+        return task.getId();
+    }
+
+    private String pause(ArrayNode params) throws RpcException
+    {
+        DownloadTask task = task(params, 0);
+        if (task.getStatus() != DownloadTask.Status.DOWNLOADING && task.getStatus() != DownloadTask.Status.WAITING)
+        {
+            throw new RpcException(RpcException.FAILED, "GID " + task.getId() + " cannot be paused now");
+        }
+        manager.pauseDownload(task.getId());
+        return task.getId();
+    }
+
+    private String unpause(ArrayNode params) throws RpcException
+    {
+        DownloadTask task = task(params, 0);
+        if (task.getStatus() != DownloadTask.Status.PAUSED && task.getStatus() != DownloadTask.Status.ERROR)
+        {
+            throw new RpcException(RpcException.FAILED, "GID " + task.getId() + " cannot be unpaused now");
+        }
+        manager.startDownload(task.getId());
+        return task.getId();
+    }
+
+    private String removeDownloadResult(ArrayNode params) throws RpcException
+    {
+        DownloadTask task = task(params, 0);
+        if (!task.getStatus().isTerminal())
+        {
+            throw new RpcException(RpcException.FAILED, "Could not remove download result of GID#" + task.getId());
+        }
+        manager.removeTask(task.getId());
+        return "OK";
+    }
+
+    private JsonNode multicall(ArrayNode params) throws RpcException
+    {
+        JsonNode calls = params.get(0);
+        if (calls == null || !calls.isArray())
+        {
+            throw new RpcException(RpcException.INVALID_PARAMS, "multicall需要调用数组");
+        }
+        ArrayNode results = mapper.createArrayNode();
+        for (JsonNode call : calls)
+        {
+            try
+            {
+                String method = call.path("methodName").asText();
+                if ("system.multicall".equals(method))
+                {
+                    throw new RpcException(RpcException.FAILED, "Recursive system.multicall forbidden.");
+                }
+                JsonNode callParams = call.path("params");
+                ArrayNode list = callParams.isArray() ? (ArrayNode) callParams : mapper.createArrayNode();
+                JsonNode result = call(method, list);
+                results.addArray().add(result);
+            } catch (RpcException e)
+            {
+                ObjectNode error = results.addObject();
+                error.put("code", e.getCode());
+                error.put("message", e.getMessage());
+            }
+        }
+        return results;
+    }
+
+    // ---- 选项 ----
+
+    private void changeOption(DownloadTask task, JsonNode options) throws RpcException
+    {
+        if (options.has("priority"))
+        {
+            manager.setTaskPriority(task.getId(), (int) parseNumber(options.get("priority").asText(), "priority"));
+        }
+        if (options.has("max-download-limit"))
+        {
+            manager.setTaskMaxSpeed(task.getId(), parseSize(options.get("max-download-limit").asText()));
+        }
+    }
+
+    private JsonNode option(DownloadTask task)
+    {
+        ObjectNode option = mapper.createObjectNode();
+        option.put("dir", task.getSavePath());
+        option.put("out", task.getFileName());
+        option.put("priority", String.valueOf(task.getPriority()));
+        option.put("max-download-limit", String.valueOf(task.getMaxSpeed()));
+        option.put("split", String.valueOf(task.getThreadCount()));
+        return option;
+    }
+
+    private void changeGlobalOption(JsonNode options) throws RpcException
+    {
+        if (options.has("max-overall-download-limit"))
+        {
+            manager.setMaxDownloadSpeed(parseSize(options.get("max-overall-download-limit").asText()));
+        }
+        if (options.has("max-concurrent-downloads"))
+        {
+            long max = parseNumber(options.get("max-concurrent-downloads").asText(), "max-concurrent-downloads");
+            if (max < 1)
+            {
+                throw new RpcException(RpcException.INVALID_PARAMS, "max-concurrent-downloads必须大于0");
+            }
+            manager.setMaxConcurrentDownloads((int) Math.min(Integer.MAX_VALUE, max));
+        }
+    }
+
+    private JsonNode globalOption()
+    {
+        ObjectNode option = mapper.createObjectNode();
+        option.put("dir", defaultDir);
+        option.put("max-overall-download-limit", String.valueOf(manager.getMaxDownloadSpeed()));
+        option.put("max-concurrent-downloads", String.valueOf(manager.getMaxConcurrentDownloads()));
+        return option;
+    }
+
+    /**
+     * 解析aria2格式的速度，支持K、M后缀（1024进制），0表示不限速
+     */
+    static long parseSize(String value) throws RpcException
+    {
+        String text = value.trim().toUpperCase(Locale.ROOT);
+        long unit = 1;
+        if (text.endsWith("K"))
+        {
+            unit = 1024;
+            text = text.substring(0, text.length() - 1);
+        } else if (text.endsWith("M"))
+        {
+            unit = 1024 * 1024;
+            text = text.substring(0, text.length() - 1);
+        }
+        long number = parseNumber(text, value);
+        if (number < 0)
+        {
+            throw new RpcException(RpcException.INVALID_PARAMS, "速度不能为负数: " + value);
+        }
+        return number * unit;
+    }
+
+    private static long parseNumber(String text, String name) throws RpcException
+    {
+        try
+        {
+            return Long.parseLong(text.trim());
+        } catch (NumberFormatException e)
+        {
+            throw new RpcException(RpcException.INVALID_PARAMS, "不是整数: " + name);
+        }
+    }
+
+    // ---- 查询 ----
+
+    private JsonNode globalStat()
+    {
+        int active = 0;
+        int waiting = 0;
+        int stopped = 0;
+        for (DownloadTask task : manager.getAllTasks())
+        {
+            DownloadTask.Status status = task.getStatus();
+            if (status == DownloadTask.Status.DOWNLOADING)
+            {
+                active++;
+            } else if (status.isTerminal())
+            {
+                stopped++;
+            } else
+            {
+                waiting++;
+            }
+        }
+        ObjectNode stat = mapper.createObjectNode();
+        stat.put("downloadSpeed", String.valueOf(manager.getMetrics().getBytesPerSecond()));
+        stat.put("uploadSpeed", "0");
+        stat.put("numActive", String.valueOf(active));
+        stat.put("numWaiting", String.valueOf(waiting));
+        stat.put("numStopped", String.valueOf(stopped));
+        stat.put("numStoppedTotal", String.valueOf(stopped + manager.getArchivedTaskCount()));
+        return stat;
+    }
+
+    /**
+     * 按aria2的分页规则选取：offset为负数时从末尾倒数，结果按倒序排列
+     */
+    private List<DownloadTask> select(Predicate<DownloadTask> filter, int offset, int num)
+    {
+        List<DownloadTask> matched = new ArrayList<>();
+        for (DownloadTask task : manager.getAllTasks())
+        {
+            if (filter.test(task))
+            {
+                matched.add(task);
+            }
+        }
+        matched.sort(Comparator.comparingInt(DownloadTask::getPriority).reversed()
+                .thenComparingLong(DownloadTask::getSequence));
+        List<DownloadTask> result = new ArrayList<>();
+        if (offset >= 0)
+        {
+            for (int i = offset; i < matched.size() && result.size() < num; i++)
+            {
+                result.add(matched.get(i));
+            }
+        } else
+        {
+            for (int i = matched.size() + offset; i >= 0 && result.size() < num; i--)
+            {
+                result.add(matched.get(i));
+            }
+        }
+        return result;
+    }
+
+    private JsonNode statuses(List<DownloadTask> tasks, Set<String> keys)
+    {
+        ArrayNode result = mapper.createArrayNode();
+        for (DownloadTask task : tasks)
+        {
+            result.add(status(task, keys));
+        }
+        return result;
+    }
+
+    /**
+     * 生成aria2格式的任务状态
+     * @param keys 只返回这些键，为null时返回全部
+     */
+    ObjectNode status(DownloadTask task, Set<String> keys)
+    {
+        ObjectNode status = mapper.createObjectNode();
+        long total = Math.max(0, task.getTotalSize());
+        status.put("gid", task.getId());
+        status.put("status", statusName(task.getStatus()));
+        status.put("totalLength", String.valueOf(total));
+        status.put("completedLength", String.valueOf(task.getDownloadedSize()));
+        status.put("uploadLength", "0");
+        status.put("downloadSpeed", String.valueOf(
+                task.getStatus() == DownloadTask.Status.DOWNLOADING ? task.getSpeed() : 0));
+        status.put("uploadSpeed", "0");
+        status.put("dir", task.getSavePath());
+        status.put("priority", String.valueOf(task.getPriority()));
+        status.put("maxDownloadLimit", String.valueOf(task.getMaxSpeed()));
+        if (task.getStatus() == DownloadTask.Status.ERROR)
+        {
+            status.put("errorCode", "1");
+            status.put("errorMessage", task.getErrorMessage());
+        }
+        ObjectNode file = status.putArray("files").addObject();
+        file.put("index", "1");
+        file.put("path", task.getFullPath());
+        file.put("length", String.valueOf(total));
+        file.put("completedLength", String.valueOf(task.getDownloadedSize()));
+        file.put("selected", "true");
+        ObjectNode uri = file.putArray("uris").addObject();
+        uri.put("uri", task.getUrl());
+        uri.put("status", "used");
+        if (keys != null)
+        {
+            status.retain(keys);
+        }
+        return status;
+    }
+
+    static String statusName(DownloadTask.Status status)
+    {
+        switch (status)
+        {
+        case DOWNLOADING:
+            return "active";
+        case PAUSED:
+            return "paused";
+        case COMPLETED:
+            return "complete";
+        case ERROR:
+            return "error";
+        case CANCELLED:
+            return "removed";
+        default:
+            return "waiting";
+        }
+    }
+
+    // ---- 参数 ----
+
+    private DownloadTask task(ArrayNode params, int index) throws RpcException
+    {
+        JsonNode gid = params.get(index);
+        if (gid == null || !gid.isTextual())
+        {
+            throw new RpcException(RpcException.INVALID_PARAMS, "缺少gid");
+        }
+        DownloadTask task = manager.getTask(gid.asText());
+        if (task == null)
+        {
+            throw new RpcException(RpcException.FAILED, "GID " + gid.asText() + " is not found");
+        }
+        return task;
+    }
+
+    private static Set<String> keys(ArrayNode params, int index)
+    {
+        JsonNode keys = params.get(index);
+        if (keys == null || !keys.isArray())
+        {
+            return null;
+        }
+        Set<String> result = new HashSet<>();
+        keys.forEach(key -> result.add(key.asText()));
+        return result;
+    }
+
+    private static int integer(ArrayNode params, int index) throws RpcException
+    {
+        JsonNode value = params.get(index);
+        if (value == null || !value.canConvertToInt())
+        {
+            throw new RpcException(RpcException.INVALID_PARAMS, "第" + (index + 1) + "个参数应为整数");
+        }
+        return value.asInt();
+    }
+
+    private static JsonNode object(ArrayNode params, int index) throws RpcException
+    {
+        JsonNode value = params.get(index);
+        if (value == null || !value.isObject())
+        {
+            throw new RpcException(RpcException.INVALID_PARAMS, "第" + (index + 1) + "个参数应为对象");
+        }
+        return value;
+    }
+
+    private static String optionText(JsonNode options, String name, String fallback)
+    {
+        if (options == null || !options.hasNonNull(name))
+        {
+            return fallback;
+        }
+        return options.get(name).asText();
+    }
+
+    private static String fileNameOf(String url) throws RpcException
+    {
+        String path;
+        try
+        {
+            path = new URI(url).getRawPath();
+        } catch (Exception e)
+        {
+            throw new RpcException(RpcException.FAILED, "URL格式错误: " + url);
+        }
+        String name = path == null ? "" : path.substring(path.lastIndexOf('/') + 1);
+        name = URLDecoder.decode(name, StandardCharsets.UTF_8);
+        return name.isEmpty() || name.contains(File.separator) ? "index.html" : name;
+    }
+
+    private JsonNode text(String value)
+    {
+        return mapper.getNodeFactory().textNode(value);
+    }
+
+    private void forEachTask(Predicate<DownloadTask> filter, Consumer<DownloadTask> action)
+    {
+        for (DownloadTask task : new ArrayList<>(manager.getAllTasks()))
+        {
+            if (filter.test(task))
+            {
+                action.accept(task);
+            }
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package com.downloader.rpc;
+
+import com.downloader.core.DownloadListener;
+import com.downloader.core.DownloadManager;
+import com.downloader.model.DownloadTask;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地JSON-RPC控制端点 在本机回环地址上提供aria2兼容的 POST /jsonrpc（支持批量请求），
+ * 以及推送aria2通知的 GET /jsonrpc/events（Server-Sent Events）。
+ * 拒绝来自非本机页面的跨域请求；设置了密钥时所有aria2.*调用和事件订阅都需要token
+ */
+public class JsonRpcServer
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(JsonRpcServer.class);
+    private static final String CONTENT_TYPE = "application/json-rpc; charset=utf-8";
+    private static final int MAX_REQUEST_BYTES = 1024 * 1024;
+    static final int EVENT_QUEUE_CAPACITY = 256;
+    static final long HEARTBEAT_MILLIS = 15_000;
+
+    private final DownloadManager manager;
+    private final ObjectMapper mapper;
+    private final Aria2Methods methods;
+    private final String secret;
+    private final List<EventClient> clients = new CopyOnWriteArrayList<>();
+    private final Map<String, DownloadTask.Status> lastStatus = new ConcurrentHashMap<>();
+    private final DownloadListener listener = new NotificationListener();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * @param defaultDir addUri未指定dir时的保存目录
+     * @param secret RPC密钥，为null时不校验
+     */
+    public JsonRpcServer(DownloadManager manager, String defaultDir, String secret)
+    {
+        this.manager = manager;
+        this.mapper = new ObjectMapper();
+        this.methods = new Aria2Methods(manager, mapper, defaultDir, secret);
+        this.secret = secret;
+    }
+
+    /**
+     * 启动端点
+     * @param port 监听端口，0表示由系统分配
+     * @return 实际监听的端口
+     */
+    public synchronized int start(int port) throws IOException
+    {
+        if (server != null)
+        {
+            return server.getAddress().getPort();
+        }
+        HttpServer created = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        AtomicInteger threadCount = new AtomicInteger();
+        // 事件流长期占用线程，使用不限大小的线程池
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "DownloadRpc-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        created.setExecutor(executor);
+        created.createContext("/jsonrpc", this::handleRpc);
+        created.createContext("/jsonrpc/events", this::handleEvents);
+        for (DownloadTask task : manager.getAllTasks())
+        {
+            lastStatus.put(task.getId(), task.getStatus());
+        }
+        manager.addListener(listener);
+        created.start();
+        server = created;
+        logger.info("RPC端点已启动: http://127.0.0.1:{}/jsonrpc", created.getAddress().getPort());
+        return created.getAddress().getPort();
+    }
+
+    public synchronized void stop()
+    {
+        if (server == null)
+        {
+            return;
+        }
+        manager.removeListener(listener);
+        for (EventClient client : clients)
+        {
+            client.close();
+        }
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+        executor = null;
+        lastStatus.clear();
+    }
+
+    // ---- JSON-RPC ----
+
+    private void handleRpc(HttpExchange exchange) throws IOException
+    {
+        try
+        {
+            if (!isLocalOrigin(exchange))
+            {
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+            if ("OPTIONS".equals(exchange.getRequestMethod()))
+            {
+                allowOrigin(exchange);
+                exchange.getResponseHeaders().set("Access-Control-Allow-Methods", "POST, GET, OPTIONS");
+                exchange.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type");
+                exchange.sendResponseHeaders(204, -1);
+                return;
+            }
+            if (!"POST".equals(exchange.getRequestMethod()))
+            {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] request = readBody(exchange.getRequestBody());
+            JsonNode response = request == null
+                    ? error(null, RpcException.INVALID_REQUEST, "请求过大")
+                    : handle(request);
+            allowOrigin(exchange);
+            if (response == null)
+            {
+                exchange.sendResponseHeaders(204, -1);
+                return;
+            }
+            byte[] body = mapper.writeValueAsBytes(response);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        } finally
+        {
+            exchange.close();
+        }
+    }
+
+    /**
+     * 处理一个请求体，单个请求或批量请求
+     * @return 响应；全部是通知（没有id）时返回null
+     */
+    JsonNode handle(byte[] request)
+    {
+        JsonNode root;
+        try
+        {
+            root = mapper.readTree(request);
+        } catch (IOException e)
+        {
+            return error(null, RpcException.PARSE_ERROR, "Parse error");
+        }
+        if (root == null || !root.isArray())
+        {
+            return handleOne(root);
+        }
+        if (root.size() == 0)
+        {
+            return error(null, RpcException.INVALID_REQUEST, "Invalid Request");
+        }
+        ArrayNode responses = mapper.createArrayNode();
+        for (JsonNode call : root)
+        {
+            JsonNode response = handleOne(call);
+            if (response != null)
+            {
+                responses.add(response);
+            }
+        }
+        return responses.size() == 0 ? null : responses;
+    }
+
+    private JsonNode handleOne(JsonNode call)
+    {
+        if (call == null || !call.isObject() || !call.path("method").isTextual())
+        {
+            return error(null, RpcException.INVALID_REQUEST, "Invalid Request");
+        }
+        JsonNode id = call.get("id");
+        JsonNode params = call.path("params");
+        try
+        {
+            if (!params.isMissingNode() && !params.isArray())
+            {
+                throw new RpcException(RpcException.INVALID_PARAMS, "params必须是数组");
+            }
+            JsonNode result = methods.call(call.get("method").asText(),
+                    params.isArray() ? (ArrayNode) params : mapper.createArrayNode());
+            if (id == null)
+            {
+                return null;
+            }
+            ObjectNode response = mapper.createObjectNode();
+            response.put("jsonrpc", "2.0");
+            response.set("id", id);
+            response.set("result", result);
+            return response;
+        } catch (RpcException e)
+        {
+            return id == null ? null : error(id, e.getCode(), e.getMessage());
+        } catch (RuntimeException e)
+        {
+            logger.warn("RPC调用失败: {}", call.get("method").asText(), e);
+            return id == null ? null : error(id, RpcException.INTERNAL_ERROR, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private ObjectNode error(JsonNode id, int code, String message)
+    {
+        ObjectNode response = mapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.set("id", id == null ? mapper.nullNode() : id);
+        ObjectNode error = response.putObject("error");
+        error.put("code", code);
+        error.put("message", message);
+        return response;
+    }
+
+    // ---- 事件推送 ----
+
+    private void handleEvents(HttpExchange exchange) throws IOException
+    {
+        EventClient client = null;
+        try
+        {
+            if (!isLocalOrigin(exchange))
+            {
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+            if (!"GET".equals(exchange.getRequestMethod()))
+            {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (secret != null && !("token=" + secret).equals(exchange.getRequestURI().getRawQuery()))
+            {
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+            allowOrigin(exchange);
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+            client = new EventClient();
+            clients.add(client);
+            OutputStream out = exchange.getResponseBody();
+            // 先发送一条注释，客户端据此确认已订阅
+            out.write(": connected\n\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            while (true)
+            {
+                String event = client.queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                if (event == EventClient.CLOSED)
+                {
+                    break;
+                }
+                out.write((event == null ? ": heartbeat\n\n" : event).getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        } catch (IOException e)
+        {
+            logger.debug("事件订阅已断开: {}", e.getMessage());
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        } finally
+        {
+            if (client != null)
+            {
+                clients.remove(client);
+            }
+            exchange.close();
+        }
+    }
+
+    /**
+     * 向所有订阅者推送一条aria2通知
+     */
+    private void publish(String method, DownloadTask task)
+    {
+        if (clients.isEmpty())
+        {
+            return;
+        }
+        ObjectNode notification = mapper.createObjectNode();
+        notification.put("jsonrpc", "2.0");
+        notification.put("method", method);
+        notification.putArray("params").addObject().put("gid", task.getId());
+        String event;
+        try
+        {
+            event = "event: " + method + "\ndata: " + mapper.writeValueAsString(notification) + "\n\n";
+        } catch (JsonProcessingException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        for (EventClient client : clients)
+        {
+            if (!client.queue.offer(event))
+            {
+                // 跟不上的订阅者直接断开，不能拖慢事件分发
+                logger.warn("事件订阅者处理过慢，已断开");
+                clients.remove(client);
+                client.close();
+            }
+        }
+    }
+
+    private static String notificationFor(DownloadTask.Status status)
+    {
+        switch (status)
+        {
+        case DOWNLOADING:
+            return "aria2.onDownloadStart";
+        case PAUSED:
+            return "aria2.onDownloadPause";
+        case COMPLETED:
+            return "aria2.onDownloadComplete";
+        case ERROR:
+            return "aria2.onDownloadError";
+        case CANCELLED:
+            return "aria2.onDownloadStop";
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * 把任务状态变化转换为aria2通知 事件经过合并，同一周期内的中间状态不会单独通知
+     */
+    private class NotificationListener implements DownloadListener
+    {
+
+        @Override
+        public void onTaskAdded(DownloadTask task)
+        {
+            onTaskUpdated(task);
+        }
+
+        @Override
+        public void onTaskUpdated(DownloadTask task)
+        {
+            DownloadTask.Status status = task.getStatus();
+            if (lastStatus.put(task.getId(), status) != status)
+            {
+                String method = notificationFor(status);
+                if (method != null)
+                {
+                    publish(method, task);
+                }
+            }
+        }
+
+        @Override
+        public void onTaskRemoved(DownloadTask task)
+        {
+            DownloadTask.Status previous = lastStatus.remove(task.getId());
+            if (previous != null && !previous.isTerminal())
+            {
+                publish("aria2.onDownloadStop", task);
+            }
+        }
+    }
+
+    private static class EventClient
+    {
+
+        static final String CLOSED = new String("closed");
+
+        final BlockingQueue<String> queue = new ArrayBlockingQueue<>(EVENT_QUEUE_CAPACITY);
+
+        void close()
+        {
+            queue.clear();
+            queue.offer(CLOSED);
+        }
+    }
+
+    // ---- 工具 ----
+
+    /**
+     * 浏览器页面发起的请求带有Origin，只接受本机页面，防止任意网页控制下载器
+     */
+    private static boolean isLocalOrigin(HttpExchange exchange)
+    {
+        String origin = exchange.getRequestHeaders().getFirst("Origin");
+        if (origin == null || "null".equals(origin))
+        {
+            return origin == null;
+        }
+        try
+        {
+            String host = URI.create(origin).getHost();
+            return "localhost".equals(host) || "127.0.0.1".equals(host) || "[::1]".equals(host);
+        } catch (IllegalArgumentException e)
+        {
+            return false;
+        }
+    }
+
+    private static void allowOrigin(HttpExchange exchange)
+    {
+        String origin = exchange.getRequestHeaders().getFirst("Origin");
+        if (origin != null)
+        {
+            exchange.getResponseHeaders().set("Access-Control-Allow-Origin", origin);
+        }
+    }
+
+    /**
+     * 读取请求体，超过 {@link #MAX_REQUEST_BYTES} 时返回null
+     */
+    private static byte[] readBody(InputStream in) throws IOException
+    {
+        try (InputStream input = in)
+        {
+            byte[] body = input.readNBytes(MAX_REQUEST_BYTES + 1);
+            return body.length > MAX_REQUEST_BYTES ? null : body;
+        }
+    }
+}
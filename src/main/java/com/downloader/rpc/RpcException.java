@@ -0,0 +1,28 @@
+package com.downloader.rpc;
+
+/**
+ * JSON-RPC错误 code按JSON-RPC 2.0规范，方法执行失败时与aria2一致使用1
+ */
+public class RpcException extends Exception
+{
+
+    public static final int PARSE_ERROR = -32700;
+    public static final int INVALID_REQUEST = -32600;
+    public static final int METHOD_NOT_FOUND = -32601;
+    public static final int INVALID_PARAMS = -32602;
+    public static final int INTERNAL_ERROR = -32603;
+    public static final int FAILED = 1;
+
+    private final int code;
+
+    public RpcException(int code, String message)
+    {
+        super(message);
+        this.code = code;
+    }
+
+    public int getCode()
+    {
+        return code;
+    }
+}
@@ -0,0 +1,52 @@
+package com.downloader.sink;
+
+import java.io.IOException;
+
+/**
+ * 下载数据的去向 下载器只通过该接口写入数据：每个分段线程打开一个写入器，从分段的当前位置顺序写入，
+ * 不同写入器的区间互不重叠。一次下载中依次调用 {@link #open}、若干次 {@link #openWriter}，
+ * 最后 {@link #complete} 或 {@link #discard}；暂停后继续时同一个实例会被再次打开
+ */
+public interface DownloadSink
+{
+
+    /**
+     * 下载开始前调用，暂停后继续时会再次调用
+     * @param size 文件总大小，未知时小于0
+     */
+    void open(long size) throws IOException;
+
+    /**
+     * 是否接受任意位置的写入 返回false时下载器只使用一个连接，数据严格按从头到尾的顺序到达
+     */
+    default boolean isRandomAccess()
+    {
+        return true;
+    }
+
+    /**
+     * 已保存、可以续传的数据长度
+     * @return 没有可续传的数据时返回-1；多分段续传时按任务中保存的分段进度继续，只要求返回值不小于0
+     */
+    long getResumableLength();
+
+    /**
+     * 打开一个从指定位置开始顺序写入的写入器
+     */
+    SinkWriter openWriter(long position) throws IOException;
+
+    /**
+     * 丢弃已写入的数据，从头重新写入 服务器不支持续传时调用
+     */
+    void reset() throws IOException;
+
+    /**
+     * 全部数据写入完成
+     */
+    void complete() throws IOException;
+
+    /**
+     * 取消下载或远程文件变化时丢弃全部数据
+     */
+    void discard();
+}
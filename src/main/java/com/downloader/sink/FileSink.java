@@ -0,0 +1,100 @@
+package com.downloader.sink;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * 文件 数据先写入“目标文件.tmp”，完成后重命名为目标文件；临时文件保留时可以续传
+ */
+public class FileSink implements DownloadSink
+{
+
+    private final File targetFile;
+    private final File tempFile;
+
+    public FileSink(File targetFile)
+    {
+        this.targetFile = targetFile;
+        this.tempFile = new File(targetFile.getPath() + ".tmp");
+    }
+
+    public File getTargetFile()
+    {
+        return targetFile;
+    }
+
+    public File getTempFile()
+    {
+        return tempFile;
+    }
+
+    @Override
+    public void open(long size)
+    {
+    }
+
+    @Override
+    public long getResumableLength()
+    {
+        return tempFile.exists() ? tempFile.length() : -1;
+    }
+
+    @Override
+    public SinkWriter openWriter(long position) throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(tempFile, "rw");
+        try
+        {
+            file.seek(position);
+        } catch (IOException e)
+        {
+            file.close();
+            throw e;
+        }
+        return new SinkWriter()
+        {
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException
+            {
+                file.write(buffer, offset, length);
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                file.close();
+            }
+        };
+    }
+
+    @Override
+    public void reset() throws IOException
+    {
+        try (RandomAccessFile file = new RandomAccessFile(tempFile, "rw"))
+        {
+            file.setLength(0);
+        }
+    }
+
+    @Override
+    public void complete() throws IOException
+    {
+        if (!tempFile.renameTo(targetFile))
+        {
+            throw new IOException("无法重命名临时文件");
+        }
+    }
+
+    @Override
+    public void discard()
+    {
+        tempFile.delete();
+    }
+
+    @Override
+    public String toString()
+    {
+        return targetFile.getPath();
+    }
+}
@@ -0,0 +1,148 @@
+package com.downloader.sink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内存 数据直接写入堆内数组，完成后通过 {@link #getBuffer()} 读取，不产生任何磁盘读写。
+ * 大小已知时一次分配，各分段并发写入互不加锁；大小未知时（只会单连接下载）按需扩容，超过上限时下载失败
+ */
+public class MemorySink implements DownloadSink
+{
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private final int maxBytes;
+    private volatile byte[] data;
+    private final AtomicLong length = new AtomicLong(); // 已写入的最远位置
+    private volatile boolean complete;
+
+    /**
+     * @param maxBytes 允许保存的最大字节数
+     */
+    public MemorySink(int maxBytes)
+    {
+        if (maxBytes <= 0)
+        {
+            throw new IllegalArgumentException("内存上限必须大于0");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    public int getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    @Override
+    public synchronized void open(long size) throws IOException
+    {
+        if (size > maxBytes)
+        {
+            throw new IOException("文件大小" + size + "超过内存上限" + maxBytes);
+        }
+        complete = false;
+        if (size >= 0 && (data == null || data.length != size))
+        {
+            data = new byte[(int) size];
+            length.set(0);
+        } else if (data == null)
+        {
+            data = new byte[Math.min(INITIAL_CAPACITY, maxBytes)];
+        }
+    }
+
+    @Override
+    public long getResumableLength()
+    {
+        return data == null ? -1 : length.get();
+    }
+
+    @Override
+    public SinkWriter openWriter(long position)
+    {
+        return new SinkWriter()
+        {
+            private long next = position;
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException
+            {
+                long end = next + length;
+                byte[] target = data;
+                if (end > target.length)
+                {
+                    target = grow(end);
+                }
+                System.arraycopy(buffer, offset, target, (int) next, length);
+                next = end;
+                MemorySink.this.length.accumulateAndGet(end, Math::max);
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+    }
+
+    private synchronized byte[] grow(long required) throws IOException
+    {
+        if (required > maxBytes)
+        {
+            throw new IOException("下载数据超过内存上限" + maxBytes);
+        }
+        if (required > data.length)
+        {
+            byte[] larger = new byte[(int) Math.min(maxBytes, Math.max(required, 2L * data.length))];
+            System.arraycopy(data, 0, larger, 0, (int) length.get());
+            data = larger;
+        }
+        return data;
+    }
+
+    @Override
+    public void reset()
+    {
+        length.set(0);
+    }
+
+    @Override
+    public void complete()
+    {
+        complete = true;
+    }
+
+    @Override
+    public synchronized void discard()
+    {
+        data = null;
+        length.set(0);
+        complete = false;
+    }
+
+    public boolean isComplete()
+    {
+        return complete;
+    }
+
+    /**
+     * 返回已下载数据的只读视图
+     * @throws IllegalStateException 下载尚未完成时
+     */
+    public ByteBuffer getBuffer()
+    {
+        if (!complete)
+        {
+            throw new IllegalStateException("下载尚未完成");
+        }
+        return ByteBuffer.wrap(data, 0, (int) length.get()).slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "memory:" + maxBytes;
+    }
+}
@@ -0,0 +1,86 @@
+package com.downloader.sink;
+
+import java.io.IOException;
+
+/**
+ * 交给调用方处理的数据 每块数据连同其在文件中的位置交给 {@link Consumer}，可直接送入解析器、
+ * 对象存储的分片上传或只计算摘要，不落盘。不保存数据，因此暂停后继续或失败后重试都从头开始
+ */
+public class PositionalSink implements DownloadSink
+{
+
+    /**
+     * 数据块的接收者 buffer在调用返回后会被复用，需要保留时须自行复制
+     */
+    @FunctionalInterface
+    public interface Consumer
+    {
+        void accept(long position, byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    private final Consumer consumer;
+    private final boolean ordered;
+
+    /**
+     * @param ordered 为true时只使用一个连接，数据按顺序到达，适合流式解析和摘要计算；
+     *            为false时各分段并发调用consumer，位置互不重叠，consumer须线程安全
+     */
+    public PositionalSink(Consumer consumer, boolean ordered)
+    {
+        this.consumer = consumer;
+        this.ordered = ordered;
+    }
+
+    @Override
+    public void open(long size)
+    {
+    }
+
+    @Override
+    public boolean isRandomAccess()
+    {
+        return !ordered;
+    }
+
+    @Override
+    public long getResumableLength()
+    {
+        return -1;
+    }
+
+    @Override
+    public SinkWriter openWriter(long position)
+    {
+        return new SinkWriter()
+        {
+            private long next = position;
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException
+            {
+                consumer.accept(next, buffer, offset, length);
+                next += length;
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+    }
+
+    @Override
+    public void reset()
+    {
+    }
+
+    @Override
+    public void complete()
+    {
+    }
+
+    @Override
+    public void discard()
+    {
+    }
+}
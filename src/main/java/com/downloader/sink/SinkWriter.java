@@ -0,0 +1,13 @@
+package com.downloader.sink;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 单个分段的写入器 只由一个下载线程使用，每次写入紧接在上一次之后
+ */
+public interface SinkWriter extends Closeable
+{
+
+    void write(byte[] buffer, int offset, int length) throws IOException;
+}
@@ -0,0 +1,341 @@
+package com.downloader.store;
+
+import com.downloader.model.DownloadTask;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 基于追加日志的任务存储 状态变化先记入脏表，由后台线程批量追加到日志文件（write-behind），
+ * 日志过长时压缩为快照；启动时在后台分批恢复，不阻塞界面
+ */
+public class JournalTaskStore
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(JournalTaskStore.class);
+    private static final String SNAPSHOT_FILE = "tasks.snapshot";
+    private static final String JOURNAL_FILE = "tasks.journal";
+    private static final long FLUSH_INTERVAL = 1000; // 批量写入间隔（毫秒）
+    private static final int RESTORE_BATCH_SIZE = 2000; // 恢复时每批交付的任务数
+    private static final long COMPACT_MIN_ENTRIES = 50_000; // 日志至少达到该条数才考虑压缩
+    private static final Object REMOVED = new Object(); // 脏表中的删除标记
+
+    private final File directory;
+    private final File snapshotFile;
+    private final File journalFile;
+    private final ObjectWriter recordWriter;
+    private final ObjectReader recordReader;
+    private final Map<String, Object> dirty;
+    private final AtomicLong revision;
+    private final ScheduledExecutorService writerExecutor;
+    private volatile Supplier<Collection<DownloadTask>> liveTasks;
+    private volatile boolean restored;
+    private Writer journal; // 仅由写入线程访问
+    private long journalEntries;
+
+    /**
+     * @param directory 存储目录，为null时不做任何持久化
+     */
+    public JournalTaskStore(File directory)
+    {
+        this.directory = directory;
+        this.snapshotFile = directory == null ? null : new File(directory, SNAPSHOT_FILE);
+        this.journalFile = directory == null ? null : new File(directory, JOURNAL_FILE);
+        ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.recordWriter = mapper.writerFor(TaskRecord.class);
+        this.recordReader = mapper.readerFor(TaskRecord.class);
+        this.dirty = new ConcurrentHashMap<>();
+        this.revision = new AtomicLong(0);
+        this.writerExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "TaskStore-writer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 启动存储：先在后台恢复历史任务，再开始周期性批量写入
+     * @param liveTasks 当前全部任务，用于压缩时生成快照
+     * @param sink 分批接收恢复出的任务
+     * @param onRestored 恢复完成后回调
+     */
+    public void start(Supplier<Collection<DownloadTask>> liveTasks, Consumer<List<DownloadTask>> sink,
+            Runnable onRestored)
+    {
+        this.liveTasks = liveTasks;
+        if (directory == null)
+        {
+            restored = true;
+            onRestored.run();
+            return;
+        }
+        writerExecutor.execute(() -> {
+            try
+            {
+                restore(sink);
+            } catch (Exception e)
+            {
+                logger.error("恢复任务失败: {}", e.getMessage(), e);
+            } finally
+            {
+                restored = true;
+                onRestored.run();
+            }
+        });
+        writerExecutor.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL, FLUSH_INTERVAL,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录任务状态变化，仅写入内存脏表，不阻塞调用线程
+     */
+    public void markDirty(DownloadTask task)
+    {
+        if (directory != null && isPersistent(task))
+        {
+            dirty.put(task.getId(), task);
+        }
+    }
+
+    /**
+     * 写入自定义去向（内存、回调等）的任务无法在重启后恢复，不做持久化
+     */
+    private static boolean isPersistent(DownloadTask task)
+    {
+        return task.getSink() == null;
+    }
+
+    /**
+     * 记录任务删除
+     */
+    public void markRemoved(String taskId)
+    {
+        if (directory != null)
+        {
+            dirty.put(taskId, REMOVED);
+        }
+    }
+
+    /**
+     * 读取快照和日志，按版本号合并后分批交付
+     */
+    private void restore(Consumer<List<DownloadTask>> sink)
+    {
+        long begin = System.currentTimeMillis();
+        Map<String, TaskRecord> merged = new HashMap<>();
+        long maxRevision = 0;
+        maxRevision = Math.max(maxRevision, readRecords(snapshotFile, merged));
+        long journalRevision = readRecords(journalFile, merged);
+        maxRevision = Math.max(maxRevision, journalRevision);
+        revision.set(maxRevision);
+
+        List<TaskRecord> records = new ArrayList<>(merged.size());
+        for (TaskRecord record : merged.values())
+        {
+            if (!record.isDeleted())
+            {
+                records.add(record);
+            }
+        }
+        records.sort(Comparator.comparingLong(TaskRecord::getCreateTime));
+
+        List<DownloadTask> batch = new ArrayList<>(RESTORE_BATCH_SIZE);
+        for (TaskRecord record : records)
+        {
+            batch.add(record.toTask());
+            if (batch.size() >= RESTORE_BATCH_SIZE)
+            {
+                sink.accept(batch);
+                batch = new ArrayList<>(RESTORE_BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty())
+        {
+            sink.accept(batch);
+        }
+
+        logger.info("已恢复{}个任务，耗时{}毫秒", records.size(), System.currentTimeMillis() - begin);
+    }
+
+    private long readRecords(File file, Map<String, TaskRecord> merged)
+    {
+        long maxRevision = 0;
+        if (file == null || !file.isFile())
+        {
+            return maxRevision;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                if (line.isEmpty())
+                {
+                    continue;
+                }
+                TaskRecord record;
+                try
+                {
+                    record = recordReader.readValue(line);
+                } catch (IOException e)
+                {
+                    // 进程崩溃时最后一行可能不完整，跳过
+                    logger.warn("跳过损坏的任务记录: {}", file.getName());
+                    continue;
+                }
+                if (record.getId() == null)
+                {
+                    continue;
+                }
+                if (file == journalFile)
+                {
+                    journalEntries++;
+                }
+                maxRevision = Math.max(maxRevision, record.getRevision());
+                TaskRecord existing = merged.get(record.getId());
+                if (existing == null || record.getRevision() >= existing.getRevision())
+                {
+                    merged.put(record.getId(), record);
+                }
+            }
+        } catch (IOException e)
+        {
+            logger.error("读取任务记录失败: {} - {}", file.getName(), e.getMessage());
+        }
+        return maxRevision;
+    }
+
+    private void flushQuietly()
+    {
+        try
+        {
+            flush();
+        } catch (Exception e)
+        {
+            logger.error("写入任务日志失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 将脏表中的变化批量追加到日志 同一任务在一个周期内多次变化只写最后的状态
+     */
+    private synchronized void flush() throws IOException
+    {
+        if (dirty.isEmpty())
+        {
+            return;
+        }
+        if (journal == null)
+        {
+            directory.mkdirs();
+            journal = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(journalFile, true), StandardCharsets.UTF_8));
+        }
+
+        int written = 0;
+        for (String taskId : new ArrayList<>(dirty.keySet()))
+        {
+            Object value = dirty.remove(taskId);
+            if (value == null)
+            {
+                continue;
+            }
+            TaskRecord record = value == REMOVED ? TaskRecord.tombstone(taskId, revision.incrementAndGet())
+                    : TaskRecord.of((DownloadTask) value, revision.incrementAndGet());
+            journal.write(recordWriter.writeValueAsString(record));
+            journal.write('\n');
+            written++;
+        }
+        journal.flush();
+        journalEntries += written;
+
+        Supplier<Collection<DownloadTask>> supplier = liveTasks;
+        if (restored && supplier != null && journalEntries >= COMPACT_MIN_ENTRIES)
+        {
+            Collection<DownloadTask> live = supplier.get();
+            if (journalEntries >= 2L * live.size())
+            {
+                compact(live);
+            }
+        }
+    }
+
+    /**
+     * 将当前全部任务写成新快照并清空日志 快照记录使用更大的版本号，即使清空日志前崩溃也不会回退状态
+     */
+    private void compact(Collection<DownloadTask> live) throws IOException
+    {
+        long begin = System.currentTimeMillis();
+        File tmp = new File(directory, SNAPSHOT_FILE + ".tmp");
+        try (Writer out = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)))
+        {
+            for (DownloadTask task : live)
+            {
+                if (!isPersistent(task))
+                {
+                    continue;
+                }
+                out.write(recordWriter.writeValueAsString(TaskRecord.of(task, revision.incrementAndGet())));
+                out.write('\n');
+            }
+        }
+        Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        journal.close();
+        journal = null;
+        new FileOutputStream(journalFile, false).close();
+        logger.info("任务日志已压缩: {}条日志 -> {}个任务，耗时{}毫秒", journalEntries, live.size(),
+                System.currentTimeMillis() - begin);
+        journalEntries = 0;
+    }
+
+    /**
+     * 关闭存储，写入剩余的变化
+     */
+    public void close()
+    {
+        writerExecutor.shutdown();
+        try
+        {
+            writerExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if (directory == null)
+        {
+            return;
+        }
+        try
+        {
+            flush();
+            if (journal != null)
+            {
+                journal.close();
+                journal = null;
+            }
+        } catch (IOException e)
+        {
+            logger.error("关闭任务存储失败: {}", e.getMessage(), e);
+        }
+    }
+}
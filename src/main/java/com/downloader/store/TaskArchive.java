@@ -0,0 +1,274 @@
+package com.downloader.store;
+
+import com.downloader.model.DownloadTask;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 历史任务归档 已结束的任务从活动任务表中移出后追加到磁盘文件，只在查看历史时才读取；
+ * 按ID查找时使用ID到文件位置的索引，索引在第一次查找时建立一次，之后随追加更新
+ */
+public class TaskArchive
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskArchive.class);
+    private static final String ARCHIVE_FILE = "tasks.archive";
+    private static final int MEMORY_ARCHIVE_LIMIT = 10_000; // 未指定目录时只保留最近的归档条数
+
+    private final File archiveFile;
+    private final ObjectWriter recordWriter;
+    private final ObjectReader recordReader;
+    private final Map<String, TaskRecord> memoryArchive; // 未指定目录时使用，按归档顺序排列
+    private Map<String, Long> offsets; // 懒加载的任务ID到记录起始位置的索引
+    private long count = -1; // 懒加载的归档条数
+
+    /**
+     * @param directory 存储目录，为null时只在内存中保留最近的归档任务
+     */
+    public TaskArchive(File directory)
+    {
+        this.archiveFile = directory == null ? null : new File(directory, ARCHIVE_FILE);
+        ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.recordWriter = mapper.writerFor(TaskRecord.class);
+        this.recordReader = mapper.readerFor(TaskRecord.class);
+        this.memoryArchive = directory == null ? new LinkedHashMap<String, TaskRecord>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TaskRecord> eldest)
+            {
+                return size() > MEMORY_ARCHIVE_LIMIT;
+            }
+        } : null;
+    }
+
+    /**
+     * 追加一批已结束的任务
+     */
+    public synchronized void append(Collection<DownloadTask> tasks) throws IOException
+    {
+        if (archiveFile == null)
+        {
+            for (DownloadTask task : tasks)
+            {
+                // 先删除再放入，重新归档的任务排到最后
+                memoryArchive.remove(task.getId());
+                memoryArchive.put(task.getId(), TaskRecord.of(task, 0));
+            }
+            return;
+        }
+
+        File parent = archiveFile.getParentFile();
+        if (parent != null && !parent.exists())
+        {
+            parent.mkdirs();
+        }
+        Map<String, Long> index = index();
+        long position = archiveFile.length();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(archiveFile, true)))
+        {
+            for (DownloadTask task : tasks)
+            {
+                byte[] line = recordWriter.writeValueAsBytes(TaskRecord.of(task, 0));
+                out.write(line);
+                out.write('\n');
+                index.put(task.getId(), position);
+                position += line.length + 1;
+            }
+        }
+        count += tasks.size();
+    }
+
+    /**
+     * 读取全部归档任务
+     */
+    public synchronized List<DownloadTask> loadAll()
+    {
+        List<DownloadTask> result = new ArrayList<>();
+        if (archiveFile == null)
+        {
+            for (TaskRecord record : memoryArchive.values())
+            {
+                result.add(record.toTask());
+            }
+            return result;
+        }
+        forEachRecord(record -> result.add(record.toTask()));
+        return result;
+    }
+
+    /**
+     * 按ID查找归档任务 不存在的ID直接由索引返回，存在时只读取对应的一行
+     */
+    public DownloadTask find(String taskId)
+    {
+        long position;
+        synchronized (this)
+        {
+            if (archiveFile == null)
+            {
+                TaskRecord record = memoryArchive.get(taskId);
+                return record == null ? null : record.toTask();
+            }
+            Long offset = index().get(taskId);
+            if (offset == null)
+            {
+                return null;
+            }
+            position = offset;
+        }
+        // 记录写入后不再改变，读取不必持有锁，不阻塞归档追加
+        try (RandomAccessFile file = new RandomAccessFile(archiveFile, "r"))
+        {
+            file.seek(position);
+            byte[] line = readLine(file);
+            TaskRecord record = recordReader.readValue(line);
+            return record.toTask();
+        } catch (IOException e)
+        {
+            logger.warn("读取归档记录失败: {} - {}", taskId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 归档条数 首次调用时建立索引并统计行数
+     */
+    public synchronized long getCount()
+    {
+        if (archiveFile == null)
+        {
+            return memoryArchive.size();
+        }
+        index();
+        return count;
+    }
+
+    /**
+     * 返回ID到记录位置的索引，首次调用时扫描一遍归档文件建立 同一任务多次归档时以最后一条为准
+     */
+    private Map<String, Long> index()
+    {
+        if (offsets != null)
+        {
+            return offsets;
+        }
+        Map<String, Long> index = new HashMap<>();
+        long lines = 0;
+        if (archiveFile.isFile())
+        {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(archiveFile)))
+            {
+                ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+                long position = 0;
+                long lineStart = 0;
+                int b;
+                while ((b = in.read()) != -1)
+                {
+                    position++;
+                    if (b != '\n')
+                    {
+                        line.write(b);
+                        continue;
+                    }
+                    lines++;
+                    indexLine(index, line, lineStart);
+                    line.reset();
+                    lineStart = position;
+                }
+                if (line.size() > 0)
+                {
+                    lines++;
+                    indexLine(index, line, lineStart);
+                }
+            } catch (IOException e)
+            {
+                logger.warn("建立归档索引失败: {}", e.getMessage());
+            }
+        }
+        offsets = index;
+        count = lines;
+        return index;
+    }
+
+    private void indexLine(Map<String, Long> index, ByteArrayOutputStream line, long position)
+    {
+        if (line.size() == 0)
+        {
+            return;
+        }
+        try
+        {
+            TaskRecord record = recordReader.readValue(line.toByteArray());
+            if (record.getId() != null)
+            {
+                index.put(record.getId(), position);
+            }
+        } catch (IOException e)
+        {
+            logger.warn("跳过损坏的归档记录");
+        }
+    }
+
+    private static byte[] readLine(RandomAccessFile file) throws IOException
+    {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = file.read(buffer)) != -1)
+        {
+            for (int i = 0; i < n; i++)
+            {
+                if (buffer[i] == '\n')
+                {
+                    line.write(buffer, 0, i);
+                    return line.toByteArray();
+                }
+            }
+            line.write(buffer, 0, n);
+        }
+        return line.toByteArray();
+    }
+
+    private void forEachRecord(Consumer<TaskRecord> consumer)
+    {
+        if (!archiveFile.isFile())
+        {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(archiveFile), StandardCharsets.UTF_8)))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                if (line.isEmpty())
+                {
+                    continue;
+                }
+                try
+                {
+                    consumer.accept(recordReader.readValue(line));
+                } catch (IOException e)
+                {
+                    logger.warn("跳过损坏的归档记录");
+                }
+            }
+        } catch (IOException e)
+        {
+            logger.error("读取归档失败: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.downloader.store;
+
+import com.downloader.model.DownloadSegment;
+import com.downloader.model.DownloadTask;
+import com.downloader.model.RemoteFileInfo;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * 任务持久化记录 日志和快照中每行一条，时间统一保存为epoch毫秒
+ */
+@JsonInclude(JsonInclude.Include.NON_DEFAULT)
+public class TaskRecord
+{
+
+    private long revision; // 记录版本号，恢复时同一任务取版本号最大者
+    private boolean deleted; // 删除标记
+    private String id;
+    private String url;
+    private String fileName;
+    private String savePath;
+    private long totalSize;
+    private long downloadedSize;
+    private String status;
+    private long createTime;
+    private long startTime;
+    private long completeTime;
+    private String errorMessage;
+    private int threadCount;
+    private int priority;
+    private long maxSpeed;
+    private long[] segments; // 分段进度，每段依次为起点、终点、已下载字节数
+    private boolean rangesSupported; // 上次探测结果，与segments一起用于免探测续传
+    private String validator;
+
+    public TaskRecord()
+    {
+    }
+
+    /**
+     * 根据任务当前状态生成记录
+     */
+    public static TaskRecord of(DownloadTask task, long revision)
+    {
+        TaskRecord record = new TaskRecord();
+        record.revision = revision;
+        record.id = task.getId();
+        record.url = task.getUrl();
+        record.fileName = task.getFileName();
+        record.savePath = task.getSavePath();
+        record.totalSize = task.getTotalSize();
+        record.downloadedSize = task.getDownloadedSize();
+        record.status = task.getStatus().name();
+        record.createTime = task.getCreateTimeMillis();
+        record.startTime = task.getStartTimeMillis();
+        record.completeTime = task.getCompleteTimeMillis();
+        record.errorMessage = task.getErrorMessage();
+        record.threadCount = task.getThreadCount();
+        record.priority = task.getPriority();
+        record.maxSpeed = task.getMaxSpeed();
+        RemoteFileInfo remote = task.getRemoteFileInfo();
+        if (remote != null)
+        {
+            record.rangesSupported = remote.isSupportsRanges();
+            record.validator = remote.getValidator();
+        }
+        DownloadSegment[] taskSegments = task.getSegments();
+        if (taskSegments != null)
+        {
+            record.segments = new long[taskSegments.length * 3];
+            for (int i = 0; i < taskSegments.length; i++)
+            {
+                record.segments[i * 3] = taskSegments[i].getStart();
+                record.segments[i * 3 + 1] = taskSegments[i].getEnd();
+                record.segments[i * 3 + 2] = taskSegments[i].getDownloaded();
+            }
+        }
+        return record;
+    }
+
+    /**
+     * 生成删除标记记录
+     */
+    public static TaskRecord tombstone(String id, long revision)
+    {
+        TaskRecord record = new TaskRecord();
+        record.revision = revision;
+        record.id = id;
+        record.deleted = true;
+        return record;
+    }
+
+    /**
+     * 还原为任务对象 中断时正在下载的任务恢复为等待状态，以便重启后自动继续
+     */
+    public DownloadTask toTask()
+    {
+        DownloadTask task = new DownloadTask(id, url, fileName, savePath, createTime);
+        task.setTotalSize(totalSize);
+        task.setDownloadedSize(downloadedSize);
+        task.setStartTimeMillis(startTime);
+        task.setCompleteTimeMillis(completeTime);
+        task.setErrorMessage(errorMessage);
+        if (threadCount > 0)
+        {
+            task.setThreadCount(threadCount);
+        }
+        task.setPriority(priority);
+        task.setMaxSpeed(maxSpeed);
+        if (segments != null && segments.length > 0 && segments.length % 3 == 0)
+        {
+            DownloadSegment[] taskSegments = new DownloadSegment[segments.length / 3];
+            for (int i = 0; i < taskSegments.length; i++)
+            {
+                taskSegments[i] = new DownloadSegment(segments[i * 3], segments[i * 3 + 1], segments[i * 3 + 2]);
+            }
+            task.setSegments(taskSegments);
+            if (rangesSupported && totalSize > 0)
+            {
+                task.setRemoteFileInfo(new RemoteFileInfo(totalSize, true, validator));
+            }
+        }
+
+        DownloadTask.Status restored;
+        try
+        {
+            restored = status == null ? DownloadTask.Status.WAITING : DownloadTask.Status.valueOf(status);
+        } catch (IllegalArgumentException e)
+        {
+            restored = DownloadTask.Status.WAITING;
+        }
+        if (restored == DownloadTask.Status.DOWNLOADING)
+        {
+            restored = DownloadTask.Status.WAITING;
+        }
+        task.setStatus(restored);
+        return task;
+    }
+
+    // Getters and Setters（供Jackson序列化使用）
+    public long getRevision()
+    {
+        return revision;
+    }
+
+    public void setRevision(long revision)
+    {
+        this.revision = revision;
+    }
+
+    public boolean isDeleted()
+    {
+        return deleted;
+    }
+
+    public void setDeleted(boolean deleted)
+    {
+        this.deleted = deleted;
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public void setId(String id)
+    {
+        this.id = id;
+    }
+
+    public String getUrl()
+    {
+        return url;
+    }
+
+    public void setUrl(String url)
+    {
+        this.url = url;
+    }
+
+    public String getFileName()
+    {
+        return fileName;
+    }
+
+    public void setFileName(String fileName)
+    {
+        this.fileName = fileName;
+    }
+
+    public String getSavePath()
+    {
+        return savePath;
+    }
+
+    public void setSavePath(String savePath)
+    {
+        this.savePath = savePath;
+    }
+
+    public long getTotalSize()
+    {
+        return totalSize;
+    }
+
+    public void setTotalSize(long totalSize)
+    {
+        this.totalSize = totalSize;
+    }
+
+    public long getDownloadedSize()
+    {
+        return downloadedSize;
+    }
+
+    public void setDownloadedSize(long downloadedSize)
+    {
+        this.downloadedSize = downloadedSize;
+    }
+
+    public String getStatus()
+    {
+        return status;
+    }
+
+    public void setStatus(String status)
+    {
+        this.status = status;
+    }
+
+    public long getCreateTime()
+    {
+        return createTime;
+    }
+
+    public void setCreateTime(long createTime)
+    {
+        this.createTime = createTime;
+    }
+
+    public long getStartTime()
+    {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime)
+    {
+        this.startTime = startTime;
+    }
+
+    public long getCompleteTime()
+    {
+        return completeTime;
+    }
+
+    public void setCompleteTime(long completeTime)
+    {
+        this.completeTime = completeTime;
+    }
+
+    public String getErrorMessage()
+    {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage)
+    {
+        this.errorMessage = errorMessage;
+    }
+
+    public int getThreadCount()
+    {
+        return threadCount;
+    }
+
+    public void setThreadCount(int threadCount)
+    {
+        this.threadCount = threadCount;
+    }
+
+    public int getPriority()
+    {
+        return priority;
+    }
+
+    public void setPriority(int priority)
+    {
+        this.priority = priority;
+    }
+
+    public long getMaxSpeed()
+    {
+        return maxSpeed;
+    }
+
+    public void setMaxSpeed(long maxSpeed)
+    {
+        this.maxSpeed = maxSpeed;
+    }
+
+    public long[] getSegments()
+    {
+        return segments;
+    }
+
+    public void setSegments(long[] segments)
+    {
+        this.segments = segments;
+    }
+
+    public boolean isRangesSupported()
+    {
+        return rangesSupported;
+    }
+
+    public void setRangesSupported(boolean rangesSupported)
+    {
+        this.rangesSupported = rangesSupported;
+    }
+
+    public String getValidator()
+    {
+        return validator;
+    }
+
+    public void setValidator(String validator)
+    {
+        this.validator = validator;
+    }
+}
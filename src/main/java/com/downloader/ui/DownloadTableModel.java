@@ -4,21 +4,41 @@ import com.downloader.model.DownloadTask;
 
 import javax.swing.table.AbstractTableModel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
- * 下载任务表格模型
+ * 下载任务表格模型 维护任务ID到行号的索引和总大小、已下载、下载中数量的累计值，更新时按增量调整；
+ * 单元格文本按行缓存，只有显示内容依赖的值变化时才重新格式化，更新事件只针对可见行触发
  */
 public class DownloadTableModel extends AbstractTableModel
 {
 
-    private static final String[] COLUMN_NAMES = { "文件名", "大小", "进度", "速度", "状态", "下载链接" };
+    private static final String[] COLUMN_NAMES = { "文件名", "大小", "进度", "速度", "剩余时间", "状态", "下载链接" };
+    private static final int MAX_URL_LENGTH = 50;
+    private static final Double ZERO_PROGRESS = 0.0;
 
     private final List<DownloadTask> tasks;
+    private final List<RowState> rowStates; // 与tasks一一对应，记录上次计入累计值的状态
+    private final Map<String, Integer> rowIndex;
+    private long totalSize;
+    private long totalDownloaded;
+    private int activeCount;
+    private int firstVisibleRow;
+    private int lastVisibleRow;
+    private final StringBuilder formatBuffer; // 仅在事件调度线程中使用
 
     public DownloadTableModel()
     {
         this.tasks = new ArrayList<>();
+        this.rowStates = new ArrayList<>();
+        this.rowIndex = new HashMap<>();
+        this.firstVisibleRow = 0;
+        this.lastVisibleRow = Integer.MAX_VALUE;
+        this.formatBuffer = new StringBuilder(32);
     }
 
     @Override
@@ -47,8 +67,9 @@ public class DownloadTableModel extends AbstractTableModel
         case 0: // 文件名
         case 1: // 大小
         case 3: // 速度
-        case 4: // 状态
-        case 5: // URL
+        case 4: // 剩余时间
+        case 5: // 状态
+        case 6: // URL
             return String.class;
         case 2: // 进度
             return Double.class;
@@ -66,6 +87,7 @@ public class DownloadTableModel extends AbstractTableModel
         }
 
         DownloadTask task = tasks.get(rowIndex);
+        RowState state = rowStates.get(rowIndex);
 
         switch (columnIndex)
         {
@@ -73,38 +95,22 @@ public class DownloadTableModel extends AbstractTableModel
             return task.getFileName();
 
         case 1: // 大小
-            if (task.getTotalSize() > 0)
-            {
-                return DownloadTask.formatFileSize(task.getDownloadedSize()) + " / "
-                        + DownloadTask.formatFileSize(task.getTotalSize());
-            } else
-            {
-                return DownloadTask.formatFileSize(task.getDownloadedSize());
-            }
+            return state.sizeText(task, formatBuffer);
 
         case 2: // 进度
-            return task.getProgress();
+            return state.progressValue(task);
 
         case 3: // 速度
-            if (task.getStatus() == DownloadTask.Status.DOWNLOADING && task.getSpeed() > 0)
-            {
-                return DownloadTask.formatSpeed(task.getSpeed());
-            } else
-            {
-                return "-";
-            }
+            return state.speedText(task, formatBuffer);
 
-        case 4: // 状态
+        case 4: // 剩余时间
+            return state.etaText(task, formatBuffer);
+
+        case 5: // 状态
             return task.getStatus().getDisplayName();
 
-        case 5: // URL
-            String url = task.getUrl();
-            // 截断过长的URL
-            if (url.length() > 50)
-            {
-                return url.substring(0, 47) + "...";
-            }
-            return url;
+        case 6: // URL
+            return state.urlText(task);
 
         default:
             return null;
@@ -122,9 +128,68 @@ public class DownloadTableModel extends AbstractTableModel
      */
     public void addTask(DownloadTask task)
     {
+        if (appendRow(task))
+        {
+            int row = tasks.size() - 1;
+            fireTableRowsInserted(row, row);
+        }
+    }
+
+    /**
+     * 批量添加任务，只触发一次插入事件
+     */
+    public void addTasks(Collection<DownloadTask> newTasks)
+    {
+        int first = tasks.size();
+        for (DownloadTask task : newTasks)
+        {
+            appendRow(task);
+        }
+        int last = tasks.size() - 1;
+        if (last >= first)
+        {
+            fireTableRowsInserted(first, last);
+        }
+    }
+
+    private boolean appendRow(DownloadTask task)
+    {
+        if (rowIndex.containsKey(task.getId()))
+        {
+            return false;
+        }
+        rowIndex.put(task.getId(), tasks.size());
         tasks.add(task);
-        int row = tasks.size() - 1;
-        fireTableRowsInserted(row, row);
+        RowState state = new RowState();
+        rowStates.add(state);
+        applyDelta(state, task);
+        return true;
+    }
+
+    /**
+     * 用新的任务列表替换全部行（例如过滤或排序结果）
+     */
+    public void setTasks(List<DownloadTask> newTasks)
+    {
+        tasks.clear();
+        rowStates.clear();
+        rowIndex.clear();
+        totalSize = 0;
+        totalDownloaded = 0;
+        activeCount = 0;
+        for (DownloadTask task : newTasks)
+        {
+            appendRow(task);
+        }
+        fireTableDataChanged();
+    }
+
+    /**
+     * 是否已包含指定任务
+     */
+    public boolean containsTask(String taskId)
+    {
+        return rowIndex.containsKey(taskId);
     }
 
     /**
@@ -132,16 +197,54 @@ public class DownloadTableModel extends AbstractTableModel
      */
     public void updateTask(DownloadTask updatedTask)
     {
-        for (int i = 0; i < tasks.size(); i++)
+        int row = refreshRow(updatedTask);
+        if (row >= 0)
+        {
+            fireTableRowsUpdated(row, row);
+        }
+    }
+
+    /**
+     * 批量更新任务，只触发一次覆盖可见范围内变化行的更新事件 不可见行只更新累计值，滚动到可见时按缓存校验重新格式化
+     */
+    public void updateTasks(Collection<DownloadTask> updatedTasks)
+    {
+        int first = Integer.MAX_VALUE;
+        int last = -1;
+        for (DownloadTask task : updatedTasks)
         {
-            DownloadTask task = tasks.get(i);
-            if (task.getId().equals(updatedTask.getId()))
+            int row = refreshRow(task);
+            if (row >= firstVisibleRow && row <= lastVisibleRow)
             {
-                tasks.set(i, updatedTask);
-                fireTableRowsUpdated(i, i);
-                break;
+                first = Math.min(first, row);
+                last = Math.max(last, row);
             }
         }
+        if (last >= 0)
+        {
+            fireTableRowsUpdated(first, last);
+        }
+    }
+
+    /**
+     * 设置当前可见的行范围，由表格所在视口变化时调用
+     */
+    public void setVisibleRowRange(int first, int last)
+    {
+        this.firstVisibleRow = Math.max(0, first);
+        this.lastVisibleRow = last < 0 ? Integer.MAX_VALUE : last;
+    }
+
+    private int refreshRow(DownloadTask task)
+    {
+        Integer row = rowIndex.get(task.getId());
+        if (row == null)
+        {
+            return -1;
+        }
+        tasks.set(row, task);
+        applyDelta(rowStates.get(row), task);
+        return row;
     }
 
     /**
@@ -149,15 +252,73 @@ public class DownloadTableModel extends AbstractTableModel
      */
     public void removeTask(DownloadTask taskToRemove)
     {
-        for (int i = 0; i < tasks.size(); i++)
+        Integer row = rowIndex.remove(taskToRemove.getId());
+        if (row == null)
+        {
+            return;
+        }
+        subtract(rowStates.get(row));
+        tasks.remove((int) row);
+        rowStates.remove((int) row);
+        // 只需调整被删除行之后的行号
+        for (int i = row; i < tasks.size(); i++)
+        {
+            rowIndex.put(tasks.get(i).getId(), i);
+        }
+        fireTableRowsDeleted(row, row);
+    }
+
+    /**
+     * 批量删除任务 一次遍历压缩列表并重建索引，再从后往前按连续区间触发删除事件
+     */
+    public void removeTasks(Collection<DownloadTask> tasksToRemove)
+    {
+        int[] rows = new int[tasksToRemove.size()];
+        int count = 0;
+        for (DownloadTask task : tasksToRemove)
+        {
+            Integer row = rowIndex.remove(task.getId());
+            if (row != null)
+            {
+                rows[count++] = row;
+            }
+        }
+        if (count == 0)
+        {
+            return;
+        }
+        rows = Arrays.copyOf(rows, count);
+        Arrays.sort(rows);
+
+        int write = rows[0];
+        int next = 0;
+        for (int read = rows[0]; read < tasks.size(); read++)
         {
-            DownloadTask task = tasks.get(i);
-            if (task.getId().equals(taskToRemove.getId()))
+            if (next < rows.length && rows[next] == read)
             {
-                tasks.remove(i);
-                fireTableRowsDeleted(i, i);
-                break;
+                subtract(rowStates.get(read));
+                next++;
+                continue;
             }
+            DownloadTask task = tasks.get(read);
+            tasks.set(write, task);
+            rowStates.set(write, rowStates.get(read));
+            rowIndex.put(task.getId(), write);
+            write++;
+        }
+        tasks.subList(write, tasks.size()).clear();
+        rowStates.subList(write, rowStates.size()).clear();
+
+        int end = rows.length - 1;
+        while (end >= 0)
+        {
+            int start = end;
+            while (start > 0 && rows[start - 1] == rows[start] - 1)
+            {
+                start--;
+            }
+            fireTableRowsDeleted(rows[start], rows[end]);
+            end = start - 1;
         }
     }
 
@@ -190,6 +351,11 @@ public class DownloadTableModel extends AbstractTableModel
         if (size > 0)
         {
             tasks.clear();
+            rowStates.clear();
+            rowIndex.clear();
+            totalSize = 0;
+            totalDownloaded = 0;
+            activeCount = 0;
             fireTableRowsDeleted(0, size - 1);
         }
     }
@@ -199,13 +365,180 @@ public class DownloadTableModel extends AbstractTableModel
      */
     public int findRowByTaskId(String taskId)
     {
-        for (int i = 0; i < tasks.size(); i++)
+        Integer row = rowIndex.get(taskId);
+        return row == null ? -1 : row;
+    }
+
+    /**
+     * 所有任务的总大小
+     */
+    public long getTotalSize()
+    {
+        return totalSize;
+    }
+
+    /**
+     * 所有任务的已下载大小
+     */
+    public long getTotalDownloaded()
+    {
+        return totalDownloaded;
+    }
+
+    /**
+     * 下载中的任务数
+     */
+    public int getActiveCount()
+    {
+        return activeCount;
+    }
+
+    /**
+     * 用任务的最新状态替换该行上次计入的状态，累计值只按差值调整
+     */
+    private void applyDelta(RowState state, DownloadTask task)
+    {
+        long size = task.getTotalSize();
+        long downloaded = task.getDownloadedSize();
+        boolean active = task.getStatus() == DownloadTask.Status.DOWNLOADING;
+
+        totalSize += size - state.totalSize;
+        totalDownloaded += downloaded - state.downloadedSize;
+        activeCount += (active ? 1 : 0) - (state.active ? 1 : 0);
+
+        state.totalSize = size;
+        state.downloadedSize = downloaded;
+        state.active = active;
+    }
+
+    private void subtract(RowState state)
+    {
+        totalSize -= state.totalSize;
+        totalDownloaded -= state.downloadedSize;
+        activeCount -= state.active ? 1 : 0;
+    }
+
+    /**
+     * 行状态快照及单元格文本缓存
+     */
+    private static class RowState
+    {
+        long totalSize;
+        long downloadedSize;
+        boolean active;
+
+        // 大小列缓存
+        long cachedDownloaded = -1;
+        long cachedTotal = -1;
+        String sizeText;
+
+        // 进度列缓存
+        long progressDownloaded = -1;
+        long progressTotal = -1;
+        Double progress;
+
+        // 速度列缓存
+        long cachedSpeed = -1;
+        String speedText;
+
+        // 剩余时间列缓存
+        long cachedEta = Long.MIN_VALUE;
+        String etaText;
+
+        // URL列缓存
+        String cachedUrl;
+        String urlText;
+
+        String sizeText(DownloadTask task, StringBuilder sb)
+        {
+            refreshSize(task, sb);
+            return sizeText;
+        }
+
+        Double progressValue(DownloadTask task)
         {
-            if (tasks.get(i).getId().equals(taskId))
+            long downloaded = task.getDownloadedSize();
+            long total = task.getTotalSize();
+            if (progress == null || downloaded != progressDownloaded || total != progressTotal)
+            {
+                double value = task.getProgress();
+                progress = value == 0.0 ? ZERO_PROGRESS : Double.valueOf(value);
+                progressDownloaded = downloaded;
+                progressTotal = total;
+            }
+            return progress;
+        }
+
+        private void refreshSize(DownloadTask task, StringBuilder sb)
+        {
+            long downloaded = task.getDownloadedSize();
+            long total = task.getTotalSize();
+            if (sizeText != null && downloaded == cachedDownloaded && total == cachedTotal)
+            {
+                return;
+            }
+            sb.setLength(0);
+            DownloadTask.appendFileSize(sb, downloaded);
+            if (total > 0)
+            {
+                sb.append(" / ");
+                DownloadTask.appendFileSize(sb, total);
+            }
+            sizeText = sb.toString();
+            cachedDownloaded = downloaded;
+            cachedTotal = total;
+        }
+
+        String speedText(DownloadTask task, StringBuilder sb)
+        {
+            long speed = task.getStatus() == DownloadTask.Status.DOWNLOADING ? task.getSpeed() : 0;
+            if (speedText != null && speed == cachedSpeed)
+            {
+                return speedText;
+            }
+            if (speed > 0)
+            {
+                sb.setLength(0);
+                DownloadTask.appendSpeed(sb, speed);
+                speedText = sb.toString();
+            } else
+            {
+                speedText = "-";
+            }
+            cachedSpeed = speed;
+            return speedText;
+        }
+
+        String etaText(DownloadTask task, StringBuilder sb)
+        {
+            long eta = task.getEtaSeconds();
+            if (etaText != null && eta == cachedEta)
+            {
+                return etaText;
+            }
+            if (eta >= 0)
+            {
+                sb.setLength(0);
+                DownloadTask.appendDuration(sb, eta);
+                etaText = sb.toString();
+            } else
+            {
+                etaText = "-";
+            }
+            cachedEta = eta;
+            return etaText;
+        }
+
+        String urlText(DownloadTask task)
+        {
+            String url = task.getUrl();
+            if (url != cachedUrl)
             {
-                return i;
+                // 截断过长的URL
+                urlText = url.length() > MAX_URL_LENGTH ? url.substring(0, MAX_URL_LENGTH - 3) + "..." : url;
+                cachedUrl = url;
             }
+            return urlText;
         }
-        return -1;
     }
-}
\ No newline at end of file
+}
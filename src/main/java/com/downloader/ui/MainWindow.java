@@ -2,6 +2,7 @@ package com.downloader.ui;
 
 import com.downloader.core.DownloadListener;
 import com.downloader.core.DownloadManager;
+import com.downloader.core.TaskQuery;
 import com.downloader.model.DownloadTask;
 
 import javax.swing.*;
@@ -10,6 +11,8 @@ import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
+import java.util.Comparator;
+import java.util.EnumSet;
 
 /**
  * 主窗口界面
@@ -24,6 +27,16 @@ public class MainWindow extends JFrame implements DownloadListener
     private JTextField savePathField;
     private JLabel statusLabel;
     private JProgressBar totalProgressBar;
+    private JComboBox<Object> statusFilterBox;
+    private JTextField hostFilterField;
+    private JTextField nameFilterField;
+    private JTextField minSizeField;
+    private JTextField maxSizeField;
+    private JComboBox<TaskQuery.SortKey> sortKeyBox;
+    private JCheckBox descendingBox;
+    private Timer filterTimer;
+    private TaskQuery currentQuery = new TaskQuery();
+    private long filteredVersion = -1;
 
     public MainWindow(DownloadManager downloadManager)
     {
@@ -32,6 +45,12 @@ public class MainWindow extends JFrame implements DownloadListener
 
         initializeUI();
         setupEventHandlers();
+
+        // 载入已存在（例如从上次运行恢复）的任务
+        java.util.List<DownloadTask> existing = new java.util.ArrayList<>(downloadManager.getAllTasks());
+        existing.sort(Comparator.comparingLong(DownloadTask::getSequence));
+        tableModel.addTasks(existing);
+        updateTotalProgress();
     }
 
     private void initializeUI()
@@ -123,14 +142,19 @@ public class MainWindow extends JFrame implements DownloadListener
         downloadTable.getColumnModel().getColumn(1).setPreferredWidth(80); // 大小
         downloadTable.getColumnModel().getColumn(2).setPreferredWidth(100); // 进度
         downloadTable.getColumnModel().getColumn(3).setPreferredWidth(80); // 速度
-        downloadTable.getColumnModel().getColumn(4).setPreferredWidth(80); // 状态
-        downloadTable.getColumnModel().getColumn(5).setPreferredWidth(300); // URL
+        downloadTable.getColumnModel().getColumn(4).setPreferredWidth(70); // 剩余时间
+        downloadTable.getColumnModel().getColumn(5).setPreferredWidth(80); // 状态
+        downloadTable.getColumnModel().getColumn(6).setPreferredWidth(300); // URL
 
         // 设置进度条渲染器
         downloadTable.getColumnModel().getColumn(2).setCellRenderer(new ProgressBarRenderer());
 
         JScrollPane scrollPane = new JScrollPane(downloadTable);
         panel.add(scrollPane, BorderLayout.CENTER);
+        panel.add(createFilterBar(), BorderLayout.NORTH);
+
+        // 只对可见行触发更新事件，滚动或改变窗口大小时同步可见范围
+        scrollPane.getViewport().addChangeListener(e -> updateVisibleRows(scrollPane.getViewport()));
 
         // 右键菜单
         JPopupMenu popupMenu = createPopupMenu();
@@ -155,11 +179,169 @@ public class MainWindow extends JFrame implements DownloadListener
         openFolderButton.addActionListener(e -> openDownloadFolder());
         buttonPanel.add(openFolderButton);
 
+        JButton historyButton = new JButton("历史记录");
+        historyButton.addActionListener(e -> showHistoryDialog());
+        buttonPanel.add(historyButton);
+
         panel.add(buttonPanel, BorderLayout.SOUTH);
 
         return panel;
     }
 
+    /**
+     * 过滤和排序栏 条件变化后延迟执行查询，连续输入只查询一次
+     */
+    private JPanel createFilterBar()
+    {
+        JPanel filterBar = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 2));
+
+        filterTimer = new Timer(200, e -> refreshFilteredRows());
+        filterTimer.setRepeats(false);
+
+        filterBar.add(new JLabel("状态:"));
+        statusFilterBox = new JComboBox<>();
+        statusFilterBox.addItem("全部");
+        for (DownloadTask.Status status : DownloadTask.Status.values())
+        {
+            statusFilterBox.addItem(status);
+        }
+        statusFilterBox.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected,
+                    boolean cellHasFocus)
+            {
+                Object text = value instanceof DownloadTask.Status ? ((DownloadTask.Status) value).getDisplayName()
+                        : value;
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        statusFilterBox.addActionListener(e -> applyFilter());
+        filterBar.add(statusFilterBox);
+
+        filterBar.add(new JLabel("主机:"));
+        hostFilterField = createFilterField(10);
+        filterBar.add(hostFilterField);
+
+        filterBar.add(new JLabel("文件名:"));
+        nameFilterField = createFilterField(10);
+        filterBar.add(nameFilterField);
+
+        filterBar.add(new JLabel("大小(MB):"));
+        minSizeField = createFilterField(4);
+        filterBar.add(minSizeField);
+        filterBar.add(new JLabel("-"));
+        maxSizeField = createFilterField(4);
+        filterBar.add(maxSizeField);
+
+        filterBar.add(new JLabel("排序:"));
+        sortKeyBox = new JComboBox<>(TaskQuery.SortKey.values());
+        sortKeyBox.addActionListener(e -> applyFilter());
+        filterBar.add(sortKeyBox);
+
+        descendingBox = new JCheckBox("降序");
+        descendingBox.addActionListener(e -> applyFilter());
+        filterBar.add(descendingBox);
+
+        return filterBar;
+    }
+
+    private JTextField createFilterField(int columns)
+    {
+        JTextField field = new JTextField(columns);
+        field.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override
+            public void insertUpdate(javax.swing.event.DocumentEvent e)
+            {
+                applyFilter();
+            }
+
+            @Override
+            public void removeUpdate(javax.swing.event.DocumentEvent e)
+            {
+                applyFilter();
+            }
+
+            @Override
+            public void changedUpdate(javax.swing.event.DocumentEvent e)
+            {
+                applyFilter();
+            }
+        });
+        return field;
+    }
+
+    /**
+     * 根据过滤栏生成查询条件，并安排刷新
+     */
+    private void applyFilter()
+    {
+        TaskQuery query = new TaskQuery();
+        Object status = statusFilterBox.getSelectedItem();
+        if (status instanceof DownloadTask.Status)
+        {
+            query.setStatuses(EnumSet.of((DownloadTask.Status) status));
+        }
+        query.setHost(hostFilterField.getText());
+        query.setNameContains(nameFilterField.getText().trim());
+        query.setMinSize(parseMegabytes(minSizeField.getText()));
+        query.setMaxSize(parseMegabytes(maxSizeField.getText()));
+        query.setSortKey((TaskQuery.SortKey) sortKeyBox.getSelectedItem());
+        query.setDescending(descendingBox.isSelected());
+        currentQuery = query;
+        filterTimer.restart();
+    }
+
+    private static long parseMegabytes(String text)
+    {
+        try
+        {
+            double value = Double.parseDouble(text.trim());
+            return value < 0 ? -1 : (long) (value * 1024 * 1024);
+        } catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * 用索引查询结果替换表格内容，并保持选中的任务
+     */
+    private void refreshFilteredRows()
+    {
+        DownloadTask selected = tableModel.getTaskAt(downloadTable.getSelectedRow());
+        filteredVersion = downloadManager.getTaskIndex().getStructureVersion();
+        tableModel.setTasks(downloadManager.queryTasks(currentQuery));
+        if (selected != null)
+        {
+            int row = tableModel.findRowByTaskId(selected.getId());
+            if (row >= 0)
+            {
+                downloadTable.setRowSelectionInterval(row, row);
+            }
+        }
+        updateTotalProgress();
+    }
+
+    /**
+     * 有过滤或排序时，任务增删或关键字段变化后重新查询
+     */
+    private void requeryIfStructureChanged()
+    {
+        if (!currentQuery.isDefault() && downloadManager.getTaskIndex().getStructureVersion() != filteredVersion
+                && !filterTimer.isRunning())
+        {
+            filterTimer.restart();
+        }
+    }
+
+    private void updateVisibleRows(JViewport viewport)
+    {
+        Rectangle view = viewport.getViewRect();
+        int first = downloadTable.rowAtPoint(new Point(0, view.y));
+        int last = downloadTable.rowAtPoint(new Point(0, view.y + view.height - 1));
+        tableModel.setVisibleRowRange(Math.max(first, 0), last);
+    }
+
     private JPanel createStatusBar()
     {
         JPanel statusBar = new JPanel(new BorderLayout());
@@ -326,6 +508,50 @@ public class MainWindow extends JFrame implements DownloadListener
         }
     }
 
+    /**
+     * 查看已归档的历史任务 归档在后台线程读取，避免大文件阻塞界面
+     */
+    private void showHistoryDialog()
+    {
+        JDialog dialog = new JDialog(this, "历史记录", false);
+        DownloadTableModel historyModel = new DownloadTableModel();
+        JTable historyTable = new JTable(historyModel);
+        historyTable.setRowHeight(25);
+        historyTable.getColumnModel().getColumn(2).setCellRenderer(new ProgressBarRenderer());
+        JLabel countLabel = new JLabel("正在加载...");
+        countLabel.setBorder(new EmptyBorder(5, 5, 5, 5));
+
+        dialog.setLayout(new BorderLayout());
+        dialog.add(new JScrollPane(historyTable), BorderLayout.CENTER);
+        dialog.add(countLabel, BorderLayout.SOUTH);
+        dialog.setSize(800, 400);
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+
+        new SwingWorker<java.util.List<DownloadTask>, Void>()
+        {
+            @Override
+            protected java.util.List<DownloadTask> doInBackground()
+            {
+                return downloadManager.getArchivedTasks();
+            }
+
+            @Override
+            protected void done()
+            {
+                try
+                {
+                    java.util.List<DownloadTask> archived = get();
+                    historyModel.setTasks(archived);
+                    countLabel.setText("共 " + archived.size() + " 个历史任务");
+                } catch (Exception e)
+                {
+                    countLabel.setText("加载历史记录失败: " + e.getMessage());
+                }
+            }
+        }.execute();
+    }
+
     private void copyDownloadUrl()
     {
         int selectedRow = downloadTable.getSelectedRow();
@@ -375,6 +601,19 @@ public class MainWindow extends JFrame implements DownloadListener
         });
     }
 
+    @Override
+    public void onTasksAdded(java.util.List<DownloadTask> tasks)
+    {
+        SwingUtilities.invokeLater(() -> {
+            if (currentQuery.isDefault())
+            {
+                tableModel.addTasks(tasks);
+            }
+            requeryIfStructureChanged();
+            updateTotalProgress();
+        });
+    }
+
     @Override
     public void onTaskUpdated(DownloadTask task)
     {
@@ -384,6 +623,16 @@ public class MainWindow extends JFrame implements DownloadListener
         });
     }
 
+    @Override
+    public void onTasksUpdated(java.util.List<DownloadTask> tasks)
+    {
+        SwingUtilities.invokeLater(() -> {
+            tableModel.updateTasks(tasks);
+            requeryIfStructureChanged();
+            updateTotalProgress();
+        });
+    }
+
     @Override
     public void onTaskRemoved(DownloadTask task)
     {
@@ -393,10 +642,21 @@ public class MainWindow extends JFrame implements DownloadListener
         });
     }
 
+    @Override
+    public void onTasksRemoved(java.util.List<DownloadTask> tasks)
+    {
+        SwingUtilities.invokeLater(() -> {
+            tableModel.removeTasks(tasks);
+            updateTotalProgress();
+        });
+    }
+
+    /**
+     * 更新状态栏 直接使用表格模型维护的累计值，不再遍历所有任务
+     */
     private void updateTotalProgress()
     {
-        java.util.List<DownloadTask> tasks = tableModel.getAllTasks();
-        if (tasks.isEmpty())
+        if (tableModel.getRowCount() == 0)
         {
             totalProgressBar.setValue(0);
             totalProgressBar.setString("0%");
@@ -404,19 +664,9 @@ public class MainWindow extends JFrame implements DownloadListener
             return;
         }
 
-        long totalSize = 0;
-        long downloadedSize = 0;
-        int activeCount = 0;
-
-        for (DownloadTask task : tasks)
-        {
-            totalSize += task.getTotalSize();
-            downloadedSize += task.getDownloadedSize();
-            if (task.getStatus() == DownloadTask.Status.DOWNLOADING)
-            {
-                activeCount++;
-            }
-        }
+        long totalSize = tableModel.getTotalSize();
+        long downloadedSize = tableModel.getTotalDownloaded();
+        int activeCount = tableModel.getActiveCount();
 
         if (totalSize > 0)
         {
@@ -425,12 +675,16 @@ public class MainWindow extends JFrame implements DownloadListener
             totalProgressBar.setString(progress + "%");
         }
 
-        if (activeCount > 0)
+        long deferred = downloadManager.getDeferredCount();
+        if (activeCount > 0 && deferred > 0)
+        {
+            statusLabel.setText("正在下载 " + activeCount + " 个任务，队列中还有 " + deferred + " 个");
+        } else if (activeCount > 0)
         {
-            statusLabel.setText(String.format("正在下载 %d 个任务", activeCount));
+            statusLabel.setText("正在下载 " + activeCount + " 个任务");
         } else
         {
             statusLabel.setText("就绪");
         }
     }
-}
\ No newline at end of file
+}
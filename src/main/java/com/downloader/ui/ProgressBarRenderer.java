@@ -5,11 +5,15 @@ import javax.swing.table.TableCellRenderer;
 import java.awt.*;
 
 /**
- * 进度条表格单元格渲染器
+ * 进度条表格单元格渲染器 进度文字按0.1%预先生成，渲染时不做字符串格式化
  */
 public class ProgressBarRenderer extends JProgressBar implements TableCellRenderer
 {
 
+    private static final String[] PERCENT_LABELS = createPercentLabels();
+    private static final Color COMPLETED_COLOR = new Color(0, 150, 0);
+    private static final Color DOWNLOADING_COLOR = new Color(0, 120, 215);
+
     public ProgressBarRenderer()
     {
         super(0, 100);
@@ -18,6 +22,22 @@ public class ProgressBarRenderer extends JProgressBar implements TableCellRender
         setOpaque(true);
     }
 
+    /**
+     * 生成 0.0% ~ 100.0% 的全部文字
+     */
+    private static String[] createPercentLabels()
+    {
+        String[] labels = new String[1001];
+        StringBuilder sb = new StringBuilder(8);
+        for (int i = 0; i < labels.length; i++)
+        {
+            sb.setLength(0);
+            sb.append(i / 10).append('.').append(i % 10).append('%');
+            labels[i] = sb.toString();
+        }
+        return labels;
+    }
+
     @Override
     public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus,
             int row, int column)
@@ -27,8 +47,9 @@ public class ProgressBarRenderer extends JProgressBar implements TableCellRender
         if (value instanceof Double)
         {
             double progress = (Double) value;
+            int tenths = (int) Math.max(0, Math.min(1000, Math.round(progress * 10)));
             setValue((int) Math.round(progress));
-            setString(String.format("%.1f%%", progress));
+            setString(PERCENT_LABELS[tenths]);
         } else
         {
             setValue(0);
@@ -51,11 +72,11 @@ public class ProgressBarRenderer extends JProgressBar implements TableCellRender
         if (progress == 100)
         {
             // 完成 - 绿色
-            setForeground(new Color(0, 150, 0));
+            setForeground(COMPLETED_COLOR);
         } else if (progress > 0)
         {
             // 下载中 - 蓝色
-            setForeground(new Color(0, 120, 215));
+            setForeground(DOWNLOADING_COLOR);
         } else
         {
             // 未开始 - 灰色
@@ -64,4 +85,4 @@ public class ProgressBarRenderer extends JProgressBar implements TableCellRender
 
         return this;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,223 @@
+package com.downloader;
+
+import com.downloader.core.DownloadFailedException;
+import com.downloader.core.DownloadManager;
+import com.downloader.model.DownloadProgress;
+import com.downloader.model.DownloadRequest;
+import com.downloader.model.DownloadTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Rule;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * 基于Future和进度发布者的异步接口测试类
+ */
+public class AsyncDownloadApiTest {
+
+    @Rule
+    public final LoopbackFixture fixture = new LoopbackFixture("downloader-async");
+
+    private LoopbackHttpServer server;
+    private DownloadManager manager;
+    private File dir;
+
+    @Before
+    public void setUp() {
+        server = fixture.server();
+        dir = fixture.dir();
+        manager = new DownloadManager(null);
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testFuturesComposeWithoutPolling() throws Exception {
+        List<DownloadRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            server.addGenerated("/f" + i + ".bin", 16 * 1024 + i, i);
+            requests.add(new DownloadRequest(server.url("/f" + i + ".bin"), "f" + i + ".bin", dir.getPath()));
+        }
+
+        List<CompletableFuture<DownloadTask>> futures = manager.addDownloadsAsync(requests);
+        CompletableFuture<Long> totalBytes = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> futures.stream().mapToLong(f -> f.join().getTotalSize()).sum());
+
+        long expected = 20 * 16 * 1024 + (19 * 20) / 2;
+        assertEquals(expected, (long) totalBytes.get(30, TimeUnit.SECONDS));
+        assertEquals(16 * 1024 + 7, new File(dir, "f7.bin").length());
+        assertObserversReleased();
+    }
+
+    @Test
+    public void testFailedDownloadCompletesExceptionally() throws Exception {
+        CompletableFuture<DownloadTask> future = manager.addDownloadAsync(server.url("/missing.bin"),
+                "missing.bin", dir.getPath());
+        String id = null;
+        try {
+            future.get(30, TimeUnit.SECONDS);
+            fail("下载不存在的文件应失败");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DownloadFailedException);
+            DownloadTask task = ((DownloadFailedException) e.getCause()).getTask();
+            assertEquals(DownloadTask.Status.ERROR, task.getStatus());
+            id = task.getId();
+        }
+        // 已结束的任务再次获取时立即以同样方式完成
+        Throwable again = manager.getCompletion(id).handle((t, e) -> e).get(5, TimeUnit.SECONDS);
+        assertTrue(again instanceof DownloadFailedException);
+        assertObserversReleased();
+    }
+
+    @Test
+    public void testRemovedTaskCancelsFuture() throws Exception {
+        server.setPerConnectionBytesPerSecond(16 * 1024);
+        server.addGenerated("/slow.bin", 4 * 1024 * 1024, 1);
+        String id = manager.addDownload(server.url("/slow.bin"), "slow.bin", dir.getPath());
+        CompletableFuture<DownloadTask> future = manager.getCompletion(id);
+
+        manager.removeTask(id);
+
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("删除任务后Future应被取消");
+        } catch (CancellationException expected) {
+            // 预期
+        }
+        assertObserversReleased();
+    }
+
+    @Test
+    public void testProgressPublisherConflatesForSlowSubscriber() throws Exception {
+        server.setPerConnectionBytesPerSecond(2 * 1024 * 1024);
+        server.addGenerated("/big.bin", 4 * 1024 * 1024, 2);
+        String id = manager.addDownload(server.url("/big.bin"), "big.bin", dir.getPath());
+
+        RecordingSubscriber subscriber = new RecordingSubscriber(300);
+        manager.getProgressPublisher(id).subscribe(subscriber);
+
+        assertTrue("未收到onComplete", subscriber.done.await(30, TimeUnit.SECONDS));
+        assertNull(subscriber.error.get());
+        List<DownloadProgress> received = subscriber.received;
+        DownloadProgress last = received.get(received.size() - 1);
+        assertEquals(DownloadTask.Status.COMPLETED, last.getStatus());
+        assertEquals(4 * 1024 * 1024, last.getDownloadedSize());
+        assertTrue("最终快照应带有速度历史", last.getSpeedHistory().length > 0);
+        // 每300ms只取一个，约2秒的下载不会积压出每个分发周期一条的事件
+        assertTrue("收到 " + received.size() + " 条", received.size() <= 12);
+        for (int i = 1; i < received.size(); i++) {
+            assertTrue(received.get(i).getDownloadedSize() >= received.get(i - 1).getDownloadedSize());
+        }
+        assertObserversReleased();
+    }
+
+    @Test
+    public void testUnknownTask() throws Exception {
+        assertTrue(manager.getCompletion("missing").isCompletedExceptionally());
+
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        manager.getProgressPublisher("missing").subscribe(subscriber);
+        assertTrue(subscriber.done.await(1, TimeUnit.SECONDS));
+        assertTrue(subscriber.error.get() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void testInvalidRequestSignalsError() throws Exception {
+        server.addGenerated("/x.bin", 1024, 3);
+        String id = manager.addDownload(server.url("/x.bin"), "x.bin", dir.getPath());
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        manager.getProgressPublisher(id).subscribe(new Flow.Subscriber<DownloadProgress>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(0);
+            }
+
+            @Override
+            public void onNext(DownloadProgress item) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                error.set(throwable);
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(error.get() instanceof IllegalArgumentException);
+    }
+
+    private void assertObserversReleased() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (manager.getMetrics().getCollectionSizes().get("taskObservers") != 0) {
+            assertTrue("观察者未清理", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * 每处理完一条后休眠一段时间再请求下一条的订阅者
+     */
+    private static class RecordingSubscriber implements Flow.Subscriber<DownloadProgress> {
+
+        final List<DownloadProgress> received = new CopyOnWriteArrayList<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        private final long delayMillis;
+        private Flow.Subscription subscription;
+
+        RecordingSubscriber(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(DownloadProgress item) {
+            received.add(item);
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error.set(throwable);
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.downloader;
+
+import com.downloader.core.CoalescingEventDispatcher;
+import com.downloader.core.DownloadListener;
+import com.downloader.model.DownloadTask;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * 合并事件分发器测试类
+ */
+public class CoalescingEventDispatcherTest {
+
+    @Test
+    public void testUpdatesAreCoalescedPerTask() {
+        RecordingListener listener = new RecordingListener();
+        CoalescingEventDispatcher dispatcher = new CoalescingEventDispatcher(
+                new CopyOnWriteArrayList<>(Collections.singletonList(listener)), 60_000);
+
+        DownloadTask first = new DownloadTask("https://example.com/1", "1.bin", "/tmp");
+        DownloadTask second = new DownloadTask("https://example.com/2", "2.bin", "/tmp");
+        for (int i = 0; i < 1000; i++) {
+            dispatcher.taskUpdated(first);
+            dispatcher.taskUpdated(second);
+        }
+        dispatcher.flush();
+
+        assertEquals("所有更新应合并为一批", 1, listener.updateBatches.size());
+        assertEquals("每个任务只出现一次", 2, listener.updateBatches.get(0).size());
+        dispatcher.close();
+    }
+
+    @Test
+    public void testRemovedTaskIsNotUpdatedInSameBatch() {
+        RecordingListener listener = new RecordingListener();
+        CoalescingEventDispatcher dispatcher = new CoalescingEventDispatcher(
+                new CopyOnWriteArrayList<>(Collections.singletonList(listener)), 60_000);
+
+        DownloadTask task = new DownloadTask("https://example.com/1", "1.bin", "/tmp");
+        dispatcher.taskAdded(task);
+        dispatcher.taskUpdated(task);
+        dispatcher.taskRemoved(task);
+        dispatcher.close();
+
+        assertEquals(1, listener.added.size());
+        assertTrue("已删除的任务不应再收到更新", listener.updateBatches.isEmpty());
+        assertEquals(1, listener.removed.size());
+    }
+
+    private static class RecordingListener implements DownloadListener {
+        final List<DownloadTask> added = new ArrayList<>();
+        final List<List<DownloadTask>> updateBatches = new ArrayList<>();
+        final List<DownloadTask> removed = new ArrayList<>();
+
+        @Override
+        public void onTaskAdded(DownloadTask task) {
+            added.add(task);
+        }
+
+        @Override
+        public void onTaskUpdated(DownloadTask task) {
+            fail("应通过批量方法交付");
+        }
+
+        @Override
+        public void onTasksUpdated(List<DownloadTask> tasks) {
+            updateBatches.add(tasks);
+        }
+
+        @Override
+        public void onTaskRemoved(DownloadTask task) {
+            removed.add(task);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.downloader;
+
+import com.downloader.core.CompactTaskQueue;
+import com.downloader.core.DefaultSchedulingPolicy;
+import com.downloader.core.DownloadManager;
+import com.downloader.model.DownloadRequest;
+import com.downloader.model.DownloadTask;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * 紧凑队列测试类
+ */
+public class CompactTaskQueueTest {
+
+    @Test
+    public void testRequestsComeOutInOrderAcrossPages() {
+        CompactTaskQueue queue = new CompactTaskQueue();
+        int count = 50_000; // 约占用多个1MB页
+        for (int i = 0; i < count; i++) {
+            queue.add(new DownloadRequest("https://example.com/files/文件" + i + ".bin?token=abcdef", "文件" + i + ".bin",
+                    i % 2 == 0 ? "/tmp/even" : "/tmp/odd"));
+        }
+        assertEquals(count, queue.size());
+        assertTrue("应占用多个页面", queue.getMemoryBytes() > 1 << 20);
+
+        int next = 0;
+        while (!queue.isEmpty()) {
+            List<DownloadRequest> batch = queue.poll(777);
+            for (DownloadRequest request : batch) {
+                assertEquals("文件" + next + ".bin", request.getFileName());
+                assertEquals("https://example.com/files/文件" + next + ".bin?token=abcdef", request.getUrl());
+                assertEquals(next % 2 == 0 ? "/tmp/even" : "/tmp/odd", request.getSavePath());
+                next++;
+            }
+        }
+        assertEquals(count, next);
+        assertEquals("清空后应释放页面", 0, queue.getMemoryBytes());
+        assertTrue(queue.poll(10).isEmpty());
+    }
+
+    @Test
+    public void testPriorityRoundTripsAndOrdersStart() {
+        CompactTaskQueue queue = new CompactTaskQueue();
+        int[] priorities = { 0, 5, -3, Integer.MAX_VALUE, Integer.MIN_VALUE, 1, -1, 200 };
+        for (int i = 0; i < priorities.length; i++) {
+            queue.add(new DownloadRequest("https://example.com/" + i, "f" + i, "/tmp/p", priorities[i]));
+        }
+
+        List<DownloadRequest> polled = queue.poll(priorities.length);
+        assertEquals(priorities.length, polled.size());
+        TreeSet<DownloadTask> waiting = new TreeSet<>(new DefaultSchedulingPolicy().waitingOrder());
+        for (int i = 0; i < priorities.length; i++) {
+            DownloadRequest request = polled.get(i);
+            assertEquals(request.toString(), priorities[i], request.getPriority());
+            DownloadTask task = new DownloadTask(request.getUrl(), request.getFileName(), request.getSavePath());
+            task.setPriority(request.getPriority());
+            waiting.add(task);
+        }
+
+        List<String> started = new ArrayList<>();
+        for (DownloadTask task : waiting) {
+            started.add(task.getFileName());
+        }
+        assertEquals(List.of("f3", "f7", "f1", "f5", "f0", "f6", "f2", "f4"), started);
+    }
+
+    @Test
+    public void testTasksShareDirectoryAndKeepTimes() {
+        DownloadTask a = new DownloadTask("https://example.com/a", "a", new String("/tmp/shared"));
+        DownloadTask b = new DownloadTask("https://example.com/b", "b", new String("/tmp/shared"));
+        assertSame("相同目录应共用字符串实例", a.getSavePath(), b.getSavePath());
+
+        assertNull(a.getStartTime());
+        a.setStartTimeMillis(1_700_000_000_000L);
+        assertEquals(1_700_000_000_000L, a.getStartTimeMillis());
+        assertNotNull(a.getStartTime());
+        a.setStartTime(a.getStartTime());
+        assertEquals(1_700_000_000_000L, a.getStartTimeMillis());
+    }
+
+    @Test
+    public void testPromotedTasksGetUniqueNames() throws Exception {
+        LoopbackHttpServer server = new LoopbackHttpServer();
+        DownloadManager manager = new DownloadManager(null);
+        File dir = Files.createTempDirectory("downloader-deferred").toFile();
+        try {
+            server.addGenerated("/a.bin", 1024, 1);
+            new File(dir, "a.bin").createNewFile();
+            List<DownloadRequest> requests = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                requests.add(new DownloadRequest(server.url("/a.bin"), "a.bin", dir.getPath()));
+            }
+            manager.queueDownloads(requests);
+
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (manager.getAllTasks().size() < 30
+                    || !manager.getAllTasks().stream().allMatch(t -> t.getStatus().isTerminal())) {
+                assertTrue("紧凑队列中的请求未全部完成", System.currentTimeMillis() < deadline);
+                Thread.sleep(20);
+            }
+            // 逐批创建时沿用已占用的文件名和编号，不与已有文件和之前批次的任务重名
+            Set<String> names = new HashSet<>();
+            for (DownloadTask task : manager.getAllTasks()) {
+                assertEquals(DownloadTask.Status.COMPLETED, task.getStatus());
+                assertTrue("文件名重复: " + task.getFileName(), names.add(task.getFileName()));
+            }
+            assertFalse(names.contains("a.bin"));
+            assertTrue(names.contains("a(30).bin"));
+        } finally {
+            manager.shutdown();
+            server.close();
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package com.downloader;
 
 import com.downloader.core.DownloadManager;
+import com.downloader.model.DownloadRequest;
 import com.downloader.model.DownloadTask;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
@@ -18,10 +24,18 @@ public class DownloadManagerTest {
     
     private DownloadManager downloadManager;
     private String testDownloadPath;
+    private LoopbackHttpServer server;
+    private String testUrl;
     
     @Before
-    public void setUp() {
-        downloadManager = new DownloadManager();
+    public void setUp() throws IOException {
+        // 使用本机测试服务器，不依赖外部网络
+        server = new LoopbackHttpServer();
+        server.addGenerated("/bytes/1024", 1024, 1);
+        testUrl = server.url("/bytes/1024");
+
+        // 不指定数据目录，避免读写用户目录下的任务队列
+        downloadManager = new DownloadManager(null);
         testDownloadPath = System.getProperty("java.io.tmpdir") + "/test_downloads";
         
         // 创建测试目录
@@ -36,6 +50,7 @@ public class DownloadManagerTest {
         if (downloadManager != null) {
             downloadManager.shutdown();
         }
+        server.close();
         
         // 清理测试文件
         File testDir = new File(testDownloadPath);
@@ -53,7 +68,7 @@ public class DownloadManagerTest {
     @Test
     public void testAddDownload() {
         // 测试添加下载任务
-        String url = "https://httpbin.org/bytes/1024"; // 1KB测试文件
+        String url = testUrl; // 1KB测试文件
         String fileName = "test_file.bin";
         
         String taskId = downloadManager.addDownload(url, fileName, testDownloadPath);
@@ -89,7 +104,7 @@ public class DownloadManagerTest {
     @Test
     public void testRemoveTask() {
         // 测试删除任务
-        String url = "https://httpbin.org/bytes/1024";
+        String url = testUrl;
         String fileName = "test_remove.bin";
         
         String taskId = downloadManager.addDownload(url, fileName, testDownloadPath);
@@ -108,12 +123,43 @@ public class DownloadManagerTest {
     @Test(expected = RuntimeException.class)
     public void testAddDownloadWithInvalidFileName() {
         // 测试添加无效文件名的下载任务
-        downloadManager.addDownload("https://httpbin.org/bytes/1024", "", testDownloadPath);
+        downloadManager.addDownload(testUrl, "", testDownloadPath);
     }
     
     @Test(expected = RuntimeException.class)
     public void testAddDownloadWithInvalidPath() {
         // 测试添加无效路径的下载任务
-        downloadManager.addDownload("https://httpbin.org/bytes/1024", "test.txt", "");
+        downloadManager.addDownload(testUrl, "test.txt", "");
+    }
+    
+    @Test
+    public void testAddDownloadsResolvesNameCollisions() throws IOException {
+        // 测试批量添加：同名文件和已存在的文件都应得到不冲突的文件名，任务ID不重复
+        new File(testDownloadPath, "dup.bin").createNewFile();
+
+        List<DownloadRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            requests.add(new DownloadRequest("http://127.0.0.1:9/dup.bin", "dup.bin", testDownloadPath));
+        }
+        List<String> taskIds = downloadManager.addDownloads(requests);
+
+        assertEquals("每个请求都应返回任务ID", 200, taskIds.size());
+        assertEquals("任务ID不应重复", 200, new HashSet<>(taskIds).size());
+
+        Set<String> fileNames = new HashSet<>();
+        for (String taskId : taskIds) {
+            fileNames.add(downloadManager.getTask(taskId).getFileName());
+        }
+        assertEquals("文件名不应重复", 200, fileNames.size());
+        assertFalse("不应覆盖已存在的文件", fileNames.contains("dup.bin"));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddDownloadsRejectsInvalidEntries() {
+        // 测试批量添加时的整体校验
+        List<DownloadRequest> requests = new ArrayList<>();
+        requests.add(new DownloadRequest("http://127.0.0.1:9/a.bin", "a.bin", testDownloadPath));
+        requests.add(new DownloadRequest("", "b.bin", testDownloadPath));
+        downloadManager.addDownloads(requests);
     }
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+package com.downloader;
+
+import com.downloader.metrics.DownloadMetrics;
+import com.downloader.metrics.Histogram;
+import com.downloader.metrics.PrometheusEndpoint;
+import com.downloader.model.DownloadTask;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.*;
+
+/**
+ * 下载指标测试类
+ */
+public class DownloadMetricsTest {
+
+    @Test
+    public void testHistogramPercentiles() {
+        Histogram histogram = Histogram.forRequests();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(2_000_000L); // 2ms
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(300_000_000L); // 300ms
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(5.0, histogram.getPercentileMillis(0.5), 0.001);
+        assertEquals(500.0, histogram.getPercentileMillis(0.95), 0.001);
+        assertEquals(31.8, histogram.getMeanMillis(), 0.001);
+    }
+
+    @Test
+    public void testPrometheusOutput() {
+        DownloadMetrics metrics = new DownloadMetrics();
+        DownloadTask task = new DownloadTask("http://Example.com/a.bin", "a.bin", "/tmp");
+        task.setStatus(DownloadTask.Status.DOWNLOADING);
+        task.setSpeed(2048);
+        metrics.bind(Collections.singletonList(task), () -> 1, () -> 3, null);
+
+        LongAdder origin = metrics.originCounter("http://example.com:80");
+        metrics.recordBytes(origin, 1000);
+        metrics.recordBytes(origin, 500);
+        metrics.recordRetry();
+        metrics.recordRequest(20_000_000L);
+        metrics.recordDiskWrite(3_000L);
+
+        String text = metrics.toPrometheus();
+        assertTrue(text.contains("downloader_bytes_total 1500\n"));
+        assertTrue(text.contains("downloader_origin_bytes_total{origin=\"http://example.com:80\"} 1500\n"));
+        assertTrue(text.contains("downloader_origin_bytes_per_second{origin=\"http://example.com:80\"} 2048\n"));
+        assertTrue(text.contains("downloader_bytes_per_second 2048\n"));
+        assertTrue(text.contains("downloader_task_bytes_per_second{task=\"" + task.getId() + "\"} 2048\n"));
+        assertTrue(text.contains("downloader_active_downloads 1\n"));
+        assertTrue(text.contains("downloader_queue_depth 3\n"));
+        assertTrue(text.contains("downloader_retries_total 1\n"));
+        assertTrue(text.contains("downloader_time_to_first_byte_seconds_bucket{le=\"0.01\"} 0\n"));
+        assertTrue(text.contains("downloader_time_to_first_byte_seconds_bucket{le=\"0.025\"} 1\n"));
+        assertTrue(text.contains("downloader_time_to_first_byte_seconds_count 1\n"));
+        assertTrue(text.contains("downloader_disk_write_seconds_bucket{le=\"+Inf\"} 1\n"));
+        assertTrue(text.contains("downloader_threads{pool=\"main\"} 1\n"));
+    }
+
+    @Test
+    public void testResourceMonitor() {
+        DownloadMetrics metrics = new DownloadMetrics();
+        metrics.getResources().registerSize("tasks", () -> 12);
+        assertEquals(Integer.valueOf(12), metrics.getCollectionSizes().get("tasks"));
+        assertTrue(metrics.toPrometheus().contains("downloader_collection_size{name=\"tasks\"} 12\n"));
+        assertTrue(metrics.getLiveThreads() > 0);
+        assertEquals(metrics.getLiveThreads(),
+                metrics.getThreadsByPool().values().stream().mapToInt(Integer::intValue).sum(), 2);
+        assertTrue(metrics.getDirectBufferBytes() >= 0);
+    }
+
+    @Test
+    public void testMBeanAndEndpoint() throws Exception {
+        DownloadMetrics metrics = new DownloadMetrics();
+        metrics.registerMBean();
+        PrometheusEndpoint endpoint = new PrometheusEndpoint(metrics);
+        try {
+            assertNotNull(metrics.getObjectName());
+            assertEquals(0L, ManagementFactory.getPlatformMBeanServer()
+                    .getAttribute(metrics.getObjectName(), "BytesDownloaded"));
+
+            int port = endpoint.start(0);
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/metrics")
+                    .openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+            try (InputStream in = connection.getInputStream()) {
+                String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                assertTrue(body.contains("# TYPE downloader_bytes_total counter"));
+            }
+        } finally {
+            endpoint.stop();
+            metrics.unregisterMBean();
+        }
+        assertNull(metrics.getObjectName());
+    }
+}
@@ -0,0 +1,149 @@
+package com.downloader;
+
+import com.downloader.core.DownloadFailedException;
+import com.downloader.core.DownloadManager;
+import com.downloader.model.DownloadTask;
+import com.downloader.sink.MemorySink;
+import com.downloader.sink.PositionalSink;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * 下载数据去向测试类
+ */
+public class DownloadSinkTest {
+
+    private static final int SIZE = 8 * 1024 * 1024;
+
+    private LoopbackHttpServer server;
+    private DownloadManager manager;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LoopbackHttpServer();
+        manager = new DownloadManager(null);
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void testMemorySinkWithSegments() throws Exception {
+        server.addGenerated("/mem.bin", SIZE, 11);
+        MemorySink sink = new MemorySink(16 * 1024 * 1024);
+
+        DownloadTask task = manager.addDownloadAsync(server.url("/mem.bin"), "mem.bin", sink)
+                .get(30, TimeUnit.SECONDS);
+
+        assertEquals(DownloadTask.Status.COMPLETED, task.getStatus());
+        assertTrue("应使用多个分段", server.getRequests("GET", "/mem.bin").size() > 1);
+        assertGenerated(sink.getBuffer(), SIZE, 11);
+    }
+
+    @Test
+    public void testMemorySinkResumesAfterPause() throws Exception {
+        server.setPerConnectionBytesPerSecond(1024 * 1024);
+        server.addGenerated("/resume.bin", SIZE, 12);
+        MemorySink sink = new MemorySink(SIZE);
+        String id = manager.addDownload(server.url("/resume.bin"), "resume.bin", sink);
+
+        DownloadTask task = manager.getTask(id);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (task.getDownloadedSize() < SIZE / 8) {
+            assertTrue("下载没有进展", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+        manager.pauseDownload(id);
+        server.setPerConnectionBytesPerSecond(0);
+        manager.startDownload(id);
+
+        manager.getCompletion(id).get(30, TimeUnit.SECONDS);
+        assertGenerated(sink.getBuffer(), SIZE, 12);
+    }
+
+    @Test
+    public void testMemorySinkCap() throws Exception {
+        server.addGenerated("/large.bin", 1024 * 1024, 13);
+        CompletableFuture<DownloadTask> future = manager.addDownloadAsync(server.url("/large.bin"), "large.bin",
+                new MemorySink(512 * 1024));
+        try {
+            future.get(30, TimeUnit.SECONDS);
+            fail("超过内存上限的下载应失败");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DownloadFailedException);
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("内存上限"));
+        }
+    }
+
+    @Test
+    public void testOrderedPositionalSinkHashesWithoutDisk() throws Exception {
+        server.addGenerated("/hash.bin", SIZE, 14);
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        AtomicLong expectedPosition = new AtomicLong();
+        AtomicReference<String> outOfOrder = new AtomicReference<>();
+        PositionalSink sink = new PositionalSink((position, buffer, offset, length) -> {
+            // 回调中抛出的AssertionError不会被下载线程当作失败处理，记录下来在下载结束后断言
+            if (position != expectedPosition.get()) {
+                outOfOrder.compareAndSet(null, "期望位置" + expectedPosition.get() + "，实际" + position);
+            }
+            digest.update(buffer, offset, length);
+            expectedPosition.addAndGet(length);
+        }, true);
+
+        manager.addDownloadAsync(server.url("/hash.bin"), "hash.bin", sink).get(30, TimeUnit.SECONDS);
+
+        assertNull(outOfOrder.get());
+        assertEquals(SIZE, expectedPosition.get());
+        MessageDigest expected = MessageDigest.getInstance("SHA-256");
+        for (long i = 0; i < SIZE; i++) {
+            expected.update(LoopbackHttpServer.generatedByte(i, 14));
+        }
+        assertArrayEquals(expected.digest(), digest.digest());
+    }
+
+    @Test
+    public void testUnorderedPositionalSinkReceivesSegments() throws Exception {
+        server.addGenerated("/parts.bin", SIZE, 15);
+        byte[] assembled = new byte[SIZE];
+        AtomicLong received = new AtomicLong();
+        PositionalSink sink = new PositionalSink((position, buffer, offset, length) -> {
+            System.arraycopy(buffer, offset, assembled, (int) position, length);
+            received.addAndGet(length);
+        }, false);
+
+        manager.addDownloadAsync(server.url("/parts.bin"), "parts.bin", sink).get(30, TimeUnit.SECONDS);
+
+        assertEquals(SIZE, received.get());
+        assertTrue("应使用多个分段", server.getRequests("GET", "/parts.bin").size() > 1);
+        assertGenerated(ByteBuffer.wrap(assembled), SIZE, 15);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSinkTaskRequiresFileName() {
+        manager.addDownload(server.url("/none.bin"), null, new MemorySink(1024));
+    }
+
+    private static void assertGenerated(ByteBuffer buffer, int size, long seed) {
+        assertEquals(size, buffer.remaining());
+        for (int i = 0; i < size; i++) {
+            if (buffer.get(i) != LoopbackHttpServer.generatedByte(i, seed)) {
+                fail("第" + i + "个字节不一致");
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.downloader;
+
+import com.downloader.model.DownloadTask;
+import com.downloader.ui.DownloadTableModel;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 下载任务表格模型测试类
+ */
+public class DownloadTableModelTest {
+
+    private DownloadTableModel model;
+    private List<DownloadTask> tasks;
+
+    @Before
+    public void setUp() {
+        model = new DownloadTableModel();
+        tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            DownloadTask task = new DownloadTask("https://example.com/" + i, i + ".bin", "/tmp");
+            task.setTotalSize(100);
+            tasks.add(task);
+        }
+        model.addTasks(tasks);
+    }
+
+    @Test
+    public void testRowIndexStaysCorrectAfterRemovals() {
+        model.removeTask(tasks.get(0));
+        model.removeTasks(Arrays.asList(tasks.get(3), tasks.get(4), tasks.get(8)));
+
+        assertEquals(6, model.getRowCount());
+        for (int row = 0; row < model.getRowCount(); row++) {
+            DownloadTask task = model.getTaskAt(row);
+            assertEquals("行索引应与实际位置一致", row, model.findRowByTaskId(task.getId()));
+        }
+        assertEquals(-1, model.findRowByTaskId(tasks.get(3).getId()));
+        assertEquals("剩余行应保持原有顺序", tasks.get(1), model.getTaskAt(0));
+        assertEquals(tasks.get(9), model.getTaskAt(5));
+    }
+
+    @Test
+    public void testTotalsAreMaintainedByDeltas() {
+        assertEquals(1000, model.getTotalSize());
+
+        DownloadTask task = tasks.get(2);
+        task.setStatus(DownloadTask.Status.DOWNLOADING);
+        task.setDownloadedSize(40);
+        model.updateTask(task);
+        task.setDownloadedSize(70);
+        model.updateTask(task);
+
+        assertEquals(70, model.getTotalDownloaded());
+        assertEquals(1, model.getActiveCount());
+
+        model.removeTask(task);
+        assertEquals(900, model.getTotalSize());
+        assertEquals(0, model.getTotalDownloaded());
+        assertEquals(0, model.getActiveCount());
+    }
+
+    @Test
+    public void testCellTextIsCachedUntilValuesChange() {
+        DownloadTask task = tasks.get(0);
+        task.setDownloadedSize(10);
+        model.updateTask(task);
+
+        Object first = model.getValueAt(0, 1);
+        assertSame("值未变化时应复用缓存的文本", first, model.getValueAt(0, 1));
+        assertSame(model.getValueAt(0, 2), model.getValueAt(0, 2));
+
+        task.setDownloadedSize(20);
+        assertEquals("20 B / 100 B", model.getValueAt(0, 1));
+    }
+
+    @Test
+    public void testFormatFileSizeMatchesPreviousOutput() {
+        long[] sizes = {0, 1023, 1024, 1536, 10_485_759, 1_048_576, 5_000_000_000L, 1_073_741_823L};
+        for (long size : sizes) {
+            String expected;
+            if (size < 1024) {
+                expected = size + " B";
+            } else if (size < 1024 * 1024) {
+                expected = String.format("%.1f KB", size / 1024.0);
+            } else if (size < 1024 * 1024 * 1024) {
+                expected = String.format("%.1f MB", size / (1024.0 * 1024));
+            } else {
+                expected = String.format("%.1f GB", size / (1024.0 * 1024 * 1024));
+            }
+            assertEquals(expected, DownloadTask.formatFileSize(size));
+        }
+    }
+}
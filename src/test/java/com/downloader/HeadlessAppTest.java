@@ -0,0 +1,145 @@
+package com.downloader;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Rule;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 无界面批量下载测试类
+ */
+public class HeadlessAppTest {
+
+    @Rule
+    public final LoopbackFixture fixture = new LoopbackFixture("downloader-headless");
+
+    private LoopbackHttpServer server;
+    private File dir;
+    private ByteArrayOutputStream out;
+    private ByteArrayOutputStream err;
+
+    @Before
+    public void setUp() {
+        server = fixture.server();
+        dir = fixture.dir();
+        out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+    }
+
+    @Test
+    public void testParseManifest() throws IOException {
+        String manifest = "# 注释\n"
+                + "\n"
+                + "http://example.com/a/file%20one.bin  downloads/\n"
+                + "https://example.com/b.bin  out/renamed.bin  sha256:ABCDEF01  5\n"
+                + "http://example.com/c.bin\tc.bin\t-\t-3\n"
+                + "http://example.com/d.bin  d.bin  10\n";
+        List<HeadlessApp.Entry> entries = HeadlessApp.parseManifest(
+                new BufferedReader(new StringReader(manifest)), dir);
+
+        assertEquals(4, entries.size());
+        assertEquals("file one.bin", entries.get(0).fileName);
+        assertEquals(new File(dir, "downloads").getPath(), entries.get(0).directory);
+        assertNull(entries.get(0).algorithm);
+        assertEquals("renamed.bin", entries.get(1).fileName);
+        assertEquals(new File(dir, "out").getPath(), entries.get(1).directory);
+        assertEquals("SHA-256", entries.get(1).algorithm);
+        assertEquals("ABCDEF01", entries.get(1).checksum);
+        assertEquals(5, entries.get(1).priority);
+        assertEquals(-3, entries.get(2).priority);
+        assertNull(entries.get(2).algorithm);
+        assertEquals(10, entries.get(3).priority);
+    }
+
+    @Test
+    public void testInvalidManifestReportsLine() {
+        assertManifestError("http://example.com/a.bin\n", "第1行");
+        assertManifestError("http://example.com/a.bin a.bin\nftp://example.com/b.bin b.bin\n", "第2行");
+        assertManifestError("http://example.com/a.bin a.bin crc32:1234\n", "不支持的校验算法");
+        assertManifestError("http://example.com/ downloads/\n", "无法从URL确定文件名");
+    }
+
+    @Test
+    public void testDownloadsAndVerifiesChecksums() throws Exception {
+        byte[] data = "headless".getBytes(StandardCharsets.UTF_8);
+        server.addBytes("/small.txt", data);
+        server.addGenerated("/big.bin", 3 * 1024 * 1024, 9);
+        File manifest = writeManifest(server.url("/small.txt") + " small.txt sha256:"
+                + sha256Hex(data) + "\n" + server.url("/big.bin") + " nested/ - 5\n");
+
+        int code = run("--headless", "--interval", "1", "--output", dir.getPath(), manifest.getPath());
+
+        assertEquals(err.toString(), HeadlessApp.EXIT_OK, code);
+        assertArrayEquals(data, Files.readAllBytes(new File(dir, "small.txt").toPath()));
+        assertEquals(3 * 1024 * 1024, new File(dir, "nested/big.bin").length());
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("结束: 2/2个文件完成"));
+    }
+
+    @Test
+    public void testChecksumMismatchExitCode() throws Exception {
+        server.addBytes("/a.txt", "abc".getBytes(StandardCharsets.UTF_8));
+        File manifest = writeManifest(server.url("/a.txt") + " a.txt md5:00000000000000000000000000000000\n");
+
+        assertEquals(HeadlessApp.EXIT_CHECKSUM_MISMATCH, run("--output", dir.getPath(), manifest.getPath()));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("实际900150983cd24fb0d6963f7d28e17f72"));
+    }
+
+    @Test
+    public void testFailedDownloadExitCode() throws Exception {
+        File manifest = writeManifest(server.url("/missing.bin") + " missing.bin\n");
+
+        assertEquals(HeadlessApp.EXIT_DOWNLOAD_FAILED,
+                run("--retries", "1", "--output", dir.getPath(), manifest.getPath()));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("重新开始(1/1)"));
+    }
+
+    @Test
+    public void testUsageErrors() {
+        assertEquals(HeadlessApp.EXIT_USAGE, run("--headless"));
+        assertEquals(HeadlessApp.EXIT_USAGE, run("--concurrency", "0", "list.txt"));
+        assertEquals(HeadlessApp.EXIT_USAGE, run(new File(dir, "absent.txt").getPath()));
+    }
+
+    private int run(String... args) {
+        return HeadlessApp.run(args, new PrintStream(out, true, StandardCharsets.UTF_8),
+                new PrintStream(err, true, StandardCharsets.UTF_8));
+    }
+
+    private File writeManifest(String content) throws IOException {
+        File manifest = new File(dir, "manifest.txt");
+        Files.write(manifest.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return manifest;
+    }
+
+    private void assertManifestError(String manifest, String expected) {
+        try {
+            HeadlessApp.parseManifest(new BufferedReader(new StringReader(manifest)), dir);
+            fail("应拒绝清单: " + manifest);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(expected));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String sha256Hex(byte[] data) throws Exception {
+        File file = File.createTempFile("digest", ".bin");
+        try {
+            Files.write(file.toPath(), data);
+            return HeadlessApp.digest(file, "SHA-256");
+        } finally {
+            file.delete();
+        }
+    }
+}
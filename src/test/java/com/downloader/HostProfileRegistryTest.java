@@ -0,0 +1,99 @@
+package com.downloader;
+
+import com.downloader.core.DefaultSchedulingPolicy;
+import com.downloader.core.HostProfile;
+import com.downloader.core.HostProfileRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * 主机能力档案测试类
+ */
+public class HostProfileRegistryTest {
+
+    private File storeFile;
+
+    @Before
+    public void setUp() {
+        storeFile = new File(System.getProperty("java.io.tmpdir"), "host-profiles-test-" + System.nanoTime() + ".json");
+    }
+
+    @After
+    public void tearDown() {
+        storeFile.delete();
+    }
+
+    @Test
+    public void testThrottleHalvesConnectionsAndSetsBackoff() {
+        HostProfileRegistry registry = new HostProfileRegistry(storeFile);
+        String url = "https://example.com/file.bin";
+
+        assertEquals("未知主机应使用请求的连接数", 8, registry.suggestConnections(url, 8, -1));
+
+        long backoff = registry.recordThrottled(url, 3000, 8);
+        assertEquals("应采用Retry-After给出的时间", 3000, backoff);
+        assertTrue("应处于退避中", registry.getBackoffRemaining(url) > 0);
+        assertEquals("限流后健康连接数减半，并最多多试探一个", 5, registry.suggestConnections(url, 8, -1));
+    }
+
+    @Test
+    public void testThrottleCountedOncePerBackoffWindow() {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        HostProfileRegistry registry = new HostProfileRegistry(null, new DefaultSchedulingPolicy(), clock::get);
+        String url = "https://example.com/file.bin";
+
+        // 8个分段线程先后报告同一次限流
+        for (int i = 0; i < 8; i++) {
+            registry.recordThrottled(url, 3000, 8);
+        }
+        HostProfile profile = registry.get(url);
+        assertEquals(1, profile.getConsecutiveThrottles());
+        assertEquals("同一退避期内只减半一次", 5, registry.suggestConnections(url, 8, -1));
+
+        clock.addAndGet(3000);
+        registry.recordThrottled(url, 3000, 5);
+        assertEquals(2, profile.getConsecutiveThrottles());
+    }
+
+    @Test
+    public void testMeasuredThroughputLimitsConnections() {
+        HostProfileRegistry registry = new HostProfileRegistry(null);
+        String url = "https://example.com/file.bin";
+        // 4个连接共10MB/s，单连接约2.5MB/s
+        registry.recordThroughput(url, 10 * 1024 * 1024, 4);
+
+        assertEquals("20MB的文件每个连接至少传输2秒，最多4个连接", 4,
+                registry.suggestConnections(url, 8, 20L * 1024 * 1024));
+        assertEquals("小文件只用一个连接", 1, registry.suggestConnections(url, 8, 2L * 1024 * 1024));
+        assertEquals("大小未知时不受实测速度限制", 8, registry.suggestConnections(url, 8, -1));
+    }
+
+    @Test
+    public void testProfilePersistsAcrossInstances() {
+        HostProfileRegistry registry = new HostProfileRegistry(storeFile);
+        String url = "http://mirror.example.org:8080/a/b.iso";
+        registry.recordProbe(url, false, true);
+        registry.recordHealthy(url, 6);
+        registry.save();
+
+        HostProfile restored = new HostProfileRegistry(storeFile).get("http://MIRROR.example.org:8080/other.iso");
+        assertNotNull("同源站的档案应被恢复", restored);
+        assertEquals(Boolean.FALSE, restored.getSupportsHead());
+        assertEquals(Boolean.TRUE, restored.getSupportsRanges());
+        assertEquals(6, restored.getMaxHealthyConnections());
+    }
+
+    @Test
+    public void testParseRetryAfter() {
+        assertEquals(120000, HostProfileRegistry.parseRetryAfter("120"));
+        assertEquals(-1, HostProfileRegistry.parseRetryAfter("soon"));
+        assertEquals(-1, HostProfileRegistry.parseRetryAfter(null));
+        assertTrue(HostProfileRegistry.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT") == 0);
+    }
+}
@@ -0,0 +1,85 @@
+package com.downloader;
+
+import com.downloader.model.DownloadSegment;
+import com.downloader.model.DownloadTask;
+import com.downloader.model.RemoteFileInfo;
+import com.downloader.store.JournalTaskStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 任务持久化存储测试类
+ */
+public class JournalTaskStoreTest {
+
+    private File storeDir;
+
+    @Before
+    public void setUp() {
+        storeDir = new File(System.getProperty("java.io.tmpdir"), "task-store-test-" + System.nanoTime());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = storeDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        storeDir.delete();
+    }
+
+    @Test
+    public void testTasksSurviveRestart() throws InterruptedException {
+        JournalTaskStore store = new JournalTaskStore(storeDir);
+        restore(store);
+
+        DownloadTask kept = new DownloadTask("https://example.com/a.bin", "a.bin", "/tmp/downloads");
+        kept.setTotalSize(2048);
+        kept.setDownloadedSize(1024);
+        kept.setStatus(DownloadTask.Status.DOWNLOADING);
+        kept.setSegments(new DownloadSegment[] {
+                new DownloadSegment(0, 1023, 1000), new DownloadSegment(1024, 2047, 24) });
+        kept.setRemoteFileInfo(new RemoteFileInfo(2048, true, "\"v1\""));
+        DownloadTask removed = new DownloadTask("https://example.com/b.bin", "b.bin", "/tmp/downloads");
+
+        store.markDirty(kept);
+        store.markDirty(removed);
+        store.markRemoved(removed.getId());
+        store.close();
+
+        List<DownloadTask> restored = restore(new JournalTaskStore(storeDir));
+        assertEquals("删除的任务不应被恢复", 1, restored.size());
+        DownloadTask task = restored.get(0);
+        assertEquals(kept.getId(), task.getId());
+        assertEquals(1024, task.getDownloadedSize());
+        assertEquals(2048, task.getTotalSize());
+        assertEquals("中断的下载应恢复为等待状态", DownloadTask.Status.WAITING, task.getStatus());
+        DownloadSegment[] segments = task.getSegments();
+        assertEquals("分段进度应随任务保存", 2, segments.length);
+        assertEquals(1024, segments[1].getStart());
+        assertEquals(2047, segments[1].getEnd());
+        assertEquals(1048, segments[1].getPosition());
+        assertNotNull("续传所需的探测结果应随任务保存", task.getRemoteFileInfo());
+        assertEquals("\"v1\"", task.getRemoteFileInfo().getValidator());
+    }
+
+    private List<DownloadTask> restore(JournalTaskStore store) throws InterruptedException {
+        List<DownloadTask> restored = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+        store.start(Collections::emptyList, restored::addAll, done::countDown);
+        assertTrue("恢复应在超时前完成", done.await(5, TimeUnit.SECONDS));
+        return restored;
+    }
+}
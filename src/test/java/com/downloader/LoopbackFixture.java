@@ -0,0 +1,57 @@
+package com.downloader;
+
+import org.junit.rules.ExternalResource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * 测试夹具 每个测试前启动本机测试服务器并创建临时目录，测试的@After执行完后关闭服务器、删除目录
+ */
+public class LoopbackFixture extends ExternalResource {
+
+    private final String prefix;
+    private LoopbackHttpServer server;
+    private File dir;
+
+    /**
+     * @param prefix 临时目录名前缀
+     */
+    public LoopbackFixture(String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    protected void before() throws IOException {
+        server = new LoopbackHttpServer();
+        dir = Files.createTempDirectory(prefix).toFile();
+    }
+
+    @Override
+    protected void after() {
+        server.close();
+        deleteRecursively(dir);
+    }
+
+    public LoopbackHttpServer server() {
+        return server;
+    }
+
+    public File dir() {
+        return dir;
+    }
+
+    /**
+     * 删除文件或整个目录
+     */
+    public static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,673 @@
+package com.downloader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * 测试用本机HTTP服务器 只监听回环地址，提供生成的、内存中的或文件中的内容，测试和基准不依赖外部网络。
+ * 支持HEAD、Range/206、If-Range、ETag/Last-Modified、分块传输、重定向和保持连接；
+ * 可限制每个连接和每个IP的带宽、注入首字节延迟，并按资源注入故障：传输中途重置连接、忽略Range、
+ * 返回带Retry-After的429/503以及在请求之间改变内容
+ */
+public class LoopbackHttpServer implements Closeable {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final String LAST_MODIFIED_BASE = "Mon, 01 Jan 2024 00:00:";
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService workers;
+    private final Map<String, Resource> resources = new ConcurrentHashMap<>();
+    private final Map<String, Redirect> redirects = new ConcurrentHashMap<>();
+    private final Map<InetAddress, Throttle> ipThrottles = new ConcurrentHashMap<>();
+    private final Queue<RecordedRequest> requests = new ConcurrentLinkedQueue<>();
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private volatile long latencyMillis;
+    private volatile long perConnectionBytesPerSecond;
+    private volatile long perIpBytesPerSecond;
+
+    public LoopbackHttpServer() throws IOException {
+        serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        workers = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "LoopbackHttpServer");
+            t.setDaemon(true);
+            return t;
+        });
+        workers.execute(this::acceptLoop);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public String url(String path) {
+        return "http://127.0.0.1:" + getPort() + path;
+    }
+
+    // ---- 内容 ----
+
+    /**
+     * 提供内存中的内容
+     */
+    public Resource addBytes(String path, byte[] data) {
+        return add(path, bytes(data));
+    }
+
+    /**
+     * 提供按位置生成的确定性内容，不占用内存，可用 {@link #generatedByte} 校验下载结果
+     */
+    public Resource addGenerated(String path, long size, long seed) {
+        return add(path, generated(size, seed));
+    }
+
+    /**
+     * 提供文件中的内容
+     */
+    public Resource addFile(String path, File file) {
+        return add(path, file(file));
+    }
+
+    public Resource add(String path, Content content) {
+        Resource resource = new Resource(content);
+        resources.put(path, resource);
+        return resource;
+    }
+
+    /**
+     * 访问from时以指定状态码重定向到to
+     */
+    public void addRedirect(String from, String to, int status) {
+        redirects.put(from, new Redirect(to, status));
+    }
+
+    public static byte generatedByte(long position, long seed) {
+        long x = (position + seed) * 0x9E3779B97F4A7C15L;
+        return (byte) (x ^ (x >>> 29) ^ (x >>> 47));
+    }
+
+    public static Content bytes(byte[] data) {
+        return new Content() {
+            @Override
+            public long length() {
+                return data.length;
+            }
+
+            @Override
+            public void read(long position, byte[] buffer, int offset, int length) {
+                System.arraycopy(data, (int) position, buffer, offset, length);
+            }
+        };
+    }
+
+    public static Content generated(long size, long seed) {
+        return new Content() {
+            @Override
+            public long length() {
+                return size;
+            }
+
+            @Override
+            public void read(long position, byte[] buffer, int offset, int length) {
+                for (int i = 0; i < length; i++) {
+                    buffer[offset + i] = generatedByte(position + i, seed);
+                }
+            }
+        };
+    }
+
+    public static Content file(File file) {
+        return new Content() {
+            @Override
+            public long length() {
+                return file.length();
+            }
+
+            @Override
+            public void read(long position, byte[] buffer, int offset, int length) {
+                try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                    raf.seek(position);
+                    raf.readFully(buffer, offset, length);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    // ---- 全局设置 ----
+
+    /**
+     * 每个响应在发送响应头之前等待的时间，模拟网络延迟和首字节时间
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * 每个连接的带宽上限，0表示不限
+     */
+    public void setPerConnectionBytesPerSecond(long bytesPerSecond) {
+        this.perConnectionBytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * 同一客户端IP所有连接合计的带宽上限，0表示不限
+     */
+    public void setPerIpBytesPerSecond(long bytesPerSecond) {
+        this.perIpBytesPerSecond = bytesPerSecond;
+    }
+
+    // ---- 统计 ----
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public List<RecordedRequest> getRequests() {
+        return new ArrayList<>(requests);
+    }
+
+    public List<RecordedRequest> getRequests(String method, String path) {
+        List<RecordedRequest> result = new ArrayList<>();
+        for (RecordedRequest request : requests) {
+            if (request.getMethod().equals(method) && request.getPath().equals(path)) {
+                result.add(request);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // 忽略
+        }
+        for (Socket socket : openSockets) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+        workers.shutdownNow();
+    }
+
+    // ---- 连接处理 ----
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connectionCount.incrementAndGet();
+                openSockets.add(socket);
+                workers.execute(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        Throttle connectionThrottle = new Throttle(() -> perConnectionBytesPerSecond);
+        Throttle ipThrottle = ipThrottles.computeIfAbsent(socket.getInetAddress(),
+                address -> new Throttle(() -> perIpBytesPerSecond));
+        try {
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+            while (true) {
+                String requestLine = readLine(in);
+                while (requestLine != null && requestLine.isEmpty()) {
+                    requestLine = readLine(in);
+                }
+                if (requestLine == null) {
+                    return;
+                }
+                String[] parts = requestLine.split(" ");
+                if (parts.length < 3) {
+                    return;
+                }
+                Map<String, String> headers = new HashMap<>();
+                String line;
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    if (colon > 0) {
+                        headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                                line.substring(colon + 1).trim());
+                    }
+                }
+                String path = parts[1];
+                requests.add(new RecordedRequest(parts[0], path, headers));
+                boolean keepAlive = "HTTP/1.1".equals(parts[2]) && !"close".equalsIgnoreCase(headers.get("connection"));
+                if (!respond(socket, out, parts[0], path, headers, keepAlive, connectionThrottle, ipThrottle)) {
+                    return;
+                }
+                out.flush();
+                if (!keepAlive) {
+                    return;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // 客户端中止或连接已重置
+        } finally {
+            openSockets.remove(socket);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+    }
+
+    /**
+     * @return 连接是否还能继续使用
+     */
+    private boolean respond(Socket socket, OutputStream out, String method, String path, Map<String, String> headers,
+            boolean keepAlive, Throttle connectionThrottle, Throttle ipThrottle) throws IOException {
+        sleep(latencyMillis);
+        boolean head = "HEAD".equals(method);
+        if (!head && !"GET".equals(method)) {
+            writeEmpty(out, 405, "Method Not Allowed", keepAlive, null);
+            return keepAlive;
+        }
+
+        Redirect redirect = redirects.get(path);
+        if (redirect != null) {
+            writeEmpty(out, redirect.status, "Redirect", keepAlive, "Location: " + redirect.location + "\r\n");
+            return keepAlive;
+        }
+        Resource resource = resources.get(path);
+        if (resource == null) {
+            writeEmpty(out, 404, "Not Found", keepAlive, null);
+            return keepAlive;
+        }
+        resource.requestCount.incrementAndGet();
+        if (resource.throttleRemaining.getAndUpdate(n -> n > 0 ? n - 1 : n) > 0) {
+            long retryAfter = resource.retryAfterSeconds;
+            writeEmpty(out, resource.throttleStatus, "Throttled", keepAlive,
+                    retryAfter >= 0 ? "Retry-After: " + retryAfter + "\r\n" : null);
+            return keepAlive;
+        }
+
+        Content content;
+        String etag;
+        String lastModified;
+        synchronized (resource) {
+            content = resource.content;
+            etag = resource.getEtag();
+            lastModified = resource.getLastModified();
+        }
+        long length = content.length();
+        long start = 0;
+        long end = length - 1;
+        int status = 200;
+        String rangeHeader = headers.get("range");
+        String ifRange = headers.get("if-range");
+        boolean rangeValid = ifRange == null || ifRange.equals(etag) || ifRange.equals(lastModified);
+        if (rangeHeader != null && resource.supportsRanges && !resource.ignoreRange && rangeValid) {
+            long[] range = parseRange(rangeHeader, length);
+            if (range == null) {
+                writeEmpty(out, 416, "Range Not Satisfiable", keepAlive, "Content-Range: bytes */" + length + "\r\n");
+                return keepAlive;
+            }
+            start = range[0];
+            end = range[1];
+            status = 206;
+        }
+
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("HTTP/1.1 ").append(status).append(status == 206 ? " Partial Content" : " OK").append("\r\n");
+        sb.append("Content-Type: application/octet-stream\r\n");
+        sb.append("ETag: ").append(etag).append("\r\n");
+        sb.append("Last-Modified: ").append(lastModified).append("\r\n");
+        if (resource.supportsRanges) {
+            sb.append("Accept-Ranges: bytes\r\n");
+        }
+        if (status == 206) {
+            sb.append("Content-Range: bytes ").append(start).append('-').append(end).append('/').append(length)
+                    .append("\r\n");
+        }
+        if (resource.chunked) {
+            sb.append("Transfer-Encoding: chunked\r\n");
+        } else {
+            sb.append("Content-Length: ").append(end - start + 1).append("\r\n");
+        }
+        if (!keepAlive) {
+            sb.append("Connection: close\r\n");
+        }
+        sb.append("\r\n");
+        out.write(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (head) {
+            return keepAlive;
+        }
+        out.flush();
+
+        long resetAfter = resource.resetRemaining.getAndUpdate(n -> n > 0 ? n - 1 : n) > 0
+                ? resource.resetAfterBytes : -1;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long position = start;
+        long sent = 0;
+        while (position <= end) {
+            int n = (int) Math.min(buffer.length, end - position + 1);
+            if (resetAfter >= 0 && sent + n > resetAfter) {
+                n = (int) (resetAfter - sent);
+            }
+            if (n > 0) {
+                connectionThrottle.acquire(n);
+                ipThrottle.acquire(n);
+                content.read(position, buffer, 0, n);
+                if (resource.chunked) {
+                    out.write((Integer.toHexString(n) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                    out.write(buffer, 0, n);
+                    out.write('\r');
+                    out.write('\n');
+                } else {
+                    out.write(buffer, 0, n);
+                }
+                position += n;
+                sent += n;
+            }
+            if (resetAfter >= 0 && sent >= resetAfter) {
+                // 发送RST而不是正常关闭
+                out.flush();
+                socket.setSoLinger(true, 0);
+                socket.close();
+                return false;
+            }
+        }
+        if (resource.chunked) {
+            out.write("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        }
+        if (resource.changeCountdown.get() > 0 && resource.changeCountdown.decrementAndGet() == 0) {
+            resource.mutate();
+        }
+        return keepAlive;
+    }
+
+    private static void writeEmpty(OutputStream out, int status, String reason, boolean keepAlive, String extra)
+            throws IOException {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("HTTP/1.1 ").append(status).append(' ').append(reason).append("\r\n");
+        if (extra != null) {
+            sb.append(extra);
+        }
+        sb.append("Content-Length: 0\r\n");
+        if (!keepAlive) {
+            sb.append("Connection: close\r\n");
+        }
+        sb.append("\r\n");
+        out.write(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * 解析单个字节范围，不可满足时返回null
+     */
+    static long[] parseRange(String header, long length) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1));
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? length - 1 : Math.min(Long.parseLong(spec.substring(dash + 1)),
+                        length - 1);
+            }
+            return start <= end && start < length ? new long[] { start, end } : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return line.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * 内容来源
+     */
+    public interface Content {
+        long length();
+
+        void read(long position, byte[] buffer, int offset, int length);
+    }
+
+    /**
+     * 一个可下载的资源及其故障注入设置
+     */
+    public static class Resource {
+        private Content content;
+        private int version = 1;
+        private volatile boolean supportsRanges = true;
+        private volatile boolean ignoreRange;
+        private volatile boolean chunked;
+        private final AtomicInteger requestCount = new AtomicInteger();
+        private final AtomicInteger throttleRemaining = new AtomicInteger();
+        private volatile int throttleStatus = 503;
+        private volatile long retryAfterSeconds = -1;
+        private final AtomicInteger resetRemaining = new AtomicInteger();
+        private volatile long resetAfterBytes;
+        private final AtomicInteger changeCountdown = new AtomicInteger();
+
+        Resource(Content content) {
+            this.content = content;
+        }
+
+        public synchronized String getEtag() {
+            return "\"v" + version + "-" + content.length() + "\"";
+        }
+
+        public synchronized String getLastModified() {
+            return LAST_MODIFIED_BASE + String.format("%02d", version % 60) + " GMT";
+        }
+
+        public int getRequestCount() {
+            return requestCount.get();
+        }
+
+        /**
+         * 不支持Range时不声明Accept-Ranges，Range请求返回完整内容
+         */
+        public void setSupportsRanges(boolean supportsRanges) {
+            this.supportsRanges = supportsRanges;
+        }
+
+        /**
+         * 声明支持Range但实际忽略Range头，总是返回200和完整内容
+         */
+        public void setIgnoreRange(boolean ignoreRange) {
+            this.ignoreRange = ignoreRange;
+        }
+
+        /**
+         * 使用分块传输，不返回Content-Length
+         */
+        public void setChunked(boolean chunked) {
+            this.chunked = chunked;
+        }
+
+        /**
+         * 接下来的count个请求返回指定状态码
+         * @param retryAfterSeconds Retry-After秒数，小于0时不发送
+         */
+        public void throttleNext(int count, int status, long retryAfterSeconds) {
+            this.throttleStatus = status;
+            this.retryAfterSeconds = retryAfterSeconds;
+            this.throttleRemaining.set(count);
+        }
+
+        /**
+         * 接下来的count个GET请求在发送afterBytes字节后重置连接
+         */
+        public void resetNext(int count, long afterBytes) {
+            this.resetAfterBytes = afterBytes;
+            this.resetRemaining.set(count);
+        }
+
+        /**
+         * 完整发送requests个GET响应后改变内容（ETag和Last-Modified随之改变）
+         */
+        public void changeAfter(int requests) {
+            this.changeCountdown.set(requests);
+        }
+
+        /**
+         * 立即替换内容，ETag和Last-Modified随之改变
+         */
+        public synchronized void replaceContent(Content newContent) {
+            this.content = newContent;
+            this.version++;
+        }
+
+        synchronized void mutate() {
+            Content base = content;
+            replaceContent(new Content() {
+                @Override
+                public long length() {
+                    return base.length();
+                }
+
+                @Override
+                public void read(long position, byte[] buffer, int offset, int length) {
+                    base.read(position, buffer, offset, length);
+                    for (int i = 0; i < length; i++) {
+                        buffer[offset + i] ^= 0x5A;
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 收到的请求
+     */
+    public static class RecordedRequest {
+        private final String method;
+        private final String path;
+        private final Map<String, String> headers;
+
+        RecordedRequest(String method, String path, Map<String, String> headers) {
+            this.method = method;
+            this.path = path;
+            this.headers = Collections.unmodifiableMap(headers);
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private static class Redirect {
+        final String location;
+        final int status;
+
+        Redirect(String location, int status) {
+            this.location = location;
+            this.status = status;
+        }
+    }
+
+    /**
+     * 令牌桶限速 计算等待时间时加锁，等待本身不持有锁
+     */
+    private static class Throttle {
+        private final LongSupplier bytesPerSecond;
+        private long nextFree;
+
+        Throttle(LongSupplier bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        void acquire(int bytes) throws InterruptedIOException {
+            long rate = bytesPerSecond.getAsLong();
+            if (rate <= 0) {
+                return;
+            }
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                if (nextFree < now) {
+                    nextFree = now;
+                }
+                nextFree += TimeUnit.SECONDS.toNanos(bytes) / rate;
+                wait = nextFree - now - TimeUnit.SECONDS.toNanos(bytes) / rate;
+            }
+            if (wait > 0) {
+                sleep(TimeUnit.NANOSECONDS.toMillis(wait));
+            }
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.downloader;
+
+import com.downloader.core.DownloadManager;
+import com.downloader.core.TaskQuery;
+import com.downloader.model.DownloadRequest;
+import com.downloader.model.DownloadTask;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端场景基准 用下载管理器从本机测试服务器下载，逐场景报告耗时、吞吐量、CPU时间、峰值线程数、峰值堆内存、
+ * 分配速率和打开的文件描述符数，结果以JSON保存，并与基准线比较，超过阈值时以非零状态退出。
+ * 测试服务器与下载器在同一进程中，CPU时间和内存分配包含服务器端的开销。
+ * <pre>
+ * mvn -P macro-benchmarks verify -Dbenchmark.args="--scale 0.01 --scenarios small,mixed"
+ * </pre>
+ * 参数：--scenarios 场景列表（large,small,mixed,latency,lossy），--scale 规模系数，--output 结果文件，
+ * --baseline 基准线文件，--threshold 允许的退化比例（默认0.15），--save-baseline 将本次结果保存为基准线
+ */
+public class MacroBenchmark {
+
+    private static final long MB = 1024 * 1024;
+    private static final int MAX_ATTEMPTS = 5; // 有损链路场景中每个任务最多重新开始的次数
+    private static final long SAMPLE_INTERVAL = 50; // 资源采样间隔（毫秒）
+    private static final long TIMEOUT_MINUTES = 120;
+
+    private final double scale;
+    private final File downloadDir;
+    private long plannedBytes; // 当前场景的总字节数
+
+    MacroBenchmark(double scale, File downloadDir) {
+        this.scale = scale;
+        this.downloadDir = downloadDir;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> scenarios = Arrays.asList("large", "small", "mixed", "latency", "lossy");
+        double scale = 1.0;
+        File output = new File("target/macro-benchmark.json");
+        File baseline = null;
+        double threshold = 0.15;
+        boolean saveBaseline = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "--scenarios":
+                scenarios = Arrays.asList(args[++i].split(","));
+                break;
+            case "--scale":
+                scale = Double.parseDouble(args[++i]);
+                break;
+            case "--output":
+                output = new File(args[++i]);
+                break;
+            case "--baseline":
+                baseline = new File(args[++i]);
+                break;
+            case "--threshold":
+                threshold = Double.parseDouble(args[++i]);
+                break;
+            case "--save-baseline":
+                saveBaseline = true;
+                break;
+            default:
+                throw new IllegalArgumentException("未知参数: " + args[i]);
+            }
+        }
+
+        File dir = Files.createTempDirectory("macro-benchmark").toFile();
+        MacroBenchmark benchmark = new MacroBenchmark(scale, dir);
+        List<Map<String, Object>> results = new ArrayList<>();
+        try {
+            for (String scenario : scenarios) {
+                Map<String, Object> result = benchmark.run(scenario.trim());
+                System.out.println(result);
+                results.add(result);
+            }
+        } finally {
+            LoopbackFixture.deleteRecursively(dir);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", System.currentTimeMillis());
+        report.put("javaVersion", System.getProperty("java.version"));
+        report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        report.put("scale", scale);
+        report.put("scenarios", results);
+
+        ObjectMapper mapper = new ObjectMapper();
+        List<String> regressions = new ArrayList<>();
+        if (baseline != null && baseline.isFile() && !saveBaseline) {
+            regressions = compare(mapper.readTree(baseline), results, threshold);
+        } else if (!saveBaseline) {
+            System.err.println("警告: 未找到基准线" + (baseline == null ? "" : " " + baseline.getAbsolutePath())
+                    + "，本次不做比较；请先在参考机器上加 --save-baseline 运行一次记录基准线");
+        }
+        report.put("regressions", regressions);
+
+        if (output.getParentFile() != null) {
+            output.getParentFile().mkdirs();
+        }
+        mapper.writerWithDefaultPrettyPrinter().writeValue(output, report);
+        System.out.println("结果已保存: " + output.getAbsolutePath());
+        if (saveBaseline && baseline != null) {
+            mapper.writerWithDefaultPrettyPrinter().writeValue(baseline, report);
+            System.out.println("已保存为基准线: " + baseline.getAbsolutePath());
+        }
+
+        if (!regressions.isEmpty()) {
+            regressions.forEach(r -> System.err.println("性能退化: " + r));
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * 与基准线中同名、同规模的场景比较吞吐量和CPU时间
+     */
+    static List<String> compare(JsonNode baseline, List<Map<String, Object>> results, double threshold) {
+        List<String> regressions = new ArrayList<>();
+        if (baseline.path("scale").asDouble() != ((Number) results.get(0).get("scale")).doubleValue()) {
+            System.out.println("基准线规模不同，跳过比较");
+            return regressions;
+        }
+        Map<String, JsonNode> byName = new HashMap<>();
+        for (JsonNode node : baseline.path("scenarios")) {
+            byName.put(node.path("name").asText(), node);
+        }
+        for (Map<String, Object> result : results) {
+            JsonNode base = byName.get((String) result.get("name"));
+            if (base == null) {
+                continue;
+            }
+            double speed = ((Number) result.get("mbPerSecond")).doubleValue();
+            double baseSpeed = base.path("mbPerSecond").asDouble();
+            if (baseSpeed > 0 && speed < baseSpeed * (1 - threshold)) {
+                regressions.add(String.format("%s 吞吐量 %.1f MB/s，基准线 %.1f MB/s", result.get("name"), speed,
+                        baseSpeed));
+            }
+            double cpu = ((Number) result.get("cpuMillis")).doubleValue();
+            double baseCpu = base.path("cpuMillis").asDouble();
+            if (baseCpu > 0 && cpu > baseCpu * (1 + threshold)) {
+                regressions.add(String.format("%s CPU时间 %.0f ms，基准线 %.0f ms", result.get("name"), cpu, baseCpu));
+            }
+        }
+        return regressions;
+    }
+
+    Map<String, Object> run(String scenario) throws Exception {
+        try (LoopbackHttpServer server = new LoopbackHttpServer()) {
+            List<DownloadRequest> requests = new ArrayList<>();
+            boolean compactQueue = false;
+            plannedBytes = 0;
+            switch (scenario) {
+            case "large":
+                // 单个10GB文件
+                addFiles(server, requests, "large", 1, scaled(10L * 1024 * MB));
+                break;
+            case "small":
+                // 1万个10KB文件，经紧凑队列排入
+                addFiles(server, requests, "small", count(10_000), 10 * 1024);
+                compactQueue = true;
+                break;
+            case "mixed":
+                addFiles(server, requests, "mixed-s", count(500), 50 * 1024);
+                addFiles(server, requests, "mixed-m", count(40), 5 * MB);
+                addFiles(server, requests, "mixed-l", count(4), scaled(500 * MB));
+                break;
+            case "latency":
+                // 高延迟链路：每个响应延迟200毫秒，每个连接限速4MB/s
+                server.setLatencyMillis(200);
+                server.setPerConnectionBytesPerSecond(4 * MB);
+                addFiles(server, requests, "latency", count(40), 8 * MB);
+                break;
+            case "lossy":
+                // 有损链路：每个文件的前两次传输在中途断开，由驱动程序重新开始任务
+                List<LoopbackHttpServer.Resource> resources = addFiles(server, requests, "lossy", count(40),
+                        8 * MB);
+                for (LoopbackHttpServer.Resource resource : resources) {
+                    resource.resetNext(2, 512 * 1024);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("未知场景: " + scenario);
+            }
+            return measure(scenario, server, requests, compactQueue);
+        }
+    }
+
+    private long scaled(long size) {
+        return Math.max(1, (long) (size * scale));
+    }
+
+    private int count(int count) {
+        return (int) Math.max(1, Math.round(count * scale));
+    }
+
+    private List<LoopbackHttpServer.Resource> addFiles(LoopbackHttpServer server, List<DownloadRequest> requests,
+            String prefix, int count, long size) {
+        List<LoopbackHttpServer.Resource> resources = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = prefix + "-" + i + ".bin";
+            resources.add(server.addGenerated("/" + name, size, i));
+            requests.add(new DownloadRequest(server.url("/" + name), name, downloadDir.getPath()));
+            plannedBytes += size;
+        }
+        return resources;
+    }
+
+    private Map<String, Object> measure(String scenario, LoopbackHttpServer server, List<DownloadRequest> requests,
+            boolean compactQueue) throws Exception {
+        long totalBytes = plannedBytes;
+        System.gc();
+        ResourceSampler sampler = new ResourceSampler();
+        DownloadManager manager = new DownloadManager(null);
+        manager.setArchiveDelayMillis(-1);
+        int retries = 0;
+        int failed;
+        long startNanos = System.nanoTime();
+        sampler.start();
+        try {
+            if (compactQueue) {
+                manager.queueDownloads(requests);
+            } else {
+                manager.addDownloads(requests);
+            }
+
+            TaskQuery errors = new TaskQuery();
+            errors.setStatuses(EnumSet.of(DownloadTask.Status.ERROR));
+            Map<String, Integer> attempts = new HashMap<>();
+            Set<String> gaveUp = new HashSet<>();
+            long deadline = startNanos + TimeUnit.MINUTES.toNanos(TIMEOUT_MINUTES);
+            while (true) {
+                int completed = manager.getTaskIndex().countByStatus(DownloadTask.Status.COMPLETED);
+                for (DownloadTask task : manager.queryTasks(errors)) {
+                    // 索引异步更新，已重新开始的任务可能仍在查询结果中
+                    if (task.getStatus() != DownloadTask.Status.ERROR || gaveUp.contains(task.getId())) {
+                        continue;
+                    }
+                    int attempt = attempts.merge(task.getId(), 1, Integer::sum);
+                    if (attempt > MAX_ATTEMPTS) {
+                        gaveUp.add(task.getId());
+                    } else {
+                        retries++;
+                        manager.startDownload(task.getId());
+                    }
+                }
+                if (completed + gaveUp.size() >= requests.size()) {
+                    failed = gaveUp.size();
+                    break;
+                }
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("场景超时: " + scenario);
+                }
+                Thread.sleep(20);
+            }
+        } finally {
+            sampler.stop();
+            manager.shutdown();
+        }
+        long wallNanos = System.nanoTime() - startNanos;
+        for (File file : downloadDir.listFiles()) {
+            file.delete();
+        }
+
+        double seconds = wallNanos / 1e9;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("name", scenario);
+        result.put("scale", scale);
+        result.put("files", requests.size());
+        result.put("bytes", totalBytes);
+        result.put("wallMillis", TimeUnit.NANOSECONDS.toMillis(wallNanos));
+        result.put("mbPerSecond", round(totalBytes / (double) MB / seconds));
+        result.put("cpuMillis", TimeUnit.NANOSECONDS.toMillis(sampler.cpuNanos));
+        result.put("peakThreads", sampler.peakThreads);
+        result.put("peakHeapBytes", sampler.peakHeap);
+        result.put("allocatedBytes", sampler.allocatedBytes);
+        result.put("allocationMBPerSecond", round(sampler.allocatedBytes / (double) MB / seconds));
+        result.put("peakOpenFiles", sampler.peakOpenFiles);
+        result.put("connections", server.getConnectionCount());
+        result.put("retries", retries);
+        result.put("failedTasks", failed);
+        return result;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    /**
+     * 运行期间定期采样线程数、堆内存、文件描述符和各线程的分配字节数
+     */
+    private static class ResourceSampler implements Runnable {
+        private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        private final Map<Long, Long> allocatedByThread = new HashMap<>();
+        private final Map<Long, Long> allocatedAtStart = new HashMap<>();
+        private volatile boolean running;
+        private Thread thread;
+        private long cpuStart;
+        long cpuNanos;
+        int peakThreads;
+        long peakHeap;
+        long peakOpenFiles = -1;
+        long allocatedBytes;
+
+        void start() {
+            threads.resetPeakThreadCount();
+            cpuStart = processCpuNanos();
+            sampleAllocations(allocatedAtStart);
+            running = true;
+            thread = new Thread(this, "MacroBenchmark-sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws InterruptedException {
+            running = false;
+            thread.join();
+            sample();
+            cpuNanos = processCpuNanos() - cpuStart;
+            peakThreads = threads.getPeakThreadCount();
+            long total = 0;
+            for (Map.Entry<Long, Long> entry : allocatedByThread.entrySet()) {
+                total += entry.getValue() - allocatedAtStart.getOrDefault(entry.getKey(), 0L);
+            }
+            allocatedBytes = total;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                sample();
+                try {
+                    Thread.sleep(SAMPLE_INTERVAL);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private synchronized void sample() {
+            peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+            if (os instanceof com.sun.management.UnixOperatingSystemMXBean) {
+                peakOpenFiles = Math.max(peakOpenFiles,
+                        ((com.sun.management.UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount());
+            }
+            sampleAllocations(allocatedByThread);
+        }
+
+        /**
+         * 已结束的线程保留最后一次采样的值
+         */
+        private void sampleAllocations(Map<Long, Long> target) {
+            if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+                return;
+            }
+            com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+            long[] ids = threads.getAllThreadIds();
+            long[] bytes = sun.getThreadAllocatedBytes(ids);
+            for (int i = 0; i < ids.length; i++) {
+                if (bytes[i] >= 0) {
+                    target.put(ids[i], bytes[i]);
+                }
+            }
+        }
+
+        private long processCpuNanos() {
+            if (os instanceof com.sun.management.OperatingSystemMXBean) {
+                return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+            }
+            return 0;
+        }
+    }
+}
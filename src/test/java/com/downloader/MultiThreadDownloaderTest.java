@@ -0,0 +1,287 @@
+package com.downloader;
+
+import com.downloader.core.DownloadCallback;
+import com.downloader.core.HostProfileRegistry;
+import com.downloader.core.MultiThreadDownloader;
+import com.downloader.core.OriginCircuitBreaker;
+import com.downloader.core.TaskPrefetcher;
+import com.downloader.metrics.DownloadMetrics;
+import com.downloader.model.DownloadSegment;
+import com.downloader.model.DownloadTask;
+import com.downloader.model.RemoteFileInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * 多线程下载器端到端测试类 使用本机测试服务器，不依赖外部网络
+ */
+public class MultiThreadDownloaderTest {
+
+    private static final long SEED = 42;
+
+    private LoopbackHttpServer server;
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LoopbackHttpServer();
+        dir = Files.createTempDirectory("downloader-test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testMultiSegmentDownload() throws IOException {
+        long size = 4 * 1024 * 1024 + 123;
+        server.addGenerated("/big.bin", size, SEED);
+        DownloadTask task = newTask("/big.bin");
+
+        RecordingCallback callback = run(task);
+
+        assertTrue(callback.error, callback.completed);
+        assertContent(new File(dir, "big.bin"), size, SEED);
+        assertTrue(server.getRequests("GET", "/big.bin").size() > 1);
+        assertNull(task.getSegments());
+    }
+
+    @Test
+    public void testSingleConnectionWhenRangesUnsupported() throws IOException {
+        long size = 2 * 1024 * 1024;
+        LoopbackHttpServer.Resource resource = server.addGenerated("/plain.bin", size, SEED);
+        resource.setSupportsRanges(false);
+
+        RecordingCallback callback = run(newTask("/plain.bin"));
+
+        assertTrue(callback.error, callback.completed);
+        assertContent(new File(dir, "plain.bin"), size, SEED);
+        assertEquals(1, server.getRequests("GET", "/plain.bin").size());
+    }
+
+    @Test
+    public void testRedirectIsFollowed() throws IOException {
+        server.addGenerated("/target.bin", 300_000, SEED);
+        server.addRedirect("/moved.bin", "/target.bin", 302);
+        DownloadTask task = new DownloadTask(server.url("/moved.bin"), "moved.bin", dir.getPath());
+
+        RecordingCallback callback = run(task);
+
+        assertTrue(callback.error, callback.completed);
+        assertContent(new File(dir, "moved.bin"), 300_000, SEED);
+    }
+
+    @Test
+    public void testRetriesAfterThrottle() throws IOException {
+        LoopbackHttpServer.Resource resource = server.addGenerated("/busy.bin", 500_000, SEED);
+        resource.throttleNext(2, 503, 0);
+
+        RecordingCallback callback = run(newTask("/busy.bin"));
+
+        assertTrue(callback.error, callback.completed);
+        assertContent(new File(dir, "busy.bin"), 500_000, SEED);
+        assertTrue(resource.getRequestCount() >= 3);
+    }
+
+    @Test
+    public void testIgnoredRangeIsReported() {
+        LoopbackHttpServer.Resource resource = server.addGenerated("/liar.bin", 4 * 1024 * 1024, SEED);
+        resource.setIgnoreRange(true);
+        HostProfileRegistry profiles = new HostProfileRegistry(null);
+
+        RecordingCallback callback = new RecordingCallback();
+        new MultiThreadDownloader(newTask("/liar.bin"), callback, profiles).run();
+
+        assertFalse(callback.completed);
+        assertNotNull(callback.error);
+        assertEquals(Boolean.FALSE, profiles.get(server.url("/liar.bin")).getSupportsRanges());
+    }
+
+    @Test
+    public void testResumeAfterResetUsesSegmentOffsets() throws Exception {
+        long size = 4 * 1024 * 1024;
+        LoopbackHttpServer.Resource resource = server.addGenerated("/flaky.bin", size, SEED);
+        resource.resetNext(1, 300_000);
+        DownloadTask task = newTask("/flaky.bin");
+
+        RecordingCallback first = run(task);
+        assertFalse(first.completed);
+        awaitQuiescence(task);
+        long resumedFrom = downloaded(task);
+        assertTrue(resumedFrom > 0 && resumedFrom < size);
+
+        RecordingCallback second = run(task);
+        assertTrue(second.error, second.completed);
+        assertContent(new File(dir, "flaky.bin"), size, SEED);
+        // 续传请求都带有If-Range，且没有重新从0开始下载整个文件
+        for (LoopbackHttpServer.RecordedRequest request : server.getRequests("GET", "/flaky.bin")) {
+            String range = request.getHeader("Range");
+            if (range != null && !range.startsWith("bytes=0-")) {
+                assertEquals(resource.getEtag(), request.getHeader("If-Range"));
+            }
+        }
+    }
+
+    @Test
+    public void testRemoteChangeDetectedOnResume() throws Exception {
+        long size = 4 * 1024 * 1024;
+        LoopbackHttpServer.Resource resource = server.addGenerated("/changing.bin", size, SEED);
+        resource.resetNext(1, 300_000);
+        DownloadTask task = newTask("/changing.bin");
+
+        assertFalse(run(task).completed);
+        awaitQuiescence(task);
+        resource.replaceContent(LoopbackHttpServer.generated(size, SEED + 1));
+
+        RecordingCallback second = run(task);
+        assertFalse(second.completed);
+        assertEquals("远程文件已变化，请重新开始下载", second.error);
+        assertFalse(new File(dir, "changing.bin.tmp").exists());
+        assertNull(task.getSegments());
+    }
+
+    @Test
+    public void testSingleConnectionRemoteChangeDetectedOnResume() throws Exception {
+        long size = 800_000;
+        LoopbackHttpServer.Resource resource = server.addGenerated("/small.bin", size, SEED);
+        resource.resetNext(1, 300_000);
+        DownloadTask task = newTask("/small.bin");
+        assertFalse(run(task).completed);
+        awaitQuiescence(task);
+        assertTrue(new File(dir, "small.bin.tmp").length() > 0);
+
+        resource.replaceContent(LoopbackHttpServer.generated(size, SEED + 1));
+        RecordingCallback second = run(task);
+
+        assertFalse(second.completed);
+        assertEquals("远程文件已变化，请重新开始下载", second.error);
+        assertFalse(new File(dir, "small.bin.tmp").exists());
+    }
+
+    @Test
+    public void testTruncatedBodyReportsError() throws IOException {
+        long size = 500_000;
+        LoopbackHttpServer.Resource resource = server.addGenerated("/short.bin", size, SEED);
+        DownloadTask task = newTask("/short.bin");
+        // 探测之后文件变短，响应体在预期大小之前正常结束
+        task.setRemoteFileInfo(new RemoteFileInfo(size + 1000, true, resource.getEtag(), System.currentTimeMillis()));
+
+        RecordingCallback callback = run(task);
+
+        assertFalse(callback.completed);
+        assertNotNull("响应体提前结束时应报告错误", callback.error);
+        assertTrue(callback.error, callback.error.contains("连接提前关闭"));
+    }
+
+    @Test
+    public void testPrefetchKeepsValidatorOfPartialDownload() throws Exception {
+        long size = 4 * 1024 * 1024;
+        LoopbackHttpServer.Resource resource = server.addGenerated("/queued.bin", size, SEED);
+        resource.resetNext(1, 300_000);
+        DownloadTask task = newTask("/queued.bin");
+        assertFalse(run(task).completed);
+        awaitQuiescence(task);
+
+        // 从任务日志恢复或暂停后重新排队的任务：有分段进度，文件信息已过期
+        RemoteFileInfo saved = task.getRemoteFileInfo();
+        task.setRemoteFileInfo(new RemoteFileInfo(saved.getSize(), saved.isSupportsRanges(), saved.getValidator(), 0));
+        task.setStatus(DownloadTask.Status.WAITING);
+        resource.replaceContent(LoopbackHttpServer.generated(size, SEED + 1));
+
+        TaskPrefetcher prefetcher = new TaskPrefetcher(new HostProfileRegistry(null), new OriginCircuitBreaker(),
+                MultiThreadDownloader.createHttpClient(), new DownloadMetrics(), 1, t -> { });
+        try {
+            prefetcher.prefetch(Collections.singletonList(task));
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (prefetcher.getInFlightCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+        } finally {
+            prefetcher.shutdown();
+        }
+        assertEquals(saved.getValidator(), task.getRemoteFileInfo().getValidator());
+
+        RecordingCallback second = run(task);
+        assertFalse(second.completed);
+        assertEquals("远程文件已变化，请重新开始下载", second.error);
+    }
+
+    private DownloadTask newTask(String path) {
+        return new DownloadTask(server.url(path), path.substring(1), dir.getPath());
+    }
+
+    private static RecordingCallback run(DownloadTask task) {
+        RecordingCallback callback = new RecordingCallback();
+        new MultiThreadDownloader(task, callback).run();
+        return callback;
+    }
+
+    private static long downloaded(DownloadTask task) {
+        long sum = 0;
+        for (DownloadSegment segment : task.getSegments()) {
+            sum += segment.getDownloaded();
+        }
+        return sum;
+    }
+
+    /**
+     * 一个分段失败后其余分段仍会传完，等计数稳定后再继续下载
+     */
+    private static void awaitQuiescence(DownloadTask task) throws InterruptedException {
+        long last = -1;
+        for (int i = 0; i < 50; i++) {
+            long current = downloaded(task);
+            if (current == last) {
+                return;
+            }
+            last = current;
+            Thread.sleep(200);
+        }
+    }
+
+    private static void assertContent(File file, long size, long seed) throws IOException {
+        assertTrue("文件不存在: " + file, file.isFile());
+        byte[] data = Files.readAllBytes(file.toPath());
+        assertEquals(size, data.length);
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != LoopbackHttpServer.generatedByte(i, seed)) {
+                fail("第" + i + "字节不一致");
+            }
+        }
+    }
+
+    private static class RecordingCallback implements DownloadCallback {
+        volatile boolean completed;
+        volatile String error;
+
+        @Override
+        public void onProgress(DownloadTask task, long downloadedBytes, long totalBytes, long speed) {
+        }
+
+        @Override
+        public void onCompleted(DownloadTask task) {
+            completed = true;
+        }
+
+        @Override
+        public void onError(DownloadTask task, String error) {
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.downloader;
+
+import com.downloader.core.OriginCircuitBreaker;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 源站熔断器测试类
+ */
+public class OriginCircuitBreakerTest {
+
+    private static final String URL = "https://down.example.com/a.zip";
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        OriginCircuitBreaker breaker = new OriginCircuitBreaker(2, 60_000, 60_000);
+
+        breaker.recordFailure(URL);
+        assertEquals(OriginCircuitBreaker.State.CLOSED, breaker.getState(URL));
+        breaker.recordFailure(URL);
+        assertEquals(OriginCircuitBreaker.State.OPEN, breaker.getState(URL));
+
+        assertEquals(OriginCircuitBreaker.Permit.REJECTED, breaker.tryAcquire(URL));
+        assertFalse(breaker.isAttemptPermitted(URL));
+        assertEquals("其他源站不受影响", OriginCircuitBreaker.Permit.ALLOWED,
+                breaker.tryAcquire("https://other.example.com/b.zip"));
+    }
+
+    @Test
+    public void testHalfOpenAllowsSingleProbe() throws InterruptedException {
+        OriginCircuitBreaker breaker = new OriginCircuitBreaker(1, 10, 10);
+        breaker.recordFailure(URL);
+        Thread.sleep(20);
+
+        assertEquals("冷却结束后放行一个探测", OriginCircuitBreaker.Permit.PROBE, breaker.tryAcquire(URL));
+        assertEquals("探测期间拒绝其他任务", OriginCircuitBreaker.Permit.REJECTED, breaker.tryAcquire(URL));
+
+        breaker.releaseProbe(URL);
+        assertEquals("探测名额让出后可再次探测", OriginCircuitBreaker.Permit.PROBE, breaker.tryAcquire(URL));
+
+        breaker.recordSuccess(URL);
+        assertEquals(OriginCircuitBreaker.State.CLOSED, breaker.getState(URL));
+        assertEquals(OriginCircuitBreaker.Permit.ALLOWED, breaker.tryAcquire(URL));
+    }
+
+    @Test
+    public void testFailedProbeReopens() throws InterruptedException {
+        OriginCircuitBreaker breaker = new OriginCircuitBreaker(3, 10, 1000);
+        breaker.recordFailure(URL);
+        breaker.recordFailure(URL);
+        breaker.recordFailure(URL);
+        Thread.sleep(20);
+
+        assertEquals(OriginCircuitBreaker.Permit.PROBE, breaker.tryAcquire(URL));
+        breaker.recordFailure(URL);
+        assertEquals("探测失败应立即重新熔断", OriginCircuitBreaker.State.OPEN, breaker.getState(URL));
+        assertEquals(OriginCircuitBreaker.Permit.REJECTED, breaker.tryAcquire(URL));
+    }
+}
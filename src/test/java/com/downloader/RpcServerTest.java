@@ -0,0 +1,267 @@
+package com.downloader;
+
+import com.downloader.core.DownloadManager;
+import com.downloader.rpc.JsonRpcServer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Rule;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * JSON-RPC端点测试类
+ */
+public class RpcServerTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Rule
+    public final LoopbackFixture fixture = new LoopbackFixture("downloader-rpc");
+
+    private LoopbackHttpServer server;
+    private DownloadManager manager;
+    private JsonRpcServer rpc;
+    private File dir;
+    private String endpoint;
+
+    @Before
+    public void setUp() throws IOException {
+        server = fixture.server();
+        dir = fixture.dir();
+        manager = new DownloadManager(null);
+        start(null);
+    }
+
+    @After
+    public void tearDown() {
+        rpc.stop();
+        manager.shutdown();
+    }
+
+    @Test
+    public void testAddUriAndTellStatus() throws Exception {
+        server.addGenerated("/data/file.bin", 256 * 1024, 3);
+
+        String gid = call("aria2.addUri", "[[\"" + server.url("/data/file.bin") + "\"], {\"priority\": \"3\"}]")
+                .path("result").asText();
+        JsonNode status = awaitStatus(gid, "complete");
+
+        assertEquals(gid, status.path("gid").asText());
+        assertEquals("262144", status.path("totalLength").asText());
+        assertEquals("262144", status.path("completedLength").asText());
+        assertEquals("3", status.path("priority").asText());
+        assertEquals(new File(dir, "file.bin").getPath(), status.path("files").path(0).path("path").asText());
+        assertEquals(262144, new File(dir, "file.bin").length());
+
+        JsonNode filtered = call("aria2.tellStatus", "[\"" + gid + "\", [\"gid\", \"status\"]]").path("result");
+        assertEquals(2, filtered.size());
+        assertEquals(1, call("aria2.tellStopped", "[0, 10]").path("result").size());
+        assertEquals("1", call("aria2.getGlobalStat", "[]").path("result").path("numStopped").asText());
+    }
+
+    @Test
+    public void testPauseUnpauseAndPriority() throws Exception {
+        server.setPerConnectionBytesPerSecond(32 * 1024);
+        server.addGenerated("/a.bin", 4 * 1024 * 1024, 1);
+        server.addGenerated("/b.bin", 4 * 1024 * 1024, 2);
+        server.addGenerated("/c.bin", 4 * 1024 * 1024, 3);
+        call("aria2.changeGlobalOption", "[{\"max-concurrent-downloads\": \"1\"}]");
+
+        String a = addUri("/a.bin");
+        String b = addUri("/b.bin");
+        String c = addUri("/c.bin");
+        awaitStatus(a, "active");
+        assertEquals("waiting", tellStatus(b).path("status").asText());
+
+        // 提高c的优先级后排在b前面
+        call("aria2.changeOption", "[\"" + c + "\", {\"priority\": \"5\"}]");
+        JsonNode waiting = call("aria2.tellWaiting", "[0, 10]").path("result");
+        assertEquals(c, waiting.path(0).path("gid").asText());
+        assertEquals(b, waiting.path(1).path("gid").asText());
+
+        assertEquals(b, call("aria2.pause", "[\"" + b + "\"]").path("result").asText());
+        assertEquals("paused", tellStatus(b).path("status").asText());
+        assertEquals(a, call("aria2.pause", "[\"" + a + "\"]").path("result").asText());
+        awaitStatus(a, "paused");
+        awaitStatus(c, "active");
+
+        assertEquals(b, call("aria2.unpause", "[\"" + b + "\"]").path("result").asText());
+        assertEquals("waiting", tellStatus(b).path("status").asText());
+        assertEquals(1, call("aria2.unpause", "[\"" + c + "\"]").path("error").path("code").asInt());
+
+        assertEquals(c, call("aria2.remove", "[\"" + c + "\"]").path("result").asText());
+        assertEquals(1, call("aria2.tellStatus", "[\"" + c + "\"]").path("error").path("code").asInt());
+        awaitStatus(b, "active");
+    }
+
+    @Test
+    public void testSpeedLimits() throws Exception {
+        server.addGenerated("/limited.bin", 384 * 1024, 4);
+        call("aria2.changeGlobalOption", "[{\"max-overall-download-limit\": \"128K\"}]");
+        assertEquals("131072", call("aria2.getGlobalOption", "[]").path("result")
+                .path("max-overall-download-limit").asText());
+
+        long start = System.currentTimeMillis();
+        String gid = addUri("/limited.bin");
+        awaitStatus(gid, "complete");
+        long elapsed = System.currentTimeMillis() - start;
+
+        // 384K按128K/s至少需要约2秒（允许100ms的突发额度）
+        assertTrue("耗时 " + elapsed + "ms", elapsed >= 2000);
+        assertEquals(-32602, call("aria2.changeGlobalOption", "[{\"max-overall-download-limit\": \"fast\"}]")
+                .path("error").path("code").asInt());
+        call("aria2.changeOption", "[\"" + gid + "\", {\"max-download-limit\": \"1M\"}]");
+        assertEquals("1048576", call("aria2.getOption", "[\"" + gid + "\"]").path("result")
+                .path("max-download-limit").asText());
+    }
+
+    @Test
+    public void testBatchAndErrors() throws Exception {
+        JsonNode batch = post("[{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"aria2.getVersion\"},"
+                + "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"aria2.unknown\"},"
+                + "{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"aria2.tellStatus\",\"params\":[\"missing\"]},"
+                + "{\"jsonrpc\":\"2.0\",\"method\":\"aria2.getGlobalStat\"}]");
+        assertEquals(3, batch.size());
+        assertEquals("1.0.0", batch.path(0).path("result").path("version").asText());
+        assertEquals(-32601, batch.path(1).path("error").path("code").asInt());
+        assertEquals(1, batch.path(2).path("error").path("code").asInt());
+        assertEquals("GID missing is not found", batch.path(2).path("error").path("message").asText());
+
+        assertEquals(-32700, post("{not json").path("error").path("code").asInt());
+        assertEquals(-32600, post("[]").path("error").path("code").asInt());
+        assertEquals(-32600, post("{\"id\":1}").path("error").path("code").asInt());
+        assertEquals(-32602, call("aria2.addUri", "[\"not-an-array\"]").path("error").path("code").asInt());
+
+        JsonNode multi = call("system.multicall", "[[{\"methodName\":\"aria2.getGlobalStat\",\"params\":[]},"
+                + "{\"methodName\":\"aria2.pause\",\"params\":[\"missing\"]}]]").path("result");
+        assertEquals("0", multi.path(0).path(0).path("numActive").asText());
+        assertEquals(1, multi.path(1).path("code").asInt());
+    }
+
+    @Test
+    public void testSecretAndOrigin() throws Exception {
+        rpc.stop();
+        start("s3cret");
+
+        assertEquals("Unauthorized", call("aria2.getGlobalStat", "[]").path("error").path("message").asText());
+        assertEquals("0", call("aria2.getGlobalStat", "[\"token:s3cret\"]").path("result")
+                .path("numActive").asText());
+        assertTrue(call("system.listMethods", "[]").path("result").size() > 10);
+
+        String listMethods = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"system.listMethods\"}";
+        assertEquals(403, statusWithOrigin("http://evil.example.com", listMethods));
+        assertEquals(403, statusWithOrigin("null", listMethods));
+        assertEquals(200, statusWithOrigin("http://localhost:8080", listMethods));
+
+        assertEquals(401, open("/jsonrpc/events").getResponseCode());
+    }
+
+    @Test
+    public void testEventStream() throws Exception {
+        server.addGenerated("/event.bin", 64 * 1024, 5);
+        HttpURLConnection events = open("/jsonrpc/events");
+        assertEquals(200, events.getResponseCode());
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(events.getInputStream(), StandardCharsets.UTF_8));
+        assertEquals(": connected", reader.readLine());
+
+        String gid = addUri("/event.bin");
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("data: ")) {
+                JsonNode notification = MAPPER.readTree(line.substring("data: ".length()));
+                assertEquals(gid, notification.path("params").path(0).path("gid").asText());
+                if ("aria2.onDownloadComplete".equals(notification.path("method").asText())) {
+                    break;
+                }
+            }
+        }
+        assertNotNull("事件流提前结束", line);
+        events.disconnect();
+    }
+
+    private void start(String secret) throws IOException {
+        rpc = new JsonRpcServer(manager, dir.getPath(), secret);
+        endpoint = "http://127.0.0.1:" + rpc.start(0);
+    }
+
+    private String addUri(String path) throws IOException {
+        return call("aria2.addUri", "[[\"" + server.url(path) + "\"]]").path("result").asText();
+    }
+
+    private JsonNode tellStatus(String gid) throws IOException {
+        return call("aria2.tellStatus", "[\"" + gid + "\"]").path("result");
+    }
+
+    private JsonNode awaitStatus(String gid, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 20_000;
+        JsonNode status = tellStatus(gid);
+        while (!expected.equals(status.path("status").asText())) {
+            assertTrue("状态仍为 " + status.path("status").asText(), System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+            status = tellStatus(gid);
+        }
+        return status;
+    }
+
+    private JsonNode call(String method, String params) throws IOException {
+        return post("{\"jsonrpc\":\"2.0\",\"id\":\"t\",\"method\":\"" + method + "\",\"params\":" + params + "}");
+    }
+
+    private JsonNode post(String body) throws IOException {
+        HttpURLConnection connection = open("/jsonrpc");
+        send(connection, body);
+        assertEquals(200, connection.getResponseCode());
+        try (InputStream in = connection.getInputStream()) {
+            return MAPPER.readTree(in);
+        }
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(endpoint + path).openConnection();
+        connection.setReadTimeout(30_000);
+        return connection;
+    }
+
+    /**
+     * HttpURLConnection 不允许设置Origin头，直接发送原始请求并返回状态码
+     */
+    private int statusWithOrigin(String origin, String body) throws IOException {
+        byte[] content = body.getBytes(StandardCharsets.UTF_8);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), new URL(endpoint).getPort())) {
+            socket.setSoTimeout(30_000);
+            OutputStream out = socket.getOutputStream();
+            out.write(("POST /jsonrpc HTTP/1.1\r\nHost: localhost\r\nOrigin: " + origin
+                    + "\r\nContent-Type: application/json\r\nContent-Length: " + content.length
+                    + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(content);
+            out.flush();
+            String statusLine = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.US_ASCII)).readLine();
+            return Integer.parseInt(statusLine.split(" ")[1]);
+        }
+    }
+
+    private static void send(HttpURLConnection connection, String body) throws IOException {
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,572 @@
+package com.downloader;
+
+import com.downloader.core.DefaultSchedulingPolicy;
+import com.downloader.core.HostProfileRegistry;
+import com.downloader.core.SchedulingPolicy;
+import com.downloader.model.DownloadSegment;
+import com.downloader.model.DownloadTask;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * 调度策略模拟器 在模拟时钟和模拟链路上按与下载管理器、多线程下载器相同的流程执行调度策略：
+ * 按等待顺序占用下载名额、探测、按策略划分分段和选择连接数、主机限流时按策略退避和调整健康连接数、
+ * 传输中断的任务由驱动程序从分段位置重新开始。链路模型包括主机总带宽、往返延迟、单连接带宽上限、
+ * 服务器允许的最大连接数（超出时返回503）和按传输量计的断线率。
+ * 模拟是确定性的（同一场景和种子结果相同），事件驱动推进时钟，数千个场景可在数秒内完成
+ */
+public class SchedulingSimulator {
+
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * 模拟链路
+     */
+    public static class Link {
+        double bytesPerSecond = 100e6; // 主机总带宽，由该主机上正在传输的连接平分
+        double latencyMillis = 20; // 每个请求到首字节的时间
+        double perConnectionBytesPerSecond = Double.MAX_VALUE; // 单连接上限
+        int maxConnections = Integer.MAX_VALUE; // 超出时返回503
+        long retryAfterMillis = -1; // 503附带的Retry-After，小于0表示不提供
+        double failuresPerGigabyte; // 每传输1GB平均断线次数
+
+        public Link bandwidth(double bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+            return this;
+        }
+
+        public Link latency(double millis) {
+            this.latencyMillis = millis;
+            return this;
+        }
+
+        public Link perConnection(double bytesPerSecond) {
+            this.perConnectionBytesPerSecond = bytesPerSecond;
+            return this;
+        }
+
+        public Link maxConnections(int maxConnections, long retryAfterMillis) {
+            this.maxConnections = maxConnections;
+            this.retryAfterMillis = retryAfterMillis;
+            return this;
+        }
+
+        public Link failures(double perGigabyte) {
+            this.failuresPerGigabyte = perGigabyte;
+            return this;
+        }
+    }
+
+    /**
+     * 一个模拟场景：若干主机上的若干文件
+     */
+    public static class Scenario {
+        final Map<String, Link> links = new HashMap<>();
+        final List<String> fileHosts = new ArrayList<>();
+        final List<Long> fileSizes = new ArrayList<>();
+        final List<Boolean> fileRanges = new ArrayList<>();
+        int maxConcurrent = 4;
+        int threadCount = 8;
+        int maxTaskRetries = 5;
+        long seed = 1;
+
+        public Scenario link(String host, Link link) {
+            links.put(host, link);
+            return this;
+        }
+
+        public Scenario file(String host, long size, boolean supportsRanges) {
+            fileHosts.add(host);
+            fileSizes.add(size);
+            fileRanges.add(supportsRanges);
+            return this;
+        }
+
+        public Scenario maxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+            return this;
+        }
+
+        public Scenario seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+    }
+
+    /**
+     * 单个场景的结果，时间单位为秒
+     */
+    public static class Result {
+        double makespan;
+        final List<Double> completionTimes = new ArrayList<>();
+        int failedTasks;
+        int throttles;
+        int resets;
+        int restarts;
+
+        public double getMakespan() {
+            return makespan;
+        }
+
+        public List<Double> getCompletionTimes() {
+            return completionTimes;
+        }
+
+        public int getFailedTasks() {
+            return failedTasks;
+        }
+
+        public int getThrottles() {
+            return throttles;
+        }
+
+        public int getResets() {
+            return resets;
+        }
+
+        public int getRestarts() {
+            return restarts;
+        }
+    }
+
+    /**
+     * 多个场景的完成时间分布
+     */
+    public static class Report {
+        final String policyName;
+        final double[] makespans;
+        final double[] completionTimes;
+        final int failedTasks;
+        final int throttles;
+        final int resets;
+
+        Report(String policyName, List<Result> results) {
+            this.policyName = policyName;
+            this.makespans = results.stream().mapToDouble(Result::getMakespan).sorted().toArray();
+            this.completionTimes = results.stream().flatMap(r -> r.completionTimes.stream())
+                    .mapToDouble(Double::doubleValue).sorted().toArray();
+            this.failedTasks = results.stream().mapToInt(Result::getFailedTasks).sum();
+            this.throttles = results.stream().mapToInt(Result::getThrottles).sum();
+            this.resets = results.stream().mapToInt(Result::getResets).sum();
+        }
+
+        public double makespanPercentile(double q) {
+            return percentile(makespans, q);
+        }
+
+        public double completionPercentile(double q) {
+            return percentile(completionTimes, q);
+        }
+
+        public int getScenarioCount() {
+            return makespans.length;
+        }
+
+        public int getFailedTasks() {
+            return failedTasks;
+        }
+
+        static double percentile(double[] sorted, double q) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(q * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d个场景，总耗时 p50=%.1fs p90=%.1fs p99=%.1fs，"
+                    + "任务完成时间 p50=%.1fs p90=%.1fs p99=%.1fs，失败%d，限流%d，断线%d", policyName,
+                    makespans.length, makespanPercentile(0.5), makespanPercentile(0.9), makespanPercentile(0.99),
+                    completionPercentile(0.5), completionPercentile(0.9), completionPercentile(0.99), failedTasks,
+                    throttles, resets);
+        }
+    }
+
+    /**
+     * 依次模拟全部场景并汇总
+     */
+    public static Report replay(String policyName, SchedulingPolicy policy, List<Scenario> scenarios) {
+        List<Result> results = new ArrayList<>(scenarios.size());
+        for (Scenario scenario : scenarios) {
+            results.add(simulate(scenario, policy));
+        }
+        return new Report(policyName, results);
+    }
+
+    /**
+     * 按种子生成随机场景：1到3个主机、1到40个文件，带宽、延迟、连接上限和断线率各不相同
+     */
+    public static Scenario randomScenario(long seed) {
+        Random random = new Random(seed);
+        Scenario scenario = new Scenario().seed(seed).maxConcurrent(1 + random.nextInt(6));
+        int hosts = 1 + random.nextInt(3);
+        for (int h = 0; h < hosts; h++) {
+            Link link = new Link().bandwidth(logUniform(random, 1e6, 200e6)).latency(logUniform(random, 2, 400))
+                    .perConnection(random.nextBoolean() ? logUniform(random, 256e3, 20e6) : Double.MAX_VALUE)
+                    .failures(random.nextInt(4) == 0 ? logUniform(random, 0.1, 5) : 0);
+            if (random.nextInt(3) == 0) {
+                link.maxConnections(2 + random.nextInt(8), random.nextBoolean() ? 1000 : -1);
+            }
+            scenario.link("host" + h, link);
+        }
+        int files = 1 + random.nextInt(40);
+        for (int i = 0; i < files; i++) {
+            scenario.file("host" + random.nextInt(hosts), (long) logUniform(random, 10e3, 2e9),
+                    random.nextInt(10) != 0);
+        }
+        return scenario;
+    }
+
+    private static double logUniform(Random random, double min, double max) {
+        return Math.exp(Math.log(min) + random.nextDouble() * (Math.log(max) - Math.log(min)));
+    }
+
+    public static Result simulate(Scenario scenario, SchedulingPolicy policy) {
+        return new Run(scenario, policy).execute();
+    }
+
+    // ---- 模拟过程 ----
+
+    private enum Phase {
+        REQUEST, TRANSFER, DONE, FAILED
+    }
+
+    private static class SimTask {
+        final DownloadTask task;
+        final String host;
+        final boolean supportsRanges;
+        final double submittedAt;
+        DownloadSegment[] segments; // 保存的分段进度，重新开始时从这里继续
+        final List<Connection> connections = new ArrayList<>();
+        double probeReadyAt = Double.NaN; // 探测完成时间，NaN表示不在探测中
+        int connectionCount;
+        int attempts;
+        double startedAt; // 本次尝试开始传输的时间
+
+        SimTask(DownloadTask task, String host, boolean supportsRanges, double submittedAt) {
+            this.task = task;
+            this.host = host;
+            this.supportsRanges = supportsRanges;
+            this.submittedAt = submittedAt;
+        }
+    }
+
+    private static class Connection {
+        final SimTask owner;
+        final DownloadSegment segment;
+        Phase phase = Phase.REQUEST;
+        double readyAt;
+        double downloaded; // 分段内已下载字节数
+        double failAt = Double.MAX_VALUE; // 在分段内下载到该字节数时断线
+        double rate;
+        int throttleAttempts;
+
+        Connection(SimTask owner, DownloadSegment segment) {
+            this.owner = owner;
+            this.segment = segment;
+            this.downloaded = segment.getDownloaded();
+        }
+
+        double remaining() {
+            return segment.getLength() - downloaded;
+        }
+    }
+
+    private static class Run {
+        final Scenario scenario;
+        final SchedulingPolicy policy;
+        final Random random;
+        final HostProfileRegistry registry;
+        final TreeSet<DownloadTask> waiting;
+        final Map<DownloadTask, SimTask> simTasks = new HashMap<>();
+        final List<SimTask> active = new ArrayList<>();
+        final Result result = new Result();
+        double now; // 秒
+        int unfinished;
+
+        Run(Scenario scenario, SchedulingPolicy policy) {
+            this.scenario = scenario;
+            this.policy = policy;
+            this.random = new Random(scenario.seed);
+            this.registry = new HostProfileRegistry(null, policy, () -> (long) (now * 1000));
+            this.waiting = new TreeSet<>(policy.waitingOrder());
+        }
+
+        Result execute() {
+            for (int i = 0; i < scenario.fileSizes.size(); i++) {
+                String host = scenario.fileHosts.get(i);
+                DownloadTask task = new DownloadTask("http://" + host + "/file-" + i, "file-" + i, "/sim");
+                task.setTotalSize(scenario.fileSizes.get(i));
+                task.setThreadCount(scenario.threadCount);
+                SimTask simTask = new SimTask(task, host, scenario.fileRanges.get(i), 0);
+                simTasks.put(task, simTask);
+                waiting.add(task);
+            }
+            unfinished = simTasks.size();
+
+            while (unfinished > 0) {
+                startWaiting();
+                assignRates();
+                double next = nextEventTime();
+                if (next == Double.MAX_VALUE) {
+                    throw new IllegalStateException("模拟停滞");
+                }
+                advance(next - now);
+                now = next;
+                processEvents();
+            }
+            result.makespan = now;
+            return result;
+        }
+
+        Link link(String host) {
+            return scenario.links.computeIfAbsent(host, h -> new Link());
+        }
+
+        String url(SimTask task) {
+            return task.task.getUrl();
+        }
+
+        void startWaiting() {
+            while (active.size() < scenario.maxConcurrent && !waiting.isEmpty()) {
+                SimTask task = simTasks.get(waiting.pollFirst());
+                active.add(task);
+                // 探测：等待主机退避结束，再经过一个往返
+                double backoff = registry.getBackoffRemaining(url(task)) / 1000.0;
+                task.probeReadyAt = now + backoff + link(task.host).latencyMillis / 1000.0;
+            }
+        }
+
+        void assignRates() {
+            Map<String, Integer> transferring = new HashMap<>();
+            for (SimTask task : active) {
+                for (Connection c : task.connections) {
+                    if (c.phase == Phase.TRANSFER) {
+                        transferring.merge(task.host, 1, Integer::sum);
+                    }
+                }
+            }
+            for (SimTask task : active) {
+                Link link = link(task.host);
+                for (Connection c : task.connections) {
+                    if (c.phase == Phase.TRANSFER) {
+                        c.rate = Math.min(link.bytesPerSecond / transferring.get(task.host),
+                                link.perConnectionBytesPerSecond);
+                    }
+                }
+            }
+        }
+
+        double nextEventTime() {
+            double next = Double.MAX_VALUE;
+            for (SimTask task : active) {
+                if (!Double.isNaN(task.probeReadyAt)) {
+                    next = Math.min(next, task.probeReadyAt);
+                }
+                for (Connection c : task.connections) {
+                    if (c.phase == Phase.REQUEST) {
+                        next = Math.min(next, c.readyAt);
+                    } else if (c.phase == Phase.TRANSFER) {
+                        double bytes = Math.min(c.remaining(), c.failAt - c.downloaded);
+                        next = Math.min(next, now + Math.max(0, bytes) / c.rate);
+                    }
+                }
+            }
+            return next;
+        }
+
+        void advance(double dt) {
+            for (SimTask task : active) {
+                for (Connection c : task.connections) {
+                    if (c.phase == Phase.TRANSFER) {
+                        c.downloaded = Math.min(segmentLimit(c), c.downloaded + c.rate * dt);
+                        c.segment.setDownloaded((long) c.downloaded);
+                    }
+                }
+            }
+        }
+
+        double segmentLimit(Connection c) {
+            return Math.min(c.segment.getLength(), c.failAt);
+        }
+
+        void processEvents() {
+            for (SimTask task : new ArrayList<>(active)) {
+                if (!Double.isNaN(task.probeReadyAt) && task.probeReadyAt <= now + EPSILON) {
+                    task.probeReadyAt = Double.NaN;
+                    plan(task);
+                }
+                for (Connection c : task.connections) {
+                    if (c.phase == Phase.REQUEST && c.readyAt <= now + EPSILON) {
+                        request(task, c);
+                    } else if (c.phase == Phase.TRANSFER) {
+                        if (c.remaining() <= EPSILON * c.segment.getLength() + 0.5) {
+                            c.downloaded = c.segment.getLength();
+                            c.segment.setDownloaded(c.segment.getLength());
+                            c.phase = Phase.DONE;
+                        } else if (c.downloaded >= c.failAt - 0.5) {
+                            c.phase = Phase.FAILED;
+                            result.resets++;
+                        }
+                    }
+                }
+                if (Double.isNaN(task.probeReadyAt) && !task.connections.isEmpty() && finished(task)) {
+                    finish(task);
+                }
+            }
+        }
+
+        /**
+         * 与多线程下载器相同：保存的分段可用时按分段继续，否则按策略重新划分
+         */
+        void plan(SimTask task) {
+            long size = task.task.getTotalSize();
+            DownloadSegment[] plan;
+            boolean multi;
+            if (task.segments != null && task.supportsRanges) {
+                plan = task.segments;
+                multi = plan.length > 1;
+            } else {
+                multi = policy.useSegments(size, task.supportsRanges);
+                int connections = multi ? registry.suggestConnections(url(task), task.task.getThreadCount(), size) : 1;
+                plan = multi ? policy.planSegments(size, 0, connections)
+                        : new DownloadSegment[] { new DownloadSegment(0, size - 1, 0) };
+            }
+            task.segments = plan;
+            task.connectionCount = plan.length;
+            task.startedAt = now;
+            task.connections.clear();
+            double latency = link(task.host).latencyMillis / 1000.0;
+            for (DownloadSegment segment : plan) {
+                if (!segment.isComplete()) {
+                    Connection c = new Connection(task, segment);
+                    c.readyAt = now + registry.getBackoffRemaining(url(task)) / 1000.0 + latency;
+                    task.connections.add(c);
+                }
+            }
+            if (task.connections.isEmpty()) {
+                // 已全部下载，直接完成
+                Connection done = new Connection(task, plan[0]);
+                done.phase = Phase.DONE;
+                task.connections.add(done);
+            }
+        }
+
+        /**
+         * 请求到达服务器 退避中则等待；超过服务器连接上限时返回503，按策略退避并重试
+         */
+        void request(SimTask task, Connection c) {
+            Link link = link(task.host);
+            long backoff = registry.getBackoffRemaining(url(task));
+            if (backoff > 0) {
+                c.readyAt = now + backoff / 1000.0 + link.latencyMillis / 1000.0;
+                return;
+            }
+            if (serverConnections(task.host) >= link.maxConnections) {
+                result.throttles++;
+                registry.recordThrottled(url(task), link.retryAfterMillis, task.connectionCount);
+                if (c.throttleAttempts++ >= policy.maxThrottleRetries()) {
+                    c.phase = Phase.FAILED;
+                    return;
+                }
+                c.readyAt = now + registry.getBackoffRemaining(url(task)) / 1000.0 + link.latencyMillis / 1000.0;
+                return;
+            }
+            c.phase = Phase.TRANSFER;
+            if (link.failuresPerGigabyte > 0) {
+                double meanBytes = 1e9 / link.failuresPerGigabyte;
+                c.failAt = c.downloaded - Math.log(1 - random.nextDouble()) * meanBytes;
+            }
+        }
+
+        int serverConnections(String host) {
+            int count = 0;
+            for (SimTask task : active) {
+                if (task.host.equals(host)) {
+                    for (Connection c : task.connections) {
+                        if (c.phase == Phase.TRANSFER) {
+                            count++;
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+
+        boolean finished(SimTask task) {
+            for (Connection c : task.connections) {
+                if (c.phase == Phase.REQUEST || c.phase == Phase.TRANSFER) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void finish(SimTask task) {
+            active.remove(task);
+            boolean failed = task.connections.stream().anyMatch(c -> c.phase == Phase.FAILED);
+            task.connections.clear();
+            if (!failed) {
+                if (task.connectionCount > 1) {
+                    registry.recordHealthy(url(task), task.connectionCount);
+                }
+                double elapsed = now - task.startedAt;
+                if (elapsed > 0) {
+                    registry.recordThroughput(url(task), (long) (task.task.getTotalSize() / elapsed),
+                            task.connectionCount);
+                }
+                result.completionTimes.add(now - task.submittedAt);
+                unfinished--;
+                return;
+            }
+            if (!task.supportsRanges) {
+                task.segments = null; // 不支持Range只能从头开始
+            }
+            if (++task.attempts > scenario.maxTaskRetries) {
+                result.failedTasks++;
+                unfinished--;
+                return;
+            }
+            result.restarts++;
+            waiting.add(task.task);
+        }
+    }
+
+    /**
+     * 便于比较的简单策略：不分段，单连接下载
+     */
+    public static class SingleConnectionPolicy extends DefaultSchedulingPolicy {
+        @Override
+        public boolean useSegments(long size, boolean supportsRanges) {
+            return false;
+        }
+    }
+
+    static List<Scenario> randomScenarios(int count, long firstSeed) {
+        List<Scenario> scenarios = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            scenarios.add(randomScenario(firstSeed + i));
+        }
+        return scenarios;
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        List<Scenario> scenarios = randomScenarios(count, 1);
+        for (Map.Entry<String, SchedulingPolicy> entry : Arrays.asList(
+                Map.entry("默认策略", (SchedulingPolicy) new DefaultSchedulingPolicy()),
+                Map.entry("单连接", (SchedulingPolicy) new SingleConnectionPolicy()))) {
+            long start = System.nanoTime();
+            Report report = replay(entry.getKey(), entry.getValue(), scenarios);
+            System.out.println(report + String.format("（用时%.1fs）", (System.nanoTime() - start) / 1e9));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.downloader;
+
+import com.downloader.core.DefaultSchedulingPolicy;
+import com.downloader.model.DownloadTask;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * 调度策略模拟器测试类
+ */
+public class SchedulingSimulatorTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void testSameSeedGivesSameResult() {
+        SchedulingSimulator.Scenario scenario = SchedulingSimulator.randomScenario(7);
+        SchedulingSimulator.Result first = SchedulingSimulator.simulate(scenario, new DefaultSchedulingPolicy());
+        SchedulingSimulator.Result second = SchedulingSimulator.simulate(SchedulingSimulator.randomScenario(7),
+                new DefaultSchedulingPolicy());
+        assertEquals(first.getMakespan(), second.getMakespan(), 0.0);
+        assertEquals(first.getCompletionTimes(), second.getCompletionTimes());
+        assertEquals(first.getResets(), second.getResets());
+    }
+
+    @Test
+    public void testSegmentsBeatSingleConnectionOnCappedLink() {
+        SchedulingSimulator.Scenario scenario = new SchedulingSimulator.Scenario()
+                .link("cdn", new SchedulingSimulator.Link().bandwidth(100 * MB).perConnection(MB).latency(50))
+                .file("cdn", 64 * MB, true);
+        double segmented = SchedulingSimulator.simulate(scenario, new DefaultSchedulingPolicy()).getMakespan();
+        double single = SchedulingSimulator.simulate(scenario, new SchedulingSimulator.SingleConnectionPolicy())
+                .getMakespan();
+        assertEquals(8.1, segmented, 0.2); // 8个连接各1MB/s
+        assertEquals(64.05, single, 0.1);
+    }
+
+    @Test
+    public void testThrottledHostConverges() {
+        SchedulingSimulator.Scenario scenario = new SchedulingSimulator.Scenario()
+                .link("busy", new SchedulingSimulator.Link().bandwidth(10 * MB).maxConnections(3, 500))
+                .maxConcurrent(1);
+        for (int i = 0; i < 5; i++) {
+            scenario.file("busy", 20 * MB, true);
+        }
+        SchedulingSimulator.Result result = SchedulingSimulator.simulate(scenario, new DefaultSchedulingPolicy());
+        assertEquals(0, result.getFailedTasks());
+        assertEquals(5, result.getCompletionTimes().size());
+        assertTrue(result.getThrottles() > 0);
+        // 限流退避不会耗尽重试次数，总耗时接近带宽极限
+        assertTrue(result.getMakespan() < 100.0 * MB / (10 * MB) * 1.5);
+    }
+
+    @Test
+    public void testWaitingOrderPrefersPriority() {
+        DownloadTask first = new DownloadTask("http://a/1", "1", "/sim");
+        DownloadTask urgent = new DownloadTask("http://a/2", "2", "/sim");
+        urgent.setPriority(5);
+        DownloadTask third = new DownloadTask("http://a/3", "3", "/sim");
+        TreeSet<DownloadTask> waiting = new TreeSet<>(new DefaultSchedulingPolicy().waitingOrder());
+        waiting.add(third);
+        waiting.add(first);
+        waiting.add(urgent);
+        assertEquals(List.of(urgent, first, third), List.copyOf(waiting));
+    }
+
+    @Test
+    public void testReplayThousandsOfScenarios() {
+        List<SchedulingSimulator.Scenario> scenarios = SchedulingSimulator.randomScenarios(2000, 1);
+        long start = System.nanoTime();
+        SchedulingSimulator.Report defaults = SchedulingSimulator.replay("默认策略", new DefaultSchedulingPolicy(),
+                scenarios);
+        SchedulingSimulator.Report single = SchedulingSimulator.replay("单连接",
+                new SchedulingSimulator.SingleConnectionPolicy(), scenarios);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        assertEquals(2000, defaults.getScenarioCount());
+        assertTrue("模拟用时" + seconds + "s", seconds < 60);
+        assertTrue(defaults + " / " + single, defaults.makespanPercentile(0.5) <= single.makespanPercentile(0.5));
+        assertTrue(defaults + " / " + single, defaults.completionPercentile(0.9) <= single.completionPercentile(0.9));
+    }
+}
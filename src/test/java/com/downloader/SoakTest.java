@@ -0,0 +1,182 @@
+package com.downloader;
+
+import com.downloader.core.DownloadListener;
+import com.downloader.core.DownloadManager;
+import com.downloader.metrics.ResourceMonitor;
+import com.downloader.model.DownloadTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * 长时间运行稳定性测试 反复添加、暂停、继续、删除和完成下载，检查线程、文件描述符、套接字、直接内存和任务表不随循环次数增长。
+ * 默认只跑几百次循环，长时间浸泡测试用 -Ddownloader.soak.cycles=50000 指定次数
+ */
+public class SoakTest {
+
+    private static final int CYCLES = Integer.getInteger("downloader.soak.cycles", 400);
+    private static final long FILE_SIZE = 1536 * 1024; // 大于1MB，走分段下载
+    private static final int THREAD_SLACK = 4;
+    private static final long FD_SLACK = 16;
+    private static final long DIRECT_BUFFER_SLACK = 4 * 1024 * 1024;
+
+    @Rule
+    public final LoopbackFixture fixture = new LoopbackFixture("downloader-soak");
+
+    private LoopbackHttpServer server;
+    private File dataDir;
+    private File downloadDir;
+    private DownloadManager manager;
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        server = fixture.server();
+        server.addGenerated("/soak.bin", FILE_SIZE, 7);
+        url = server.url("/soak.bin");
+        dataDir = Files.createTempDirectory("downloader-soak-data").toFile();
+        downloadDir = fixture.dir();
+        manager = new DownloadManager(dataDir);
+        manager.setArchiveDelayMillis(0);
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+        LoopbackFixture.deleteRecursively(dataDir);
+    }
+
+    @Test
+    public void testResourcesStayFlat() throws Exception {
+        ResourceMonitor resources = manager.getMetrics().getResources();
+        runCycles(0, Math.max(40, CYCLES / 10));
+        ResourceMonitor.Snapshot before = settle(resources);
+
+        runCycles(1_000_000, CYCLES);
+        ResourceMonitor.Snapshot after = settle(resources);
+        String cycles = "（" + CYCLES + "次循环）";
+
+        for (Map.Entry<String, Integer> pool : after.getThreadsByPool().entrySet()) {
+            int baseline = before.getThreadsByPool().getOrDefault(pool.getKey(), 0);
+            assertTrue("线程池" + pool.getKey() + "从" + baseline + "增长到" + pool.getValue() + cycles,
+                    pool.getValue() <= baseline + THREAD_SLACK);
+        }
+        if (before.getOpenFileDescriptors() >= 0) {
+            assertTrue("文件描述符" + before.getOpenFileDescriptors() + " -> " + after.getOpenFileDescriptors() + cycles,
+                    after.getOpenFileDescriptors() <= before.getOpenFileDescriptors() + FD_SLACK);
+        }
+        if (before.getOpenSockets() >= 0) {
+            assertTrue("套接字" + before.getOpenSockets() + " -> " + after.getOpenSockets() + cycles,
+                    after.getOpenSockets() <= before.getOpenSockets() + FD_SLACK);
+        }
+        assertTrue("直接内存" + before.getDirectBufferBytes() + " -> " + after.getDirectBufferBytes() + cycles,
+                after.getDirectBufferBytes() <= before.getDirectBufferBytes() + DIRECT_BUFFER_SLACK);
+        for (Map.Entry<String, Integer> size : after.getCollectionSizes().entrySet()) {
+            int baseline = before.getCollectionSizes().getOrDefault(size.getKey(), 0);
+            assertTrue(size.getKey() + "从" + baseline + "增长到" + size.getValue() + cycles,
+                    size.getValue() <= baseline);
+        }
+    }
+
+    /**
+     * 依次轮换四种循环：下载完成、暂停后继续再删除、暂停后删除、刚开始就删除
+     */
+    private void runCycles(int firstId, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            String taskId = manager.addDownload(url, "soak-" + (firstId + i) + ".bin", downloadDir.getPath());
+            switch (i % 4) {
+            case 0:
+                awaitFinished(taskId);
+                break;
+            case 1:
+                DownloadListener listener = new NoopListener();
+                manager.addListener(listener);
+                manager.pauseDownload(taskId);
+                manager.startDownload(taskId);
+                manager.removeTask(taskId);
+                manager.removeListener(listener);
+                break;
+            case 2:
+                manager.pauseDownload(taskId);
+                manager.removeTask(taskId);
+                break;
+            default:
+                manager.removeTask(taskId);
+                break;
+            }
+            if (i % 200 == 199) {
+                cleanDownloads();
+            }
+        }
+    }
+
+    private void awaitFinished(String taskId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (System.currentTimeMillis() < deadline) {
+            DownloadTask task = manager.getTask(taskId);
+            if (task == null) {
+                // 归档检查可能先一步把已结束的任务移出任务表
+                task = manager.findArchivedTask(taskId);
+                assertNotNull("任务已不存在: " + taskId, task);
+            }
+            if (task.getStatus().isTerminal()) {
+                assertEquals(task.getErrorMessage(), DownloadTask.Status.COMPLETED, task.getStatus());
+                return;
+            }
+            Thread.sleep(2);
+        }
+        fail("下载未在30秒内完成: " + taskId);
+    }
+
+    /**
+     * 等下载线程全部结束、已完成的任务归档后再取快照
+     */
+    private ResourceMonitor.Snapshot settle(ResourceMonitor resources) throws InterruptedException {
+        assertTrue("下载器表未登记大小监控", resources.getCollectionSizes().containsKey("downloaders"));
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            int downloading = resources.getCollectionSizes().getOrDefault("downloaders", 0);
+            int segmentThreads = resources.getThreadsByPool().getOrDefault("DownloadSegment", 0);
+            if (downloading == 0 && segmentThreads == 0) {
+                break;
+            }
+            Thread.sleep(50);
+        }
+        manager.archiveNow();
+        cleanDownloads();
+        System.gc();
+        Thread.sleep(200);
+        return resources.snapshot();
+    }
+
+    private void cleanDownloads() {
+        File[] files = downloadDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private static class NoopListener implements DownloadListener {
+        @Override
+        public void onTaskAdded(DownloadTask task) {
+        }
+
+        @Override
+        public void onTaskUpdated(DownloadTask task) {
+        }
+
+        @Override
+        public void onTaskRemoved(DownloadTask task) {
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.downloader;
+
+import com.downloader.model.DownloadTask;
+import com.downloader.model.SpeedEstimator;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 速度估计器测试类
+ */
+public class SpeedEstimatorTest {
+
+    @Test
+    public void testSteadyRateAndEta() {
+        SpeedEstimator estimator = new SpeedEstimator();
+        long bytes = 0;
+        for (int second = 0; second <= 30; second++) {
+            estimator.record(bytes, second * 1000L);
+            bytes += 1000;
+        }
+        assertEquals(1000, estimator.getSpeed());
+        assertEquals(1000, estimator.getWindowAverage());
+        assertEquals(5, estimator.estimateSeconds(5000));
+        assertEquals(-1, new SpeedEstimator().estimateSeconds(5000));
+    }
+
+    @Test
+    public void testBurstIsSmoothed() {
+        SpeedEstimator estimator = new SpeedEstimator();
+        estimator.record(0, 0);
+        estimator.record(1000, 1000);
+        estimator.record(2000, 2000);
+        estimator.record(102_000, 3000); // 单秒突发
+        long speed = estimator.getSpeed();
+        assertTrue("平滑后的速度不应直接跳到突发值: " + speed, speed > 1000 && speed < 100_000);
+    }
+
+    @Test
+    public void testHistoryWrapsInOrder() {
+        SpeedEstimator estimator = new SpeedEstimator();
+        long bytes = 0;
+        int samples = SpeedEstimator.HISTORY_SIZE + 15;
+        estimator.record(0, 0);
+        for (int i = 1; i <= samples; i++) {
+            bytes += i;
+            estimator.record(bytes, i * 1000L);
+        }
+        long[] history = new long[SpeedEstimator.HISTORY_SIZE];
+        int n = estimator.copyHistory(history);
+        assertEquals(SpeedEstimator.HISTORY_SIZE, n);
+        assertEquals("最旧的采样应在最前", samples - SpeedEstimator.HISTORY_SIZE + 1, history[0]);
+        assertEquals("最新的采样应在最后", samples, history[n - 1]);
+    }
+
+    @Test
+    public void testResumeKeepsHistoryAndSkipsPause() {
+        SpeedEstimator estimator = new SpeedEstimator();
+        estimator.record(0, 0);
+        estimator.record(1000, 1000);
+        estimator.record(2000, 2000);
+
+        // 暂停60秒后继续，暂停期间不应被算作速度为0的采样
+        estimator.resume();
+        estimator.record(2000, 62_000);
+        estimator.record(3000, 63_000);
+
+        assertArrayEquals(new long[] { 1000, 1000, 1000 }, estimator.getHistory());
+        assertEquals(1000, estimator.getSpeed());
+    }
+
+    @Test
+    public void testAppendDuration() {
+        StringBuilder sb = new StringBuilder();
+        DownloadTask.appendDuration(sb, 65);
+        assertEquals("1:05", sb.toString());
+        sb.setLength(0);
+        DownloadTask.appendDuration(sb, 3 * 3600 + 4 * 60 + 9);
+        assertEquals("3:04:09", sb.toString());
+    }
+}
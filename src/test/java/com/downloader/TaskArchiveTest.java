@@ -0,0 +1,98 @@
+package com.downloader;
+
+import com.downloader.model.DownloadTask;
+import com.downloader.store.TaskArchive;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 历史任务归档测试类
+ */
+public class TaskArchiveTest {
+
+    private File archiveDir;
+
+    @Before
+    public void setUp() {
+        archiveDir = new File(System.getProperty("java.io.tmpdir"), "task-archive-test-" + System.nanoTime());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = archiveDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        archiveDir.delete();
+    }
+
+    @Test
+    public void testArchivedTasksReadBackFromDisk() throws IOException {
+        DownloadTask completed = new DownloadTask("https://example.com/a.bin", "a.bin", "/tmp/downloads");
+        completed.setTotalSize(4096);
+        completed.setDownloadedSize(4096);
+        completed.setStatus(DownloadTask.Status.COMPLETED);
+        DownloadTask failed = new DownloadTask("https://example.com/b.bin", "b.bin", "/tmp/downloads");
+        failed.setStatus(DownloadTask.Status.ERROR);
+        failed.setErrorMessage("连接超时");
+
+        new TaskArchive(archiveDir).append(Arrays.asList(completed, failed));
+
+        TaskArchive reopened = new TaskArchive(archiveDir);
+        assertEquals(2, reopened.getCount());
+        List<DownloadTask> archived = reopened.loadAll();
+        assertEquals(completed.getId(), archived.get(0).getId());
+        assertEquals(DownloadTask.Status.COMPLETED, archived.get(0).getStatus());
+
+        DownloadTask found = reopened.find(failed.getId());
+        assertNotNull(found);
+        assertEquals("连接超时", found.getErrorMessage());
+        assertNull(reopened.find("task_missing"));
+    }
+
+    @Test
+    public void testIndexFollowsAppends() throws IOException {
+        TaskArchive archive = new TaskArchive(archiveDir);
+        DownloadTask first = finished("第一个.bin", "中文错误信息");
+        archive.append(Arrays.asList(first));
+        assertNull("首次查找建立索引", archive.find("task_missing"));
+
+        DownloadTask second = finished("second.bin", "超时");
+        archive.append(Arrays.asList(second));
+        assertEquals("超时", archive.find(second.getId()).getErrorMessage());
+        assertEquals("中文错误信息", archive.find(first.getId()).getErrorMessage());
+        assertEquals(2, archive.getCount());
+    }
+
+    @Test
+    public void testMemoryArchiveKeepsRecentTasks() throws IOException {
+        TaskArchive archive = new TaskArchive(null);
+        List<DownloadTask> tasks = new ArrayList<>();
+        for (int i = 0; i < 10_100; i++) {
+            tasks.add(finished("f" + i, null));
+        }
+        archive.append(tasks);
+
+        assertEquals(10_000, archive.getCount());
+        assertNull("最早的任务应被淘汰", archive.find(tasks.get(0).getId()));
+        assertNotNull(archive.find(tasks.get(10_099).getId()));
+    }
+
+    private static DownloadTask finished(String fileName, String error) {
+        DownloadTask task = new DownloadTask("https://example.com/" + fileName, fileName, "/tmp/downloads");
+        task.setStatus(DownloadTask.Status.ERROR);
+        task.setErrorMessage(error);
+        return task;
+    }
+}
@@ -0,0 +1,81 @@
+package com.downloader;
+
+import com.downloader.core.TaskIndex;
+import com.downloader.core.TaskQuery;
+import com.downloader.model.DownloadTask;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 任务索引测试类
+ */
+public class TaskIndexTest {
+
+    private TaskIndex index;
+    private List<DownloadTask> tasks;
+
+    @Before
+    public void setUp() {
+        index = new TaskIndex();
+        tasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String host = i % 2 == 0 ? "even.example.com" : "odd.example.com";
+            DownloadTask task = new DownloadTask("https://" + host + "/f" + i, "file_" + i + ".bin", "/tmp");
+            task.setTotalSize(i * 1000L);
+            tasks.add(task);
+        }
+        index.onTasksAdded(tasks);
+    }
+
+    @Test
+    public void testFilterByStatusAndHostFollowsUpdates() {
+        DownloadTask task = tasks.get(4);
+        task.setStatus(DownloadTask.Status.COMPLETED);
+        index.onTasksUpdated(Collections.singletonList(task));
+
+        TaskQuery query = new TaskQuery();
+        query.setStatuses(EnumSet.of(DownloadTask.Status.COMPLETED));
+        query.setHost("EVEN.example.com");
+        assertEquals(Collections.singletonList(task), index.query(query));
+
+        query.setHost("odd.example.com");
+        assertTrue(index.query(query).isEmpty());
+    }
+
+    @Test
+    public void testSizeRangeSortedDescending() {
+        TaskQuery query = new TaskQuery();
+        query.setMinSize(10_000);
+        query.setMaxSize(12_000);
+        query.setSortKey(TaskQuery.SortKey.SIZE);
+        query.setDescending(true);
+
+        List<DownloadTask> result = index.query(query);
+        assertEquals(3, result.size());
+        assertEquals(tasks.get(12), result.get(0));
+        assertEquals(tasks.get(10), result.get(2));
+    }
+
+    @Test
+    public void testNameFilterAndProgressOnlyUpdatesKeepVersion() {
+        TaskQuery query = new TaskQuery();
+        query.setNameContains("FILE_9");
+        assertEquals("file_9 和 file_90~99", 11, index.query(query).size());
+
+        long version = index.getStructureVersion();
+        DownloadTask task = tasks.get(1);
+        task.setDownloadedSize(500);
+        index.onTasksUpdated(Collections.singletonList(task));
+        assertEquals("纯进度更新不应改变结构版本", version, index.getStructureVersion());
+
+        index.onTasksRemoved(Collections.singletonList(tasks.get(9)));
+        assertEquals(10, index.query(query).size());
+    }
+}
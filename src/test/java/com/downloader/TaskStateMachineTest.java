@@ -0,0 +1,92 @@
+package com.downloader;
+
+import com.downloader.core.TaskStateMachine;
+import com.downloader.model.DownloadTask;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 任务状态机测试类
+ */
+public class TaskStateMachineTest {
+
+    @Test
+    public void testSlotReleasedOnlyOnce() {
+        TaskStateMachine machine = new TaskStateMachine(() -> 1);
+        DownloadTask task = new DownloadTask("https://example.com/a", "a", "/tmp");
+
+        assertTrue(machine.tryStart(task));
+        assertFalse("正在下载的任务不能重复开始", machine.tryStart(task));
+        assertEquals(1, machine.getActiveCount());
+
+        assertTrue(machine.finish(task, DownloadTask.Status.PAUSED));
+        assertFalse("迟到的完成回调不能再次释放名额", machine.finish(task, DownloadTask.Status.COMPLETED));
+        assertEquals(0, machine.getActiveCount());
+        assertEquals(DownloadTask.Status.PAUSED, task.getStatus());
+    }
+
+    @Test
+    public void testIllegalTransitionsRejected() {
+        TaskStateMachine machine = new TaskStateMachine(() -> 4);
+        DownloadTask task = new DownloadTask("https://example.com/a", "a", "/tmp");
+
+        assertFalse("等待中的任务不能直接完成", task.compareAndSetStatus(DownloadTask.Status.WAITING,
+                DownloadTask.Status.COMPLETED));
+        assertTrue(machine.moveTo(task, DownloadTask.Status.CANCELLED));
+        assertFalse("已取消的任务不能恢复", machine.moveTo(task, DownloadTask.Status.WAITING));
+        assertFalse(machine.tryStart(task));
+        assertEquals(0, machine.getActiveCount());
+    }
+
+    @Test
+    public void testConcurrentChurnNeverExceedsLimit() throws InterruptedException {
+        int limit = 3;
+        TaskStateMachine machine = new TaskStateMachine(() -> limit);
+        List<DownloadTask> tasks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            tasks.add(new DownloadTask("https://example.com/" + i, "f" + i, "/tmp"));
+        }
+
+        AtomicInteger overshoot = new AtomicInteger();
+        int threads = 8;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 20_000; i++) {
+                    DownloadTask task = tasks.get(random.nextInt(tasks.size()));
+                    switch (random.nextInt(4)) {
+                    case 0:
+                        machine.tryStart(task);
+                        break;
+                    case 1:
+                        machine.finish(task, DownloadTask.Status.PAUSED);
+                        break;
+                    case 2:
+                        machine.finish(task, DownloadTask.Status.COMPLETED);
+                        break;
+                    default:
+                        machine.moveTo(task, DownloadTask.Status.WAITING);
+                        break;
+                    }
+                    if (machine.getActiveCount() > limit) {
+                        overshoot.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+
+        assertEquals("并发数不应超过上限", 0, overshoot.get());
+        long downloading = tasks.stream().filter(t -> t.getStatus() == DownloadTask.Status.DOWNLOADING).count();
+        assertEquals("名额计数应与下载中的任务数一致", downloading, machine.getActiveCount());
+    }
+}